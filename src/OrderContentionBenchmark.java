@@ -0,0 +1,151 @@
+import models.Medicine;
+import utils.StockTransaction;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * OrderContentionBenchmark places orders from many threads at once on a shared catalogue
+ *
+ * Every thread orders baskets of a few medicines drawn from a small catalogue, so
+ * baskets overlap and threads keep changing the same stock. Orders go through
+ * StockTransaction like PatientService.placeOrder does. The run reports throughput
+ * and retries, then checks that the units sold of every medicine match its drop in
+ * stock and that no stock went negative. Runs on its own catalogue; no data files are
+ * read or written.
+ */
+public class OrderContentionBenchmark {
+    
+    /**
+     * Main method to run the benchmark
+     *
+     * @param args --threads=N --medicines=N --basket=N --stock=N --seconds=N
+     */
+    public static void main(String[] args) throws InterruptedException {
+        int threads = Runtime.getRuntime().availableProcessors();
+        int medicineCount = 16;
+        int basketSize = 4;
+        int initialStock = 1_000_000;
+        int seconds = 5;
+        
+        for (String arg : args) {
+            String[] parts = arg.split("=", 2);
+            if (parts.length != 2) {
+                printHelpMessage();
+                return;
+            }
+            try {
+                int value = Integer.parseInt(parts[1]);
+                switch (parts[0]) {
+                    case "--threads": threads = value; break;
+                    case "--medicines": medicineCount = value; break;
+                    case "--basket": basketSize = value; break;
+                    case "--stock": initialStock = value; break;
+                    case "--seconds": seconds = value; break;
+                    default:
+                        printHelpMessage();
+                        return;
+                }
+            } catch (NumberFormatException e) {
+                printHelpMessage();
+                return;
+            }
+        }
+        basketSize = Math.min(basketSize, medicineCount);
+        
+        Medicine[] medicines = new Medicine[medicineCount];
+        for (int i = 0; i < medicineCount; i++) {
+            medicines[i] = new Medicine(i + 1, "Medicine " + (i + 1), "Benchmark medicine", "Benchmark",
+                                        10.0, initialStock, "Benchmark", false);
+        }
+        
+        AtomicLongArray sold = new AtomicLongArray(medicineCount);
+        LongAdder committed = new LongAdder();
+        LongAdder insufficient = new LongAdder();
+        LongAdder contended = new LongAdder();
+        LongAdder retries = new LongAdder();
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+        final int basket = basketSize;
+        
+        System.out.println("Ordering baskets of " + basket + " from " + medicineCount + " medicines of "
+                + initialStock + " units on " + threads + " threads for " + seconds + "s...");
+        
+        for (int t = 0; t < threads; t++) {
+            Thread thread = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                int[] picked = new int[basket];
+                int[] quantities = new int[basket];
+                try {
+                    start.await();
+                    while (System.nanoTime() < deadline) {
+                        StockTransaction order = new StockTransaction(id -> medicines[id - 1]);
+                        for (int i = 0; i < basket; i++) {
+                            picked[i] = random.nextInt(medicines.length);
+                            quantities[i] = 1 + random.nextInt(3);
+                            order.take(picked[i] + 1, quantities[i]);
+                        }
+                        
+                        StockTransaction.Result result = order.commit();
+                        retries.add(result.getRetries());
+                        if (result.isCommitted()) {
+                            committed.increment();
+                            for (int i = 0; i < basket; i++) {
+                                sold.addAndGet(picked[i], quantities[i]);
+                            }
+                        } else if (result.getOutcome() == StockTransaction.Outcome.INSUFFICIENT_STOCK) {
+                            insufficient.increment();
+                        } else {
+                            contended.increment();
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            }, "order-benchmark-" + t);
+            thread.start();
+        }
+        
+        long began = System.nanoTime();
+        start.countDown();
+        done.await();
+        double elapsed = (System.nanoTime() - began) / 1_000_000_000.0;
+        
+        long attempts = committed.sum() + insufficient.sum() + contended.sum();
+        System.out.println(String.format("Orders attempted:   %d (%.0f per second)", attempts, attempts / elapsed));
+        System.out.println(String.format("Orders committed:   %d (%.0f per second)", committed.sum(), committed.sum() / elapsed));
+        System.out.println("Out of stock:       " + insufficient.sum());
+        System.out.println("Gave up contended:  " + contended.sum());
+        System.out.println(String.format("Retries per order:  %.3f", attempts > 0 ? retries.sum() / (double) attempts : 0.0));
+        
+        // Every unit sold must be missing from stock, and no stock may have gone below zero
+        int oversold = 0;
+        for (int i = 0; i < medicineCount; i++) {
+            long expected = initialStock - sold.get(i);
+            if (medicines[i].getStock() != expected || medicines[i].getStock() < 0) {
+                System.out.println("Medicine " + (i + 1) + ": sold " + sold.get(i) + " but stock is "
+                        + medicines[i].getStock() + ", expected " + expected);
+                oversold++;
+            }
+        }
+        System.out.println(oversold == 0 ? "Stock consistent: no medicine oversold"
+                                         : oversold + " medicines with inconsistent stock");
+        if (oversold > 0) {
+            System.exit(1);
+        }
+    }
+    
+    private static void printHelpMessage() {
+        System.out.println("Usage: java OrderContentionBenchmark [options]");
+        System.out.println("  --threads=N    Ordering threads (default: available processors)");
+        System.out.println("  --medicines=N  Medicines in the catalogue (default: 16)");
+        System.out.println("  --basket=N     Medicines per order (default: 4)");
+        System.out.println("  --stock=N      Initial units of each medicine (default: 1000000)");
+        System.out.println("  --seconds=N    Length of the run (default: 5)");
+    }
+}
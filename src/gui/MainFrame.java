@@ -39,13 +39,13 @@ public class MainFrame extends JFrame {
         // Initialize components
         initializeComponents();
         
-        // Add window listener to auto-save on close
+        // Add window listener to auto-save on close; waits until queued saves are on disk
         addWindowListener(new WindowAdapter() {
             @Override
             public void windowClosing(WindowEvent e) {
                 try {
                     if (service != null) {
-                        service.saveDataToFiles();
+                        service.flushDataToFiles();
                     }
                 } catch (Exception ex) {
                     System.err.println("Auto-save on window closing failed: " + ex.getMessage());
@@ -111,15 +111,6 @@ public class MainFrame extends JFrame {
     }
     
     public void navigateTo(String destination, Object data) {
-        // Auto-persist any changes before switching screens
-        try {
-            if (service != null) {
-                service.saveDataToFiles();
-            }
-        } catch (Exception ex) {
-            System.err.println("Auto-save failed: " + ex.getMessage());
-        }
-        
         // Debug logging removed
         if (destination.equals("LOGOUT")) {
             logout();
@@ -272,8 +272,8 @@ public class AddUserPanel extends BasePanel {
             PharmacyService service = mainFrame.getPharmacyService();
             String selectedType = (String) userTypeComboBox.getSelectedItem();
             
-            // Get the next available ID
-            int nextId = getNextUserId();
+            // Get the next available ID, unique across all user types
+            int nextId = service.generateUserId();
             
             // Create the user based on type
             User newUser = null;
@@ -461,28 +461,4 @@ public class AddUserPanel extends BasePanel {
             ThemeIcons.ERROR
         );
     }
-    
-    private int getNextUserId() {
-        PharmacyService service = mainFrame.getPharmacyService();
-        int maxId = 0;
-        
-        // Check all user types to find the highest ID
-        for (Admin admin : service.getAdmins()) {
-            maxId = Math.max(maxId, admin.getId());
-        }
-        
-        for (Doctor doctor : service.getDoctors()) {
-            maxId = Math.max(maxId, doctor.getId());
-        }
-        
-        for (Patient patient : service.getPatients()) {
-            maxId = Math.max(maxId, patient.getId());
-        }
-        
-        for (Pharmacist pharmacist : service.getPharmacists()) {
-            maxId = Math.max(maxId, pharmacist.getId());
-        }
-        
-        return maxId + 1;
-    }
 } 
\ No newline at end of file
@@ -41,7 +41,7 @@ import java.util.Random;
  * Displays system status, user management, and admin actions
  */
 public class AdminDashboardPanel extends BaseDashboardPanel {
-
+    
     private JPanel summaryPanel;
     private JPanel revenuePanel;
     
@@ -239,14 +239,17 @@ public class AdminDashboardPanel extends BaseDashboardPanel {
         
         double monthlyRevenue = 0.0;
         try {
-            List<Order> orders = service.getOrders();
-            if (orders == null || orders.isEmpty()) {
-                return 0.0;
-            }
-            
             LocalDateTime now = LocalDateTime.now();
             System.out.println("Calculating revenue for " + now.getMonth() + " " + now.getYear());
             
+            // Only orders from the current month, read from the order date index
+            LocalDateTime startOfMonth = now.toLocalDate().withDayOfMonth(1).atStartOfDay();
+            List<Order> orders = service.getOrdersBetween(
+                Date.from(startOfMonth.atZone(ZoneId.systemDefault()).toInstant()), null);
+            if (orders.isEmpty()) {
+                return 0.0;
+            }
+            
             // Calculate revenue only for orders from the current month
             for (Order order : orders) {
                 Date date = order.getOrderDate();
@@ -316,29 +319,8 @@ public class AdminDashboardPanel extends BaseDashboardPanel {
         
         double totalRevenue = 0.0;
         try {
-            List<Order> orders = service.getOrders();
-            if (orders == null || orders.isEmpty()) {
-                System.out.println("No orders found in the system");
-                return 0.0;
-            }
-            
-            System.out.println("Calculating revenue from " + orders.size() + " orders");
-            
-            // Calculate revenue by iterating through all orders and their items
-            for (Order order : orders) {
-                if (order.getStatus().toString().equals("COMPLETED") || order.getStatus().toString().equals("PAID")) {
-                    for (OrderItem item : order.getItems()) {
-                        double itemTotal = item.getTotalPrice();
-                        totalRevenue += itemTotal;
-                        System.out.println("Order #" + order.getId() + " - Item: " + 
-                                          item.getMedicineName() + " - Quantity: " + 
-                                          item.getQuantity() + " - Unit Price: " + 
-                                          String.format("%.2f", item.getUnitPrice()) + " - Total: " + 
-                                          String.format("%.2f", itemTotal) + " LE");
-                    }
-                }
-            }
-            
+            // Kept up to date as orders complete, so no order is read here
+            totalRevenue = service.getTotalRevenue();
             System.out.println("Total calculated revenue: " + String.format("%.2f", totalRevenue) + " LE");
         } catch (Exception e) {
             System.err.println("Error calculating revenue: " + e.getMessage());
@@ -654,14 +636,7 @@ public class AdminDashboardPanel extends BaseDashboardPanel {
             );
             
             // Low Stock Items stat
-            int lowStockCount = 0;
-            if (service != null) {
-                for (Medicine medicine : service.getMedicines()) {
-                    if (medicine.getStock() < 10) {
-                        lowStockCount++;
-                    }
-                }
-            }
+            int lowStockCount = service != null ? service.countMedicinesNeedingRestock() : 0;
             
             stats[2] = new DashboardStat(
                 "Low Stock Items", 
@@ -701,14 +676,7 @@ public class AdminDashboardPanel extends BaseDashboardPanel {
             }
             
             // Get low stock count
-            int lowStockCount = 0;
-            if (service != null) {
-                for (Medicine medicine : service.getMedicines()) {
-                    if (medicine.getStock() < 10) {
-                        lowStockCount++;
-                    }
-                }
-            }
+            int lowStockCount = service != null ? service.countMedicinesNeedingRestock() : 0;
             
             String userName = "System User";
             if (!allUsers.isEmpty()) {
@@ -777,7 +745,7 @@ public class AdminDashboardPanel extends BaseDashboardPanel {
         
         return activities;
     }
-
+    
     private void createHeaderPanel() {
         headerPanel = new JPanel();
         headerPanel.setLayout(new BorderLayout());
@@ -804,7 +772,7 @@ public class AdminDashboardPanel extends BaseDashboardPanel {
         // Role icon
         JLabel roleIconLabel = new JLabel(getRoleIcon());
         roleIconLabel.setBorder(new EmptyBorder(0, 0, 0, 15));
-
+        
         // Add logout button
         StyledButton logoutButton = new StyledButton("Logout", ThemeIcons.LOGOUT);
         logoutButton.addActionListener(e -> mainFrame.navigateTo("LOGOUT"));
@@ -226,27 +226,19 @@ public class MedicineManagementPanel extends BasePanel {
             return;
         }
         
-        // Search by name, category or description
+        // Search by name, category, manufacturer or description, best match first
         PharmacyService service = mainFrame.getPharmacyService();
         if (service != null) {
-            List<Medicine> medicines = service.getMedicines();
-            String lowercaseQuery = query.toLowerCase();
-            
-            for (Medicine medicine : medicines) {
-                if (medicine.getName().toLowerCase().contains(lowercaseQuery) || 
-                    medicine.getCategory().toLowerCase().contains(lowercaseQuery) ||
-                    medicine.getDescription().toLowerCase().contains(lowercaseQuery)) {
-                    
-                    Object[] row = {
-                        medicine.getId(),
-                        medicine.getName(),
-                        medicine.getCategory(),
-                        medicine.getPrice(),
-                        medicine.getStock(),
-                        medicine.isPrescription()
-                    };
-                    tableModel.addRow(row);
-                }
+            for (Medicine medicine : service.searchMedicines(query)) {
+                Object[] row = {
+                    medicine.getId(),
+                    medicine.getName(),
+                    medicine.getCategory(),
+                    medicine.getPrice(),
+                    medicine.getStock(),
+                    medicine.isPrescription()
+                };
+                tableModel.addRow(row);
             }
         }
     }
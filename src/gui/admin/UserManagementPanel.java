@@ -629,20 +629,6 @@ public class UserManagementPanel extends BasePanel {
         dialog.setVisible(true);
     }
     
-    private int getNextUserId() {
-        // Find the highest ID in current users and add 1
-        int maxId = 0;
-        
-        for (int i = 0; i < tableModel.getRowCount(); i++) {
-            int id = (int) tableModel.getValueAt(i, 0);
-            if (id > maxId) {
-                maxId = id;
-            }
-        }
-        
-        return maxId + 1;
-    }
-    
     private void editUser() {
         int selectedRow = userTable.getSelectedRow();
         if (selectedRow == -1) {
@@ -749,6 +735,9 @@ public class UserManagementPanel extends BasePanel {
                             break;
                     }
                     
+                    // Persist the edit
+                    saveEditedUser(user);
+                    
                     // Update table
                     loadUserData();
                     
@@ -777,6 +766,24 @@ public class UserManagementPanel extends BasePanel {
         }
     }
     
+    /**
+     * Save the collection holding the given user
+     * 
+     * @param user The edited user
+     */
+    private void saveEditedUser(User user) {
+        PharmacyService service = mainFrame.getService();
+        if (user instanceof Admin) {
+            service.saveDataToFiles(PharmacyService.DataSet.ADMINS);
+        } else if (user instanceof Patient) {
+            service.saveDataToFiles(PharmacyService.DataSet.PATIENTS);
+        } else if (user instanceof Doctor) {
+            service.saveDataToFiles(PharmacyService.DataSet.DOCTORS);
+        } else if (user instanceof Pharmacist) {
+            service.saveDataToFiles(PharmacyService.DataSet.PHARMACISTS);
+        }
+    }
+    
     private User findUserById(int userId) {
         PharmacyService service = mainFrame.getService();
         
@@ -9,6 +9,7 @@ import gui.theme.ThemeIcons;
 import models.Order;
 import models.OrderItem;
 import models.Medicine;
+import models.Patient;
 
 import javax.swing.*;
 import javax.swing.border.CompoundBorder;
@@ -189,8 +190,8 @@ public class OrderDetailsPanel extends BasePanel {
                 .findFirst()
                 .orElse(null);
             
-            if (medicine != null) {
-                mainFrame.getCurrentUser().getCartOrder().addItem(medicine, item.getQuantity());
+            if (medicine != null
+                    && mainFrame.getService().addToCart((Patient) mainFrame.getCurrentUser(), medicine, item.getQuantity())) {
                 message.append("- ").append(medicine.getName())
                        .append(" (Qty: ").append(item.getQuantity()).append(")\n");
             }
@@ -217,28 +217,13 @@ public class OrderManagementPanel extends BasePanel {
         // Get orders from pharmacy service
         PharmacyService service = mainFrame.getPharmacyService();
         if (service != null) {
-            List<Order> orders = service.getOrders();
+            List<Order> orders = ordersWithSelectedStatus(service);
             SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm");
             
             for (Order order : orders) {
-                // Apply status filter if needed
-                String selectedStatus = (String) statusFilterComboBox.getSelectedItem();
-                if (!"All Orders".equals(selectedStatus) && !order.getStatus().getDisplayName().equals(selectedStatus)) {
-                    continue;
-                }
-                
                 // Get patient name
-                Patient patient = null;
-                String patientName = "Unknown";
-                
-                // Look for patient in the list of patients
-                for (Patient p : service.getPatients()) {
-                    if (p.getId() == order.getPatientId()) {
-                        patient = p;
-                        patientName = p.getName();
-                        break;
-                    }
-                }
+                Patient patient = service.findPatient(order.getPatientId());
+                String patientName = patient != null ? patient.getName() : "Unknown";
                 
                 // Calculate total
                 double total = order.getTotalAmount();
@@ -256,6 +241,21 @@ public class OrderManagementPanel extends BasePanel {
         }
     }
     
+    /**
+     * Get the orders matching the status filter, through the status index unless all orders are shown
+     */
+    private List<Order> ordersWithSelectedStatus(PharmacyService service) {
+        String selectedStatus = (String) statusFilterComboBox.getSelectedItem();
+        if (selectedStatus != null && !"All Orders".equals(selectedStatus)) {
+            for (Order.Status status : Order.Status.values()) {
+                if (status.getDisplayName().equals(selectedStatus)) {
+                    return service.getOrdersByStatus(status);
+                }
+            }
+        }
+        return service.getOrders();
+    }
+    
     private void filterOrders() {
         loadOrdersData();  // This will apply the selected filter
     }
@@ -273,29 +273,14 @@ public class OrderManagementPanel extends BasePanel {
         // Get orders from pharmacy service
         PharmacyService service = mainFrame.getPharmacyService();
         if (service != null) {
-            List<Order> orders = service.getOrders();
+            List<Order> orders = ordersWithSelectedStatus(service);
             SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm");
             String lowercaseQuery = query.toLowerCase();
             
             for (Order order : orders) {
-                // Apply status filter if needed
-                String selectedStatus = (String) statusFilterComboBox.getSelectedItem();
-                if (!"All Orders".equals(selectedStatus) && !order.getStatus().getDisplayName().equals(selectedStatus)) {
-                    continue;
-                }
-                
                 // Get patient
-                Patient patient = null;
-                String patientName = "Unknown";
-                
-                // Look for patient in the list of patients
-                for (Patient p : service.getPatients()) {
-                    if (p.getId() == order.getPatientId()) {
-                        patient = p;
-                        patientName = p.getName();
-                        break;
-                    }
-                }
+                Patient patient = service.findPatient(order.getPatientId());
+                String patientName = patient != null ? patient.getName() : "Unknown";
                 
                 // Search by ID or patient name
                 if (String.valueOf(order.getId()).contains(query) || 
@@ -373,7 +358,7 @@ public class OrderManagementPanel extends BasePanel {
                         // Process the order
                         order.setStatus(Order.Status.PROCESSING);
                         // Save data
-                        mainFrame.getPharmacyService().saveDataToFiles();
+                        mainFrame.getPharmacyService().saveDataToFiles(PharmacyService.DataSet.ORDERS);
                         // Refresh table
                         loadOrdersData();
                         
@@ -422,7 +407,7 @@ public class OrderManagementPanel extends BasePanel {
                 "Are you sure you want to cancel this order?",
                 "Confirm Cancellation",
                 JOptionPane.YES_NO_OPTION);
-                
+            
             if (confirm == JOptionPane.YES_OPTION) {
                 PharmacyService service = mainFrame.getPharmacyService();
                 Order order = null;
@@ -441,7 +426,7 @@ public class OrderManagementPanel extends BasePanel {
                         // Cancel the order
                         order.setStatus(Order.Status.CANCELLED);
                         // Save data
-                        mainFrame.getPharmacyService().saveDataToFiles();
+                        mainFrame.getPharmacyService().saveDataToFiles(PharmacyService.DataSet.ORDERS);
                         // Refresh table
                         loadOrdersData();
                         
@@ -466,13 +451,13 @@ public class OrderManagementPanel extends BasePanel {
                 JOptionPane.INFORMATION_MESSAGE);
         }
     }
-
+    
     private boolean isProcessButtonEnabled(Order order) {
         // Implement the logic to determine if the process button should be enabled
         // This is a placeholder and should be replaced with the actual implementation
         return true;
     }
-
+    
     private boolean isCancelButtonEnabled(Order order) {
         // Implement the logic to determine if the cancel button should be enabled
         // This is a placeholder and should be replaced with the actual implementation
@@ -8,7 +8,7 @@ import gui.theme.ThemeColors;
 import gui.theme.ThemeIcons;
 import models.Medicine;
 import models.Order;
-import models.OrderItem;
+import models.Patient;
 
 import javax.swing.*;
 import java.awt.*;
@@ -18,7 +18,6 @@ public class OrderMedicinesPanel extends BasePanel {
     private StyledTable<Medicine> medicineTable;
     private JSpinner quantitySpinner;
     private JLabel totalLabel;
-    private List<OrderItem> cartItems;
     
     public OrderMedicinesPanel(MainFrame mainFrame) {
         super(mainFrame);
@@ -50,7 +49,7 @@ public class OrderMedicinesPanel extends BasePanel {
             medicine.getName(),
             medicine.getDescription(),
             String.format("%.2f", medicine.getPrice()),
-            medicine.getStock()
+            medicine.getAvailableStock()
         });
 
         JScrollPane scrollPane = new JScrollPane(medicineTable);
@@ -100,7 +99,8 @@ public class OrderMedicinesPanel extends BasePanel {
         }
 
         int quantity = (Integer) quantitySpinner.getValue();
-        if (quantity > selected.getStock()) {
+        // Holds the units for the cart, unless other carts hold or bought them first
+        if (!mainFrame.getPharmacyService().addToCart((Patient) mainFrame.getCurrentUser(), selected, quantity)) {
             JOptionPane.showMessageDialog(this, 
                 "Not enough stock available", 
                 "Invalid Quantity", 
@@ -108,8 +108,7 @@ public class OrderMedicinesPanel extends BasePanel {
             return;
         }
 
-        OrderItem item = new OrderItem(selected, quantity);
-        cartItems.add(item);
+        medicineTable.setData(medicineTable.getData());
         updateTotal();
 
         JOptionPane.showMessageDialog(this, 
@@ -123,9 +122,7 @@ public class OrderMedicinesPanel extends BasePanel {
     }
 
     private void updateTotal() {
-        double total = cartItems.stream()
-            .mapToDouble(item -> item.getMedicine().getPrice() * item.getQuantity())
-            .sum();
+        double total = ((Patient) mainFrame.getCurrentUser()).getCartOrder().calculateTotal();
         totalLabel.setText(String.format("Total: $%.2f", total));
     }
 } 
\ No newline at end of file
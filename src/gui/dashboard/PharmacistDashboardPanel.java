@@ -23,7 +23,7 @@ public class PharmacistDashboardPanel extends BaseDashboardPanel {
     private StyledTable<Order> ordersTable;
     private StyledTable<Medicine> medicinesTable;
     private StyledTable<Prescription> prescriptionsTable;
-
+    
     public PharmacistDashboardPanel(MainFrame frame) {
         super(frame);
     }
@@ -40,7 +40,7 @@ public class PharmacistDashboardPanel extends BaseDashboardPanel {
         tabbedPane.setBackground(ThemeColors.BACKGROUND);
         tabbedPane.setForeground(ThemeColors.TEXT_PRIMARY);
         tabbedPane.setFont(ThemeFonts.REGULAR_MEDIUM);
-
+        
         // Orders Tab
         JPanel ordersPanel = new JPanel(new BorderLayout());
         ordersPanel.setBackground(ThemeColors.BACKGROUND);
@@ -199,9 +199,7 @@ public class PharmacistDashboardPanel extends BaseDashboardPanel {
         // Get data from service
         int orderCount = mainFrame.getService().getOrders().size();
         int medicineCount = mainFrame.getService().getMedicines().size();
-        int lowStockCount = (int) mainFrame.getService().getMedicines().stream()
-            .filter(m -> m.getStock() < 10)
-            .count();
+        int lowStockCount = mainFrame.getService().countMedicinesNeedingRestock();
         
         // Create stats
         return new DashboardStat[] {
@@ -250,8 +248,7 @@ public class PharmacistDashboardPanel extends BaseDashboardPanel {
         }
         
         // Add medicines with low stock
-        List<Medicine> lowStockMeds = mainFrame.getService().getMedicines().stream()
-            .filter(m -> m.getStock() < 10)
+        List<Medicine> lowStockMeds = mainFrame.getService().getMedicinesNeedingRestock().stream()
             .limit(2)
             .toList();
         
@@ -288,7 +285,7 @@ public class PharmacistDashboardPanel extends BaseDashboardPanel {
         List<Prescription> prescriptions = mainFrame.getService().getPrescriptions();
         prescriptionsTable.setData(prescriptions);
     }
-
+    
     private void exportOrderHistory() {
         List<Order> orders = mainFrame.getService().getOrders();
         
@@ -316,7 +313,7 @@ public class PharmacistDashboardPanel extends BaseDashboardPanel {
         
         utils.PDFGenerator.generatePDF("Order History", content.toString(), this);
     }
-
+    
     private void exportInventoryReport() {
         List<Medicine> medicines = mainFrame.getService().getMedicines();
         
@@ -326,10 +323,8 @@ public class PharmacistDashboardPanel extends BaseDashboardPanel {
         content.append("Total Items: ").append(medicines.size()).append("\n\n");
         
         // Count low stock items
-        long lowStockCount = medicines.stream()
-            .filter(m -> m.getStock() < 10)
-            .count();
-        content.append("Low Stock Items (< 10): ").append(lowStockCount).append("\n\n");
+        int lowStockCount = mainFrame.getService().countMedicinesNeedingRestock();
+        content.append("Low Stock Items: ").append(lowStockCount).append("\n\n");
         
         // Calculate total inventory value
         double totalValue = medicines.stream()
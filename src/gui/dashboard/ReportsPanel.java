@@ -6,7 +6,10 @@ import gui.components.StyledButton;
 import gui.theme.ThemeColors;
 import gui.theme.ThemeFonts;
 import gui.theme.ThemeIcons;
+import models.Medicine;
 import services.PharmacyService;
+import utils.SalesRollup;
+import utils.StockWatch;
 import utils.PDFGenerator;
 
 import javax.swing.*;
@@ -18,9 +21,14 @@ import java.awt.*;
 import java.awt.Desktop;
 import java.io.File;
 import java.io.FileOutputStream;
+import java.time.DayOfWeek;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
 
 
 
@@ -238,25 +246,32 @@ public class ReportsPanel extends BasePanel {
         report.append("SALES REPORT\n");
         report.append("-----------\n\n");
         
-        // Placeholder for real implementation
-        report.append("Total Orders: ").append(service.getOrders().size()).append("\n");
-        report.append("Total Sales: $").append(String.format("%.2f", calculateTotalSales(service))).append("\n");
-        report.append("Average Order Value: $").append(String.format("%.2f", calculateAverageOrderValue(service))).append("\n\n");
+        SalesRollup.Summary sales = service.getSalesSummary(rangeStart(timeRange), null);
+        report.append("Completed Orders: ").append(sales.getOrderCount()).append("\n");
+        report.append("Units Sold: ").append(sales.getUnitsSold()).append("\n");
+        report.append("Total Sales: $").append(String.format("%.2f", sales.getRevenue())).append("\n");
+        report.append("Average Order Value: $").append(String.format("%.2f", sales.getAverageOrderValue())).append("\n\n");
         
         report.append("Top Selling Products:\n");
-        report.append("1. Paramol - 120 units\n");
-        report.append("2. Megamox - 87 units\n");
-        report.append("3. Brufen - 65 units\n");
-        report.append("4. Claritine - 42 units\n");
-        report.append("5. Lopresor - 38 units\n\n");
+        List<Integer> topSellers = sales.getTopSellers(5);
+        if (topSellers.isEmpty()) {
+            report.append("No sales in this period\n");
+        }
+        for (int i = 0; i < topSellers.size(); i++) {
+            int medicineId = topSellers.get(i);
+            Medicine medicine = service.findMedicineById(medicineId);
+            String name = medicine != null ? medicine.getName() : "Medicine #" + medicineId;
+            report.append(i + 1).append(". ").append(name).append(" - ")
+                  .append(sales.getUnitsSold(medicineId)).append(" units\n");
+        }
+        report.append("\n");
         
         report.append("Sales by Time Period:\n");
-        report.append("- Morning (6am-12pm): 35%\n");
-        report.append("- Afternoon (12pm-6pm): 45%\n");
-        report.append("- Evening (6pm-12am): 18%\n");
-        report.append("- Night (12am-6am): 2%\n\n");
-        
-        report.append("Note: This is a placeholder report. In a real implementation, this would include actual sales data filtered by the selected time range.");
+        double[] byHour = sales.getRevenueByHourOfDay();
+        report.append("- Morning (6am-12pm): ").append(shareOf(byHour, 6, 12, sales.getRevenue())).append("\n");
+        report.append("- Afternoon (12pm-6pm): ").append(shareOf(byHour, 12, 18, sales.getRevenue())).append("\n");
+        report.append("- Evening (6pm-12am): ").append(shareOf(byHour, 18, 24, sales.getRevenue())).append("\n");
+        report.append("- Night (12am-6am): ").append(shareOf(byHour, 0, 6, sales.getRevenue())).append("\n");
     }
     
     private void generateInventoryReport(StringBuilder report, PharmacyService service) {
@@ -282,24 +297,18 @@ public class ReportsPanel extends BasePanel {
         report.append("Total Products: ").append(service.getMedicines().size()).append("\n");
         report.append("Total Stock Value: $").append(String.format("%.2f", calculateTotalStockValue(service))).append("\n");
         
-        int lowStockCount = (int) service.getMedicines().stream()
-                .filter(m -> m.getStock() < 10)
-                .count();
-        
-        report.append("Low Stock Items (< 10 units): ").append(lowStockCount).append("\n");
-        report.append("Out of Stock Items: ").append(
-                service.getMedicines().stream()
-                        .filter(m -> m.getStock() <= 0)
-                        .count()
-        ).append("\n");
+        report.append("Low Stock Items: ").append(service.countMedicinesNeedingRestock()).append("\n");
+        report.append("Out of Stock Items: ")
+              .append(service.countMedicinesAtStockLevel(StockWatch.Level.OUT_OF_STOCK)).append("\n");
     }
     
     private void generateFinancialReport(StringBuilder report, PharmacyService service, String timeRange) {
         report.append("FINANCIAL REPORT\n");
         report.append("----------------\n\n");
         
-        double totalRevenue = calculateTotalSales(service);
-        double estimatedCosts = totalRevenue * 0.6; // Placeholder: assuming 60% cost
+        SalesRollup.Summary sales = service.getSalesSummary(rangeStart(timeRange), null);
+        double totalRevenue = sales.getRevenue();
+        double estimatedCosts = totalRevenue * 0.6; // Estimate: assuming 60% cost
         double estimatedProfit = totalRevenue - estimatedCosts;
         
         report.append("Total Revenue: $").append(String.format("%.2f", totalRevenue)).append("\n");
@@ -307,10 +316,14 @@ public class ReportsPanel extends BasePanel {
         report.append("Estimated Profit: $").append(String.format("%.2f", estimatedProfit)).append("\n\n");
         
         report.append("Revenue by Category:\n");
-        report.append("- Prescription Medicines: $").append(String.format("%.2f", totalRevenue * 0.7)).append("\n");
-        report.append("- Over-the-counter Medicines: $").append(String.format("%.2f", totalRevenue * 0.3)).append("\n\n");
-        
-        report.append("Note: This is a placeholder report. In a real implementation, this would include actual financial data filtered by the selected time range.");
+        Map<String, Double> revenueByCategory = sales.getRevenueByCategory();
+        if (revenueByCategory.isEmpty()) {
+            report.append("No sales in this period\n");
+        }
+        for (Map.Entry<String, Double> entry : revenueByCategory.entrySet()) {
+            report.append("- ").append(entry.getKey()).append(": $")
+                  .append(String.format("%.2f", entry.getValue())).append("\n");
+        }
     }
     
     private void generateUserActivityReport(StringBuilder report, PharmacyService service, String timeRange) {
@@ -323,13 +336,12 @@ public class ReportsPanel extends BasePanel {
         report.append("- Total Pharmacists: ").append(service.getPharmacists().size()).append("\n");
         report.append("- Total Patients: ").append(service.getPatients().size()).append("\n\n");
         
-        report.append("Recent Activities:\n");
-        report.append("- New User Registrations: 12\n");
-        report.append("- Login Sessions: 145\n");
-        report.append("- Orders Placed: 78\n");
-        report.append("- Prescriptions Created: 36\n\n");
+        SalesRollup.Summary sales = service.getSalesSummary(rangeStart(timeRange), null);
+        report.append("Activity in this period:\n");
+        report.append("- Orders Completed: ").append(sales.getOrderCount()).append("\n");
+        report.append("- Units Dispensed: ").append(sales.getUnitsSold()).append("\n\n");
         
-        report.append("Note: This is a placeholder report. In a real implementation, this would include actual user activity data filtered by the selected time range.");
+        report.append("Note: Logins and registrations are not recorded, so they are not part of this report.");
     }
     
     private void generateLowStockReport(StringBuilder report, PharmacyService service) {
@@ -340,48 +352,62 @@ public class ReportsPanel extends BasePanel {
                 "ID", "Name", "Category", "Stock", "Reorder Level"));
         report.append("----------------------------------------------------------------\n");
         
-        // Add low stock items
-        service.getMedicines().stream()
-                .filter(m -> m.getStock() < 10)
-                .forEach(medicine -> {
-                    report.append(String.format("%-5d %-20s %-15s %-10d %s\n",
-                            medicine.getId(),
-                            medicine.getName(),
-                            medicine.getCategory(),
-                            medicine.getStock(),
-                            medicine.getStock() <= 0 ? "URGENT" : "SOON"));
-                });
+        // Most urgent first, against each medicine's own thresholds
+        for (Medicine medicine : service.getMedicinesNeedingRestock()) {
+            report.append(String.format("%-5d %-20s %-15s %-10d %s\n",
+                    medicine.getId(),
+                    medicine.getName(),
+                    medicine.getCategory(),
+                    medicine.getStock(),
+                    medicine.getStock() <= 0 ? "URGENT" : "SOON"));
+        }
         
         report.append("\n\nLow Stock Summary:\n");
-        long outOfStock = service.getMedicines().stream()
-                .filter(m -> m.getStock() <= 0)
-                .count();
+        int outOfStock = service.countMedicinesAtStockLevel(StockWatch.Level.OUT_OF_STOCK);
+        int criticallyLow = service.countMedicinesAtStockLevel(StockWatch.Level.CRITICAL);
+        int lowStock = service.countMedicinesAtStockLevel(StockWatch.Level.LOW);
         
-        long criticallyLow = service.getMedicines().stream()
-                .filter(m -> m.getStock() > 0 && m.getStock() < 5)
-                .count();
-        
-        long lowStock = service.getMedicines().stream()
-                .filter(m -> m.getStock() >= 5 && m.getStock() < 10)
-                .count();
-        
-        report.append("- Out of Stock (0 units): ").append(outOfStock).append("\n");
-        report.append("- Critically Low (1-4 units): ").append(criticallyLow).append("\n");
-        report.append("- Low Stock (5-9 units): ").append(lowStock).append("\n");
+        report.append("- Out of Stock: ").append(outOfStock).append("\n");
+        report.append("- Critically Low: ").append(criticallyLow).append("\n");
+        report.append("- Low Stock: ").append(lowStock).append("\n");
         report.append("- Total Items Needing Attention: ").append(outOfStock + criticallyLow + lowStock).append("\n");
     }
     
-    private double calculateTotalSales(PharmacyService service) {
-        // Calculate total sales from orders (placeholder implementation)
-        return service.getOrders().stream()
-                .mapToDouble(order -> order.getTotalAmount())
-                .sum();
+    private Date rangeStart(String timeRange) {
+        // First moment of the selected range, or null for all time
+        LocalDate today = LocalDate.now();
+        LocalDate start;
+        switch (timeRange) {
+            case "Today":
+                start = today;
+                break;
+            case "This Week":
+                start = today.with(DayOfWeek.MONDAY);
+                break;
+            case "This Month":
+                start = today.withDayOfMonth(1);
+                break;
+            case "Last 3 Months":
+                start = today.minusMonths(3);
+                break;
+            case "This Year":
+                start = today.withDayOfYear(1);
+                break;
+            default:
+                return null;
+        }
+        return Date.from(start.atStartOfDay(ZoneId.systemDefault()).toInstant());
     }
     
-    private double calculateAverageOrderValue(PharmacyService service) {
-        // Calculate average order value (placeholder implementation)
-        int orderCount = service.getOrders().size();
-        return orderCount > 0 ? calculateTotalSales(service) / orderCount : 0;
+    private String shareOf(double[] revenueByHour, int fromHour, int toHour, double totalRevenue) {
+        if (totalRevenue <= 0) {
+            return "0%";
+        }
+        double revenue = 0;
+        for (int hour = fromHour; hour < toHour; hour++) {
+            revenue += revenueByHour[hour];
+        }
+        return Math.round(revenue * 100 / totalRevenue) + "%";
     }
     
     private double calculateTotalStockValue(PharmacyService service) {
@@ -105,7 +105,8 @@ public class ShoppingCartPanel extends BasePanel {
     private void removeSelected() {
         OrderItem item = cartTable.getSelectedItem();
         if (item == null) return;
-        cartOrder.removeItem(item.getMedicineId());
+        // Releases the stock held for the item
+        mainFrame.getService().removeFromCart((Patient) mainFrame.getCurrentUser(), item.getMedicineId());
         cartTable.setData(cartOrder.getItems());
         refreshTotal();
     }
@@ -133,10 +134,11 @@ public class ShoppingCartPanel extends BasePanel {
         int confirm = JOptionPane.showConfirmDialog(this, "Confirm checkout using wallet?", "Checkout", JOptionPane.YES_NO_OPTION);
         if (confirm != JOptionPane.YES_OPTION) return;
 
-        // First, finalize the cart and receive the completed order instance
-        Order completedOrder = patient.checkoutCart();
+        // First, take the stock held for the cart and receive the completed order instance
+        var service = mainFrame.getService();
+        Order completedOrder = service.checkoutCart(patient);
         if (completedOrder == null) {
-            JOptionPane.showMessageDialog(this, "Checkout failed. Your cart may be empty or invalid.", "Checkout Error", JOptionPane.ERROR_MESSAGE);
+            JOptionPane.showMessageDialog(this, "Checkout failed. Your cart may be empty or some items are no longer in stock.", "Checkout Error", JOptionPane.ERROR_MESSAGE);
             return;
         }
 
@@ -144,20 +146,19 @@ public class ShoppingCartPanel extends BasePanel {
         boolean paid = completedOrder.processPaymentFromWallet(patient);
         if (!paid) {
             JOptionPane.showMessageDialog(this, "Payment failed. Please ensure sufficient balance.", "Payment Failed", JOptionPane.ERROR_MESSAGE);
-            // If payment failed, put the order back into the cart for retry
-            patient.setCartOrder(completedOrder);
+            // If payment failed, put the order back into the cart for retry, holding its stock again
+            service.returnToCart(patient, completedOrder);
             this.cartOrder = completedOrder;
             refreshTotal();
             return;
         }
 
         // Persist globally
-        var service = mainFrame.getService();
         if (service != null) {
             if (!service.getOrders().contains(completedOrder)) {
                 service.getOrders().add(completedOrder);
             }
-            service.saveDataToFiles();
+            service.recordOrderPlaced(completedOrder);
         }
 
         JOptionPane.showMessageDialog(this, "Order placed successfully!");
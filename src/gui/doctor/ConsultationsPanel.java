@@ -12,6 +12,7 @@ import models.Message;
 import models.Patient;
 import models.Prescription;
 import services.PharmacyService;
+import utils.MessageStore;
 
 import javax.swing.*;
 import javax.swing.border.CompoundBorder;
@@ -35,6 +36,9 @@ public class ConsultationsPanel extends BasePanel {
     private JTextField searchField;
     private List<Consultation> consultationList;
     private PharmacyService pharmacyService;
+    
+    // Messages shown when a consultation is opened, and loaded per "older messages" click
+    private static final int MESSAGE_PAGE_SIZE = 20;
 
     public ConsultationsPanel(MainFrame mainFrame) {
         super(mainFrame);
@@ -195,7 +199,7 @@ public class ConsultationsPanel extends BasePanel {
                 patientName,
                 consultation.getDateTime().format(formatter),
                 consultation.getStatus(),
-                consultation.getMessages().size(),
+                messageSummary(consultation),
                 truncateText(consultation.getNotes(), 50)
             };
             tableModel.addRow(rowData);
@@ -219,6 +223,12 @@ public class ConsultationsPanel extends BasePanel {
         }
         return null;
     }
+    
+    private String messageSummary(Consultation consultation) {
+        int unread = pharmacyService.getUnreadMessageCount(consultation);
+        int count = pharmacyService.getMessageCount(consultation);
+        return unread > 0 ? count + " (" + unread + " new)" : String.valueOf(count);
+    }
 
     private String truncateText(String text, int maxLength) {
         if (text == null || text.length() <= maxLength) {
@@ -259,7 +269,7 @@ public class ConsultationsPanel extends BasePanel {
                     patientName,
                     consultation.getDateTime().format(formatter),
                     consultation.getStatus(),
-                    consultation.getMessages().size(),
+                    messageSummary(consultation),
                     truncateText(consultation.getNotes(), 50)
                 };
                 tableModel.addRow(rowData);
@@ -293,6 +303,7 @@ public class ConsultationsPanel extends BasePanel {
         
         if (selectedConsultation != null) {
             displayConsultationDetails(selectedConsultation);
+            tableModel.setValueAt(messageSummary(selectedConsultation), selectedRow, 4);
         }
     }
     
@@ -345,31 +356,31 @@ public class ConsultationsPanel extends BasePanel {
         JLabel messagesLabel = new JLabel("Conversation:");
         messagesLabel.setFont(ThemeFonts.BOLD_MEDIUM);
         
-        // Create message list
+        // Create message list with the latest page; older pages are loaded on request
         DefaultListModel<String> messageListModel = new DefaultListModel<>();
+        MessageStore.Page page = pharmacyService.getLatestMessages(consultation, MESSAGE_PAGE_SIZE);
         
-        if (consultation.getMessages().isEmpty()) {
+        if (page.getMessages().isEmpty()) {
             messageListModel.addElement("No messages in this consultation yet.");
         } else {
-            DateTimeFormatter msgFormatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
-            
-            for (Message message : consultation.getMessages()) {
-                String sender;
-                if (message.getSenderId() == consultation.getDoctorId()) {
-                    sender = "Doctor";
-                } else if (message.getSenderId() == consultation.getPatientId()) {
-                    sender = patientName;
-                } else {
-                    sender = "Unknown";
-                }
-                
-                messageListModel.addElement(
-                    "[" + message.getTimestamp().format(msgFormatter) + "] " + 
-                    sender + ": " + message.getContent()
-                );
+            for (Message message : page.getMessages()) {
+                messageListModel.addElement(formatMessage(message, consultation, patientName));
             }
         }
         
+        JButton olderButton = new StyledButton("Load Older Messages", null);
+        olderButton.setVisible(page.hasOlder());
+        int[] cursor = {page.getCursor()};
+        olderButton.addActionListener(e -> {
+            MessageStore.Page older = pharmacyService.getOlderMessages(consultation, cursor[0], MESSAGE_PAGE_SIZE);
+            List<Message> messages = older.getMessages();
+            for (int i = messages.size() - 1; i >= 0; i--) {
+                messageListModel.add(0, formatMessage(messages.get(i), consultation, patientName));
+            }
+            cursor[0] = older.getCursor();
+            olderButton.setVisible(older.hasOlder());
+        });
+        
         JList<String> messageList = new JList<>(messageListModel);
         messageList.setFont(ThemeFonts.REGULAR_MEDIUM);
         messageList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
@@ -377,9 +388,16 @@ public class ConsultationsPanel extends BasePanel {
         JScrollPane messageScroll = new JScrollPane(messageList);
         messageScroll.setPreferredSize(new Dimension(450, 200));
         
-        messagesPanel.add(messagesLabel, BorderLayout.NORTH);
+        JPanel messagesHeader = new JPanel(new BorderLayout());
+        messagesHeader.add(messagesLabel, BorderLayout.WEST);
+        messagesHeader.add(olderButton, BorderLayout.EAST);
+        
+        messagesPanel.add(messagesHeader, BorderLayout.NORTH);
         messagesPanel.add(messageScroll, BorderLayout.CENTER);
         
+        // The doctor has now seen the latest messages
+        pharmacyService.markConsultationRead(consultation);
+        
         // Add all sections to the main panel
         detailsPanel.add(headerPanel, BorderLayout.NORTH);
         detailsPanel.add(notesPanel, BorderLayout.CENTER);
@@ -393,6 +411,20 @@ public class ConsultationsPanel extends BasePanel {
             JOptionPane.INFORMATION_MESSAGE
         );
     }
+    
+    private String formatMessage(Message message, Consultation consultation, String patientName) {
+        String sender;
+        if (message.getSenderId() == consultation.getDoctorId()) {
+            sender = "Doctor";
+        } else if (message.getSenderId() == consultation.getPatientId()) {
+            sender = patientName;
+        } else {
+            sender = "Unknown";
+        }
+        
+        return "[" + message.getTimestamp().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm")) + "] "
+            + sender + ": " + message.getContent();
+    }
 
     private void replyToPatient() {
         int selectedRow = consultationsTable.getSelectedRow();
@@ -449,10 +481,9 @@ public class ConsultationsPanel extends BasePanel {
                     return;
                 }
                 
-                // Create a new message
-                int messageId = selectedConsultation.getMessages().size() + 1;
+                // Create a new message; the message store numbers it
                 Message message = new Message(
-                    messageId,
+                    0,
                     currentDoctor.getId(),
                     selectedConsultation.getPatientId(),
                     messageContent,
@@ -462,17 +493,14 @@ public class ConsultationsPanel extends BasePanel {
                 // Add message using service
                 if (pharmacyService.addMessageToConsultation(consultationId, message)) {
                     // Update table
-                    tableModel.setValueAt(selectedConsultation.getMessages().size() + 1, selectedRow, 4);
+                    tableModel.setValueAt(messageSummary(selectedConsultation), selectedRow, 4);
                     
-                    // Update local object
-                selectedConsultation.addMessage(message);
-                
-                JOptionPane.showMessageDialog(
-                    this,
-                    "Message sent successfully",
-                    "Success",
-                    JOptionPane.INFORMATION_MESSAGE
-                );
+                    JOptionPane.showMessageDialog(
+                        this,
+                        "Message sent successfully",
+                        "Success",
+                        JOptionPane.INFORMATION_MESSAGE
+                    );
                 } else {
                     JOptionPane.showMessageDialog(
                         this,
@@ -593,18 +621,16 @@ public class ConsultationsPanel extends BasePanel {
                     return;
                 }
                 
-                // Find max prescription ID to generate a new one
-                int prescriptionId = 1;
-                for (Prescription p : currentDoctor.getIssuedPrescriptions()) {
-                    if (p.getId() >= prescriptionId) {
-                        prescriptionId = p.getId() + 1;
-                    }
-                }
+                // Generate a new prescription ID
+                int prescriptionId = pharmacyService.generatePrescriptionId();
                 
                 // Create prescription from consultation
                 Prescription prescription = selectedConsultation.generatePrescription(prescriptionId, instructions);
                 
                 if (prescription != null) {
+                    // Generating the prescription completed the consultation; save its new status
+                    pharmacyService.updateConsultationStatus(selectedConsultation.getId(), selectedConsultation.getStatus());
+                    
                     // Use PharmacyService to save prescription properly
                     if (pharmacyService.savePrescription(prescription)) {
                     JOptionPane.showMessageDialog(
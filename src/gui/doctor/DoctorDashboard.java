@@ -11,6 +11,7 @@ import models.Doctor;
 import models.Patient;
 import models.Prescription;
 import models.Consultation;
+import services.PharmacyService;
 import gui.components.RoundedBorder;
 import gui.theme.ThemeSizes;
 
@@ -203,18 +204,20 @@ public class DoctorDashboard extends BasePanel {
         titleLabel.setBorder(new EmptyBorder(0, 0, 10, 0));
         
         // Stats content
-        JPanel statsContent = new JPanel(new GridLayout(4, 1, 0, 10));
+        JPanel statsContent = new JPanel(new GridLayout(5, 1, 0, 10));
         statsContent.setBackground(ThemeColors.SURFACE);
         
         // Get stats
         int totalPatients = getTotalPatients();
         int activePrescriptions = getActivePrescriptions();
         int pendingConsultations = getPendingConsultations();
+        int unreadMessages = PharmacyService.getInstance().getUnreadMessageCount(currentDoctor.getId());
         
         // Stats rows
         JPanel patientsRow = createStatRow("Total Patients", String.valueOf(totalPatients), ThemeColors.INFO);
         JPanel prescriptionsRow = createStatRow("Active Prescriptions", String.valueOf(activePrescriptions), ThemeColors.SUCCESS);
         JPanel consultationsRow = createStatRow("Pending Consultations", String.valueOf(pendingConsultations), ThemeColors.WARNING);
+        JPanel messagesRow = createStatRow("Unread Messages", String.valueOf(unreadMessages), ThemeColors.INFO);
         // Fix for swapped specialization and license data
         String specialization = currentDoctor.getSpecialization();
         String licenseNumber = currentDoctor.getLicenseNumber();
@@ -234,6 +237,7 @@ public class DoctorDashboard extends BasePanel {
         statsContent.add(patientsRow);
         statsContent.add(prescriptionsRow);
         statsContent.add(consultationsRow);
+        statsContent.add(messagesRow);
         statsContent.add(specialtyRow);
         
         // Add to stats panel
@@ -365,11 +365,7 @@ public class PatientListPanel extends BasePanel {
             }
             
             // Generate a new prescription ID
-            int newId = 1;
-            List<Prescription> existingPrescriptions = currentDoctor.getIssuedPrescriptions();
-            if (!existingPrescriptions.isEmpty()) {
-                newId = existingPrescriptions.stream().mapToInt(Prescription::getId).max().orElse(0) + 1;
-            }
+            int newId = pharmacyService.generatePrescriptionId();
             
             // Create the prescription
             Prescription newPrescription = currentDoctor.createPrescription(
@@ -455,11 +451,7 @@ public class PatientListPanel extends BasePanel {
                 java.time.LocalDateTime dateTime = java.time.LocalDateTime.parse(date + " " + time, formatter);
 
                 // Generate new consultation ID
-                int newId = 1;
-                java.util.List<models.Consultation> existing = pharmacyService.getConsultations();
-                if (!existing.isEmpty()) {
-                    newId = existing.stream().mapToInt(models.Consultation::getId).max().orElse(0) + 1;
-                }
+                int newId = pharmacyService.generateConsultationId();
 
                 // Create consultation object
                 models.Consultation consultation = new models.Consultation(
@@ -393,10 +393,7 @@ public class PrescriptionsPanel extends BasePanel {
             }
             
             // Generate a new prescription ID
-            int newId = 1;
-            if (!prescriptionList.isEmpty()) {
-                newId = prescriptionList.stream().mapToInt(Prescription::getId).max().orElse(0) + 1;
-            }
+            int newId = pharmacyService.generatePrescriptionId();
             
             // Create the prescription
             Prescription newPrescription = currentDoctor.createPrescription(
@@ -507,7 +504,7 @@ public class PrescriptionsPanel extends BasePanel {
                         "Medicine Added",
                         JOptionPane.INFORMATION_MESSAGE);
                 // Optionally deduct stock here
-                selectedMed.setQuantity(selectedMed.getQuantity() - qty);
+                pharmacyService.adjustStock(selectedMed, -qty);
             } else {
                 JOptionPane.showMessageDialog(
                         this,
@@ -578,7 +575,7 @@ public class PrescriptionsPanel extends BasePanel {
                     selectedPrescription.setStatus(newStatus);
                     
                     // Save to file system
-                    mainFrame.getPharmacyService().saveDataToFiles();
+                    mainFrame.getPharmacyService().saveDataToFiles(PharmacyService.DataSet.PRESCRIPTIONS);
                     
                     // Refresh table
                     loadPrescriptionData();
@@ -18,18 +18,18 @@ public class InventoryPanel extends BasePanel {
     private JTextField searchField;
     private JTextField quantityField;
     private List<Medicine> medicines;
-
+    
     public InventoryPanel(MainFrame mainFrame) {
         super(mainFrame);
         initializeComponents();
         loadMedicines();
     }
-
+    
     @Override
     protected void initializeComponents() {
         setLayout(new BorderLayout(10, 10));
         setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
-
+        
         // Search Panel
         JPanel searchPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
         searchField = new JTextField(20);
@@ -38,7 +38,7 @@ public class InventoryPanel extends BasePanel {
         searchPanel.add(searchField);
         searchPanel.add(searchButton);
         add(searchPanel, BorderLayout.NORTH);
-
+        
         // Table
         String[] columns = {"ID", "Name", "Description", "Price", "Stock", "Category"};
         medicineTable = new StyledTable<>(columns, medicine -> new Object[]{
@@ -52,38 +52,33 @@ public class InventoryPanel extends BasePanel {
         
         JScrollPane scrollPane = new JScrollPane(medicineTable);
         add(scrollPane, BorderLayout.CENTER);
-
+        
         // Stock Management Panel
         JPanel stockPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
         quantityField = new JTextField(5);
         StyledButton addStockButton = new StyledButton("Add Stock", ThemeIcons.ADD, e -> adjustStock(true));
         StyledButton reduceStockButton = new StyledButton("Reduce Stock", ThemeIcons.REMOVE, e -> adjustStock(false));
         StyledButton generateReportButton = new StyledButton("Generate Low Stock Report", ThemeIcons.REPORT, e -> generateLowStockReport());
-
+        
         stockPanel.add(new JLabel("Quantity:"));
         stockPanel.add(quantityField);
         stockPanel.add(addStockButton);
         stockPanel.add(reduceStockButton);
         stockPanel.add(generateReportButton);
-
+        
         add(stockPanel, BorderLayout.SOUTH);
     }
-
+    
     private void loadMedicines() {
         medicines = mainFrame.getPharmacyService().getMedicines();
         medicineTable.setData(medicines);
     }
-
+    
     private void searchMedicines() {
-        String query = searchField.getText().toLowerCase().trim();
-        List<Medicine> filtered = medicines.stream()
-            .filter(med -> med.getName().toLowerCase().contains(query) ||
-                         med.getDescription().toLowerCase().contains(query) ||
-                         med.getCategory().toLowerCase().contains(query))
-            .toList();
+        List<Medicine> filtered = mainFrame.getPharmacyService().searchMedicines(searchField.getText());
         medicineTable.setData(filtered);
     }
-
+    
     private void adjustStock(boolean increase) {
         Medicine selected = medicineTable.getSelectedItem();
         if (selected == null) {
@@ -91,7 +86,7 @@ public class InventoryPanel extends BasePanel {
                 "No Selection", JOptionPane.WARNING_MESSAGE);
             return;
         }
-
+        
         try {
             int quantity = Integer.parseInt(quantityField.getText().trim());
             if (quantity <= 0) {
@@ -99,7 +94,7 @@ public class InventoryPanel extends BasePanel {
                     "Invalid Quantity", JOptionPane.WARNING_MESSAGE);
                 return;
             }
-
+            
             if (increase) {
                 selected.incrementStock(quantity);
             } else {
@@ -110,8 +105,8 @@ public class InventoryPanel extends BasePanel {
                 }
                 selected.decrementStock(quantity);
             }
-
-            mainFrame.getPharmacyService().saveDataToFiles();
+            
+            mainFrame.getPharmacyService().recordStockChange(selected);
             medicineTable.refresh();
             
             JOptionPane.showMessageDialog(this, "Stock updated successfully", 
@@ -121,24 +116,24 @@ public class InventoryPanel extends BasePanel {
                 "Invalid Input", JOptionPane.ERROR_MESSAGE);
         }
     }
-
+    
     private void generateLowStockReport() {
         StringBuilder report = new StringBuilder();
         report.append("Low Stock Report\n");
         report.append("================\n\n");
-
-        medicines.stream()
-            .filter(med -> med.getStock() < 10)  // Assuming 10 is the threshold for low stock
+        
+        // Most urgent first, against each medicine's own low-stock threshold
+        mainFrame.getPharmacyService().getMedicinesNeedingRestock()
             .forEach(med -> report.append(String.format(
                 "Medicine: %s\nCurrent Stock: %d\nReorder Needed: Yes\n\n",
                 med.getName(), med.getStock()
             )));
-
+        
         JTextArea textArea = new JTextArea(report.toString());
         textArea.setEditable(false);
         JScrollPane scrollPane = new JScrollPane(textArea);
         scrollPane.setPreferredSize(new Dimension(400, 300));
-
+        
         JOptionPane.showMessageDialog(this, scrollPane, 
             "Low Stock Report", JOptionPane.INFORMATION_MESSAGE);
     }
@@ -7,8 +7,8 @@ import gui.components.StyledTable;
 import gui.theme.ThemeColors;
 import gui.theme.ThemeIcons;
 import models.Order;
-import models.OrderStatus;
 import models.Patient;
+import services.PharmacyService;
 
 import javax.swing.*;
 import java.awt.*;
@@ -16,27 +16,27 @@ import java.util.List;
 
 public class OrderProcessingPanel extends BasePanel {
     private StyledTable<Order> orderTable;
-    private JComboBox<OrderStatus> statusFilter;
+    private JComboBox<Order.Status> statusFilter;
     private List<Order> orders;
-
+    
     public OrderProcessingPanel(MainFrame mainFrame) {
         super(mainFrame);
         initializeComponents();
         loadOrders();
     }
-
+    
     @Override
     protected void initializeComponents() {
         setLayout(new BorderLayout(10, 10));
         setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
-
+        
         // Filter Panel
         JPanel filterPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
-        statusFilter = new JComboBox<>(OrderStatus.values());
+        statusFilter = new JComboBox<>(Order.Status.values());
         statusFilter.insertItemAt(null, 0);
         statusFilter.setSelectedIndex(0);
         statusFilter.addActionListener(e -> filterOrders());
-
+        
         StyledButton refreshButton = new StyledButton("Refresh", ThemeIcons.REFRESH);
         refreshButton.addActionListener(e -> loadOrders());
         
@@ -44,7 +44,7 @@ public class OrderProcessingPanel extends BasePanel {
         filterPanel.add(statusFilter);
         filterPanel.add(refreshButton);
         add(filterPanel, BorderLayout.NORTH);
-
+        
         // Order Table
         String[] columns = {"Order ID", "Patient", "Date", "Status", "Total Items", "Total Amount"};
         orderTable = new StyledTable<>(columns, order -> new Object[]{
@@ -58,36 +58,37 @@ public class OrderProcessingPanel extends BasePanel {
         
         JScrollPane scrollPane = new JScrollPane(orderTable);
         add(scrollPane, BorderLayout.CENTER);
-
+        
         // Action Panel
         JPanel actionPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
         StyledButton viewDetailsButton = new StyledButton("View Details", ThemeIcons.VIEW);
         StyledButton processButton = new StyledButton("Process Order", ThemeIcons.PROCESS);
         StyledButton completeButton = new StyledButton("Mark as Complete", ThemeIcons.COMPLETE);
-
+        
         viewDetailsButton.addActionListener(e -> viewOrderDetails());
         processButton.addActionListener(e -> processOrder());
         completeButton.addActionListener(e -> completeOrder());
-
+        
         actionPanel.add(viewDetailsButton);
         actionPanel.add(processButton);
         actionPanel.add(completeButton);
         add(actionPanel, BorderLayout.SOUTH);
     }
-
+    
     private void loadOrders() {
         orders = mainFrame.getPharmacyService().getOrders();
-        orderTable.setData(orders);
+        filterOrders(); // Keep the selected status, e.g. the pending queue, across refreshes
     }
-
+    
     private void filterOrders() {
-        OrderStatus selectedStatus = (OrderStatus) statusFilter.getSelectedItem();
-        List<Order> filtered = orders.stream()
-            .filter(order -> selectedStatus == null || order.getStatus() == selectedStatus)
-            .toList();
+        Order.Status selectedStatus = (Order.Status) statusFilter.getSelectedItem();
+        // A status filter reads the status index instead of scanning the order history
+        List<Order> filtered = selectedStatus == null
+            ? orders
+            : mainFrame.getPharmacyService().getOrdersByStatus(selectedStatus);
         orderTable.setData(filtered);
     }
-
+    
     private void viewOrderDetails() {
         Order selected = orderTable.getSelectedItem();
         if (selected == null) {
@@ -95,7 +96,7 @@ public class OrderProcessingPanel extends BasePanel {
                 "No Selection", JOptionPane.WARNING_MESSAGE);
             return;
         }
-
+        
         StringBuilder details = new StringBuilder();
         details.append("Order Details\n");
         details.append("=============\n\n");
@@ -111,16 +112,16 @@ public class OrderProcessingPanel extends BasePanel {
                 item.getMedicine().getPrice()))
         );
         details.append(String.format("\nTotal Amount: %.2f", selected.getTotalAmount()));
-
+        
         JTextArea textArea = new JTextArea(details.toString());
         textArea.setEditable(false);
         JScrollPane scrollPane = new JScrollPane(textArea);
         scrollPane.setPreferredSize(new Dimension(400, 300));
-
+        
         JOptionPane.showMessageDialog(this, scrollPane,
             "Order Details", JOptionPane.INFORMATION_MESSAGE);
     }
-
+    
     private void processOrder() {
         Order selected = orderTable.getSelectedItem();
         if (selected == null) {
@@ -128,35 +129,35 @@ public class OrderProcessingPanel extends BasePanel {
                 "No Selection", JOptionPane.WARNING_MESSAGE);
             return;
         }
-
-        if (selected.getStatus() != OrderStatus.PENDING) {
+        
+        if (selected.getStatus() != Order.Status.PENDING) {
             JOptionPane.showMessageDialog(this, "Only pending orders can be processed",
                 "Invalid Operation", JOptionPane.WARNING_MESSAGE);
             return;
         }
-
+        
         // Check if all medicines are in stock
         boolean canProcess = selected.getItems().stream()
             .allMatch(item -> item.getMedicine().getStock() >= item.getQuantity());
-
+        
         if (!canProcess) {
             JOptionPane.showMessageDialog(this, "Insufficient stock for some items",
                 "Cannot Process", JOptionPane.ERROR_MESSAGE);
             return;
         }
-
+        
         // Update stock and order status
         selected.getItems().forEach(item ->
             item.getMedicine().decrementStock(item.getQuantity()));
-        selected.setStatus(OrderStatus.PROCESSING);
+        selected.setStatus(Order.Status.PROCESSING);
         
-        mainFrame.getPharmacyService().saveDataToFiles();
+        mainFrame.getPharmacyService().saveDataToFiles(PharmacyService.DataSet.ORDERS, PharmacyService.DataSet.MEDICINES);
         loadOrders();
         
         JOptionPane.showMessageDialog(this, "Order is now being processed",
             "Success", JOptionPane.INFORMATION_MESSAGE);
     }
-
+    
     private void completeOrder() {
         Order selected = orderTable.getSelectedItem();
         if (selected == null) {
@@ -164,15 +165,15 @@ public class OrderProcessingPanel extends BasePanel {
                 "No Selection", JOptionPane.WARNING_MESSAGE);
             return;
         }
-
-        if (selected.getStatus() != OrderStatus.PROCESSING) {
+        
+        if (selected.getStatus() != Order.Status.PROCESSING) {
             JOptionPane.showMessageDialog(this, "Only processing orders can be completed",
                 "Invalid Operation", JOptionPane.WARNING_MESSAGE);
             return;
         }
-
-        selected.setStatus(OrderStatus.COMPLETED);
-        mainFrame.getPharmacyService().saveDataToFiles();
+        
+        selected.setStatus(Order.Status.COMPLETED);
+        mainFrame.getPharmacyService().saveDataToFiles(PharmacyService.DataSet.ORDERS);
         loadOrders();
         
         JOptionPane.showMessageDialog(this, "Order has been marked as complete",
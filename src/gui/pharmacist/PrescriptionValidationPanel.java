@@ -6,9 +6,12 @@ import gui.components.StyledButton;
 import gui.components.StyledTable;
 import gui.theme.ThemeColors;
 import gui.theme.ThemeIcons;
+import models.Pharmacist;
 import models.Prescription;
 import models.PrescriptionStatus;
 import models.Medicine;
+import services.PharmacyService;
+import utils.PrescriptionQueue;
 
 import javax.swing.*;
 import java.awt.*;
@@ -18,34 +21,45 @@ import java.util.Map;
 public class PrescriptionValidationPanel extends BasePanel {
     private StyledTable<Prescription> prescriptionTable;
     private JComboBox<PrescriptionStatus> statusFilter;
+    private JCheckBox queueOnlyBox;
+    private JCheckBox urgentFirstBox;
     private List<Prescription> prescriptions;
-
+    
     public PrescriptionValidationPanel(MainFrame mainFrame) {
         super(mainFrame);
         initializeComponents();
         loadPrescriptions();
     }
-
+    
     @Override
     protected void initializeComponents() {
         setLayout(new BorderLayout(10, 10));
         setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
-
+        
         // Filter Panel
         JPanel filterPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
         statusFilter = new JComboBox<>(PrescriptionStatus.values());
         statusFilter.insertItemAt(null, 0);
         statusFilter.setSelectedIndex(0);
         statusFilter.addActionListener(e -> filterPrescriptions());
-
+        
         StyledButton refreshButton = new StyledButton("Refresh", ThemeIcons.REFRESH);
         refreshButton.addActionListener(e -> loadPrescriptions());
         
+        // Pharmacists see their pharmacy's work queue by default
+        queueOnlyBox = new JCheckBox("My pharmacy's queue", currentPharmacyId() > 0);
+        queueOnlyBox.setEnabled(currentPharmacyId() > 0);
+        queueOnlyBox.addActionListener(e -> filterPrescriptions());
+        urgentFirstBox = new JCheckBox("Most urgent first");
+        urgentFirstBox.addActionListener(e -> filterPrescriptions());
+        
         filterPanel.add(new JLabel("Filter by Status: "));
         filterPanel.add(statusFilter);
+        filterPanel.add(queueOnlyBox);
+        filterPanel.add(urgentFirstBox);
         filterPanel.add(refreshButton);
         add(filterPanel, BorderLayout.NORTH);
-
+        
         // Prescription Table
         String[] columns = {"ID", "Patient", "Doctor", "Date", "Status", "Medications"};
         prescriptionTable = new StyledTable<>(columns, prescription -> {
@@ -62,36 +76,52 @@ public class PrescriptionValidationPanel extends BasePanel {
         
         JScrollPane scrollPane = new JScrollPane(prescriptionTable);
         add(scrollPane, BorderLayout.CENTER);
-
+        
         // Action Panel
         JPanel actionPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
         StyledButton viewDetailsButton = new StyledButton("View Details", ThemeIcons.VIEW);
         StyledButton validateButton = new StyledButton("Validate", ThemeIcons.VALIDATE);
         StyledButton rejectButton = new StyledButton("Reject", ThemeIcons.REJECT);
-
+        
         viewDetailsButton.addActionListener(e -> viewPrescriptionDetails());
         validateButton.addActionListener(e -> validatePrescription());
         rejectButton.addActionListener(e -> rejectPrescription());
-
+        
         actionPanel.add(viewDetailsButton);
         actionPanel.add(validateButton);
         actionPanel.add(rejectButton);
         add(actionPanel, BorderLayout.SOUTH);
     }
-
+    
     private void loadPrescriptions() {
         prescriptions = mainFrame.getPharmacyService().getPrescriptions();
-        prescriptionTable.setData(prescriptions);
+        filterPrescriptions();
     }
-
+    
     private void filterPrescriptions() {
         PrescriptionStatus selectedStatus = (PrescriptionStatus) statusFilter.getSelectedItem();
-        List<Prescription> filtered = prescriptions.stream()
+        List<Prescription> source = prescriptions;
+        int pharmacyId = currentPharmacyId();
+        if (queueOnlyBox != null && queueOnlyBox.isSelected() && pharmacyId > 0) {
+            // The queue holds only what awaits this pharmacy, so no prescription history is scanned
+            PrescriptionQueue.Ordering ordering = urgentFirstBox.isSelected()
+                ? PrescriptionQueue.Ordering.PRIORITY
+                : PrescriptionQueue.Ordering.FIFO;
+            source = mainFrame.getPharmacyService().getPharmacistService().getPendingPrescriptions(pharmacyId, ordering);
+        }
+        List<Prescription> filtered = source.stream()
             .filter(prescription -> selectedStatus == null || prescription.getStatus() == selectedStatus)
             .toList();
         prescriptionTable.setData(filtered);
     }
-
+    
+    private int currentPharmacyId() {
+        if (mainFrame.getCurrentUser() instanceof Pharmacist) {
+            return ((Pharmacist) mainFrame.getCurrentUser()).getPharmacyId();
+        }
+        return 0;
+    }
+    
     private void viewPrescriptionDetails() {
         Prescription selected = prescriptionTable.getSelectedItem();
         if (selected == null) {
@@ -99,7 +129,7 @@ public class PrescriptionValidationPanel extends BasePanel {
                 "No Selection", JOptionPane.WARNING_MESSAGE);
             return;
         }
-
+        
         StringBuilder details = new StringBuilder();
         details.append("Prescription Details\n");
         details.append("===================\n\n");
@@ -116,20 +146,20 @@ public class PrescriptionValidationPanel extends BasePanel {
                 medicine.getName(),
                 quantity))
         );
-
+        
         if (selected.getStatus() == PrescriptionStatus.REJECTED) {
             details.append(String.format("\nRejection Reason: %s", selected.getRejectionReason()));
         }
-
+        
         JTextArea textArea = new JTextArea(details.toString());
         textArea.setEditable(false);
         JScrollPane scrollPane = new JScrollPane(textArea);
         scrollPane.setPreferredSize(new Dimension(400, 300));
-
+        
         JOptionPane.showMessageDialog(this, scrollPane,
             "Prescription Details", JOptionPane.INFORMATION_MESSAGE);
     }
-
+    
     private void validatePrescription() {
         Prescription selected = prescriptionTable.getSelectedItem();
         if (selected == null) {
@@ -137,31 +167,31 @@ public class PrescriptionValidationPanel extends BasePanel {
                 "No Selection", JOptionPane.WARNING_MESSAGE);
             return;
         }
-
+        
         if (selected.getStatus() != PrescriptionStatus.PENDING) {
             JOptionPane.showMessageDialog(this, "Only pending prescriptions can be validated",
                 "Invalid Operation", JOptionPane.WARNING_MESSAGE);
             return;
         }
-
+        
         // Check if all medications are available
         boolean canValidate = selected.getMedicines().entrySet().stream()
             .allMatch(entry -> entry.getKey().getStock() > 0);
-
+        
         if (!canValidate) {
             JOptionPane.showMessageDialog(this, "Some medications are out of stock",
                 "Cannot Validate", JOptionPane.ERROR_MESSAGE);
             return;
         }
-
+        
         selected.setStatus(PrescriptionStatus.VALIDATED);
-        mainFrame.getPharmacyService().saveDataToFiles();
+        mainFrame.getPharmacyService().saveDataToFiles(PharmacyService.DataSet.PRESCRIPTIONS);
         loadPrescriptions();
         
         JOptionPane.showMessageDialog(this, "Prescription has been validated",
             "Success", JOptionPane.INFORMATION_MESSAGE);
     }
-
+    
     private void rejectPrescription() {
         Prescription selected = prescriptionTable.getSelectedItem();
         if (selected == null) {
@@ -169,22 +199,22 @@ public class PrescriptionValidationPanel extends BasePanel {
                 "No Selection", JOptionPane.WARNING_MESSAGE);
             return;
         }
-
+        
         if (selected.getStatus() != PrescriptionStatus.PENDING) {
             JOptionPane.showMessageDialog(this, "Only pending prescriptions can be rejected",
                 "Invalid Operation", JOptionPane.WARNING_MESSAGE);
             return;
         }
-
+        
         String reason = JOptionPane.showInputDialog(this,
             "Please provide a reason for rejection:",
             "Reject Prescription",
             JOptionPane.QUESTION_MESSAGE);
-
+        
         if (reason != null && !reason.trim().isEmpty()) {
             selected.setStatus(PrescriptionStatus.REJECTED);
             selected.setRejectionReason(reason.trim());
-            mainFrame.getPharmacyService().saveDataToFiles();
+            mainFrame.getPharmacyService().saveDataToFiles(PharmacyService.DataSet.PRESCRIPTIONS);
             loadPrescriptions();
             
             JOptionPane.showMessageDialog(this, "Prescription has been rejected",
@@ -398,7 +398,7 @@ public class RegistrationScreen extends BasePanel {
                     return false;
                 }
                 break;
-                
+            
             case "Doctor":
                 if (doctorLicenseField.getText().isEmpty() || specialtyField.getText().isEmpty()) {
                     JOptionPane.showMessageDialog(this, 
@@ -407,7 +407,7 @@ public class RegistrationScreen extends BasePanel {
                     return false;
                 }
                 break;
-                
+            
             case "Pharmacist":
                 if (pharmacistLicenseField.getText().isEmpty() || qualificationField.getText().isEmpty()) {
                     JOptionPane.showMessageDialog(this, 
@@ -468,7 +468,7 @@ public class RegistrationScreen extends BasePanel {
                     success = patient != null;
                     newUser = patient;
                     break;
-                    
+                
                 case "Doctor":
                     String licenseNumber = doctorLicenseField.getText();
                     String specialty = specialtyField.getText();
@@ -476,7 +476,7 @@ public class RegistrationScreen extends BasePanel {
                     success = doctor != null;
                     newUser = doctor;
                     break;
-                    
+                
                 case "Pharmacist":
                     String pharmLicenseNumber = pharmacistLicenseField.getText();
                     String qualification = qualificationField.getText();
@@ -487,6 +487,8 @@ public class RegistrationScreen extends BasePanel {
             }
             
             if (success && newUser != null) {
+                // Journal the new account so it survives a restart
+                service.recordUserAdded(newUser);
                 JOptionPane.showMessageDialog(this, 
                     "Registration successful!\nPlease login with your new credentials.", 
                     "Success", JOptionPane.INFORMATION_MESSAGE);
@@ -506,19 +508,16 @@ public class RegistrationScreen extends BasePanel {
     }
     
     private Patient createPatient(String name, String username, String password, String email, String phone, String address) {
-        // Check if username already exists
-        if (service.getPatients().stream().anyMatch(p -> p.getUsername().equals(username))) {
+        // Check if username already exists in any role
+        if (service.isUsernameTaken(username)) {
             JOptionPane.showMessageDialog(this, 
                 "Username already exists. Please choose a different username.", 
                 "Registration Error", JOptionPane.ERROR_MESSAGE);
             return null;
         }
         
-        // Generate a new patient ID
-        int nextPatientId = service.getPatients().stream()
-            .mapToInt(Patient::getId)
-            .max()
-            .orElse(0) + 1;
+        // Generate a new patient ID, unique across all user types
+        int nextPatientId = service.generateUserId();
         
         // Create and register the patient
         Patient newPatient = new Patient(nextPatientId, name, username, password, email, phone, address);
@@ -532,19 +531,16 @@ public class RegistrationScreen extends BasePanel {
     
     private Doctor createDoctor(String name, String username, String password, String email, String phone, 
                              String licenseNumber, String specialty) {
-        // Check if username already exists
-        if (service.getDoctors().stream().anyMatch(d -> d.getUsername().equals(username))) {
+        // Check if username already exists in any role
+        if (service.isUsernameTaken(username)) {
             JOptionPane.showMessageDialog(this, 
                 "Username already exists. Please choose a different username.", 
                 "Registration Error", JOptionPane.ERROR_MESSAGE);
             return null;
         }
         
-        // Generate a new doctor ID
-        int nextDoctorId = service.getDoctors().stream()
-            .mapToInt(Doctor::getId)
-            .max()
-            .orElse(0) + 1;
+        // Generate a new doctor ID, unique across all user types
+        int nextDoctorId = service.generateUserId();
         
         // Create and register the doctor
         Doctor newDoctor = new Doctor(nextDoctorId, name, username, password, email, phone, licenseNumber, specialty);
@@ -558,19 +554,16 @@ public class RegistrationScreen extends BasePanel {
     
     private Pharmacist createPharmacist(String name, String username, String password, String email, String phone, 
                                      String licenseNumber, String qualification) {
-        // Check if username already exists
-        if (service.getPharmacists().stream().anyMatch(p -> p.getUsername().equals(username))) {
+        // Check if username already exists in any role
+        if (service.isUsernameTaken(username)) {
             JOptionPane.showMessageDialog(this, 
                 "Username already exists. Please choose a different username.", 
                 "Registration Error", JOptionPane.ERROR_MESSAGE);
             return null;
         }
         
-        // Generate a new pharmacist ID
-        int nextPharmacistId = service.getPharmacists().stream()
-            .mapToInt(Pharmacist::getId)
-            .max()
-            .orElse(0) + 1;
+        // Generate a new pharmacist ID, unique across all user types
+        int nextPharmacistId = service.generateUserId();
         
         // Create and register the pharmacist
         Pharmacist newPharmacist = new Pharmacist(nextPharmacistId, name, username, password, email, phone, 
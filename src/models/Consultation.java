@@ -66,6 +66,8 @@ public class Consultation {
 
     /**
      * Add a message to the consultation
+     * Messages held here are moved into the message store once the consultation
+     * is registered; messages of a registered consultation go to the store directly
      * 
      * @param message The message to add
      */
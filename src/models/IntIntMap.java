@@ -0,0 +1,235 @@
+package models;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * IntIntMap maps int keys to int values without boxing either
+ *
+ * Open addressing with linear probing over two parallel int arrays, kept at
+ * most half full. Key 0 marks a free slot, so a 0 key is stored beside the table.
+ */
+public class IntIntMap implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private static final int FREE = 0;
+    
+    private int[] keys;
+    private int[] values;
+    private int size; // Entries in the table, not counting the 0 key
+    private boolean hasZeroKey;
+    private int zeroValue;
+    
+    /**
+     * Constructor for an empty map
+     */
+    public IntIntMap() {
+        this(4);
+    }
+    
+    /**
+     * Constructor for an empty map sized for the expected number of entries
+     *
+     * @param expectedSize Number of entries the map should hold without growing
+     */
+    public IntIntMap(int expectedSize) {
+        int capacity = tableSizeFor(expectedSize);
+        this.keys = new int[capacity];
+        this.values = new int[capacity];
+    }
+    
+    /**
+     * Get the value of a key
+     *
+     * @param key The key
+     * @param missing Value returned when the key is absent
+     * @return The value, or missing
+     */
+    public int get(int key, int missing) {
+        if (key == FREE) {
+            return hasZeroKey ? zeroValue : missing;
+        }
+        int slot = find(key);
+        return slot >= 0 ? values[slot] : missing;
+    }
+    
+    /**
+     * Check whether a key is present
+     *
+     * @param key The key
+     * @return true if the key has a value
+     */
+    public boolean containsKey(int key) {
+        return key == FREE ? hasZeroKey : find(key) >= 0;
+    }
+    
+    /**
+     * Set the value of a key
+     *
+     * @param key The key
+     * @param value The value
+     */
+    public void put(int key, int value) {
+        if (key == FREE) {
+            hasZeroKey = true;
+            zeroValue = value;
+            return;
+        }
+        int mask = keys.length - 1;
+        int slot = hash(key) & mask;
+        while (keys[slot] != FREE) {
+            if (keys[slot] == key) {
+                values[slot] = value;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        size++;
+        if (size * 2 > keys.length) {
+            rehash(keys.length * 2);
+        }
+    }
+    
+    /**
+     * Add to the value of a key, treating an absent key as 0
+     *
+     * @param key The key
+     * @param delta The amount to add
+     * @return The new value
+     */
+    public int increment(int key, int delta) {
+        int value = get(key, 0) + delta;
+        put(key, value);
+        return value;
+    }
+    
+    /**
+     * Remove a key
+     *
+     * @param key The key
+     * @return true if the key was present
+     */
+    public boolean remove(int key) {
+        if (key == FREE) {
+            boolean present = hasZeroKey;
+            hasZeroKey = false;
+            zeroValue = 0;
+            return present;
+        }
+        int slot = find(key);
+        if (slot < 0) {
+            return false;
+        }
+        
+        // Shift later entries of the probe run back so lookups never stop at the hole
+        int mask = keys.length - 1;
+        int gap = slot;
+        int next = (gap + 1) & mask;
+        while (keys[next] != FREE) {
+            int home = hash(keys[next]) & mask;
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                keys[gap] = keys[next];
+                values[gap] = values[next];
+                gap = next;
+            }
+            next = (next + 1) & mask;
+        }
+        keys[gap] = FREE;
+        values[gap] = 0;
+        size--;
+        return true;
+    }
+    
+    /**
+     * Get the number of keys
+     *
+     * @return Number of keys
+     */
+    public int size() {
+        return size + (hasZeroKey ? 1 : 0);
+    }
+    
+    /**
+     * Check whether the map is empty
+     *
+     * @return true if there are no keys
+     */
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+    
+    /**
+     * Remove all keys
+     */
+    public void clear() {
+        Arrays.fill(keys, FREE);
+        Arrays.fill(values, 0);
+        size = 0;
+        hasZeroKey = false;
+        zeroValue = 0;
+    }
+    
+    /**
+     * Get all keys, in no particular order
+     *
+     * @return The keys
+     */
+    public int[] keys() {
+        int[] result = new int[size()];
+        int next = 0;
+        if (hasZeroKey) {
+            result[next++] = FREE;
+        }
+        for (int key : keys) {
+            if (key != FREE) {
+                result[next++] = key;
+            }
+        }
+        return result;
+    }
+    
+    private int find(int key) {
+        int mask = keys.length - 1;
+        int slot = hash(key) & mask;
+        while (keys[slot] != FREE) {
+            if (keys[slot] == key) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+    
+    private void rehash(int capacity) {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new int[capacity];
+        values = new int[capacity];
+        int mask = capacity - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != FREE) {
+                int slot = hash(oldKeys[i]) & mask;
+                while (keys[slot] != FREE) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+    
+    static int hash(int key) {
+        // Sequential IDs would otherwise fill one run of the table
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+    
+    static int tableSizeFor(int expectedSize) {
+        int capacity = 4;
+        while (capacity < expectedSize * 2) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+}
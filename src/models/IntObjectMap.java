@@ -0,0 +1,233 @@
+package models;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * IntObjectMap maps int keys to objects without boxing the keys
+ *
+ * Same layout as IntIntMap: linear probing over an int key array and a
+ * parallel value array, with the 0 key stored beside the table.
+ *
+ * @param <V> The value type
+ */
+public class IntObjectMap<V> implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private static final int FREE = 0;
+    
+    private int[] keys;
+    private Object[] values;
+    private int size; // Entries in the table, not counting the 0 key
+    private boolean hasZeroKey;
+    private V zeroValue;
+    
+    /**
+     * Constructor for an empty map
+     */
+    public IntObjectMap() {
+        this(4);
+    }
+    
+    /**
+     * Constructor for an empty map sized for the expected number of entries
+     *
+     * @param expectedSize Number of entries the map should hold without growing
+     */
+    public IntObjectMap(int expectedSize) {
+        int capacity = IntIntMap.tableSizeFor(expectedSize);
+        this.keys = new int[capacity];
+        this.values = new Object[capacity];
+    }
+    
+    /**
+     * Get the value of a key
+     *
+     * @param key The key
+     * @return The value, or null if the key is absent
+     */
+    @SuppressWarnings("unchecked")
+    public V get(int key) {
+        if (key == FREE) {
+            return zeroValue;
+        }
+        int slot = find(key);
+        return slot >= 0 ? (V) values[slot] : null;
+    }
+    
+    /**
+     * Check whether a key is present
+     *
+     * @param key The key
+     * @return true if the key has a value
+     */
+    public boolean containsKey(int key) {
+        return key == FREE ? hasZeroKey : find(key) >= 0;
+    }
+    
+    /**
+     * Set the value of a key
+     *
+     * @param key The key
+     * @param value The value
+     * @return The previous value, or null
+     */
+    @SuppressWarnings("unchecked")
+    public V put(int key, V value) {
+        if (key == FREE) {
+            V previous = zeroValue;
+            hasZeroKey = true;
+            zeroValue = value;
+            return previous;
+        }
+        int mask = keys.length - 1;
+        int slot = IntIntMap.hash(key) & mask;
+        while (keys[slot] != FREE) {
+            if (keys[slot] == key) {
+                V previous = (V) values[slot];
+                values[slot] = value;
+                return previous;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        size++;
+        if (size * 2 > keys.length) {
+            rehash(keys.length * 2);
+        }
+        return null;
+    }
+    
+    /**
+     * Set the value of a key unless it already has one
+     *
+     * @param key The key
+     * @param value The value
+     * @return The existing value, or null if the value was set
+     */
+    public V putIfAbsent(int key, V value) {
+        V existing = get(key);
+        if (existing != null || containsKey(key)) {
+            return existing;
+        }
+        put(key, value);
+        return null;
+    }
+    
+    /**
+     * Remove a key
+     *
+     * @param key The key
+     * @return The removed value, or null if the key was absent
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(int key) {
+        if (key == FREE) {
+            V previous = zeroValue;
+            hasZeroKey = false;
+            zeroValue = null;
+            return previous;
+        }
+        int slot = find(key);
+        if (slot < 0) {
+            return null;
+        }
+        V previous = (V) values[slot];
+        
+        // Shift later entries of the probe run back so lookups never stop at the hole
+        int mask = keys.length - 1;
+        int gap = slot;
+        int next = (gap + 1) & mask;
+        while (keys[next] != FREE) {
+            int home = IntIntMap.hash(keys[next]) & mask;
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                keys[gap] = keys[next];
+                values[gap] = values[next];
+                gap = next;
+            }
+            next = (next + 1) & mask;
+        }
+        keys[gap] = FREE;
+        values[gap] = null;
+        size--;
+        return previous;
+    }
+    
+    /**
+     * Get the number of keys
+     *
+     * @return Number of keys
+     */
+    public int size() {
+        return size + (hasZeroKey ? 1 : 0);
+    }
+    
+    /**
+     * Check whether the map is empty
+     *
+     * @return true if there are no keys
+     */
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+    
+    /**
+     * Get all keys, in no particular order
+     *
+     * @return The keys
+     */
+    public int[] keys() {
+        int[] result = new int[size()];
+        int next = 0;
+        if (hasZeroKey) {
+            result[next++] = FREE;
+        }
+        for (int key : keys) {
+            if (key != FREE) {
+                result[next++] = key;
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Remove all keys
+     */
+    public void clear() {
+        Arrays.fill(keys, FREE);
+        Arrays.fill(values, null);
+        size = 0;
+        hasZeroKey = false;
+        zeroValue = null;
+    }
+    
+    private int find(int key) {
+        int mask = keys.length - 1;
+        int slot = IntIntMap.hash(key) & mask;
+        while (keys[slot] != FREE) {
+            if (keys[slot] == key) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+    
+    private void rehash(int capacity) {
+        int[] oldKeys = keys;
+        Object[] oldValues = values;
+        keys = new int[capacity];
+        values = new Object[capacity];
+        int mask = capacity - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != FREE) {
+                int slot = IntIntMap.hash(oldKeys[i]) & mask;
+                while (keys[slot] != FREE) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+}
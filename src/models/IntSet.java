@@ -0,0 +1,87 @@
+package models;
+
+import java.io.Serializable;
+
+/**
+ * IntSet is a set of int values without boxing, backed by an IntIntMap
+ */
+public class IntSet implements Serializable {
+    private static final long serialVersionUID = 1L;
+    
+    private final IntIntMap members;
+    
+    /**
+     * Constructor for an empty set
+     */
+    public IntSet() {
+        this.members = new IntIntMap();
+    }
+    
+    /**
+     * Constructor for an empty set sized for the expected number of values
+     *
+     * @param expectedSize Number of values the set should hold without growing
+     */
+    public IntSet(int expectedSize) {
+        this.members = new IntIntMap(expectedSize);
+    }
+    
+    /**
+     * Add a value
+     *
+     * @param value The value
+     * @return true if the value was not in the set yet
+     */
+    public boolean add(int value) {
+        if (members.containsKey(value)) {
+            return false;
+        }
+        members.put(value, 1);
+        return true;
+    }
+    
+    /**
+     * Check whether a value is in the set
+     *
+     * @param value The value
+     * @return true if the set contains the value
+     */
+    public boolean contains(int value) {
+        return members.containsKey(value);
+    }
+    
+    /**
+     * Remove a value
+     *
+     * @param value The value
+     * @return true if the value was in the set
+     */
+    public boolean remove(int value) {
+        return members.remove(value);
+    }
+    
+    /**
+     * Get the number of values
+     *
+     * @return Number of values
+     */
+    public int size() {
+        return members.size();
+    }
+    
+    /**
+     * Remove all values
+     */
+    public void clear() {
+        members.clear();
+    }
+    
+    /**
+     * Get all values, in no particular order
+     *
+     * @return The values
+     */
+    public int[] toArray() {
+        return members.keys();
+    }
+}
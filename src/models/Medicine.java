@@ -1,25 +1,29 @@
 package models;
 
 import java.util.Date;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 /**
  * Represents a medicine in the pharmacy system
  */
 public class Medicine  {
- 
+    
     
     private int id;
     private String name;
     private String description;
     private String manufacturer;
     private double price;
-    private int stock;
+    // Units on hand in the high half, units held for carts in the low half; only changed by compare-and-set
+    private final AtomicLong stockLevel = new AtomicLong();
     private String category;
     private String dosage;
     private boolean prescription;
     private Date expiryDate;
     private String imageUrl;
-    private int quantity; // Added for compatibility
+    // Told after the stock changes, so a stock watch can re-file this medicine
+    private volatile Consumer<Medicine> stockListener;
     
     /**
      * Constructor for creating a new medicine - Used by the FileHandler
@@ -40,8 +44,7 @@ public class Medicine  {
         this.description = description;
         this.manufacturer = manufacturer;
         this.price = price;
-        this.stock = quantity;
-        this.quantity = quantity; // Initialize quantity to match stock
+        this.stockLevel.set(pack(quantity, 0));
         this.category = category;
         this.dosage = "As directed"; // Default dosage
         this.prescription = requiresPrescription;
@@ -70,8 +73,7 @@ public class Medicine  {
         this.description = description;
         this.manufacturer = manufacturer;
         this.price = price;
-        this.stock = stock;
-        this.quantity = stock; // Initialize quantity to match stock
+        this.stockLevel.set(pack(stock, 0));
         this.category = category;
         this.dosage = dosage;
         this.prescription = prescription;
@@ -184,21 +186,26 @@ public class Medicine  {
     
     /**
      * Get the stock quantity of this medicine
+     * Units held for carts are still on hand and counted here
      * 
      * @return The stock quantity
      */
     public int getStock() {
-        return stock;
+        return onHand(stockLevel.get());
     }
     
     /**
      * Set the stock quantity of this medicine
+     * Units held for carts stay held
      * 
      * @param stock The stock quantity
      */
     public void setStock(int stock) {
-        this.stock = stock;
-        this.quantity = stock; // Keep quantity in sync with stock
+        long level;
+        do {
+            level = stockLevel.get();
+        } while (!stockLevel.compareAndSet(level, pack(stock, held(level))));
+        notifyStockChanged();
     }
     
     /**
@@ -207,7 +214,7 @@ public class Medicine  {
      * @return The quantity
      */
     public int getQuantity() {
-        return quantity;
+        return getStock();
     }
     
     /**
@@ -216,8 +223,7 @@ public class Medicine  {
      * @param quantity The quantity
      */
     public void setQuantity(int quantity) {
-        this.quantity = quantity;
-        this.stock = quantity; // Keep stock in sync with quantity
+        setStock(quantity);
     }
     
     /**
@@ -227,28 +233,33 @@ public class Medicine  {
      * @return The new stock level
      */
     public int restoreStock(int quantity) {
-        this.stock += quantity;
-        this.quantity = this.stock; // Keep quantity in sync with stock
-        return this.stock;
+        long level;
+        long updated;
+        do {
+            level = stockLevel.get();
+            updated = pack(onHand(level) + quantity, held(level));
+        } while (!stockLevel.compareAndSet(level, updated));
+        notifyStockChanged();
+        return onHand(updated);
     }
     
     /**
      * Check if this medicine is in stock
      * 
-     * @return true if in stock, false otherwise
+     * @return true if units are on hand that are not held for a cart
      */
     public boolean isInStock() {
-        return stock > 0;
+        return getAvailableStock() > 0;
     }
     
     /**
      * Check if this medicine is available in the requested quantity
      * 
      * @param quantity The requested quantity
-     * @return true if available, false otherwise
+     * @return true if that many units are on hand and not held for a cart
      */
     public boolean isAvailable(int quantity) {
-        return stock >= quantity;
+        return getAvailableStock() >= quantity;
     }
     
     /**
@@ -256,17 +267,170 @@ public class Medicine  {
      * 
      * @param quantity The quantity to add (positive) or remove (negative)
      * @return The new stock quantity
-     * @throws IllegalArgumentException If the updated stock would be negative
+     * @throws IllegalArgumentException If the updated stock would be negative or below the held units
      */
     public int updateStock(int quantity) {
-        int newStock = stock + quantity;
-        
-        if (newStock < 0) {
-            throw new IllegalArgumentException("Insufficient stock");
+        long level;
+        long updated;
+        do {
+            level = stockLevel.get();
+            int newStock = onHand(level) + quantity;
+            if (newStock < 0 || (quantity < 0 && newStock < held(level))) {
+                throw new IllegalArgumentException("Insufficient stock");
+            }
+            updated = pack(newStock, held(level));
+        } while (!stockLevel.compareAndSet(level, updated));
+        notifyStockChanged();
+        return onHand(updated);
+    }
+    
+    /**
+     * Get the units of this medicine held for carts
+     * 
+     * @return The held units
+     */
+    public int getHeldStock() {
+        return held(stockLevel.get());
+    }
+    
+    /**
+     * Get the units of this medicine that can still be bought or held
+     * 
+     * @return Units on hand minus units held for carts
+     */
+    public int getAvailableStock() {
+        long level = stockLevel.get();
+        return onHand(level) - held(level);
+    }
+    
+    /**
+     * Take units out of stock if that many are available, atomically
+     * 
+     * @param quantity The units to take
+     * @return true if they were taken, false if not enough units are available
+     */
+    public boolean tryTakeStock(int quantity) {
+        long level;
+        do {
+            level = stockLevel.get();
+            if (onHand(level) - held(level) < quantity) {
+                return false;
+            }
+        } while (!stockLevel.compareAndSet(level, pack(onHand(level) - quantity, held(level))));
+        notifyStockChanged();
+        return true;
+    }
+    
+    /**
+     * Hold units for a cart if that many are available, atomically
+     * Held units stay on hand but can no longer be bought or held by anyone else
+     * 
+     * @param quantity The units to hold
+     * @return true if they are held, false if not enough units are available
+     */
+    public boolean tryHoldStock(int quantity) {
+        long level;
+        do {
+            level = stockLevel.get();
+            if (onHand(level) - held(level) < quantity) {
+                return false;
+            }
+        } while (!stockLevel.compareAndSet(level, pack(onHand(level), held(level) + quantity)));
+        return true;
+    }
+    
+    /**
+     * Release held units, making them available again
+     * 
+     * @param quantity The held units to release
+     */
+    public void releaseHeldStock(int quantity) {
+        long level;
+        do {
+            level = stockLevel.get();
+        } while (!stockLevel.compareAndSet(level, pack(onHand(level), Math.max(0, held(level) - quantity))));
+    }
+    
+    /**
+     * Take held units out of stock, when the cart holding them is checked out
+     * 
+     * @param quantity The held units to take
+     * @throws IllegalArgumentException If fewer units are held
+     */
+    public void takeHeldStock(int quantity) {
+        long level;
+        do {
+            level = stockLevel.get();
+            if (held(level) < quantity) {
+                throw new IllegalArgumentException("Only " + held(level) + " units are held");
+            }
+        } while (!stockLevel.compareAndSet(level, pack(onHand(level) - quantity, held(level) - quantity)));
+        notifyStockChanged();
+    }
+    
+    /**
+     * Get the version of this medicine's stock, for taking stock optimistically
+     * The version changes whenever the units on hand or held change. A version seen
+     * again after other changes stands for the same units, so it is just as valid.
+     * 
+     * @return The stock version
+     */
+    public long getStockVersion() {
+        return stockLevel.get();
+    }
+    
+    /**
+     * Get the units available at a stock version
+     * 
+     * @param version A version from getStockVersion
+     * @return Units on hand minus units held for carts at that version
+     */
+    public static int availableAt(long version) {
+        return onHand(version) - held(version);
+    }
+    
+    /**
+     * Take units out of stock only if the stock is still at the given version
+     * 
+     * @param version The version the caller checked the stock at
+     * @param quantity The units to take
+     * @return true if they were taken, false if the stock changed since or too few units are available
+     */
+    public boolean tryTakeStockAt(long version, int quantity) {
+        if (availableAt(version) < quantity
+                || !stockLevel.compareAndSet(version, pack(onHand(version) - quantity, held(version)))) {
+            return false;
+        }
+        notifyStockChanged();
+        return true;
+    }
+    
+    private static long pack(int onHand, int held) {
+        return ((long) onHand << 32) | (held & 0xFFFFFFFFL);
+    }
+    
+    private static int onHand(long level) {
+        return (int) (level >> 32);
+    }
+    
+    private static int held(long level) {
+        return (int) level;
+    }
+    
+    /**
+     * Set the listener told after the stock of this medicine changes
+     * 
+     * @param stockListener The listener, or null to remove it
+     */
+    public void setStockListener(Consumer<Medicine> stockListener) {
+        this.stockListener = stockListener;
+    }
+    
+    private void notifyStockChanged() {
+        Consumer<Medicine> listener = stockListener;
+        if (listener != null) {
+            listener.accept(this);
         }
-        
-        stock = newStock;
-        return stock;
     }
     
     /**
@@ -418,7 +582,7 @@ public class Medicine  {
     @Override
     public String toString() {
         return String.format("Medicine [ID: %d, Name: %s, Price: %s, Stock: %d]", 
-                id, name, getFormattedPrice(), stock);
+                id, name, getFormattedPrice(), getStock());
     }
     
     /**
@@ -429,7 +593,7 @@ public class Medicine  {
         System.out.println("ID: " + id);
         System.out.println("Name: " + name);
         System.out.println("Price: " + getFormattedPrice());
-        System.out.println("Stock: " + stock);
+        System.out.println("Stock: " + getStock());
         System.out.println("Category: " + category);
         System.out.println("Manufacturer: " + manufacturer);
         System.out.println("Description: " + description);
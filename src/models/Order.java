@@ -6,13 +6,14 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 /**
  * Represents an order in the pharmacy system
  */
 public class Order {
-
+    
     public enum Status {
         PENDING("Pending"),
         PROCESSING("Processing"),
@@ -71,10 +72,16 @@ public class Order {
     private int id;
     private int patientId;
     private Date orderDate;
-    private Status status;
+    // Changed under this order's monitor, so compareAndSetStatus can claim a transition
+    private volatile Status status;
     private List<OrderItem> items;
+    // Index of each medicine's line in items, built once an order has INDEXED_ITEMS lines
+    private IntIntMap itemSlots;
+    private static final int INDEXED_ITEMS = 8;
     private double totalAmount;
     private PaymentMethod paymentMethod;
+    // Told when the status or patient changes, so indexes over orders can re-file this one
+    private List<Consumer<Order>> changeListeners;
     
     // Optional fields
     private String patientName;
@@ -86,7 +93,7 @@ public class Order {
     private String prescriptionId;
     private String notes;
     private String trackingNumber;
-    private boolean isPaid;
+    private volatile boolean isPaid;
     private Date paymentDate;
     private String paymentReference;
     
@@ -159,9 +166,45 @@ public class Order {
      * @return The total amount
      */
     public double calculateTotal() {
-        return items.stream()
-                .mapToDouble(item -> item.getUnitPrice() * item.getQuantity())
-                .sum();
+        double total = 0;
+        for (int i = 0; i < items.size(); i++) {
+            OrderItem item = items.get(i);
+            total += item.getUnitPrice() * item.getQuantity();
+        }
+        return total;
+    }
+    
+    /**
+     * Find the line of a medicine in this order
+     * 
+     * @param medicineId The ID of the medicine
+     * @return The index of the line in items, or -1 if the medicine is not in the order
+     */
+    private int findItemSlot(int medicineId) {
+        if (itemSlots != null) {
+            return itemSlots.get(medicineId, -1);
+        }
+        // Short orders are scanned; that is cheaper than hashing
+        for (int i = 0; i < items.size(); i++) {
+            if (items.get(i).getMedicineId() == medicineId) {
+                return i;
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * Rebuild the line index after lines moved
+     */
+    private void reindexItems() {
+        if (items.size() < INDEXED_ITEMS) {
+            itemSlots = null;
+            return;
+        }
+        itemSlots = new IntIntMap(items.size());
+        for (int i = 0; i < items.size(); i++) {
+            itemSlots.put(items.get(i).getMedicineId(), i);
+        }
     }
     
     /**
@@ -171,17 +214,22 @@ public class Order {
      */
     public void addItem(OrderItem item) {
         // Check if the item already exists in the order
-        for (OrderItem existingItem : items) {
-            if (existingItem.getMedicineId() == item.getMedicineId()) {
-                // Update quantity instead of adding a new item
-                existingItem.setQuantity(existingItem.getQuantity() + item.getQuantity());
-                totalAmount = calculateTotal();
-                return;
-            }
+        int slot = findItemSlot(item.getMedicineId());
+        if (slot >= 0) {
+            // Update quantity instead of adding a new item
+            OrderItem existingItem = items.get(slot);
+            existingItem.setQuantity(existingItem.getQuantity() + item.getQuantity());
+            totalAmount = calculateTotal();
+            return;
         }
         
         // Add as a new item
         items.add(item);
+        if (itemSlots != null) {
+            itemSlots.put(item.getMedicineId(), items.size() - 1);
+        } else if (items.size() >= INDEXED_ITEMS) {
+            reindexItems();
+        }
         totalAmount = calculateTotal();
     }
     
@@ -195,6 +243,7 @@ public class Order {
         boolean removed = items.removeIf(item -> item.getMedicineId() == medicineId);
         
         if (removed) {
+            reindexItems();
             totalAmount = calculateTotal();
         }
         
@@ -213,15 +262,13 @@ public class Order {
             return removeItem(medicineId);
         }
         
-        for (OrderItem item : items) {
-            if (item.getMedicineId() == medicineId) {
-                item.setQuantity(newQuantity);
-                totalAmount = calculateTotal();
-                return true;
-            }
+        int slot = findItemSlot(medicineId);
+        if (slot < 0) {
+            return false;
         }
-        
-        return false;
+        items.get(slot).setQuantity(newQuantity);
+        totalAmount = calculateTotal();
+        return true;
     }
     
     /**
@@ -251,25 +298,26 @@ public class Order {
             this.paymentReference = "Free Order #" + id + "-" + UUID.randomUUID().toString();
             
             if (this.status == Status.PAYMENT_PENDING) {
-                this.status = Status.PROCESSING;
+                changeStatus(Status.PROCESSING);
             }
             return true;
         }
         
-        boolean success = wallet.withdraw(totalAmount, "Order #" + id);
+        // Keyed by the order, so paying twice at once or after a double click charges once
+        String paymentKey = Wallet.paymentKeyForOrder(id);
+        boolean success = wallet.payOnce(paymentKey, totalAmount, "Order #" + id);
         
         if (success) {
             this.isPaid = true;
             this.paymentMethod = PaymentMethod.WALLET;
             this.paymentDate = new Date();
-            // Use UUID for unique reference instead of timestamp for better compatibility
-            this.paymentReference = "Wallet Transaction: " + UUID.randomUUID().toString();
+            this.paymentReference = "Wallet Transaction: " + paymentKey;
             
             if (this.status == Status.PAYMENT_PENDING) {
-                this.status = Status.PROCESSING;
+                changeStatus(Status.PROCESSING);
             }
         } else {
-            this.status = Status.PAYMENT_FAILED;
+            changeStatus(Status.PAYMENT_FAILED);
         }
         
         return success;
@@ -320,10 +368,10 @@ public class Order {
             this.paymentReference = "Card Transaction: " + UUID.randomUUID().toString() + "-" + cardNumber.substring(cardNumber.length() - 4);
             
             if (this.status == Status.PAYMENT_PENDING) {
-                this.status = Status.PROCESSING;
+                changeStatus(Status.PROCESSING);
             }
         } else {
-            this.status = Status.PAYMENT_FAILED;
+            changeStatus(Status.PAYMENT_FAILED);
         }
         
         return success;
@@ -336,7 +384,7 @@ public class Order {
         this.paymentMethod = PaymentMethod.CASH_ON_DELIVERY;
         
         if (this.status == Status.PAYMENT_PENDING) {
-            this.status = Status.PROCESSING;
+            changeStatus(Status.PROCESSING);
         }
     }
     
@@ -349,7 +397,7 @@ public class Order {
             this.paymentDate = new Date();
         }
         
-        this.status = Status.DELIVERED;
+        changeStatus(Status.DELIVERED);
         this.completionDate = new Date();
     }
     
@@ -363,7 +411,7 @@ public class Order {
             return false;
         }
         
-        status = Status.CANCELLED;
+        changeStatus(Status.CANCELLED);
         return true;
     }
     
@@ -391,7 +439,11 @@ public class Order {
      * @param patientId The patient ID
      */
     public void setPatientId(int patientId) {
+        if (this.patientId == patientId) {
+            return;
+        }
         this.patientId = patientId;
+        notifyChanged();
     }
     
     /**
@@ -428,7 +480,71 @@ public class Order {
      * @param status The status
      */
     public void setStatus(Status status) {
-        this.status = status;
+        changeStatus(status);
+    }
+    
+    /**
+     * Set the status of this order only if it still has the expected status
+     * Of several threads making the same transition, exactly one succeeds
+     * 
+     * @param expected The status the order must have
+     * @param status The new status
+     * @return true if the status was changed, false if the order had another status
+     */
+    public boolean compareAndSetStatus(Status expected, Status status) {
+        synchronized (this) {
+            if (this.status != expected) {
+                return false;
+            }
+            this.status = status;
+        }
+        // Listeners are told outside the monitor, as for any other change
+        if (expected != status) {
+            notifyChanged();
+        }
+        return true;
+    }
+    
+    private void changeStatus(Status status) {
+        synchronized (this) {
+            if (this.status == status) {
+                return;
+            }
+            this.status = status;
+        }
+        notifyChanged();
+    }
+    
+    private void notifyChanged() {
+        if (changeListeners == null) {
+            return;
+        }
+        for (int i = 0; i < changeListeners.size(); i++) {
+            changeListeners.get(i).accept(this);
+        }
+    }
+    
+    /**
+     * Add a listener told when the status or patient of this order changes
+     * 
+     * @param listener The listener
+     */
+    public void addChangeListener(Consumer<Order> listener) {
+        if (changeListeners == null) {
+            changeListeners = new ArrayList<>(2);
+        }
+        changeListeners.add(listener);
+    }
+    
+    /**
+     * Remove a listener added with addChangeListener
+     * 
+     * @param listener The same listener instance that was added
+     */
+    public void removeChangeListener(Consumer<Order> listener) {
+        if (changeListeners != null) {
+            changeListeners.remove(listener);
+        }
     }
     
     /**
@@ -850,7 +966,11 @@ public class Order {
      * @return The total quantity
      */
     public int getTotalQuantity() {
-        return items.stream().mapToInt(OrderItem::getQuantity).sum();
+        int total = 0;
+        for (int i = 0; i < items.size(); i++) {
+            total += items.get(i).getQuantity();
+        }
+        return total;
     }
     
     /**
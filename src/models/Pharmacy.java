@@ -225,7 +225,7 @@ public class Pharmacy {
         
         if (existingMedicine != null) {
             // Update quantity if medicine already exists
-            existingMedicine.setQuantity(existingMedicine.getQuantity() + medicine.getQuantity());
+            existingMedicine.restoreStock(medicine.getQuantity());
             System.out.println("Medicine quantity updated in pharmacy.");
             return true;
         }
@@ -288,12 +288,12 @@ public class Pharmacy {
             return false;
         }
         
-        if (medicine.getQuantity() < quantity) {
+        // Check and take the stock in one step, so a concurrent change is not overwritten
+        if (!medicine.tryTakeStock(quantity)) {
             System.out.println("Not enough stock for medicine: " + medicine.getName());
             return false;
         }
         
-        medicine.setQuantity(medicine.getQuantity() - quantity);
         return true;
     }
 
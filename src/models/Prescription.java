@@ -1,8 +1,14 @@
 package models;
 
 import java.time.LocalDate;
-import java.util.HashMap;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.Consumer;
 
 
 public class Prescription {
@@ -13,10 +19,20 @@ public class Prescription {
     private LocalDate issueDate;
     private LocalDate expiryDate;
     private PrescriptionStatus status;
+    // Told when the status or pharmacy changes, so the pharmacy work queues can re-file this one
+    private Consumer<Prescription> changeListener;
     private String instructions;
-    private Map<Medicine, Integer> medicines; // Medicine and quantity
+    // Prescribed lines as parallel arrays: medicine and quantity, one line per medicine ID
+    private Medicine[] lineMedicines;
+    private int[] lineQuantities;
+    private int lineCount;
+    private IntIntMap lineSlots; // Medicine ID to line, built once there are INDEXED_LINES lines
+    private Map<Medicine, Integer> medicines; // Map view of the lines, created on first use
+    private static final int INDEXED_LINES = 8;
+    private static final Medicine[] NO_MEDICINES = new Medicine[0];
+    private static final int[] NO_QUANTITIES = new int[0];
     private String rejectionReason;
-
+    
     /**
      * Constructor for Prescription class with status and pharmacyId
      * 
@@ -39,7 +55,8 @@ public class Prescription {
         this.expiryDate = expiryDate;
         this.status = status;
         this.instructions = instructions;
-        this.medicines = new HashMap<>();
+        this.lineMedicines = NO_MEDICINES;
+        this.lineQuantities = NO_QUANTITIES;
     }
     
     /**
@@ -72,7 +89,7 @@ public class Prescription {
                       LocalDate expiryDate, String instructions) {
         this(id, patientId, doctorId, 0, issueDate, expiryDate, PrescriptionStatus.PENDING, instructions);
     }
-
+    
     /**
      * getId - Retrieves the unique identifier for this prescription
      * 
@@ -81,7 +98,7 @@ public class Prescription {
     public int getId() {
         return id;
     }
-
+    
     /**
      * getPatientId - Identifies the patient receiving this medication
      * 
@@ -94,7 +111,7 @@ public class Prescription {
     
     /**
      *  getDoctorId - Identifies the physician who authorized this medication
-    
+     
      * @return ID of the Egyptian doctor who issued the prescription
      */
     public int getDoctorId() {
@@ -117,9 +134,13 @@ public class Prescription {
      * @param pharmacyId ID of the pharmacy newly assigned to fill this prescription
      */
     public void setPharmacyId(int pharmacyId) {
+        if (this.pharmacyId == pharmacyId) {
+            return;
+        }
         this.pharmacyId = pharmacyId;
+        notifyChanged();
     }
-
+    
     /**
      * getIssueDate - Retrieves when this prescription was created
      * 
@@ -128,7 +149,7 @@ public class Prescription {
     public LocalDate getIssueDate() {
         return issueDate;
     }
-
+    
     /**
      * getExpiryDate - Determines when this prescription becomes invalid
      * 
@@ -139,7 +160,7 @@ public class Prescription {
     public LocalDate getExpiryDate() {
         return expiryDate;
     }
-
+    
     /**
      *  getStatus - Tracks the current state in the prescription lifecycle
      * 
@@ -148,16 +169,47 @@ public class Prescription {
     public PrescriptionStatus getStatus() {
         return status;
     }
-
+    
     /**
      *  setStatus - Updates the prescription's position in the workflow
      * 
      * @param status New status value for the prescription
      */
     public void setStatus(PrescriptionStatus status) {
+        if (this.status == status) {
+            return;
+        }
         this.status = status;
+        notifyChanged();
     }
-
+    
+    /**
+     *  isAwaitingPharmacy - Checks whether this prescription is in its pharmacy's work queue
+     * 
+     * A prescription sent to a pharmacy stays pending, or validated once a pharmacist
+     * checked it, until it is filled (completed) or rejected.
+     * 
+     * @return true if a pharmacy is assigned and the prescription was neither filled nor rejected
+     */
+    public boolean isAwaitingPharmacy() {
+        return pharmacyId > 0 && (status == PrescriptionStatus.PENDING || status == PrescriptionStatus.VALIDATED);
+    }
+    
+    /**
+     * Set the listener told when the status or pharmacy of this prescription changes
+     * 
+     * @param changeListener The listener, or null to remove it
+     */
+    public void setChangeListener(Consumer<Prescription> changeListener) {
+        this.changeListener = changeListener;
+    }
+    
+    private void notifyChanged() {
+        if (changeListener != null) {
+            changeListener.accept(this);
+        }
+    }
+    
     /**
      * getInstructions - Provides medication usage guidelines for the patient
      * 
@@ -175,16 +227,184 @@ public class Prescription {
     public void setInstructions(String instructions) {
         this.instructions = instructions;
     }
-
+    
     /**
      * getMedicines - Retrieves all medications in this prescription
      *
-     * @return Map linking each Medicine object to its prescribed quantity
+     * @return Map linking each Medicine object to its prescribed quantity, backed by the prescription
      */
     public Map<Medicine, Integer> getMedicines() {
+        if (medicines == null) {
+            medicines = new LineMap();
+        }
         return medicines;
     }
-
+    
+    /**
+     * Get the prescribed quantity of a medicine
+     * 
+     * @param medicineId ID of the medicine
+     * @return The quantity, or 0 if the medicine is not prescribed
+     */
+    public int getQuantity(int medicineId) {
+        int slot = findLine(medicineId);
+        return slot >= 0 ? lineQuantities[slot] : 0;
+    }
+    
+    private int findLine(int medicineId) {
+        if (lineSlots != null) {
+            return lineSlots.get(medicineId, -1);
+        }
+        for (int i = 0; i < lineCount; i++) {
+            if (lineMedicines[i].getId() == medicineId) {
+                return i;
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * Set the quantity of a medicine, adding a line if it is not prescribed yet
+     * 
+     * @return The previous quantity, or null if the line is new
+     */
+    private Integer setLine(Medicine medicine, int quantity) {
+        int slot = findLine(medicine.getId());
+        if (slot >= 0) {
+            int previous = lineQuantities[slot];
+            lineMedicines[slot] = medicine;
+            lineQuantities[slot] = quantity;
+            return previous;
+        }
+        if (lineCount == lineMedicines.length) {
+            int capacity = Math.max(4, lineCount * 2);
+            lineMedicines = Arrays.copyOf(lineMedicines, capacity);
+            lineQuantities = Arrays.copyOf(lineQuantities, capacity);
+        }
+        lineMedicines[lineCount] = medicine;
+        lineQuantities[lineCount] = quantity;
+        lineCount++;
+        if (lineSlots != null) {
+            lineSlots.put(medicine.getId(), lineCount - 1);
+        } else if (lineCount >= INDEXED_LINES) {
+            reindexLines();
+        }
+        return null;
+    }
+    
+    private void removeLine(int slot) {
+        System.arraycopy(lineMedicines, slot + 1, lineMedicines, slot, lineCount - slot - 1);
+        System.arraycopy(lineQuantities, slot + 1, lineQuantities, slot, lineCount - slot - 1);
+        lineCount--;
+        lineMedicines[lineCount] = null;
+        reindexLines();
+    }
+    
+    private void reindexLines() {
+        if (lineCount < INDEXED_LINES) {
+            lineSlots = null;
+            return;
+        }
+        lineSlots = new IntIntMap(lineCount);
+        for (int i = 0; i < lineCount; i++) {
+            lineSlots.put(lineMedicines[i].getId(), i);
+        }
+    }
+    
+    /**
+     * Map view of the prescribed lines, keyed by medicine ID
+     */
+    private class LineMap extends AbstractMap<Medicine, Integer> {
+        private Set<Map.Entry<Medicine, Integer>> entries;
+        
+        @Override
+        public Set<Map.Entry<Medicine, Integer>> entrySet() {
+            if (entries == null) {
+                entries = new LineSet();
+            }
+            return entries;
+        }
+        
+        @Override
+        public int size() {
+            return lineCount;
+        }
+        
+        @Override
+        public Integer get(Object key) {
+            if (!(key instanceof Medicine)) {
+                return null;
+            }
+            int slot = findLine(((Medicine) key).getId());
+            return slot >= 0 ? lineQuantities[slot] : null;
+        }
+        
+        @Override
+        public boolean containsKey(Object key) {
+            return key instanceof Medicine && findLine(((Medicine) key).getId()) >= 0;
+        }
+        
+        @Override
+        public Integer put(Medicine medicine, Integer quantity) {
+            return setLine(medicine, quantity);
+        }
+        
+        @Override
+        public Integer remove(Object key) {
+            if (!(key instanceof Medicine)) {
+                return null;
+            }
+            int slot = findLine(((Medicine) key).getId());
+            if (slot < 0) {
+                return null;
+            }
+            int previous = lineQuantities[slot];
+            removeLine(slot);
+            return previous;
+        }
+    }
+    
+    /**
+     * Entry set of the map view
+     */
+    private class LineSet extends AbstractSet<Map.Entry<Medicine, Integer>> {
+        @Override
+        public Iterator<Map.Entry<Medicine, Integer>> iterator() {
+            return new Iterator<Map.Entry<Medicine, Integer>>() {
+                private int next;
+                
+                @Override
+                public boolean hasNext() {
+                    return next < lineCount;
+                }
+                
+                @Override
+                public Map.Entry<Medicine, Integer> next() {
+                    if (next >= lineCount) {
+                        throw new NoSuchElementException();
+                    }
+                    Map.Entry<Medicine, Integer> entry =
+                        new AbstractMap.SimpleImmutableEntry<>(lineMedicines[next], lineQuantities[next]);
+                    next++;
+                    return entry;
+                }
+                
+                @Override
+                public void remove() {
+                    if (next == 0) {
+                        throw new IllegalStateException();
+                    }
+                    removeLine(--next);
+                }
+            };
+        }
+        
+        @Override
+        public int size() {
+            return lineCount;
+        }
+    }
+    
     /**
      * addMedicine - Includes a medication in this prescription
      * @param medicine The Medicine object to add to this prescription
@@ -199,11 +419,11 @@ public class Prescription {
         }
         
         // Add medicine to prescription
-        medicines.put(medicine, quantity);
+        setLine(medicine, quantity);
         System.out.println("Medicine added to prescription successfully.");
         return true;
     }
-
+    
     /**
      * removeMedicine - Removes a medication from this prescription
      * @param medicineId ID of the medicine to remove from the prescription
@@ -211,44 +431,42 @@ public class Prescription {
      */
     public boolean removeMedicine(int medicineId) {
         // Find medicine in the prescription
-        Medicine medicine = medicines.keySet().stream()
-                                  .filter(m -> m.getId() == medicineId)
-                                  .findFirst()
-                                  .orElse(null);
+        int slot = findLine(medicineId);
         
-        if (medicine == null) {
+        if (slot < 0) {
             System.out.println("Medicine with ID " + medicineId + " not found in prescription.");
             return false;
         }
         
         // Remove medicine from prescription
-        medicines.remove(medicine);
+        removeLine(slot);
         System.out.println("Medicine removed from prescription successfully.");
         return true;
     }
-
+    
     /**
      * Calculate the total cost of the prescription
      * 
      * @return Total cost of the medicines in the prescription in LE
      */
     public double calculateTotalCost() {
-        return medicines.entrySet().stream()
-                      .mapToDouble(entry -> entry.getKey().getPrice() * entry.getValue())
-                      .sum();
+        double total = 0;
+        for (int i = 0; i < lineCount; i++) {
+            total += lineMedicines[i].getPrice() * lineQuantities[i];
+        }
+        return total;
     }
     
     /**
      * containsMedicine - Verifies if a specific medication is prescribed
- 
+     
      * @param medicineId ID of the medicine to look for in the prescription
      * @return true if the medicine is in the prescription, false otherwise
      */
     public boolean containsMedicine(int medicineId) {
-        return medicines.keySet().stream()
-                       .anyMatch(medicine -> medicine.getId() == medicineId);
+        return findLine(medicineId) >= 0;
     }
-
+    
     /**
      *isExpired - Determines if this prescription is still valid
      * @return true if the prescription has expired, false if still valid
@@ -256,7 +474,7 @@ public class Prescription {
     public boolean isExpired() {
         return LocalDate.now().isAfter(expiryDate);
     }
-
+    
     /**
      *displayInfo - Outputs formatted prescription details to console
      * 
@@ -273,15 +491,15 @@ public class Prescription {
         System.out.println("Expiry Date: " + expiryDate);
         System.out.println("Status: " + status);
         System.out.println("Instructions: " + instructions);
-        System.out.println("Total Medicines: " + medicines.size());
+        System.out.println("Total Medicines: " + lineCount);
         System.out.println("Total Cost: " + String.format("%.2f", calculateTotalCost()) + " LE");
         
-        if (!medicines.isEmpty()) {
+        if (lineCount > 0) {
             System.out.println("\nMedicines:");
             System.out.printf("%-5s %-20s %-30s %-10s %-10s\n", "ID", "Name", "Description", "Price", "Quantity");
             System.out.println("--------------------------------------------------------------------------------");
             
-            for (Map.Entry<Medicine, Integer> entry : medicines.entrySet()) {
+            for (Map.Entry<Medicine, Integer> entry : getMedicines().entrySet()) {
                 Medicine medicine = entry.getKey();
                 int quantity = entry.getValue();
                 
@@ -294,11 +512,11 @@ public class Prescription {
             }
         }
     }
-
+    
     public String getRejectionReason() {
         return rejectionReason;
     }
-
+    
     public void setRejectionReason(String reason) {
         this.rejectionReason = reason;
     }
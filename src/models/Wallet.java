@@ -3,23 +3,37 @@ package models;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.HashMap;
 import java.util.Map;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.Set;
+import java.util.HashSet;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 /**
  * Represents a wallet in the pharmacy system
+ *
+ * Every change to the balance or the transaction history holds the wallet's own lock,
+ * so payments, deposits and refunds of one wallet are applied one at a time while
+ * different wallets never wait for each other. Payments may carry an idempotency key;
+ * a payment made again with the same key is not charged again.
  */
 public class Wallet  {
 
     
     private int patientId;
     private String patientUsername;
-    private double balance;
+    // Read without locking; changed only under the wallet's lock
+    private volatile double balance;
     private Map<String, Card> cards;
     private List<Transaction> transactions;
+    private volatile Consumer<Transaction> transactionListener;
+    private Supplier<List<Transaction>> historyLoader;
+    // Keys of the payments made, collected from the history the first time a key is checked
+    private Set<String> paymentKeys;
     
     /**
      * Represents a transaction in the pharmacy system
@@ -74,6 +88,28 @@ public class Wallet  {
             this.timestamp = new Date();
         }
         
+        /**
+         * Constructor for restoring a stored transaction
+         * 
+         * @param id The transaction ID
+         * @param patientId The ID of the patient
+         * @param type The type of transaction
+         * @param amount The amount of the transaction
+         * @param description The description of the transaction
+         * @param balanceAfter The balance after the transaction
+         * @param timestamp The time of the transaction
+         */
+        public Transaction(String id, int patientId, Type type, double amount, String description,
+                           double balanceAfter, Date timestamp) {
+            this.id = id;
+            this.patientId = patientId;
+            this.type = type;
+            this.amount = amount;
+            this.description = description;
+            this.balanceAfter = balanceAfter;
+            this.timestamp = timestamp;
+        }
+        
         /**
          * Get the transaction ID
          * 
@@ -177,7 +213,7 @@ public class Wallet  {
         this.patientId = patientId;
         this.patientUsername = "patient" + patientId; // Default username
         this.balance = 0.0;
-        this.cards = new HashMap<>();
+        this.cards = new ConcurrentHashMap<>();
         this.transactions = new ArrayList<>();
     }
     
@@ -191,7 +227,7 @@ public class Wallet  {
         this.patientId = patientId;
         this.patientUsername = patientUsername;
         this.balance = 0.0;
-        this.cards = new HashMap<>();
+        this.cards = new ConcurrentHashMap<>();
         this.transactions = new ArrayList<>();
     }
     
@@ -273,7 +309,7 @@ public class Wallet  {
      * @return true if the deposit was successful
      * @throws IllegalArgumentException If the amount is negative
      */
-    public boolean deposit(double amount, String description) {
+    public synchronized boolean deposit(double amount, String description) {
         if (amount <= 0) {
             throw new IllegalArgumentException("Deposit amount must be positive");
         }
@@ -287,7 +323,7 @@ public class Wallet  {
                 description, 
                 balance);
         
-        transactions.add(transaction);
+        recordTransaction(transaction);
         
         return true;
     }
@@ -300,7 +336,7 @@ public class Wallet  {
      * @return true if successful, false if insufficient funds
      * @throws IllegalArgumentException If the amount is negative
      */
-    public boolean withdraw(double amount, String description) {
+    public synchronized boolean withdraw(double amount, String description) {
         if (amount < 0) {
             throw new IllegalArgumentException("Withdrawal amount cannot be negative");
         }
@@ -314,7 +350,7 @@ public class Wallet  {
                     description + " (zero amount)", 
                     balance);
             
-            transactions.add(transaction);
+            recordTransaction(transaction);
             return true;
         }
         
@@ -331,7 +367,7 @@ public class Wallet  {
                 description, 
                 balance);
         
-        transactions.add(transaction);
+        recordTransaction(transaction);
         
         return true;
     }
@@ -370,6 +406,162 @@ public class Wallet  {
         return withdraw(amount, description);
     }
     
+    /**
+     * Get the idempotency key of the wallet payment for an order
+     * 
+     * @param orderId The ID of the order
+     * @return The key, the same for every attempt to pay the order
+     */
+    public static String paymentKeyForOrder(int orderId) {
+        return "order-" + orderId + "-payment";
+    }
+    
+    /**
+     * Make a payment at most once per idempotency key
+     * A payment made again with a key already paid is not charged and succeeds, so a
+     * payment submitted twice, or from two threads at once, is charged once. The key
+     * becomes the ID of the payment's transaction, so it is kept with the history.
+     * 
+     * @param idempotencyKey The key of the payment
+     * @param amount The amount to pay
+     * @param description The description for this payment
+     * @return true if paid now or before, false if insufficient funds
+     * @throws IllegalArgumentException If the amount is negative
+     */
+    public synchronized boolean payOnce(String idempotencyKey, double amount, String description) {
+        if (amount < 0) {
+            throw new IllegalArgumentException("Payment amount cannot be negative");
+        }
+        
+        if (paymentKeys().contains(idempotencyKey)) {
+            return true;
+        }
+        
+        if (balance < amount) {
+            return false;
+        }
+        
+        balance -= amount;
+        paymentKeys.add(idempotencyKey);
+        
+        Transaction transaction = new Transaction(
+                idempotencyKey, 
+                patientId, 
+                Transaction.Type.PAYMENT, 
+                amount, 
+                description, 
+                balance, 
+                new Date());
+        
+        recordTransaction(transaction);
+        
+        return true;
+    }
+    
+    /**
+     * Check whether a payment was made with an idempotency key
+     * 
+     * @param idempotencyKey The key of the payment
+     * @return true if the key was paid
+     */
+    public synchronized boolean isPaid(String idempotencyKey) {
+        return paymentKeys().contains(idempotencyKey);
+    }
+    
+    /**
+     * Get the keys of the payments made, collecting them from the history on first use
+     * 
+     * @return The payment keys
+     */
+    private Set<String> paymentKeys() {
+        if (paymentKeys == null) {
+            paymentKeys = new HashSet<>();
+            for (Transaction transaction : loadedTransactions()) {
+                if (transaction.getType() == Transaction.Type.PAYMENT) {
+                    paymentKeys.add(transaction.getId());
+                }
+            }
+        }
+        return paymentKeys;
+    }
+    
+    /**
+     * Record a transaction and notify the transaction listener, if any
+     * 
+     * @param transaction The transaction to record
+     */
+    private void recordTransaction(Transaction transaction) {
+        transactions.add(transaction);
+        
+        if (transactionListener != null) {
+            transactionListener.accept(transaction);
+        }
+    }
+    
+    /**
+     * Set a listener that is notified of every deposit, withdrawal and payment
+     * Used by PharmacyService to journal wallet activity. The listener is called while
+     * the wallet's lock is held, so it sees one wallet's transactions in order.
+     * 
+     * @param transactionListener The listener, or null to remove it
+     */
+    public void setTransactionListener(Consumer<Transaction> transactionListener) {
+        this.transactionListener = transactionListener;
+    }
+    
+    /**
+     * Restore a stored balance and transaction history without replaying the transactions
+     * Used when loading a binary snapshot
+     * 
+     * @param balance The stored balance
+     * @param transactions The stored transactions, oldest first
+     */
+    public synchronized void restoreState(double balance, List<Transaction> transactions) {
+        this.balance = balance;
+        this.transactions = new ArrayList<>(transactions);
+        this.historyLoader = null;
+        this.paymentKeys = null;
+    }
+    
+    /**
+     * Restore a stored balance and defer loading the transaction history until it is needed
+     * Used when the balance is read from the wallet ledger
+     * 
+     * @param balance The stored balance
+     * @param historyLoader Loads the stored transactions, oldest first
+     */
+    public synchronized void restoreBalance(double balance, Supplier<List<Transaction>> historyLoader) {
+        this.balance = balance;
+        this.transactions = new ArrayList<>();
+        this.historyLoader = historyLoader;
+        this.paymentKeys = null;
+    }
+    
+    /**
+     * Get the transaction list, loading the stored history first if it was deferred
+     * Transactions recorded before the load are kept if the loader did not return them
+     * 
+     * @return The transactions
+     */
+    private List<Transaction> loadedTransactions() {
+        if (historyLoader != null) {
+            List<Transaction> history = new ArrayList<>(historyLoader.get());
+            historyLoader = null;
+            
+            Set<String> loadedIds = new HashSet<>();
+            for (Transaction transaction : history) {
+                loadedIds.add(transaction.getId());
+            }
+            for (Transaction transaction : transactions) {
+                if (!loadedIds.contains(transaction.getId())) {
+                    history.add(transaction);
+                }
+            }
+            transactions = history;
+        }
+        return transactions;
+    }
+    
     /**
      * Process a refund to the wallet
      * 
@@ -409,14 +601,8 @@ public class Wallet  {
         
         String lastFourDigits = getLastFourDigits(cardNumber);
         
-        if (cards.containsKey(lastFourDigits)) {
-            return false;
-        }
-        
         Card card = new Card(cardNumber, holderName, expiryDate);
-        cards.put(lastFourDigits, card);
-        
-        return true;
+        return cards.putIfAbsent(lastFourDigits, card) == null;
     }
     
     /**
@@ -430,12 +616,7 @@ public class Wallet  {
             return false;
         }
         
-        if (!cards.containsKey(lastFourDigits)) {
-            return false;
-        }
-        
-        cards.remove(lastFourDigits);
-        return true;
+        return cards.remove(lastFourDigits) != null;
     }
     
     /**
@@ -500,8 +681,8 @@ public class Wallet  {
      * 
      * @return The transactions
      */
-    public List<Transaction> getTransactions() {
-        return new ArrayList<>(transactions);
+    public synchronized List<Transaction> getTransactions() {
+        return new ArrayList<>(loadedTransactions());
     }
     
     /**
@@ -509,22 +690,23 @@ public class Wallet  {
      * 
      * @return The number of transactions
      */
-    public int getTransactionCount() {
-        return transactions.size();
+    public synchronized int getTransactionCount() {
+        return loadedTransactions().size();
     }
     
     /**
      * Display all transactions in the wallet
      */
-    public void displayTransactions() {
+    public synchronized void displayTransactions() {
         System.out.println("\n🧾 ===== TRANSACTION HISTORY ===== 🧾");
         
-        if (transactions.isEmpty()) {
+        List<Transaction> history = loadedTransactions();
+        if (history.isEmpty()) {
             System.out.println("No transactions found.");
             return;
         }
         
-        for (Transaction transaction : transactions) {
+        for (Transaction transaction : history) {
             System.out.println("- " + transaction.toString());
         }
     }
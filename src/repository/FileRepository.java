@@ -0,0 +1,176 @@
+package repository;
+
+import models.Medicine;
+import models.Order;
+import models.Patient;
+import models.Prescription;
+import models.Wallet;
+import utils.FileHandler;
+import utils.WalletLedger;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.OptionalDouble;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+import java.util.stream.Collectors;
+
+/**
+ * Repository backed by one of the text files under data/, through FileHandler
+ *
+ * A text file always holds the whole collection, so saveAll rewrites the file
+ * with exactly the given entities and callers pass the complete collection.
+ * Reads load the file each time.
+ *
+ * @param <T> The entity type
+ */
+public class FileRepository<T> implements Repository<T> {
+    private final Supplier<List<T>> loader;
+    private final Consumer<List<T>> saver;
+    private final ToIntFunction<T> idOf;
+    
+    /**
+     * Constructor for a repository over a text file
+     *
+     * @param loader Loads the whole file
+     * @param saver Rewrites the whole file
+     * @param idOf Gets the ID of an entity
+     */
+    public FileRepository(Supplier<List<T>> loader, Consumer<List<T>> saver, ToIntFunction<T> idOf) {
+        this.loader = loader;
+        this.saver = saver;
+        this.idOf = idOf;
+    }
+    
+    @Override
+    public List<T> findAll() {
+        List<T> all = new ArrayList<>(loader.get());
+        all.sort(Comparator.comparingInt(idOf));
+        return all;
+    }
+    
+    @Override
+    public Optional<T> findById(int id) {
+        return loader.get().stream().filter(e -> idOf.applyAsInt(e) == id).findFirst();
+    }
+    
+    @Override
+    public List<T> findPage(int afterId, int limit) {
+        return findPage(afterId, limit, e -> true);
+    }
+    
+    /**
+     * Load the next page of the entities matching a filter
+     */
+    protected List<T> findPage(int afterId, int limit, Predicate<T> filter) {
+        return loader.get().stream()
+            .filter(e -> idOf.applyAsInt(e) > afterId)
+            .filter(filter)
+            .sorted(Comparator.comparingInt(idOf))
+            .limit(limit)
+            .collect(Collectors.toList());
+    }
+    
+    @Override
+    public boolean saveAll(List<T> entities) {
+        saver.accept(entities);
+        return true;
+    }
+    
+    @Override
+    public boolean delete(int id) {
+        List<T> all = new ArrayList<>(loader.get());
+        if (all.removeIf(e -> idOf.applyAsInt(e) == id)) {
+            saver.accept(all);
+        }
+        return true;
+    }
+    
+    /**
+     * Medicines stored in medicines.txt
+     */
+    public static class Medicines extends FileRepository<Medicine> implements MedicineRepository {
+        public Medicines() {
+            super(FileHandler::loadMedicines, FileHandler::saveMedicines, Medicine::getId);
+        }
+    }
+    
+    /**
+     * Patients stored in patients.txt
+     */
+    public static class Patients extends FileRepository<Patient> implements PatientRepository {
+        public Patients() {
+            super(FileHandler::loadPatients, FileHandler::savePatients, Patient::getId);
+        }
+        
+        @Override
+        public Optional<Patient> findByUsername(String username) {
+            return findAll().stream().filter(p -> p.getUsername().equalsIgnoreCase(username)).findFirst();
+        }
+    }
+    
+    /**
+     * Orders stored in orders.txt
+     */
+    public static class Orders extends FileRepository<Order> implements OrderRepository {
+        /**
+         * @param medicines Supplies the medicines order items are resolved against
+         */
+        public Orders(Supplier<List<Medicine>> medicines) {
+            super(() -> FileHandler.loadOrders(medicines.get()), FileHandler::saveOrders, Order::getId);
+        }
+        
+        @Override
+        public List<Order> findByPatient(int patientId, int afterId, int limit) {
+            return findPage(afterId, limit, o -> o.getPatientId() == patientId);
+        }
+    }
+    
+    /**
+     * Prescriptions stored in prescriptions.txt
+     */
+    public static class Prescriptions extends FileRepository<Prescription> implements PrescriptionRepository {
+        /**
+         * @param medicines Supplies the medicines prescription items are resolved against
+         */
+        public Prescriptions(Supplier<List<Medicine>> medicines) {
+            super(() -> FileHandler.loadPrescriptions(medicines.get()), FileHandler::savePrescriptions,
+                  Prescription::getId);
+        }
+        
+        @Override
+        public List<Prescription> findByPatient(int patientId, int afterId, int limit) {
+            return findPage(afterId, limit, p -> p.getPatientId() == patientId);
+        }
+    }
+    
+    /**
+     * Wallets stored in the per-wallet ledger segments under data/ledger
+     */
+    public static class Wallets implements WalletRepository {
+        private final WalletLedger ledger;
+        
+        public Wallets(WalletLedger ledger) {
+            this.ledger = ledger;
+        }
+        
+        @Override
+        public OptionalDouble findBalance(int patientId) {
+            return ledger.readBalance(patientId);
+        }
+        
+        @Override
+        public List<Wallet.Transaction> findTransactions(int patientId) {
+            return ledger.readHistory(patientId);
+        }
+        
+        @Override
+        public boolean appendTransactions(int patientId, List<Wallet.Transaction> transactions) {
+            return ledger.appendAll(patientId, transactions);
+        }
+    }
+}
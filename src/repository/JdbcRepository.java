@@ -0,0 +1,561 @@
+package repository;
+
+import models.Medicine;
+import models.Order;
+import models.Patient;
+import models.Prescription;
+import models.Wallet;
+import utils.FileHandler;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.OptionalDouble;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Repository stored in one table of a JDBC database
+ *
+ * Writes are prepared upserts sent in batches of BATCH_SIZE rows inside one
+ * transaction. Reads use keyset pagination (WHERE id > ? ORDER BY id LIMIT ?),
+ * so every page is an index range scan no matter how deep it is, and findAll
+ * walks the table page by page.
+ *
+ * Each row holds the entity's line in the text file format plus the columns
+ * that are searched on, so the file and database backends share one format.
+ *
+ * @param <T> The entity type
+ */
+public abstract class JdbcRepository<T> implements Repository<T> {
+    protected static final int BATCH_SIZE = 500;
+    protected static final int PAGE_SIZE = 1000;
+    
+    /**
+     * SQL dialects that differ in their upsert syntax
+     */
+    public enum Dialect {
+        POSTGRESQL,
+        H2;
+        
+        /**
+         * Pick the dialect for a JDBC URL; H2 serves as an embedded stand-in for PostgreSQL
+         *
+         * @param url The JDBC URL
+         * @return The dialect
+         */
+        public static Dialect forUrl(String url) {
+            return url.startsWith("jdbc:h2:") ? H2 : POSTGRESQL;
+        }
+        
+        /**
+         * Build an upsert statement
+         *
+         * @param table The table
+         * @param key The key column
+         * @param columns All columns, including the key
+         * @param updateExisting Whether existing rows are updated or left alone
+         * @return The SQL statement with one parameter per column
+         */
+        public String upsert(String table, String key, List<String> columns, boolean updateExisting) {
+            String names = String.join(", ", columns);
+            String params = columns.stream().map(c -> "?").collect(Collectors.joining(", "));
+            if (this == H2) {
+                // MERGE rewrites identical values for existing rows, which leaves them unchanged
+                return "MERGE INTO " + table + " (" + names + ") KEY (" + key + ") VALUES (" + params + ")";
+            }
+            String sql = "INSERT INTO " + table + " (" + names + ") VALUES (" + params + ") ON CONFLICT (" + key + ") ";
+            if (!updateExisting) {
+                return sql + "DO NOTHING";
+            }
+            return sql + "DO UPDATE SET " + columns.stream()
+                .filter(c -> !c.equals(key))
+                .map(c -> c + " = EXCLUDED." + c)
+                .collect(Collectors.joining(", "));
+        }
+    }
+    
+    /**
+     * Opens connections to the database
+     */
+    public static class ConnectionFactory {
+        private final String url;
+        private final String user;
+        private final String password;
+        private final Dialect dialect;
+        
+        /**
+         * Constructor for a connection factory
+         *
+         * @param url The JDBC URL
+         * @param user The database user, or null
+         * @param password The database password, or null
+         */
+        public ConnectionFactory(String url, String user, String password) {
+            this.url = url;
+            this.user = user;
+            this.password = password;
+            this.dialect = Dialect.forUrl(url);
+        }
+        
+        /**
+         * Open a new connection
+         *
+         * @return The connection
+         * @throws SQLException If the database cannot be reached
+         */
+        public Connection open() throws SQLException {
+            return user == null ? DriverManager.getConnection(url) : DriverManager.getConnection(url, user, password);
+        }
+        
+        public Dialect getDialect() { return dialect; }
+    }
+    
+    protected final ConnectionFactory connections;
+    private final String table;
+    private final List<String> columns;
+    private final String selectColumns;
+    
+    /**
+     * Constructor for a repository over a table whose first column is the int key "id"
+     *
+     * @param connections Opens database connections
+     * @param table The table name
+     * @param columns The columns, starting with "id"
+     */
+    protected JdbcRepository(ConnectionFactory connections, String table, String... columns) {
+        this.connections = connections;
+        this.table = table;
+        this.columns = Arrays.asList(columns);
+        this.selectColumns = String.join(", ", columns);
+    }
+    
+    /**
+     * Get the statements that create the table and its indexes if they do not exist
+     *
+     * @return The DDL statements
+     */
+    protected abstract List<String> schema();
+    
+    /**
+     * Bind an entity to the parameters of the upsert statement, one per column in order
+     *
+     * @param statement The statement
+     * @param entity The entity
+     * @throws SQLException If a parameter cannot be set
+     */
+    protected abstract void bind(PreparedStatement statement, T entity) throws SQLException;
+    
+    /**
+     * Map the current row to an entity
+     *
+     * @param row The result set positioned on a row, with the columns in order
+     * @return The entity, or empty if the row cannot be parsed
+     * @throws SQLException If a column cannot be read
+     */
+    protected abstract Optional<T> map(ResultSet row) throws SQLException;
+    
+    /**
+     * Create the table if it does not exist
+     *
+     * @throws SQLException If the statements fail
+     */
+    public void createSchema() throws SQLException {
+        try (Connection connection = connections.open(); Statement statement = connection.createStatement()) {
+            for (String ddl : schema()) {
+                statement.execute(ddl);
+            }
+        }
+    }
+    
+    @Override
+    public List<T> findAll() {
+        List<T> all = new ArrayList<>();
+        int[] lastId = {0};
+        int rows;
+        do {
+            rows = queryInto("id > ?", PAGE_SIZE, all, lastId, lastId[0]);
+        } while (rows == PAGE_SIZE);
+        return all;
+    }
+    
+    @Override
+    public Optional<T> findById(int id) {
+        return query("id = ?", 1, id).stream().findFirst();
+    }
+    
+    @Override
+    public List<T> findPage(int afterId, int limit) {
+        return query("id > ?", limit, afterId);
+    }
+    
+    @Override
+    public boolean saveAll(List<T> entities) {
+        if (entities.isEmpty()) {
+            return true;
+        }
+        String sql = connections.getDialect().upsert(table, "id", columns, true);
+        try (Connection connection = connections.open()) {
+            connection.setAutoCommit(false);
+            try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                int pending = 0;
+                for (T entity : entities) {
+                    bind(statement, entity);
+                    statement.addBatch();
+                    if (++pending == BATCH_SIZE) {
+                        statement.executeBatch();
+                        pending = 0;
+                    }
+                }
+                if (pending > 0) {
+                    statement.executeBatch();
+                }
+                connection.commit();
+                return true;
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            System.err.println("Error saving to table " + table + ": " + e.getMessage());
+            return false;
+        }
+    }
+    
+    @Override
+    public boolean delete(int id) {
+        try (Connection connection = connections.open();
+             PreparedStatement statement = connection.prepareStatement("DELETE FROM " + table + " WHERE id = ?")) {
+            statement.setInt(1, id);
+            statement.executeUpdate();
+            return true;
+        } catch (SQLException e) {
+            System.err.println("Error deleting from table " + table + ": " + e.getMessage());
+            return false;
+        }
+    }
+    
+    /**
+     * Run a keyset query, ordered by ID
+     *
+     * @param where The WHERE clause, with one parameter per value
+     * @param limit Maximum number of rows
+     * @param values The parameter values
+     * @return The mapped entities
+     */
+    protected List<T> query(String where, int limit, Object... values) {
+        List<T> entities = new ArrayList<>();
+        queryInto(where, limit, entities, new int[1], values);
+        return entities;
+    }
+    
+    /**
+     * Run a keyset query, ordered by ID, into a list
+     *
+     * @param where The WHERE clause, with one parameter per value
+     * @param limit Maximum number of rows
+     * @param into Receives the mapped entities
+     * @param lastId Receives the ID of the last row, the key of the next page
+     * @param values The parameter values
+     * @return Number of rows read, including rows that could not be mapped
+     */
+    private int queryInto(String where, int limit, List<T> into, int[] lastId, Object... values) {
+        String sql = "SELECT " + selectColumns + " FROM " + table + " WHERE " + where + " ORDER BY id LIMIT ?";
+        int rows = 0;
+        try (Connection connection = connections.open();
+             PreparedStatement statement = connection.prepareStatement(sql)) {
+            for (int i = 0; i < values.length; i++) {
+                statement.setObject(i + 1, values[i]);
+            }
+            statement.setInt(values.length + 1, limit);
+            try (ResultSet row = statement.executeQuery()) {
+                while (row.next()) {
+                    rows++;
+                    lastId[0] = row.getInt(1);
+                    map(row).ifPresent(into::add);
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("Error reading table " + table + ": " + e.getMessage());
+        }
+        return rows;
+    }
+    
+    /**
+     * Medicines stored in the medicines table
+     */
+    public static class Medicines extends JdbcRepository<Medicine> implements MedicineRepository {
+        public Medicines(ConnectionFactory connections) {
+            super(connections, "medicines", "id", "name", "stock", "record");
+        }
+        
+        @Override
+        protected List<String> schema() {
+            return Arrays.asList(
+                "CREATE TABLE IF NOT EXISTS medicines (id INT PRIMARY KEY, name VARCHAR(255), stock INT, record TEXT NOT NULL)");
+        }
+        
+        @Override
+        protected void bind(PreparedStatement statement, Medicine medicine) throws SQLException {
+            statement.setInt(1, medicine.getId());
+            statement.setString(2, medicine.getName());
+            statement.setInt(3, medicine.getStock());
+            statement.setString(4, FileHandler.formatMedicine(medicine));
+        }
+        
+        @Override
+        protected Optional<Medicine> map(ResultSet row) throws SQLException {
+            return FileHandler.parseMedicine(row.getString(4));
+        }
+    }
+    
+    /**
+     * Patients stored in the patients table
+     */
+    public static class Patients extends JdbcRepository<Patient> implements PatientRepository {
+        public Patients(ConnectionFactory connections) {
+            super(connections, "patients", "id", "username_key", "record");
+        }
+        
+        @Override
+        protected List<String> schema() {
+            return Arrays.asList(
+                "CREATE TABLE IF NOT EXISTS patients (id INT PRIMARY KEY, username_key VARCHAR(255), record TEXT NOT NULL)",
+                "CREATE INDEX IF NOT EXISTS patients_username ON patients (username_key)");
+        }
+        
+        @Override
+        protected void bind(PreparedStatement statement, Patient patient) throws SQLException {
+            statement.setInt(1, patient.getId());
+            statement.setString(2, patient.getUsername().toLowerCase());
+            statement.setString(3, FileHandler.formatPatient(patient));
+        }
+        
+        @Override
+        protected Optional<Patient> map(ResultSet row) throws SQLException {
+            return FileHandler.parsePatient(row.getString(3));
+        }
+        
+        @Override
+        public Optional<Patient> findByUsername(String username) {
+            return query("username_key = ?", 1, username.toLowerCase()).stream().findFirst();
+        }
+    }
+    
+    /**
+     * Orders stored in the orders table
+     */
+    public static class Orders extends JdbcRepository<Order> implements OrderRepository {
+        private final Supplier<List<Medicine>> medicines;
+        
+        /**
+         * @param connections Opens database connections
+         * @param medicines Supplies the medicines order items are resolved against
+         */
+        public Orders(ConnectionFactory connections, Supplier<List<Medicine>> medicines) {
+            super(connections, "orders", "id", "patient_id", "status", "order_date", "record");
+            this.medicines = medicines;
+        }
+        
+        @Override
+        protected List<String> schema() {
+            return Arrays.asList(
+                "CREATE TABLE IF NOT EXISTS orders (id INT PRIMARY KEY, patient_id INT NOT NULL, status VARCHAR(32), " +
+                "order_date BIGINT, record TEXT NOT NULL)",
+                "CREATE INDEX IF NOT EXISTS orders_patient ON orders (patient_id, id)");
+        }
+        
+        @Override
+        protected void bind(PreparedStatement statement, Order order) throws SQLException {
+            statement.setInt(1, order.getId());
+            statement.setInt(2, order.getPatientId());
+            statement.setString(3, order.getStatus() != null ? order.getStatus().name() : null);
+            statement.setLong(4, order.getOrderDate() != null ? order.getOrderDate().getTime() : 0L);
+            statement.setString(5, FileHandler.formatOrder(order));
+        }
+        
+        @Override
+        protected Optional<Order> map(ResultSet row) throws SQLException {
+            return FileHandler.parseOrder(row.getString(5), medicines.get());
+        }
+        
+        @Override
+        public List<Order> findByPatient(int patientId, int afterId, int limit) {
+            return query("patient_id = ? AND id > ?", limit, patientId, afterId);
+        }
+    }
+    
+    /**
+     * Prescriptions stored in the prescriptions table
+     */
+    public static class Prescriptions extends JdbcRepository<Prescription> implements PrescriptionRepository {
+        private final Supplier<List<Medicine>> medicines;
+        
+        /**
+         * @param connections Opens database connections
+         * @param medicines Supplies the medicines prescription items are resolved against
+         */
+        public Prescriptions(ConnectionFactory connections, Supplier<List<Medicine>> medicines) {
+            super(connections, "prescriptions", "id", "patient_id", "record");
+            this.medicines = medicines;
+        }
+        
+        @Override
+        protected List<String> schema() {
+            return Arrays.asList(
+                "CREATE TABLE IF NOT EXISTS prescriptions (id INT PRIMARY KEY, patient_id INT NOT NULL, record TEXT NOT NULL)",
+                "CREATE INDEX IF NOT EXISTS prescriptions_patient ON prescriptions (patient_id, id)");
+        }
+        
+        @Override
+        protected void bind(PreparedStatement statement, Prescription prescription) throws SQLException {
+            statement.setInt(1, prescription.getId());
+            statement.setInt(2, prescription.getPatientId());
+            statement.setString(3, FileHandler.formatPrescription(prescription));
+        }
+        
+        @Override
+        protected Optional<Prescription> map(ResultSet row) throws SQLException {
+            return FileHandler.parsePrescription(row.getString(3), medicines.get());
+        }
+        
+        @Override
+        public List<Prescription> findByPatient(int patientId, int afterId, int limit) {
+            return query("patient_id = ? AND id > ?", limit, patientId, afterId);
+        }
+    }
+    
+    /**
+     * Wallets stored in the wallets and wallet_transactions tables
+     * Transactions are read in pages keyed by their insertion sequence
+     */
+    public static class Wallets implements WalletRepository {
+        private static final List<String> TRANSACTION_COLUMNS = Arrays.asList(
+            "id", "patient_id", "type", "amount", "description", "balance_after", "created_at");
+        private static final List<String> BALANCE_COLUMNS = Arrays.asList("patient_id", "balance");
+        
+        private final ConnectionFactory connections;
+        
+        public Wallets(ConnectionFactory connections) {
+            this.connections = connections;
+        }
+        
+        /**
+         * Create the wallet tables if they do not exist
+         *
+         * @throws SQLException If the statements fail
+         */
+        public void createSchema() throws SQLException {
+            try (Connection connection = connections.open(); Statement statement = connection.createStatement()) {
+                statement.execute("CREATE TABLE IF NOT EXISTS wallets (patient_id INT PRIMARY KEY, " +
+                                  "balance DOUBLE PRECISION NOT NULL)");
+                statement.execute("CREATE TABLE IF NOT EXISTS wallet_transactions (" +
+                                  "seq BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY, " +
+                                  "id VARCHAR(64) NOT NULL UNIQUE, patient_id INT NOT NULL, type VARCHAR(16) NOT NULL, " +
+                                  "amount DOUBLE PRECISION NOT NULL, description VARCHAR(1024), " +
+                                  "balance_after DOUBLE PRECISION NOT NULL, created_at BIGINT NOT NULL)");
+                statement.execute("CREATE INDEX IF NOT EXISTS wallet_transactions_patient " +
+                                  "ON wallet_transactions (patient_id, seq)");
+            }
+        }
+        
+        @Override
+        public OptionalDouble findBalance(int patientId) {
+            try (Connection connection = connections.open();
+                 PreparedStatement statement = connection.prepareStatement(
+                     "SELECT balance FROM wallets WHERE patient_id = ?")) {
+                statement.setInt(1, patientId);
+                try (ResultSet row = statement.executeQuery()) {
+                    return row.next() ? OptionalDouble.of(row.getDouble(1)) : OptionalDouble.empty();
+                }
+            } catch (SQLException e) {
+                System.err.println("Error reading wallet balance: " + e.getMessage());
+                return OptionalDouble.empty();
+            }
+        }
+        
+        @Override
+        public List<Wallet.Transaction> findTransactions(int patientId) {
+            List<Wallet.Transaction> transactions = new ArrayList<>();
+            String sql = "SELECT seq, id, type, amount, description, balance_after, created_at " +
+                         "FROM wallet_transactions WHERE patient_id = ? AND seq > ? ORDER BY seq LIMIT ?";
+            try (Connection connection = connections.open();
+                 PreparedStatement statement = connection.prepareStatement(sql)) {
+                long lastSeq = 0;
+                int rows;
+                do {
+                    statement.setInt(1, patientId);
+                    statement.setLong(2, lastSeq);
+                    statement.setInt(3, PAGE_SIZE);
+                    rows = 0;
+                    try (ResultSet row = statement.executeQuery()) {
+                        while (row.next()) {
+                            rows++;
+                            lastSeq = row.getLong(1);
+                            transactions.add(new Wallet.Transaction(row.getString(2), patientId,
+                                Wallet.Transaction.Type.valueOf(row.getString(3)), row.getDouble(4), row.getString(5),
+                                row.getDouble(6), new Date(row.getLong(7))));
+                        }
+                    }
+                } while (rows == PAGE_SIZE);
+            } catch (SQLException e) {
+                System.err.println("Error reading wallet transactions: " + e.getMessage());
+            }
+            return transactions;
+        }
+        
+        @Override
+        public boolean appendTransactions(int patientId, List<Wallet.Transaction> transactions) {
+            if (transactions.isEmpty()) {
+                return true;
+            }
+            Dialect dialect = connections.getDialect();
+            try (Connection connection = connections.open()) {
+                connection.setAutoCommit(false);
+                try (PreparedStatement insert = connection.prepareStatement(
+                         dialect.upsert("wallet_transactions", "id", TRANSACTION_COLUMNS, false));
+                     PreparedStatement balance = connection.prepareStatement(
+                         dialect.upsert("wallets", "patient_id", BALANCE_COLUMNS, true))) {
+                    int pending = 0;
+                    for (Wallet.Transaction transaction : transactions) {
+                        insert.setString(1, transaction.getId());
+                        insert.setInt(2, patientId);
+                        insert.setString(3, transaction.getType().name());
+                        insert.setDouble(4, transaction.getAmount());
+                        insert.setString(5, transaction.getDescription());
+                        insert.setDouble(6, transaction.getBalanceAfter());
+                        insert.setLong(7, transaction.getDateTime() != null ? transaction.getDateTime().getTime() : 0L);
+                        insert.addBatch();
+                        if (++pending == BATCH_SIZE) {
+                            insert.executeBatch();
+                            pending = 0;
+                        }
+                    }
+                    if (pending > 0) {
+                        insert.executeBatch();
+                    }
+                    
+                    balance.setInt(1, patientId);
+                    balance.setDouble(2, transactions.get(transactions.size() - 1).getBalanceAfter());
+                    balance.executeUpdate();
+                    connection.commit();
+                    return true;
+                } catch (SQLException e) {
+                    connection.rollback();
+                    throw e;
+                }
+            } catch (SQLException e) {
+                System.err.println("Error appending wallet transactions: " + e.getMessage());
+                return false;
+            }
+        }
+    }
+}
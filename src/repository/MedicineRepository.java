@@ -0,0 +1,9 @@
+package repository;
+
+import models.Medicine;
+
+/**
+ * Repository for medicines
+ */
+public interface MedicineRepository extends Repository<Medicine> {
+}
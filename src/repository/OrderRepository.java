@@ -0,0 +1,21 @@
+package repository;
+
+import models.Order;
+
+import java.util.List;
+
+/**
+ * Repository for orders
+ */
+public interface OrderRepository extends Repository<Order> {
+    
+    /**
+     * Load the next page of a patient's orders after the given order ID
+     *
+     * @param patientId The patient ID
+     * @param afterId Last order ID of the previous page, or 0 for the first page
+     * @param limit Maximum number of orders to return
+     * @return Up to limit orders of the patient, ordered by ID
+     */
+    List<Order> findByPatient(int patientId, int afterId, int limit);
+}
@@ -0,0 +1,19 @@
+package repository;
+
+import models.Patient;
+
+import java.util.Optional;
+
+/**
+ * Repository for patients
+ */
+public interface PatientRepository extends Repository<Patient> {
+    
+    /**
+     * Find a patient by username, ignoring case
+     *
+     * @param username The username
+     * @return The patient if one has that username
+     */
+    Optional<Patient> findByUsername(String username);
+}
@@ -0,0 +1,21 @@
+package repository;
+
+import models.Prescription;
+
+import java.util.List;
+
+/**
+ * Repository for prescriptions
+ */
+public interface PrescriptionRepository extends Repository<Prescription> {
+    
+    /**
+     * Load the next page of a patient's prescriptions after the given prescription ID
+     *
+     * @param patientId The patient ID
+     * @param afterId Last prescription ID of the previous page, or 0 for the first page
+     * @param limit Maximum number of prescriptions to return
+     * @return Up to limit prescriptions of the patient, ordered by ID
+     */
+    List<Prescription> findByPatient(int patientId, int afterId, int limit);
+}
@@ -0,0 +1,128 @@
+package repository;
+
+import models.Medicine;
+import utils.WalletLedger;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * The repositories of one storage backend
+ *
+ * The backend is chosen with the system property pharmacy.store:
+ *   file (default)  the text files under data/ and the wallet ledger
+ *   jdbc            a shared database at pharmacy.jdbc.url, with optional
+ *                   pharmacy.jdbc.user and pharmacy.jdbc.password
+ *
+ * A shared backend lets several counters work on one store; the file backend
+ * keeps each installation's data in its own data/ directory.
+ */
+public class Repositories {
+    public static final String STORE_PROPERTY = "pharmacy.store";
+    public static final String JDBC_URL_PROPERTY = "pharmacy.jdbc.url";
+    public static final String JDBC_USER_PROPERTY = "pharmacy.jdbc.user";
+    public static final String JDBC_PASSWORD_PROPERTY = "pharmacy.jdbc.password";
+
+    private final MedicineRepository medicines;
+    private final OrderRepository orders;
+    private final PatientRepository patients;
+    private final PrescriptionRepository prescriptions;
+    private final WalletRepository wallets;
+    private final boolean shared;
+
+    private Repositories(MedicineRepository medicines, OrderRepository orders, PatientRepository patients,
+                         PrescriptionRepository prescriptions, WalletRepository wallets, boolean shared) {
+        this.medicines = medicines;
+        this.orders = orders;
+        this.patients = patients;
+        this.prescriptions = prescriptions;
+        this.wallets = wallets;
+        this.shared = shared;
+    }
+
+    /**
+     * Create the repositories of the text file backend
+     *
+     * @param medicineSource Supplies the medicines order and prescription items are resolved against
+     * @param ledger The wallet ledger
+     * @return The repositories
+     */
+    public static Repositories files(Supplier<List<Medicine>> medicineSource, WalletLedger ledger) {
+        return new Repositories(new FileRepository.Medicines(), new FileRepository.Orders(medicineSource),
+                                new FileRepository.Patients(), new FileRepository.Prescriptions(medicineSource),
+                                new FileRepository.Wallets(ledger), false);
+    }
+
+    /**
+     * Create the repositories of a JDBC database, creating missing tables
+     *
+     * @param url The JDBC URL
+     * @param user The database user, or null
+     * @param password The database password, or null
+     * @param medicineSource Supplies the medicines order and prescription items are resolved against
+     * @return The repositories
+     * @throws SQLException If the database cannot be reached or the tables cannot be created
+     */
+    public static Repositories jdbc(String url, String user, String password,
+                                    Supplier<List<Medicine>> medicineSource) throws SQLException {
+        JdbcRepository.ConnectionFactory connections = new JdbcRepository.ConnectionFactory(url, user, password);
+        JdbcRepository.Medicines medicines = new JdbcRepository.Medicines(connections);
+        JdbcRepository.Orders orders = new JdbcRepository.Orders(connections, medicineSource);
+        JdbcRepository.Patients patients = new JdbcRepository.Patients(connections);
+        JdbcRepository.Prescriptions prescriptions = new JdbcRepository.Prescriptions(connections, medicineSource);
+        JdbcRepository.Wallets wallets = new JdbcRepository.Wallets(connections);
+
+        medicines.createSchema();
+        orders.createSchema();
+        patients.createSchema();
+        prescriptions.createSchema();
+        wallets.createSchema();
+        return new Repositories(medicines, orders, patients, prescriptions, wallets, true);
+    }
+
+    /**
+     * Create the repositories of the backend selected by the system properties
+     * Falls back to the file backend when the database cannot be used
+     *
+     * @param medicineSource Supplies the medicines order and prescription items are resolved against
+     * @param ledger The wallet ledger used by the file backend
+     * @return The repositories
+     */
+    public static Repositories fromSystemProperties(Supplier<List<Medicine>> medicineSource, WalletLedger ledger) {
+        String store = System.getProperty(STORE_PROPERTY, "file");
+        if (store.equalsIgnoreCase("jdbc")) {
+            String url = System.getProperty(JDBC_URL_PROPERTY);
+            if (url == null || url.trim().isEmpty()) {
+                System.err.println("No " + JDBC_URL_PROPERTY + " set; using the file store.");
+            } else {
+                try {
+                    Repositories repositories = jdbc(url, System.getProperty(JDBC_USER_PROPERTY),
+                                                     System.getProperty(JDBC_PASSWORD_PROPERTY), medicineSource);
+                    System.out.println("Using the shared database store at " + url);
+                    return repositories;
+                } catch (SQLException e) {
+                    System.err.println("Error opening database store, using the file store: " + e.getMessage());
+                }
+            }
+        } else if (!store.equalsIgnoreCase("file")) {
+            System.err.println("Unknown " + STORE_PROPERTY + " '" + store + "'; using the file store.");
+        }
+        return files(medicineSource, ledger);
+    }
+
+    public MedicineRepository medicines() { return medicines; }
+    public OrderRepository orders() { return orders; }
+    public PatientRepository patients() { return patients; }
+    public PrescriptionRepository prescriptions() { return prescriptions; }
+    public WalletRepository wallets() { return wallets; }
+
+    /**
+     * Check whether the repositories are shared with other installations
+     *
+     * @return true for a database backend, false for the text files
+     */
+    public boolean isShared() {
+        return shared;
+    }
+}
@@ -0,0 +1,56 @@
+package repository;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Repository for one aggregate of the pharmacy system, keyed by an int ID
+ *
+ * Implementations either keep the data in the text files under data/ or in a
+ * shared database. Reads can be paged by ID (keyset pagination), so callers
+ * never need to load a whole table to walk it.
+ *
+ * @param <T> The entity type
+ */
+public interface Repository<T> {
+    
+    /**
+     * Load every entity
+     *
+     * @return All entities, ordered by ID
+     */
+    List<T> findAll();
+    
+    /**
+     * Find an entity by its ID
+     *
+     * @param id The ID
+     * @return The entity if it exists
+     */
+    Optional<T> findById(int id);
+    
+    /**
+     * Load the next page of entities after the given ID
+     *
+     * @param afterId Last ID of the previous page, or 0 for the first page
+     * @param limit Maximum number of entities to return
+     * @return Up to limit entities with an ID greater than afterId, ordered by ID
+     */
+    List<T> findPage(int afterId, int limit);
+    
+    /**
+     * Store the given entities, inserting new ones and updating existing ones
+     *
+     * @param entities The entities to store
+     * @return true if all entities were stored
+     */
+    boolean saveAll(List<T> entities);
+    
+    /**
+     * Delete an entity
+     *
+     * @param id The ID of the entity to delete
+     * @return true if the entity was deleted or did not exist
+     */
+    boolean delete(int id);
+}
@@ -0,0 +1,40 @@
+package repository;
+
+import models.Wallet;
+
+import java.util.List;
+import java.util.OptionalDouble;
+
+/**
+ * Repository for wallet balances and transactions, keyed by patient ID
+ *
+ * Wallets are append-only: transactions are never updated, and the balance is
+ * the running balance stored with the latest transaction.
+ */
+public interface WalletRepository {
+    
+    /**
+     * Read the current balance of a wallet
+     *
+     * @param patientId The patient ID
+     * @return The balance, or empty if the wallet has no stored transactions
+     */
+    OptionalDouble findBalance(int patientId);
+    
+    /**
+     * Load the transaction history of a wallet
+     *
+     * @param patientId The patient ID
+     * @return The transactions, oldest first
+     */
+    List<Wallet.Transaction> findTransactions(int patientId);
+    
+    /**
+     * Append transactions to a wallet, oldest first
+     *
+     * @param patientId The patient ID
+     * @param transactions The transactions
+     * @return true if all transactions were stored
+     */
+    boolean appendTransactions(int patientId, List<Wallet.Transaction> transactions);
+}
@@ -6,7 +6,11 @@ import java.util.HashMap;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Function;
 import java.util.stream.Collectors;
+import utils.EntityRegistry;
+import utils.OrderArchive;
+import utils.SalesAggregates;
 
 /**
  * AdminService provides methods for admin operations in the pharmacy
@@ -14,18 +18,47 @@ import java.util.stream.Collectors;
 public class AdminService {
     private List<Medicine> medicines;
     private List<Order> orders;
-
+    private EntityRegistry registry;
+    private Function<Integer, Iterable<Order>> orderHistorySource;
+    
     /**
      * Constructor to initialize AdminService
      * 
-     * @param medicines List of medicines in the pharmacy
-     * @param orders List of orders placed by patients
+     * @param registry The entity registry holding the medicines and the orders placed by patients
      */
-    public AdminService(List<Medicine> medicines, List<Order> orders) {
-        this.medicines = medicines;
-        this.orders = orders;
+    public AdminService(EntityRegistry registry) {
+        this.registry = registry;
+        this.medicines = registry.medicines();
+        this.orders = registry.orders();
     }
-
+    
+    /**
+     * Set where reports read the complete order history, including archived orders
+     * 
+     * @param orderHistorySource Function returning the order history for a patient ID
+     */
+    public void setOrderHistorySource(Function<Integer, Iterable<Order>> orderHistorySource) {
+        this.orderHistorySource = orderHistorySource;
+    }
+    
+    /**
+     * Get every order ever placed, falling back to the resident orders
+     * 
+     * @return Iterable over all orders
+     */
+    private Iterable<Order> allOrders() {
+        return orderHistorySource != null ? orderHistorySource.apply(OrderArchive.ALL_PATIENTS) : orders;
+    }
+    
+    /**
+     * Recount the sales totals from every order ever placed
+     * Call once the order history source is set, so archived sales are counted too;
+     * after that the totals follow the orders as they are completed
+     */
+    public void rebuildSalesTotals() {
+        registry.sales().rebuild(allOrders());
+    }
+    
     /**
      * Add a new medicine to the pharmacy
      * 
@@ -34,7 +67,7 @@ public class AdminService {
      */
     public boolean addMedicine(Medicine medicine) {
         // Check if medicine with the same ID already exists
-        if (medicines.stream().anyMatch(m -> m.getId() == medicine.getId())) {
+        if (registry.medicines().containsId(medicine.getId())) {
             System.out.println("Medicine with ID " + medicine.getId() + " already exists.");
             return false;
         }
@@ -43,7 +76,7 @@ public class AdminService {
         System.out.println("Medicine added successfully: " + medicine.getName());
         return true;
     }
-
+    
     /**
      * Remove a medicine from the pharmacy
      * 
@@ -62,7 +95,7 @@ public class AdminService {
         System.out.println("Medicine removed successfully: " + medicineToRemove.getName());
         return true;
     }
-
+    
     /**
      * Update the details of a medicine
      * 
@@ -92,11 +125,12 @@ public class AdminService {
         medicineToUpdate.setQuantity(quantity);
         medicineToUpdate.setCategory(category);
         medicineToUpdate.setRequiresPrescription(requiresPrescription);
+        registry.medicineSearch().update(medicineToUpdate);
         
         System.out.println("Medicine updated successfully: " + medicineToUpdate.getName());
         return true;
     }
-
+    
     /**
      * Generate a report for all medicines in the pharmacy
      */
@@ -127,7 +161,7 @@ public class AdminService {
         System.out.printf("Total Inventory Value: %.2f LE\n", totalValue);
         System.out.println("================================================================");
     }
-
+    
     /**
      * Generate a report for a specific medicine
      * 
@@ -152,43 +186,26 @@ public class AdminService {
         System.out.println("Current Stock: " + medicine.getQuantity());
         System.out.println("Total Stock Value: " + String.format("%.2f", medicine.getPrice() * medicine.getQuantity()) + " LE");
         
-        // Calculate sales information
-        int totalSold = 0;
-        double totalRevenue = 0.0;
-        
-        for (Order order : orders) {
-            if (order.getStatus() == Order.Status.COMPLETED) {
-                for (Map.Entry<Medicine, Integer> entry : order.getMedicines().entrySet()) {
-                    if (entry.getKey().getId() == medicine.getId()) {
-                        int quantity = entry.getValue();
-                        totalSold += quantity;
-                        totalRevenue += quantity * medicine.getPrice();
-                    }
-                }
-            }
-        }
+        // Sales information, at the prices the medicine was sold for
+        SalesAggregates sales = registry.sales();
+        long totalSold = sales.getUnitsSold(medicine.getId());
+        double totalRevenue = sales.getRevenue(medicine.getId());
         
         System.out.println("\nSales Information:");
         System.out.println("Total Units Sold: " + totalSold);
         System.out.println("Total Revenue: " + String.format("%.2f", totalRevenue) + " LE");
         System.out.println("================================================================");
     }
-
+    
     /**
      * Generate a revenue report for the pharmacy
      */
     public void generateRevenueReport() {
         System.out.println("\n===== PHARMACY REVENUE REPORT =====");
         
-        double totalRevenue = 0.0;
-        int totalOrdersCompleted = 0;
-        
-        for (Order order : orders) {
-            if (order.getStatus() == Order.Status.COMPLETED) {
-                totalRevenue += order.getTotalAmount();
-                totalOrdersCompleted++;
-            }
-        }
+        SalesAggregates sales = registry.sales();
+        double totalRevenue = sales.getTotalRevenue();
+        int totalOrdersCompleted = sales.getCompletedOrderCount();
         
         System.out.println("Total Completed Orders: " + totalOrdersCompleted);
         System.out.println("Total Revenue: " + String.format("%.2f", totalRevenue) + " LE");
@@ -207,31 +224,16 @@ public class AdminService {
         
         System.out.println("================================================================");
     }
-
+    
     /**
      * Calculate revenue by medicine category
      * 
      * @return Map of category names to revenue amounts
      */
     private Map<String, Double> calculateRevenueByCategory() {
-        Map<String, Double> revenueByCategory = new java.util.HashMap<>();
-        
-        for (Order order : orders) {
-            if (order.getStatus() == Order.Status.COMPLETED) {
-                for (Map.Entry<Medicine, Integer> entry : order.getMedicines().entrySet()) {
-                    Medicine medicine = entry.getKey();
-                    int quantity = entry.getValue();
-                    double revenue = medicine.getPrice() * quantity;
-                    
-                    String category = medicine.getCategory();
-                    revenueByCategory.put(category, revenueByCategory.getOrDefault(category, 0.0) + revenue);
-                }
-            }
-        }
-        
-        return revenueByCategory;
+        return registry.sales().getRevenueByCategory();
     }
-
+    
     /**
      * Find a medicine by its ID
      * 
@@ -239,10 +241,7 @@ public class AdminService {
      * @return The medicine object if found, null otherwise
      */
     private Medicine findMedicineById(int medicineId) {
-        return medicines.stream()
-                        .filter(m -> m.getId() == medicineId)
-                        .findFirst()
-                        .orElse(null);
+        return registry.findMedicine(medicineId);
     }
     
     /**
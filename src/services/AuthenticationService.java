@@ -5,6 +5,8 @@ import models.Doctor;
 import models.Patient;
 import models.Pharmacist;
 import models.User;
+import utils.EntityRegistry;
+import utils.UsernameIndex;
 
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
@@ -12,7 +14,6 @@ import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 import java.util.Base64;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 import java.util.function.Function;
 
@@ -25,25 +26,16 @@ public class AuthenticationService {
     private Map<String, Integer> loginAttempts = new HashMap<>();
     private Map<String, Long> lockoutTimes = new HashMap<>();
     
-    private List<Admin> admins;
-    private List<Patient> patients;
-    private List<Doctor> doctors;
-    private List<Pharmacist> pharmacists;
+    // Username index over all four roles, kept current by the registry's user lists
+    private UsernameIndex usernames;
     
     /**
      * Constructor to initialize AuthenticationService
      * 
-     * @param admins List of admins
-     * @param patients List of patients
-     * @param doctors List of doctors
-     * @param pharmacists List of pharmacists
+     * @param registry The entity registry holding the users
      */
-    public AuthenticationService(List<Admin> admins, List<Patient> patients, 
-                               List<Doctor> doctors, List<Pharmacist> pharmacists) {
-        this.admins = admins;
-        this.patients = patients;
-        this.doctors = doctors;
-        this.pharmacists = pharmacists;
+    public AuthenticationService(EntityRegistry registry) {
+        this.usernames = registry.usernames();
     }
     
     /**
@@ -119,11 +111,7 @@ public class AuthenticationService {
      * @return Admin object if authentication successful, null otherwise
      */
     public Admin authenticateAdmin(String username, String password) {
-        return authenticate(username, password, 
-            un -> admins.stream()
-                .filter(a -> a.getUsername().equals(un))
-                .findFirst()
-                .orElse(null));
+        return authenticate(username, password, un -> usernames.find(un, Admin.class, false));
     }
     
     /**
@@ -134,12 +122,8 @@ public class AuthenticationService {
      * @return Patient object if authentication successful, null otherwise
      */
     public Patient authenticatePatient(String username, String password) {
-        // Perform case-insensitive username matching for patients
-        return authenticate(username, password, 
-            un -> patients.stream()
-                .filter(p -> p.getUsername().equalsIgnoreCase(un))
-                .findFirst()
-                .orElse(null));
+        // Patients may log in with any letter case; the other roles match exactly
+        return authenticate(username, password, un -> usernames.find(un, Patient.class, true));
     }
     
     /**
@@ -150,11 +134,7 @@ public class AuthenticationService {
      * @return Doctor object if authentication successful, null otherwise
      */
     public Doctor authenticateDoctor(String username, String password) {
-        return authenticate(username, password, 
-            un -> doctors.stream()
-                .filter(d -> d.getUsername().equals(un))
-                .findFirst()
-                .orElse(null));
+        return authenticate(username, password, un -> usernames.find(un, Doctor.class, false));
     }
     
     /**
@@ -165,11 +145,7 @@ public class AuthenticationService {
      * @return Pharmacist object if authentication successful, null otherwise
      */
     public Pharmacist authenticatePharmacist(String username, String password) {
-        return authenticate(username, password, 
-            un -> pharmacists.stream()
-                .filter(p -> p.getUsername().equals(un))
-                .findFirst()
-                .orElse(null));
+        return authenticate(username, password, un -> usernames.find(un, Pharmacist.class, false));
     }
     
     /**
@@ -353,6 +329,16 @@ public class AuthenticationService {
         return true;
     }
     
+    /**
+     * Check whether a username is taken by a user of any role, ignoring case
+     * 
+     * @param username The username to check
+     * @return true if the username is already in use
+     */
+    public boolean isUsernameTaken(String username) {
+        return usernames.isTaken(username);
+    }
+    
     /**
      *setHashedPassword - Secures user credentials during account creation
      * 
@@ -6,6 +6,10 @@ import models.Medicine;
 import models.Message;
 import models.Patient;
 import models.Prescription;
+import models.PrescriptionStatus;
+import utils.IdAllocator;
+import utils.MessageStore;
+import utils.UsernameIndex;
 
 import java.time.LocalDate;
 import java.util.ArrayList;
@@ -21,6 +25,12 @@ public class DoctorService {
     private List<Prescription> prescriptions;
     private List<Medicine> medicines;
     private List<Consultation> consultations;
+    private MessageStore messageStore;
+    private IdAllocator ids;
+    private UsernameIndex usernames;
+    
+    // The console shows this many of the latest messages of a consultation
+    private static final int MESSAGE_PAGE_SIZE = 10;
     
     private Scanner scanner;
     
@@ -65,6 +75,33 @@ public class DoctorService {
         this.scanner = new Scanner(System.in);
     }
     
+    /**
+     * Set the store consultation messages are read from and sent to
+     * 
+     * @param messageStore The message store
+     */
+    public void setMessageStore(MessageStore messageStore) {
+        this.messageStore = messageStore;
+    }
+    
+    /**
+     * Set where new prescription and consultation IDs are taken from
+     * 
+     * @param ids The ID allocator
+     */
+    public void setIdAllocator(IdAllocator ids) {
+        this.ids = ids;
+    }
+    
+    /**
+     * Set the index that keeps usernames unique across all roles
+     * 
+     * @param usernames The username index
+     */
+    public void setUsernameIndex(UsernameIndex usernames) {
+        this.usernames = usernames;
+    }
+    
     /**
      * Show doctor menu
      * 
@@ -156,7 +193,7 @@ public class DoctorService {
         Patient patient = uniquePatients.get(patientIndex);
         
         // Create prescription
-        int prescriptionId = prescriptions.size() + 1;
+        int prescriptionId = ids.next(IdAllocator.Sequence.PRESCRIPTION);
         
         System.out.println("\nCreating prescription for " + patient.getName());
         System.out.print("Enter prescription instructions: ");
@@ -383,7 +420,8 @@ public class DoctorService {
             
             System.out.println("\n" + (i + 1) + ". Consultation with " + patientName);
             System.out.println("   Date: " + consultation.getDateTime());
-            System.out.println("   Messages: " + consultation.getMessages().size());
+            System.out.println("   Messages: " + messageStore.count(consultation)
+                + " (" + messageStore.unreadCount(consultation) + " unread)");
         }
         
         System.out.print("\nSelect a consultation to view (0 to go back): ");
@@ -416,10 +454,14 @@ public class DoctorService {
         System.out.println("Notes: " + consultation.getNotes());
         
         System.out.println("\nMessages:");
-        if (consultation.getMessages().isEmpty()) {
+        MessageStore.Page page = messageStore.latest(consultation, MESSAGE_PAGE_SIZE);
+        if (page.getMessages().isEmpty()) {
             System.out.println("No messages yet.");
         } else {
-            for (Message message : consultation.getMessages()) {
+            if (page.hasOlder()) {
+                System.out.println("(" + (page.getCursor() - 1) + " earlier messages not shown)");
+            }
+            for (Message message : page.getMessages()) {
                 String sender;
                 if (message.getSenderId() == consultation.getDoctorId()) {
                     sender = "Doctor";
@@ -431,6 +473,7 @@ public class DoctorService {
                 
                 System.out.println("[" + message.getTimestamp() + "] " + sender + ": " + message.getContent());
             }
+            messageStore.markRead(consultation);
         }
         
         // Option to send a new message
@@ -441,10 +484,11 @@ public class DoctorService {
             String messageContent = scanner.nextLine().trim();
             
             if (!messageContent.isEmpty()) {
-                int messageId = consultation.getMessages().size() + 1;
-                Message message = new Message(messageId, consultation.getDoctorId(), consultation.getPatientId(), messageContent);
-                consultation.addMessage(message);
-                System.out.println("Message sent successfully.");
+                // The message store numbers the message
+                Message message = new Message(0, consultation.getDoctorId(), consultation.getPatientId(), messageContent);
+                if (messageStore.append(consultation, message)) {
+                    System.out.println("Message sent successfully.");
+                }
             }
         }
     }
@@ -494,19 +538,15 @@ public class DoctorService {
         System.out.print("Enter initial notes for the consultation: ");
         String notes = scanner.nextLine();
         
-        int consultationId = 1;
-        // Get the highest consultation ID currently in use
-        for (Consultation consultation : doctor.getConsultations()) {
-            if (consultation.getId() >= consultationId) {
-                consultationId = consultation.getId() + 1;
-            }
-        }
+        int consultationId = ids.next(IdAllocator.Sequence.CONSULTATION);
         
         Consultation consultation = new Consultation(consultationId, doctor.getId(), patient.getId(), notes);
         
         // Add consultation to doctor and patient
         doctor.addConsultation(consultation);
         patient.addConsultation(consultation);
+        // Registering it opens its thread in the message store; it is saved with the rest of the data
+        consultations.add(consultation);
         
         System.out.println("Consultation created successfully.");
         
@@ -518,9 +558,10 @@ public class DoctorService {
             String messageContent = scanner.nextLine().trim();
             
             if (!messageContent.isEmpty()) {
-                Message message = new Message(1, doctor.getId(), patient.getId(), messageContent);
-                consultation.addMessage(message);
-                System.out.println("Message sent successfully.");
+                Message message = new Message(0, doctor.getId(), patient.getId(), messageContent);
+                if (messageStore.append(consultation, message)) {
+                    System.out.println("Message sent successfully.");
+                }
             }
         }
     }
@@ -585,10 +626,11 @@ public class DoctorService {
             return;
         }
         
-        // Create and add the message
-        int messageId = selectedConsultation.getMessages().size() + 1;
-        Message message = new Message(messageId, doctor.getId(), patient.getId(), messageContent);
-        selectedConsultation.addMessage(message);
+        // Create and add the message; the message store numbers it
+        Message message = new Message(0, doctor.getId(), patient.getId(), messageContent);
+        if (!messageStore.append(selectedConsultation, message)) {
+            return;
+        }
         
         System.out.println("Message sent successfully.");
     }
@@ -678,7 +720,7 @@ public class DoctorService {
             .filter(d -> d.getId() == doctorId)
             .findFirst()
             .orElse(null);
-            
+        
         if (doctor == null) {
             System.out.println("Doctor with ID " + doctorId + " not found.");
             return;
@@ -731,7 +773,7 @@ public class DoctorService {
             .filter(d -> d.getId() == doctorId)
             .findFirst()
             .orElse(null);
-            
+        
         if (doctor == null) {
             System.out.println("Doctor with ID " + doctorId + " not found.");
             return null;
@@ -742,14 +784,14 @@ public class DoctorService {
             .filter(p -> p.getId() == patientId)
             .findFirst()
             .orElse(null);
-            
+        
         if (patient == null) {
             System.out.println("Patient with ID " + patientId + " not found.");
             return null;
         }
         
         // Create a new prescription
-        int prescriptionId = prescriptions.size() + 1;
+        int prescriptionId = ids.next(IdAllocator.Sequence.PRESCRIPTION);
         LocalDate issueDate = LocalDate.now();
         LocalDate expiryDate = issueDate.plusDays(30); // Default 30-day validity
         
@@ -785,7 +827,7 @@ public class DoctorService {
             .filter(d -> d.getId() == doctorId)
             .findFirst()
             .orElse(null);
-            
+        
         if (doctor == null) {
             System.out.println("Doctor with ID " + doctorId + " not found.");
             return false;
@@ -796,7 +838,7 @@ public class DoctorService {
             .filter(p -> p.getId() == prescriptionId)
             .findFirst()
             .orElse(null);
-            
+        
         if (prescription == null) {
             System.out.println("Prescription with ID " + prescriptionId + " not found.");
             return false;
@@ -813,7 +855,7 @@ public class DoctorService {
             .filter(m -> m.getId() == medicineId)
             .findFirst()
             .orElse(null);
-            
+        
         if (medicine == null) {
             System.out.println("Medicine with ID " + medicineId + " not found.");
             return false;
@@ -846,7 +888,7 @@ public class DoctorService {
             .filter(d -> d.getId() == doctorId)
             .findFirst()
             .orElse(null);
-            
+        
         if (doctor == null) {
             System.out.println("Doctor with ID " + doctorId + " not found.");
             return false;
@@ -857,7 +899,7 @@ public class DoctorService {
             .filter(p -> p.getId() == prescriptionId)
             .findFirst()
             .orElse(null);
-            
+        
         if (prescription == null) {
             System.out.println("Prescription with ID " + prescriptionId + " not found.");
             return false;
@@ -869,9 +911,9 @@ public class DoctorService {
             return false;
         }
         
-        // Update prescription status and pharmacy ID
-        prescription.setStatus("Sent to Pharmacy");
+        // Assign the pharmacy and mark the prescription pending there, which queues it at that pharmacy
         prescription.setPharmacyId(pharmacyId);
+        prescription.setStatus(PrescriptionStatus.PENDING);
         
         System.out.println("Prescription #" + prescriptionId + " sent to pharmacy with ID " + pharmacyId);
         return true;
@@ -890,6 +932,12 @@ public class DoctorService {
             return false;
         }
         
+        // Usernames are unique across all roles; reserve it so a concurrent registration cannot take it too
+        if (!usernames.tryReserve(doctor)) {
+            System.out.println("Username " + doctor.getUsername() + " is already taken.");
+            return false;
+        }
+        
         doctors.add(doctor);
         System.out.println("Doctor account created successfully for: " + doctor.getName());
         return true;
@@ -3,10 +3,15 @@ package services;
 import models.Patient;
 import models.Medicine;
 import models.Order;
+import models.OrderItem;
 import models.Wallet;
+import utils.EntityRegistry;
+import utils.IdAllocator;
+import utils.StockTransaction;
 
 import java.util.List;
 import java.util.Map;
+import java.util.function.Function;
 
 /**
  * PatientService - Provides methods for patient operations in the pharmacy
@@ -21,23 +26,30 @@ public class PatientService {
     private List<Patient> patients;
     private List<Order> orders;
     private List<Medicine> medicines;
-    private int nextOrderId;
-
+    private EntityRegistry registry;
+    private Function<Integer, Iterable<Order>> orderHistorySource;
+    
     /**
      * Constructor to initialize PatientService
      * 
-     * @param patients List of patients
-     * @param orders List of orders
-     * @param medicines List of medicines
-     * @param nextOrderId Next available order ID
+     * @param registry The entity registry holding the patients, orders and medicines, and handing out order IDs
      */
-    public PatientService(List<Patient> patients, List<Order> orders, List<Medicine> medicines, int nextOrderId) {
-        this.patients = patients;
-        this.orders = orders;
-        this.medicines = medicines;
-        this.nextOrderId = nextOrderId;
+    public PatientService(EntityRegistry registry) {
+        this.registry = registry;
+        this.patients = registry.patients();
+        this.orders = registry.orders();
+        this.medicines = registry.medicines();
     }
-
+    
+    /**
+     * Set where the complete order history, including archived orders, is read from
+     * 
+     * @param orderHistorySource Function returning the order history for a patient ID
+     */
+    public void setOrderHistorySource(Function<Integer, Iterable<Order>> orderHistorySource) {
+        this.orderHistorySource = orderHistorySource;
+    }
+    
     /**
      * Create a new patient account
      * 
@@ -46,16 +58,22 @@ public class PatientService {
      */
     public boolean createAccount(Patient patient) {
         // Check if patient with the same ID already exists
-        if (patients.stream().anyMatch(p -> p.getId() == patient.getId())) {
+        if (registry.patients().containsId(patient.getId())) {
             System.out.println("Patient with ID " + patient.getId() + " already exists.");
             return false;
         }
         
+        // Usernames are unique across all roles; reserve it so a concurrent registration cannot take it too
+        if (!registry.usernames().tryReserve(patient)) {
+            System.out.println("Username " + patient.getUsername() + " is already taken.");
+            return false;
+        }
+        
         patients.add(patient);
         System.out.println("Patient account created successfully for: " + patient.getName());
         return true;
     }
-
+    
     /**
      * Update patient account information
      * 
@@ -99,7 +117,7 @@ public class PatientService {
         System.out.println("Patient account updated successfully for: " + patientToUpdate.getName());
         return true;
     }
-
+    
     /**
      * Place a new order for a patient
      * 
@@ -115,10 +133,10 @@ public class PatientService {
             return null;
         }
         
-        Order newOrder = new Order(nextOrderId++, patientId);
+        Order newOrder = new Order(registry.ids().next(IdAllocator.Sequence.ORDER), patientId);
         
-        // Add medicines to the order
-        boolean allMedicinesAvailable = true;
+        // Take the stock of every line in one transaction; nothing is taken if one line is short
+        StockTransaction stock = new StockTransaction(registry::findMedicine);
         for (Map.Entry<Integer, Integer> entry : medicineQuantities.entrySet()) {
             int medicineId = entry.getKey();
             int quantity = entry.getValue();
@@ -127,31 +145,16 @@ public class PatientService {
             
             if (medicine == null) {
                 System.out.println("Medicine with ID " + medicineId + " not found.");
-                allMedicinesAvailable = false;
-                break;
+                return null;
             }
             
-            if (medicine.getQuantity() < quantity) {
-                System.out.println("Insufficient stock for medicine: " + medicine.getName() + 
-                                   ". Available: " + medicine.getQuantity() + ", Requested: " + quantity);
-                allMedicinesAvailable = false;
-                break;
-            }
+            stock.take(medicineId, quantity);
             
             // Add medicine to the order
             newOrder.addMedicine(medicine, quantity);
-            
-            // Update stock
-            medicine.updateStock(quantity);
         }
         
-        if (!allMedicinesAvailable) {
-            // Revert any stock changes if order fails
-            for (Map.Entry<Medicine, Integer> entry : newOrder.getMedicines().entrySet()) {
-                Medicine medicine = entry.getKey();
-                int quantity = entry.getValue();
-                medicine.restoreStock(quantity);
-            }
+        if (!commitStock(stock)) {
             return null;
         }
         
@@ -168,7 +171,7 @@ public class PatientService {
         
         return newOrder;
     }
-
+    
     /**
      * Cancel an existing order
      * 
@@ -177,49 +180,29 @@ public class PatientService {
      * @return true if order was canceled successfully, false otherwise
      */
     public boolean cancelOrder(int patientId, int orderId) {
-        Patient patient = findPatientById(patientId);
-        
-        if (patient == null) {
-            System.out.println("Patient with ID " + patientId + " not found.");
-            return false;
-        }
-        
-        Order orderToCancel = findOrderById(orderId);
+        Order orderToCancel = findChangeableOrder(patientId, orderId);
         
         if (orderToCancel == null) {
-            System.out.println("Order with ID " + orderId + " not found.");
             return false;
         }
         
-        if (orderToCancel.getPatientId() != patientId) {
-            System.out.println("Order does not belong to this patient.");
+        // Only the request that cancels the order returns its stock
+        if (claimCancellation(orderToCancel) == null) {
             return false;
         }
         
-        if (orderToCancel.getStatus() == Order.Status.CANCELLED) {
-            System.out.println("Order is already canceled.");
-            return false;
-        }
-        
-        if (orderToCancel.getStatus() == Order.Status.COMPLETED) {
-            System.out.println("Cannot cancel a completed order.");
-            return false;
-        }
-        
-        // Update order status
-        orderToCancel.setStatus(Order.Status.CANCELLED);
-        
         // Restore medicine stock
-        for (Map.Entry<Medicine, Integer> entry : orderToCancel.getMedicines().entrySet()) {
-            Medicine medicine = entry.getKey();
-            int quantity = entry.getValue();
-            medicine.restoreStock(quantity);
+        for (OrderItem item : orderToCancel.getItems()) {
+            Medicine medicine = findMedicineById(item.getMedicineId());
+            if (medicine != null) {
+                medicine.restoreStock(item.getQuantity());
+            }
         }
         
         System.out.println("Order canceled successfully. Order ID: " + orderId);
         return true;
     }
-
+    
     /**
      * Update an existing order
      * 
@@ -229,23 +212,135 @@ public class PatientService {
      * @return true if order was updated successfully, false otherwise
      */
     public boolean updateOrder(int patientId, int orderId, Map<Integer, Integer> medicineQuantities) {
-        // Cancel the existing order
-        if (!cancelOrder(patientId, orderId)) {
+        Order original = findChangeableOrder(patientId, orderId);
+        
+        if (original == null) {
             return false;
         }
         
-        // Place a new order
-        Order newOrder = placeOrder(patientId, medicineQuantities);
+        Order newOrder = new Order(registry.ids().next(IdAllocator.Sequence.ORDER), patientId);
         
-        if (newOrder == null) {
+        // Return the original order's stock and take the new order's in one transaction,
+        // so only the difference moves and the original stays if the new order cannot be placed
+        StockTransaction stock = new StockTransaction(registry::findMedicine);
+        for (OrderItem item : original.getItems()) {
+            stock.give(item.getMedicineId(), item.getQuantity());
+        }
+        for (Map.Entry<Integer, Integer> entry : medicineQuantities.entrySet()) {
+            Medicine medicine = findMedicineById(entry.getKey());
+            
+            if (medicine == null) {
+                System.out.println("Medicine with ID " + entry.getKey() + " not found.");
+                System.out.println("Failed to update order.");
+                return false;
+            }
+            
+            stock.take(entry.getKey(), entry.getValue());
+            newOrder.addMedicine(medicine, entry.getValue());
+        }
+        
+        // Cancel the original first, so a concurrent cancel or update cannot return its stock as well
+        Order.Status previous = claimCancellation(original);
+        if (previous == null) {
             System.out.println("Failed to update order.");
             return false;
         }
         
+        if (!commitStock(stock)) {
+            original.compareAndSetStatus(Order.Status.CANCELLED, previous);
+            System.out.println("Failed to update order.");
+            return false;
+        }
+        
+        Patient patient = findPatientById(patientId);
+        orders.add(newOrder);
+        patient.addOrder(newOrder);
+        
         System.out.println("Order updated successfully. New Order ID: " + newOrder.getId());
+        newOrder.printReceipt(patient.getName());
         return true;
     }
-
+    
+    /**
+     * Find an order a patient may still cancel or update
+     * 
+     * @param patientId The ID of the patient
+     * @param orderId The ID of the order
+     * @return The order, or null if it does not exist, is not the patient's or is closed
+     */
+    private Order findChangeableOrder(int patientId, int orderId) {
+        Patient patient = findPatientById(patientId);
+        
+        if (patient == null) {
+            System.out.println("Patient with ID " + patientId + " not found.");
+            return null;
+        }
+        
+        Order order = findOrderById(orderId);
+        
+        if (order == null) {
+            System.out.println("Order with ID " + orderId + " not found.");
+            return null;
+        }
+        
+        if (order.getPatientId() != patientId) {
+            System.out.println("Order does not belong to this patient.");
+            return null;
+        }
+        
+        if (order.getStatus() == Order.Status.CANCELLED) {
+            System.out.println("Order is already canceled.");
+            return null;
+        }
+        
+        if (order.getStatus() == Order.Status.COMPLETED) {
+            System.out.println("Cannot cancel a completed order.");
+            return null;
+        }
+        
+        return order;
+    }
+    
+    /**
+     * Cancel an order found by findChangeableOrder, unless another request changed it first
+     * 
+     * @param order The order
+     * @return The status the order had before, or null if it was already canceled or completed
+     */
+    private Order.Status claimCancellation(Order order) {
+        Order.Status current = order.getStatus();
+        if (current != Order.Status.CANCELLED && current != Order.Status.COMPLETED
+                && order.compareAndSetStatus(current, Order.Status.CANCELLED)) {
+            return current;
+        }
+        System.out.println("Order was changed by another request.");
+        return null;
+    }
+    
+    /**
+     * Commit a stock transaction, reporting why it failed
+     * 
+     * @param stock The transaction
+     * @return true if every line was applied, false if none was
+     */
+    private boolean commitStock(StockTransaction stock) {
+        StockTransaction.Result result = stock.commit();
+        if (result.isCommitted()) {
+            return true;
+        }
+        
+        Medicine medicine = findMedicineById(result.getMedicineId());
+        String name = medicine != null ? medicine.getName() : "ID " + result.getMedicineId();
+        if (result.getOutcome() == StockTransaction.Outcome.INSUFFICIENT_STOCK) {
+            System.out.println("Insufficient stock for medicine: " + name + ". Available: " + result.getAvailable());
+        } else if (result.getOutcome() == StockTransaction.Outcome.UNKNOWN_MEDICINE) {
+            System.out.println("Medicine with " + name + " not found.");
+        } else {
+            System.out.println("Stock of medicine " + name + " is changing too fast. Please try again.");
+        }
+        return false;
+    }
+    
     /**
      * Display all orders for a patient
      * 
@@ -259,9 +354,12 @@ public class PatientService {
             return;
         }
         
-        List<Order> patientOrders = patient.getOrders();
+        // Includes archived orders, which are read lazily page by page
+        Iterable<Order> patientOrders = orderHistorySource != null
+                ? orderHistorySource.apply(patientId)
+                : patient.getOrders();
         
-        if (patientOrders.isEmpty()) {
+        if (!patientOrders.iterator().hasNext()) {
             System.out.println("No orders found for patient: " + patient.getName());
             return;
         }
@@ -334,7 +432,7 @@ public class PatientService {
             System.out.println("----------------------------------------------------------------");
         }
     }
-
+    
     /**
      * Find a patient by ID
      * 
@@ -342,12 +440,9 @@ public class PatientService {
      * @return The patient object if found, null otherwise
      */
     private Patient findPatientById(int patientId) {
-        return patients.stream()
-                      .filter(p -> p.getId() == patientId)
-                      .findFirst()
-                      .orElse(null);
+        return registry.findPatient(patientId);
     }
-
+    
     /**
      * Find a medicine by ID
      * 
@@ -355,12 +450,9 @@ public class PatientService {
      * @return The medicine object if found, null otherwise
      */
     private Medicine findMedicineById(int medicineId) {
-        return medicines.stream()
-                        .filter(m -> m.getId() == medicineId)
-                        .findFirst()
-                        .orElse(null);
+        return registry.findMedicine(medicineId);
     }
-
+    
     /**
      * Find an order by ID
      * 
@@ -368,10 +460,7 @@ public class PatientService {
      * @return The order object if found, null otherwise
      */
     private Order findOrderById(int orderId) {
-        return orders.stream()
-                     .filter(o -> o.getId() == orderId)
-                     .findFirst()
-                     .orElse(null);
+        return registry.findOrder(orderId);
     }
     
     // Variables for wallet transaction management
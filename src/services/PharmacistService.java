@@ -4,6 +4,10 @@ import models.Medicine;
 import models.Pharmacist;
 import models.Pharmacy;
 import models.Prescription;
+import models.PrescriptionStatus;
+import utils.EntityRegistry;
+import utils.PrescriptionQueue;
+import utils.StockTransaction;
 
 import java.util.List;
 import java.util.Map;
@@ -17,23 +21,21 @@ public class PharmacistService {
     private List<Pharmacy> pharmacies;
     private List<Prescription> prescriptions;
     private List<Medicine> medicines;
+    private EntityRegistry registry;
     
     private Scanner scanner;
     
     /**
      * Constructor to initialize PharmacistService
      * 
-     * @param pharmacists List of pharmacists
-     * @param pharmacies List of pharmacies
-     * @param prescriptions List of prescriptions
-     * @param medicines List of medicines
+     * @param registry The entity registry holding the pharmacists, pharmacies, prescriptions and medicines
      */
-    public PharmacistService(List<Pharmacist> pharmacists, List<Pharmacy> pharmacies, 
-                          List<Prescription> prescriptions, List<Medicine> medicines) {
-        this.pharmacists = pharmacists;
-        this.pharmacies = pharmacies;
-        this.prescriptions = prescriptions;
-        this.medicines = medicines;
+    public PharmacistService(EntityRegistry registry) {
+        this.registry = registry;
+        this.pharmacists = registry.pharmacists();
+        this.pharmacies = registry.pharmacies();
+        this.prescriptions = registry.prescriptions();
+        this.medicines = registry.medicines();
         
         this.scanner = new Scanner(System.in);
     }
@@ -99,10 +101,7 @@ public class PharmacistService {
      * @return Pharmacy object if found, null otherwise
      */
     private Pharmacy findPharmacyById(int pharmacyId) {
-        return pharmacies.stream()
-                       .filter(p -> p.getId() == pharmacyId)
-                       .findFirst()
-                       .orElse(null);
+        return registry.findPharmacy(pharmacyId);
     }
     
     /**
@@ -113,7 +112,7 @@ public class PharmacistService {
     private void viewPendingPrescriptions(Pharmacy pharmacy) {
         System.out.println("\n📝 ===== PENDING PRESCRIPTIONS ===== 📝");
         
-        List<Prescription> pendingPrescriptions = pharmacy.getPrescriptions();
+        List<Prescription> pendingPrescriptions = getPendingPrescriptions(pharmacy.getId());
         
         if (pendingPrescriptions.isEmpty()) {
             System.out.println("No pending prescriptions for this pharmacy.");
@@ -121,26 +120,24 @@ public class PharmacistService {
         }
         
         for (Prescription prescription : pendingPrescriptions) {
-            if (prescription.getStatus().equals("Sent to Pharmacy")) {
-                System.out.println("\nPrescription ID: " + prescription.getId());
-                System.out.println("Patient ID: " + prescription.getPatientId());
-                System.out.println("Doctor ID: " + prescription.getDoctorId());
-                System.out.println("Issue Date: " + prescription.getIssueDate());
-                System.out.println("Expiry Date: " + prescription.getExpiryDate());
-                System.out.println("Status: " + prescription.getStatus());
-                System.out.println("Instructions: " + prescription.getInstructions());
-                
-                System.out.println("Medicines:");
-                double totalPrice = 0.0;
-                for (Map.Entry<Medicine, Integer> entry : prescription.getMedicines().entrySet()) {
-                    Medicine medicine = entry.getKey();
-                    int quantity = entry.getValue();
-                    double medicinePrice = medicine.getPrice() * quantity;
-                    totalPrice += medicinePrice;
-                    System.out.println("- " + medicine.getName() + " (" + quantity + "): " + medicinePrice + " LE");
-                }
-                System.out.println("Total Price: " + totalPrice + " LE");
+            System.out.println("\nPrescription ID: " + prescription.getId());
+            System.out.println("Patient ID: " + prescription.getPatientId());
+            System.out.println("Doctor ID: " + prescription.getDoctorId());
+            System.out.println("Issue Date: " + prescription.getIssueDate());
+            System.out.println("Expiry Date: " + prescription.getExpiryDate());
+            System.out.println("Status: " + prescription.getStatus());
+            System.out.println("Instructions: " + prescription.getInstructions());
+            
+            System.out.println("Medicines:");
+            double totalPrice = 0.0;
+            for (Map.Entry<Medicine, Integer> entry : prescription.getMedicines().entrySet()) {
+                Medicine medicine = entry.getKey();
+                int quantity = entry.getValue();
+                double medicinePrice = medicine.getPrice() * quantity;
+                totalPrice += medicinePrice;
+                System.out.println("- " + medicine.getName() + " (" + quantity + "): " + medicinePrice + " LE");
             }
+            System.out.println("Total Price: " + totalPrice + " LE");
         }
     }
     
@@ -153,29 +150,22 @@ public class PharmacistService {
     private void fillPrescription(Pharmacist pharmacist, Pharmacy pharmacy) {
         System.out.println("\n📋 ===== FILL PRESCRIPTION ===== 📋");
         
-        List<Prescription> pendingPrescriptions = pharmacy.getPrescriptions();
+        // Most urgent first: the prescription that expires soonest
+        List<Prescription> pendingPrescriptions = getPendingPrescriptions(pharmacy.getId(), PrescriptionQueue.Ordering.PRIORITY);
         
         if (pendingPrescriptions.isEmpty()) {
-            System.out.println("No pending prescriptions for this pharmacy.");
+            System.out.println("No prescriptions are pending to be filled.");
             return;
         }
         
         // Display pending prescriptions
         System.out.println("Pending Prescriptions:");
-        int pendingCount = 0;
         for (int i = 0; i < pendingPrescriptions.size(); i++) {
             Prescription prescription = pendingPrescriptions.get(i);
-            if (prescription.getStatus().equals("Sent to Pharmacy")) {
-                System.out.println((i + 1) + ". Prescription ID: " + prescription.getId() + 
-                                 ", Patient ID: " + prescription.getPatientId() + 
-                                 ", Issue Date: " + prescription.getIssueDate());
-                pendingCount++;
-            }
-        }
-        
-        if (pendingCount == 0) {
-            System.out.println("No prescriptions are pending to be filled.");
-            return;
+            System.out.println((i + 1) + ". Prescription ID: " + prescription.getId() + 
+                             ", Patient ID: " + prescription.getPatientId() + 
+                             ", Issue Date: " + prescription.getIssueDate() + 
+                             ", Expiry Date: " + prescription.getExpiryDate());
         }
         
         System.out.print("Select prescription number to fill: ");
@@ -188,54 +178,60 @@ public class PharmacistService {
         
         Prescription selectedPrescription = pendingPrescriptions.get(prescriptionIndex);
         
-        if (!selectedPrescription.getStatus().equals("Sent to Pharmacy")) {
+        if (!selectedPrescription.isAwaitingPharmacy()) {
             System.out.println("This prescription is not pending to be filled.");
             return;
         }
         
-        // Check if the pharmacy has all the medicines in stock
-        boolean canFill = true;
-        StringBuilder missingMedicines = new StringBuilder();
-        
-        for (Map.Entry<Medicine, Integer> entry : selectedPrescription.getMedicines().entrySet()) {
-            Medicine medicine = entry.getKey();
-            int quantity = entry.getValue();
+        // Hold the stock locks of the medicines so only one pharmacist fills the prescription
+        int[] medicineIds = medicineIdsOf(selectedPrescription);
+        registry.stockLocks().lockAll(medicineIds);
+        try {
+            // Another pharmacist may have filled it while this one waited for the locks
+            if (!selectedPrescription.isAwaitingPharmacy()) {
+                System.out.println("This prescription is not pending to be filled.");
+                return;
+            }
             
-            // Find medicine in pharmacy inventory
-            Medicine pharmacyMedicine = pharmacy.findMedicineById(medicine.getId());
+            // Check if the pharmacy has all the medicines in stock
+            boolean canFill = true;
+            StringBuilder missingMedicines = new StringBuilder();
             
-            if (pharmacyMedicine == null) {
-                canFill = false;
-                missingMedicines.append("- ").append(medicine.getName()).append(" (not in inventory)\n");
-            } else if (pharmacyMedicine.getQuantity() < quantity) {
-                canFill = false;
-                missingMedicines.append("- ").append(medicine.getName())
-                             .append(" (only ").append(pharmacyMedicine.getQuantity())
-                             .append(" available, need ").append(quantity).append(")\n");
+            for (Map.Entry<Medicine, Integer> entry : selectedPrescription.getMedicines().entrySet()) {
+                Medicine medicine = entry.getKey();
+                int quantity = entry.getValue();
+                
+                // Find medicine in pharmacy inventory
+                Medicine pharmacyMedicine = pharmacy.findMedicineById(medicine.getId());
+                
+                if (pharmacyMedicine == null) {
+                    canFill = false;
+                    missingMedicines.append("- ").append(medicine.getName()).append(" (not in inventory)\n");
+                } else if (pharmacyMedicine.getQuantity() < quantity) {
+                    canFill = false;
+                    missingMedicines.append("- ").append(medicine.getName())
+                                 .append(" (only ").append(pharmacyMedicine.getQuantity())
+                                 .append(" available, need ").append(quantity).append(")\n");
+                }
+            }
+            
+            if (!canFill) {
+                System.out.println("Cannot fill prescription due to insufficient stock:");
+                System.out.println(missingMedicines.toString());
+                return;
             }
-        }
-        
-        if (!canFill) {
-            System.out.println("Cannot fill prescription due to insufficient stock:");
-            System.out.println(missingMedicines.toString());
-            return;
-        }
-        
-        // Update inventory and fill prescription
-        for (Map.Entry<Medicine, Integer> entry : selectedPrescription.getMedicines().entrySet()) {
-            Medicine medicine = entry.getKey();
-            int quantity = entry.getValue();
             
-            // Find and update medicine in pharmacy inventory
-            Medicine pharmacyMedicine = pharmacy.findMedicineById(medicine.getId());
-            pharmacyMedicine.setQuantity(pharmacyMedicine.getQuantity() - quantity);
+            // Update inventory and fill prescription
+            if (!dispense(pharmacy, selectedPrescription)) {
+                return;
+            }
             
-            System.out.println("Dispensed " + quantity + " of " + medicine.getName());
+            // Update prescription status, which takes it out of the pharmacy's queue
+            selectedPrescription.setStatus(PrescriptionStatus.COMPLETED);
+        } finally {
+            registry.stockLocks().unlockAll(medicineIds);
         }
         
-        // Update prescription status
-        selectedPrescription.setStatus("Filled");
-        
         // Add to pharmacist's filled prescriptions
         pharmacist.getFilledPrescriptions().add(selectedPrescription);
         
@@ -358,7 +354,7 @@ public class PharmacistService {
         }
         
         // Update quantity
-        selectedMedicine.setQuantity(selectedMedicine.getQuantity() + quantity);
+        selectedMedicine.restoreStock(quantity);
         
         System.out.println("Added " + quantity + " units of " + selectedMedicine.getName() + 
                          ". New stock level: " + selectedMedicine.getQuantity());
@@ -404,14 +400,12 @@ public class PharmacistService {
             return;
         }
         
-        if (quantity > selectedMedicine.getQuantity()) {
+        // Check and update the stock in one step
+        if (!selectedMedicine.tryTakeStock(quantity)) {
             System.out.println("Cannot remove more than current stock.");
             return;
         }
         
-        // Update quantity
-        selectedMedicine.setQuantity(selectedMedicine.getQuantity() - quantity);
-        
         System.out.println("Removed " + quantity + " units of " + selectedMedicine.getName() + 
                          ". New stock level: " + selectedMedicine.getQuantity());
     }
@@ -574,33 +568,24 @@ public class PharmacistService {
      */
     public boolean fillPrescription(int pharmacistId, int prescriptionId) {
         // Find the pharmacist
-        Pharmacist pharmacist = pharmacists.stream()
-            .filter(p -> p.getId() == pharmacistId)
-            .findFirst()
-            .orElse(null);
-            
+        Pharmacist pharmacist = registry.findPharmacist(pharmacistId);
+        
         if (pharmacist == null) {
             System.out.println("Pharmacist with ID " + pharmacistId + " not found.");
             return false;
         }
         
         // Find the pharmacy
-        Pharmacy pharmacy = pharmacies.stream()
-            .filter(p -> p.getId() == pharmacist.getPharmacyId())
-            .findFirst()
-            .orElse(null);
-            
+        Pharmacy pharmacy = registry.findPharmacy(pharmacist.getPharmacyId());
+        
         if (pharmacy == null) {
             System.out.println("Pharmacy not found for this pharmacist.");
             return false;
         }
         
         // Find the prescription
-        Prescription prescription = prescriptions.stream()
-            .filter(p -> p.getId() == prescriptionId)
-            .findFirst()
-            .orElse(null);
-            
+        Prescription prescription = registry.findPrescription(prescriptionId);
+        
         if (prescription == null) {
             System.out.println("Prescription with ID " + prescriptionId + " not found.");
             return false;
@@ -613,54 +598,60 @@ public class PharmacistService {
         }
         
         // Check prescription status
-        if (!prescription.getStatus().equals("Sent to Pharmacy")) {
+        if (!prescription.isAwaitingPharmacy()) {
             System.out.println("This prescription is not pending to be filled. Current status: " + prescription.getStatus());
             return false;
         }
         
-        // Check if the pharmacy has all the medicines in stock
-        boolean canFill = true;
-        StringBuilder missingMedicines = new StringBuilder();
-        
-        for (Map.Entry<Medicine, Integer> entry : prescription.getMedicines().entrySet()) {
-            Medicine medicine = entry.getKey();
-            int quantity = entry.getValue();
+        // Hold the stock locks of the medicines so only one pharmacist fills the prescription
+        int[] medicineIds = medicineIdsOf(prescription);
+        registry.stockLocks().lockAll(medicineIds);
+        try {
+            // Another pharmacist may have filled it while this one waited for the locks
+            if (!prescription.isAwaitingPharmacy()) {
+                System.out.println("This prescription is not pending to be filled.");
+                return false;
+            }
             
-            // Find medicine in pharmacy inventory
-            Medicine pharmacyMedicine = pharmacy.findMedicineById(medicine.getId());
+            // Check if the pharmacy has all the medicines in stock
+            boolean canFill = true;
+            StringBuilder missingMedicines = new StringBuilder();
             
-            if (pharmacyMedicine == null) {
-                canFill = false;
-                missingMedicines.append("- ").append(medicine.getName()).append(" (not in inventory)\n");
-            } else if (pharmacyMedicine.getQuantity() < quantity) {
-                canFill = false;
-                missingMedicines.append("- ").append(medicine.getName())
-                             .append(" (only ").append(pharmacyMedicine.getQuantity())
-                             .append(" available, need ").append(quantity).append(")\n");
+            for (Map.Entry<Medicine, Integer> entry : prescription.getMedicines().entrySet()) {
+                Medicine medicine = entry.getKey();
+                int quantity = entry.getValue();
+                
+                // Find medicine in pharmacy inventory
+                Medicine pharmacyMedicine = pharmacy.findMedicineById(medicine.getId());
+                
+                if (pharmacyMedicine == null) {
+                    canFill = false;
+                    missingMedicines.append("- ").append(medicine.getName()).append(" (not in inventory)\n");
+                } else if (pharmacyMedicine.getQuantity() < quantity) {
+                    canFill = false;
+                    missingMedicines.append("- ").append(medicine.getName())
+                                 .append(" (only ").append(pharmacyMedicine.getQuantity())
+                                 .append(" available, need ").append(quantity).append(")\n");
+                }
             }
-        }
-        
-        if (!canFill) {
-            System.out.println("Cannot fill prescription due to insufficient stock:");
-            System.out.println(missingMedicines.toString());
-            return false;
-        }
-        
-        // Update inventory and fill prescription
-        for (Map.Entry<Medicine, Integer> entry : prescription.getMedicines().entrySet()) {
-            Medicine medicine = entry.getKey();
-            int quantity = entry.getValue();
             
-            // Find and update medicine in pharmacy inventory
-            Medicine pharmacyMedicine = pharmacy.findMedicineById(medicine.getId());
-            pharmacyMedicine.setQuantity(pharmacyMedicine.getQuantity() - quantity);
+            if (!canFill) {
+                System.out.println("Cannot fill prescription due to insufficient stock:");
+                System.out.println(missingMedicines.toString());
+                return false;
+            }
+            
+            // Update inventory and fill prescription
+            if (!dispense(pharmacy, prescription)) {
+                return false;
+            }
             
-            System.out.println("Dispensed " + quantity + " of " + medicine.getName());
+            // Update prescription status, which takes it out of the pharmacy's queue
+            prescription.setStatus(PrescriptionStatus.COMPLETED);
+        } finally {
+            registry.stockLocks().unlockAll(medicineIds);
         }
         
-        // Update prescription status
-        prescription.setStatus("Filled");
-        
         // Add to pharmacist's filled prescriptions
         pharmacist.getFilledPrescriptions().add(prescription);
         
@@ -678,22 +669,16 @@ public class PharmacistService {
      */
     public boolean addMedicineToPharmacy(int pharmacyId, int medicineId, int quantity) {
         // Find the pharmacy
-        Pharmacy pharmacy = pharmacies.stream()
-            .filter(p -> p.getId() == pharmacyId)
-            .findFirst()
-            .orElse(null);
-            
+        Pharmacy pharmacy = registry.findPharmacy(pharmacyId);
+        
         if (pharmacy == null) {
             System.out.println("Pharmacy with ID " + pharmacyId + " not found.");
             return false;
         }
         
         // Find the medicine in the global list
-        Medicine globalMedicine = medicines.stream()
-            .filter(m -> m.getId() == medicineId)
-            .findFirst()
-            .orElse(null);
-            
+        Medicine globalMedicine = registry.findMedicine(medicineId);
+        
         if (globalMedicine == null) {
             System.out.println("Medicine with ID " + medicineId + " not found.");
             return false;
@@ -710,7 +695,7 @@ public class PharmacistService {
         
         if (pharmacyMedicine != null) {
             // Update existing medicine quantity
-            pharmacyMedicine.setQuantity(pharmacyMedicine.getQuantity() + quantity);
+            pharmacyMedicine.restoreStock(quantity);
             System.out.println("Added " + quantity + " units of " + pharmacyMedicine.getName() + 
                              ". New stock level: " + pharmacyMedicine.getQuantity());
         } else {
@@ -737,27 +722,33 @@ public class PharmacistService {
     }
     
     /**
-     * Get pending prescriptions for a specific pharmacy
+     * Get pending prescriptions for a specific pharmacy, in the order they arrived
      * 
      * @param pharmacyId ID of the pharmacy
      * @return List of pending prescriptions
      */
     public List<Prescription> getPendingPrescriptions(int pharmacyId) {
+        return getPendingPrescriptions(pharmacyId, PrescriptionQueue.Ordering.FIFO);
+    }
+    
+    /**
+     * Get pending prescriptions for a specific pharmacy
+     * Reads the pharmacy's work queue, so the cost depends only on the number of pending prescriptions
+     * 
+     * @param pharmacyId ID of the pharmacy
+     * @param ordering Arrival order, or priority order with the soonest expiry first
+     * @return List of pending prescriptions
+     */
+    public List<Prescription> getPendingPrescriptions(int pharmacyId, PrescriptionQueue.Ordering ordering) {
         // Find the pharmacy
-        Pharmacy pharmacy = pharmacies.stream()
-            .filter(p -> p.getId() == pharmacyId)
-            .findFirst()
-            .orElse(null);
-            
+        Pharmacy pharmacy = registry.findPharmacy(pharmacyId);
+        
         if (pharmacy == null) {
             System.out.println("Pharmacy with ID " + pharmacyId + " not found.");
             return List.of(); // Return empty list
         }
         
-        // Filter pending prescriptions
-        return prescriptions.stream()
-            .filter(p -> p.getPharmacyId() == pharmacyId && p.getStatus().equals("Sent to Pharmacy"))
-            .toList();
+        return registry.prescriptionQueue().pending(pharmacyId, ordering);
     }
     
     /**
@@ -768,11 +759,8 @@ public class PharmacistService {
      */
     public List<Prescription> getFilledPrescriptions(int pharmacistId) {
         // Find the pharmacist
-        Pharmacist pharmacist = pharmacists.stream()
-            .filter(p -> p.getId() == pharmacistId)
-            .findFirst()
-            .orElse(null);
-            
+        Pharmacist pharmacist = registry.findPharmacist(pharmacistId);
+        
         if (pharmacist == null) {
             System.out.println("Pharmacist with ID " + pharmacistId + " not found.");
             return List.of(); // Return empty list
@@ -789,13 +777,55 @@ public class PharmacistService {
      */
     public boolean createAccount(Pharmacist pharmacist) {
         // Check if pharmacist with the same ID already exists
-        if (pharmacists.stream().anyMatch(p -> p.getId() == pharmacist.getId())) {
+        if (registry.pharmacists().containsId(pharmacist.getId())) {
             System.out.println("Pharmacist with ID " + pharmacist.getId() + " already exists.");
             return false;
         }
         
+        // Usernames are unique across all roles; reserve it so a concurrent registration cannot take it too
+        if (!registry.usernames().tryReserve(pharmacist)) {
+            System.out.println("Username " + pharmacist.getUsername() + " is already taken.");
+            return false;
+        }
+        
         pharmacists.add(pharmacist);
         System.out.println("Pharmacist account created successfully for: " + pharmacist.getName());
         return true;
     }
-}
\ No newline at end of file
+    
+    /**
+     * Take the medicines of a prescription from a pharmacy's inventory, all or nothing
+     * Orders and carts change the same stock without the stock locks, so the units are
+     * taken atomically instead of setting a quantity read before
+     * 
+     * @param pharmacy The pharmacy dispensing the prescription
+     * @param prescription The prescription
+     * @return true if every medicine was taken, false if none was
+     */
+    private boolean dispense(Pharmacy pharmacy, Prescription prescription) {
+        StockTransaction stock = new StockTransaction(pharmacy::findMedicineById);
+        for (Map.Entry<Medicine, Integer> entry : prescription.getMedicines().entrySet()) {
+            stock.take(entry.getKey().getId(), entry.getValue());
+        }
+        
+        if (!stock.commit().isCommitted()) {
+            System.out.println("Cannot fill prescription: the stock changed meanwhile. Please try again.");
+            return false;
+        }
+        
+        for (Map.Entry<Medicine, Integer> entry : prescription.getMedicines().entrySet()) {
+            System.out.println("Dispensed " + entry.getValue() + " of " + entry.getKey().getName());
+        }
+        return true;
+    }
+    
+    /**
+     * Get the IDs of the medicines on a prescription
+     * 
+     * @param prescription The prescription
+     * @return The medicine IDs
+     */
+    private int[] medicineIdsOf(Prescription prescription) {
+        return prescription.getMedicines().keySet().stream().mapToInt(Medicine::getId).toArray();
+    }
+}
@@ -1,25 +1,60 @@
 package services;
 
 import models.*;
+import repository.Repositories;
+import utils.BinarySnapshot;
+import utils.DataJournal;
+import utils.EntityRegistry;
 import utils.FileHandler;
+import utils.IdAllocator;
+import utils.IndexedList;
+import utils.MessageStore;
+import utils.OrderArchive;
+import utils.ParallelLoader;
+import utils.SalesRollup;
+import utils.StockWatch;
+import utils.WalletLedger;
+import utils.WriteBehindWriter;
 import utils.ConsoleUI;
 
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.EnumSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Scanner;
 import java.util.HashMap;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.locks.Lock;
 
 /**
  * PharmacyService is the main service class that integrates admin and patient services
  */
 public class PharmacyService {
-    // Singleton instance
-    private static PharmacyService instance;
+    // Singleton instance; volatile so a thread never sees it half constructed
+    private static volatile PharmacyService instance;
+    
+    /**
+     * Data collections that are persisted to their own file
+     */
+    public enum DataSet {
+        ADMINS,
+        PATIENTS,
+        DOCTORS,
+        MEDICINES,
+        ORDERS,
+        PHARMACISTS,
+        PHARMACIES,
+        PRESCRIPTIONS,
+        CONSULTATIONS
+    }
     
     private List<Admin> admins;
     private List<Doctor> doctors;
@@ -31,25 +66,72 @@ public class PharmacyService {
     private List<Prescription> prescriptions;
     private List<Consultation> consultations;
     
+    // The collections above, indexed by ID
+    private EntityRegistry registry;
+    
     private AdminService adminService;
     private PatientService patientService;
     private DoctorService doctorService;
     private PharmacistService pharmacistService;
     private AuthenticationService authService;
+    private WalletService walletService;
     
-    private int nextOrderId;
     private Scanner scanner;
+    
+    // Mutations are journaled and folded into the data files every CHECKPOINT_INTERVAL records
+    private static final int CHECKPOINT_INTERVAL = 100;
+    private DataJournal journal;
+    
+    // Closed orders older than this many days move from memory to the order archive
+    private static final int RESIDENT_ORDER_DAYS = 90;
+    private OrderArchive orderArchive;
+    
+    // Medicines, orders, patients, prescriptions and wallets are stored through these repositories
+    private Repositories repositories;
+    
+    // Data files are loaded concurrently on at most this many threads
+    private static final int LOADER_THREADS = Math.min(4, Runtime.getRuntime().availableProcessors());
+    
+    // Collections changed since the last save; only these files are rewritten
+    private final Set<DataSet> dirtyData = EnumSet.noneOf(DataSet.class);
+    // Collections whose changes are only in the journal; written at the next checkpoint
+    private final Set<DataSet> journaledData = EnumSet.noneOf(DataSet.class);
+    // Counts journaled changes, so a checkpoint can tell whether any came in while it was written
+    private long journaledMarks;
+    // Set by checkpoint; the next write that folds the journal also refreshes the binary snapshot
+    private boolean snapshotDue;
+    private final Object journalLock = new Object();
+    private volatile int savesPerformed;
+    private int savesSkipped;
 
+    // Saves are written on a background thread once mutations have been quiet for SAVE_QUIET_MILLIS
+    private static final long SAVE_QUIET_MILLIS = 300;
+    private static final long SAVE_MAX_DELAY_MILLIS = 3000;
+    private static final int SAVE_MAX_PENDING = 64;
+    private static final long SAVE_FLUSH_TIMEOUT_MILLIS = 30000;
+    private WriteBehindWriter<DataSet> saveWriter;
+    
+    // The console shows this many of the latest messages of a consultation
+    private static final int MESSAGE_PAGE_SIZE = 10;
+    
     /**
      * Get the singleton instance of PharmacyService
+     * The first call creates it; concurrent first calls wait for that one instance
      * 
      * @return The singleton instance
      */
     public static PharmacyService getInstance() {
-        if (instance == null) {
-            instance = new PharmacyService();
+        PharmacyService service = instance;
+        if (service == null) {
+            synchronized (PharmacyService.class) {
+                service = instance;
+                if (service == null) {
+                    service = new PharmacyService();
+                    instance = service;
+                }
+            }
         }
-        return instance;
+        return service;
     }
 
     /**
@@ -66,43 +148,50 @@ public class PharmacyService {
         this.prescriptions = new ArrayList<>();
         this.consultations = new ArrayList<>();
         
-        this.nextOrderId = 1;
         this.scanner = new Scanner(System.in);
         
         // Initialize data files
         FileHandler.initializeFiles();
+        this.journal = new DataJournal();
+        this.orderArchive = new OrderArchive();
+        this.repositories = Repositories.fromSystemProperties(() -> medicines, new WalletLedger());
+        this.walletService = new WalletService(repositories.wallets());
+        this.saveWriter = new WriteBehindWriter<>("pharmacy-save-writer", DataSet.class, SAVE_QUIET_MILLIS,
+                                                  SAVE_MAX_DELAY_MILLIS, SAVE_MAX_PENDING, this::writeDataSets);
+        // Write queued saves when the JVM exits without an explicit flush
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> saveWriter.close(SAVE_FLUSH_TIMEOUT_MILLIS)));
         
         // Load data from files
         loadDataFromFiles();
         
-        // Find the next order ID
-        calculateNextOrderId();
+        // Archived orders keep their IDs, so new orders continue past them as well
+        registry.ids().reserveThrough(IdAllocator.Sequence.ORDER, orderArchive.maxOrderId());
         
-        // Ensure all users have unique IDs
-        ensureUniqueUserIds();
-        
-        this.adminService = new AdminService(medicines, orders);
-        this.patientService = new PatientService(patients, orders, medicines, nextOrderId);
+        this.adminService = new AdminService(registry);
+        this.adminService.setOrderHistorySource(this::getOrderHistory);
+        this.adminService.rebuildSalesTotals();
+        this.patientService = new PatientService(registry);
+        this.patientService.setOrderHistorySource(this::getOrderHistory);
         this.doctorService = new DoctorService(doctors, patients, prescriptions, medicines, consultations);
-        this.pharmacistService = new PharmacistService(pharmacists, pharmacies, prescriptions, medicines);
-        this.authService = new AuthenticationService(admins, patients, doctors, pharmacists);
+        this.doctorService.setMessageStore(registry.messages());
+        this.doctorService.setIdAllocator(registry.ids());
+        this.doctorService.setUsernameIndex(registry.usernames());
+        this.pharmacistService = new PharmacistService(registry);
+        this.authService = new AuthenticationService(registry);
+        registry.stockWatch().addListener(this::reportStockLevel);
     }
     
     /**
-     * Calculate the next order ID based on existing orders
+     * Warn when a medicine's stock drops to a more urgent level
+     * 
+     * @param medicine The medicine
+     * @param previous The level it was at
+     * @param current The level it is at now
      */
-    private void calculateNextOrderId() {
-        if (orders.isEmpty()) {
-            nextOrderId = 1;
-        } else {
-            // Find the maximum order ID and add 1
-            int maxId = 0;
-            for (Order order : orders) {
-                if (order.getId() > maxId) {
-                    maxId = order.getId();
-                }
-            }
-            nextOrderId = maxId + 1;
+    private void reportStockLevel(Medicine medicine, StockWatch.Level previous, StockWatch.Level current) {
+        if (current.ordinal() < previous.ordinal()) {
+            System.out.println("Stock alert: " + medicine.getName() + " is " + current.getDisplayName().toLowerCase()
+                + " (" + medicine.getStock() + " units left)");
         }
     }
     
@@ -110,14 +199,92 @@ public class PharmacyService {
      * Load data from files
      */
     private void loadDataFromFiles() {
-        // Load data from files
-        admins = FileHandler.loadAdmins();
-        patients = FileHandler.loadPatients();
-        doctors = FileHandler.loadDoctors();
-        medicines = FileHandler.loadMedicines();
+        ParallelLoader loader = new ParallelLoader(LOADER_THREADS);
+        
+        // Prefer the binary snapshot; it is skipped when missing or older than the text files
+        Optional<BinarySnapshot.Contents> snapshot = repositories.isShared() ? Optional.empty() : BinarySnapshot.read();
+        if (repositories.isShared()) {
+            // Order and prescription items are resolved against the medicines, so those are read first
+            medicines = repositories.medicines().findAll();
+            loader.provide(FileHandler.MEDICINES_FILE, medicines)
+                  .register(FileHandler.ORDERS_FILE, r -> repositories.orders().findAll())
+                  .register(FileHandler.PATIENTS_FILE, r -> repositories.patients().findAll())
+                  .register(FileHandler.PRESCRIPTIONS_FILE, r -> repositories.prescriptions().findAll())
+                  .register(FileHandler.ADMINS_FILE, r -> FileHandler.loadAdmins())
+                  .register(FileHandler.DOCTORS_FILE, r -> FileHandler.loadDoctors());
+            System.out.println("Loading medicines, orders, patients and prescriptions from the shared store.");
+        } else if (snapshot.isPresent()) {
+            loader.provide(FileHandler.ADMINS_FILE, snapshot.get().getAdmins())
+                  .provide(FileHandler.PATIENTS_FILE, snapshot.get().getPatients())
+                  .provide(FileHandler.DOCTORS_FILE, snapshot.get().getDoctors())
+                  .provide(FileHandler.MEDICINES_FILE, snapshot.get().getMedicines())
+                  .provide(FileHandler.ORDERS_FILE, snapshot.get().getOrders());
+            System.out.println("Loaded data from binary snapshot.");
+        } else {
+            loader.register(FileHandler.ADMINS_FILE, r -> FileHandler.loadAdmins())
+                  .register(FileHandler.PATIENTS_FILE, r -> FileHandler.loadPatients())
+                  .register(FileHandler.DOCTORS_FILE, r -> FileHandler.loadDoctors())
+                  .register(FileHandler.MEDICINES_FILE, r -> FileHandler.loadMedicines())
+                  // Orders need to be loaded after medicines since they reference medicines
+                  .register(FileHandler.ORDERS_FILE,
+                            r -> FileHandler.loadOrders(r.get(FileHandler.MEDICINES_FILE, new ArrayList<Medicine>())),
+                            FileHandler.MEDICINES_FILE);
+        }
+        
+        // Not part of the snapshot, always loaded from their text files
+        loader.register(FileHandler.PHARMACISTS_FILE, r -> FileHandler.loadPharmacists())
+              .register(FileHandler.PHARMACIES_FILE, r -> FileHandler.loadPharmacies())
+              .register(FileHandler.CONSULTATIONS_FILE, r -> FileHandler.loadConsultations());
+        if (!repositories.isShared()) {
+            loader.register(FileHandler.PRESCRIPTIONS_FILE,
+                            r -> FileHandler.loadPrescriptions(r.get(FileHandler.MEDICINES_FILE, new ArrayList<Medicine>())),
+                            FileHandler.MEDICINES_FILE);
+        }
+        
+        ParallelLoader.Results results = loader.loadAll();
+        admins = results.get(FileHandler.ADMINS_FILE, new ArrayList<>());
+        patients = results.get(FileHandler.PATIENTS_FILE, new ArrayList<>());
+        doctors = results.get(FileHandler.DOCTORS_FILE, new ArrayList<>());
+        medicines = results.get(FileHandler.MEDICINES_FILE, new ArrayList<>());
+        orders = results.get(FileHandler.ORDERS_FILE, new ArrayList<>());
+        pharmacists = results.get(FileHandler.PHARMACISTS_FILE, new ArrayList<>());
+        pharmacies = results.get(FileHandler.PHARMACIES_FILE, new ArrayList<>());
+        prescriptions = results.get(FileHandler.PRESCRIPTIONS_FILE, new ArrayList<>());
+        consultations = results.get(FileHandler.CONSULTATIONS_FILE, new ArrayList<>());
+        
+        // From here on the collections are the registry's indexed lists
+        registry = new EntityRegistry(admins, doctors, patients, pharmacists, medicines, orders,
+                                      pharmacies, prescriptions, consultations);
+        registry.reservations().start();
+        admins = registry.admins();
+        doctors = registry.doctors();
+        patients = registry.patients();
+        pharmacists = registry.pharmacists();
+        medicines = registry.medicines();
+        orders = registry.orders();
+        pharmacies = registry.pharmacies();
+        prescriptions = registry.prescriptions();
+        consultations = registry.consultations();
+        
+        // Doctors and patients are saved without their consultations, so hand them back
+        for (Consultation consultation : consultations) {
+            Doctor doctor = registry.findDoctor(consultation.getDoctorId());
+            if (doctor != null) {
+                doctor.addConsultation(consultation);
+            }
+            Patient patient = registry.findPatient(consultation.getPatientId());
+            if (patient != null) {
+                patient.addConsultation(consultation);
+            }
+        }
+        
+        // Read wallet balances from the wallet repository before replaying, so replayed payments are appended to it
+        for (Patient patient : patients) {
+            walletService.attach(patient);
+        }
         
-        // Orders need to be loaded after medicines since they reference medicines
-        orders = FileHandler.loadOrders(medicines);
+        // Re-apply mutations that were journaled after the last checkpoint
+        int replayed = replayJournal();
         
         // Ensure all patients have an initialized cartOrder (might be missing in saved files)
         for (Patient patient : patients) {
@@ -134,8 +301,51 @@ public class PharmacyService {
         if (admins.isEmpty() && patients.isEmpty() && medicines.isEmpty()) {
             System.out.println("No data found in files. Initializing with sample data.");
             initialize();
+            for (Patient patient : patients) {
+                walletService.attach(patient);
+            }
             saveDataToFiles();
+        } else if (replayed > 0) {
+            // Fold the replayed records right away; wallet records must not be replayed twice
+            System.out.println("Replayed " + replayed + " journal records.");
+            checkpoint();
         }
+        
+        archiveClosedOrders();
+    }
+    
+    /**
+     * Move closed orders older than RESIDENT_ORDER_DAYS out of memory into the order archive
+     */
+    private void archiveClosedOrders() {
+        long cutoff = System.currentTimeMillis() - RESIDENT_ORDER_DAYS * 24L * 60 * 60 * 1000;
+        List<Order> closed = new ArrayList<>();
+        for (Order order : orders) {
+            if (isClosed(order) && order.getOrderDate() != null && order.getOrderDate().getTime() < cutoff) {
+                closed.add(order);
+            }
+        }
+        
+        if (closed.isEmpty() || !orderArchive.append(closed)) {
+            return;
+        }
+        
+        Set<Integer> archivedIds = closed.stream().map(Order::getId).collect(Collectors.toSet());
+        orders.removeIf(order -> archivedIds.contains(order.getId()));
+        System.out.println("Archived " + closed.size() + " closed orders.");
+        saveDataToFiles(DataSet.ORDERS);
+    }
+    
+    /**
+     * Check whether an order can no longer change
+     * 
+     * @param order The order
+     * @return true if the order is completed, delivered or cancelled
+     */
+    private boolean isClosed(Order order) {
+        return order.getStatus() == Order.Status.COMPLETED
+            || order.getStatus() == Order.Status.DELIVERED
+            || order.getStatus() == Order.Status.CANCELLED;
     }
     
     /**
@@ -149,11 +359,11 @@ public class PharmacyService {
             doctors.clear();
             
             // Initialize with fresh doctor data with unique IDs
-            doctors.add(new Doctor(1, "Dr. Ahmed Mahmoud", "dr_ahmed", "1234", "ahmed@elta3ban.com", "01212345678", 
+            doctors.add(new Doctor(generateUserId(), "Dr. Ahmed Mahmoud", "dr_ahmed", "1234", "ahmed@elta3ban.com", "01212345678", 
                               "Cardiology", "EGP12345"));
-            doctors.add(new Doctor(2, "Dr. Nour El-Din", "dr_nour", "password", "nour@elta3ban.com", "01512345678", 
+            doctors.add(new Doctor(generateUserId(), "Dr. Nour El-Din", "dr_nour", "password", "nour@elta3ban.com", "01512345678", 
                               "Neurology", "EGP67890"));
-            doctors.add(new Doctor(3, "Dr. Mohamed Hassan", "dr_mohamed", "dr123", "dr.mohamed@hospital.com", "01234567890", 
+            doctors.add(new Doctor(generateUserId(), "Dr. Mohamed Hassan", "dr_mohamed", "dr123", "dr.mohamed@hospital.com", "01234567890", 
                               "General Medicine", "Medical License 12345"));
             
             // Save the fixed data
@@ -162,34 +372,33 @@ public class PharmacyService {
         }
         
         // Check for duplicate IDs and fix them
-        Map<Integer, Long> idCounts = doctors.stream()
-            .collect(Collectors.groupingBy(User::getId, Collectors.counting()));
+        IntIntMap idCounts = new IntIntMap(doctors.size());
+        boolean hasDuplicates = false;
+        for (Doctor doctor : doctors) {
+            if (idCounts.increment(doctor.getId(), 1) > 1) {
+                hasDuplicates = true;
+            }
+        }
         
         // If there are duplicate IDs, reassign them
-        boolean hasDuplicates = idCounts.values().stream().anyMatch(count -> count > 1);
         if (hasDuplicates) {
             System.out.println("Fixing duplicate doctor IDs...");
             
-            // Find the highest ID currently in use
-            int maxId = doctors.stream()
-                .mapToInt(User::getId)
-                .max()
-                .orElse(0);
-            
             // Create a set of used IDs to track which ones are already assigned
-            Set<Integer> usedIds = new HashSet<>();
+            IntSet usedIds = new IntSet(doctors.size());
             
             // Fix duplicates by assigning new IDs where needed
             for (Doctor doctor : doctors) {
                 if (!usedIds.add(doctor.getId())) {
-                    // This ID is already used, assign a new unique ID
-                    maxId++;
+                    // This ID is already used, assign a new unique user ID
+                    int newId = registry.ids().next(IdAllocator.Sequence.USER);
                     System.out.println("Reassigning doctor " + doctor.getName() + 
-                                     " from ID " + doctor.getId() + " to " + maxId);
-                    doctor.setId(maxId);
-                    usedIds.add(maxId);
+                                     " from ID " + doctor.getId() + " to " + newId);
+                    doctor.setId(newId);
+                    usedIds.add(newId);
                 }
             }
+            registry.doctors().reindex();
             
             // Save the fixed data
             FileHandler.saveDoctors(doctors);
@@ -198,17 +407,394 @@ public class PharmacyService {
     }
     
     /**
-     * Save all data to files
+     * Save changed data to files
+     * Collections that were not marked dirty since the last save are not rewritten,
+     * so a call without pending changes does no disk I/O at all. The files are written
+     * on the save writer thread, so this returns without waiting for the disk;
+     * use flushDataToFiles when the data must be on disk before continuing.
+     */
+    public synchronized void saveDataToFiles() {
+        if (dirtyData.isEmpty()) {
+            savesSkipped++;
+            return;
+        }
+        saveWriter.submit(dirtyData);
+        dirtyData.clear();
+    }
+    
+    /**
+     * Save changed data to files and wait until every queued save has been written
+     * 
+     * @return true if all changes are on disk
+     */
+    public boolean flushDataToFiles() {
+        checkpoint();
+        return saveWriter.flush(SAVE_FLUSH_TIMEOUT_MILLIS);
+    }
+    
+    /**
+     * Write the collections changed through the journal as well, so the journal can be folded
+     * 
+     * Journaled changes are already safe on disk, so ordinary saves leave their collections
+     * alone; they are rewritten only here, every CHECKPOINT_INTERVAL records and on exit.
      */
-    public void saveDataToFiles() {
+    public synchronized void checkpoint() {
+        synchronized (journalLock) {
+            dirtyData.addAll(journaledData);
+            snapshotDue = true;
+        }
+        saveDataToFiles();
+    }
+    
+    /**
+     * Write the given collections to their files
+     * Runs on the save writer thread
+     * 
+     * @param changed The collections to write
+     */
+    private void writeDataSets(Set<DataSet> changed) {
+        // Only records journaled before the files were written may be folded away, and only
+        // if every collection they changed is written now
+        long journaled;
+        long marks;
+        boolean foldJournal;
+        boolean writeSnapshot;
+        synchronized (journalLock) {
+            journaled = journal.getLastSequence();
+            marks = journaledMarks;
+            foldJournal = changed.containsAll(journaledData);
+            writeSnapshot = foldJournal && snapshotDue;
+            if (writeSnapshot) {
+                snapshotDue = false;
+            }
+        }
+        
         // Save data to files
-        FileHandler.saveAdmins(admins);
-        FileHandler.savePatients(patients);
-        FileHandler.saveDoctors(doctors);
-        FileHandler.saveMedicines(medicines);
-        FileHandler.saveOrders(orders);
+        if (changed.contains(DataSet.ADMINS)) {
+            FileHandler.saveAdmins(admins);
+        }
+        if (changed.contains(DataSet.PATIENTS)) {
+            repositories.patients().saveAll(patients);
+        }
+        if (changed.contains(DataSet.DOCTORS)) {
+            FileHandler.saveDoctors(doctors);
+        }
+        if (changed.contains(DataSet.MEDICINES)) {
+            repositories.medicines().saveAll(medicines);
+        }
+        if (changed.contains(DataSet.ORDERS)) {
+            repositories.orders().saveAll(orders);
+        }
+        if (changed.contains(DataSet.PHARMACISTS)) {
+            FileHandler.savePharmacists(pharmacists);
+        }
+        if (changed.contains(DataSet.PHARMACIES)) {
+            FileHandler.savePharmacies(pharmacies);
+        }
+        if (changed.contains(DataSet.PRESCRIPTIONS)) {
+            repositories.prescriptions().saveAll(prescriptions);
+        }
+        if (changed.contains(DataSet.CONSULTATIONS)) {
+            FileHandler.saveConsultations(consultations);
+        }
         
-        System.out.println("All data saved to files.");
+        // The data files now contain every mutation journaled before the write started
+        if (foldJournal) {
+            // Refresh the binary snapshot at checkpoints only, so the next startup can skip text parsing;
+            // ordinary saves after it leave it older than the text files, and it is then not used
+            if (writeSnapshot && !repositories.isShared()) {
+                BinarySnapshot.write(admins, patients, doctors, medicines, orders);
+            }
+            journal.checkpoint(journaled);
+            synchronized (journalLock) {
+                // Collections journaled again meanwhile wait for the next checkpoint
+                if (journaledMarks == marks) {
+                    journaledData.clear();
+                }
+            }
+        }
+        
+        savesPerformed++;
+        System.out.println("Saved " + changed + " to files (saves performed: " + savesPerformed + ").");
+    }
+    
+    /**
+     * Mark the given collections as changed and save changed data to files
+     * 
+     * @param changed The collections that were changed
+     */
+    public void saveDataToFiles(DataSet... changed) {
+        markDirty(changed);
+        saveDataToFiles();
+    }
+    
+    /**
+     * Mark collections as changed so the next save writes them
+     * 
+     * @param changed The collections that were changed
+     */
+    public synchronized void markDirty(DataSet... changed) {
+        Collections.addAll(dirtyData, changed);
+    }
+    
+    /**
+     * Note collections changed by a mutation that is about to be journaled
+     * Called before the record is appended, so a checkpoint never folds a record whose
+     * collection it did not write
+     * 
+     * @param changed The collections that were changed
+     */
+    private void markJournaled(DataSet... changed) {
+        synchronized (journalLock) {
+            Collections.addAll(journaledData, changed);
+            journaledMarks++;
+        }
+    }
+    
+    /**
+     * Mark every collection as changed
+     */
+    public synchronized void markAllDirty() {
+        dirtyData.addAll(EnumSet.allOf(DataSet.class));
+    }
+    
+    /**
+     * Get the number of saves that wrote at least one file
+     * 
+     * @return Number of performed saves
+     */
+    public int getSavesPerformed() {
+        return savesPerformed;
+    }
+    
+    /**
+     * Get the number of saves that were skipped because nothing changed
+     * 
+     * @return Number of skipped saves
+     */
+    public synchronized int getSavesSkipped() {
+        return savesSkipped;
+    }
+    
+    /**
+     * Journal a newly placed order
+     * 
+     * @param order The order that was placed
+     */
+    public void recordOrderPlaced(Order order) {
+        markJournaled(DataSet.ORDERS, DataSet.MEDICINES);
+        journal.append(DataJournal.RecordType.ORDER_PLACED, FileHandler.formatOrder(order));
+        // Placing an order also changes stock levels
+        for (OrderItem item : order.getItems()) {
+            Medicine medicine = findMedicineById(item.getMedicineId());
+            if (medicine != null) {
+                journal.append(DataJournal.RecordType.STOCK_CHANGED, formatStockRecord(medicine));
+            }
+        }
+        maybeCheckpoint();
+    }
+    
+    /**
+     * Journal the new state of an order that was already journaled, such as after payment
+     * Replaying it replaces the order with the same ID
+     * 
+     * @param order The order that changed
+     */
+    public void recordOrderChanged(Order order) {
+        markJournaled(DataSet.ORDERS);
+        journal.append(DataJournal.RecordType.ORDER_PLACED, FileHandler.formatOrder(order));
+        maybeCheckpoint();
+    }
+    
+    /**
+     * Journal a change of a medicine's stock level
+     * 
+     * @param medicine The medicine whose stock changed
+     */
+    public void recordStockChange(Medicine medicine) {
+        markJournaled(DataSet.MEDICINES);
+        journal.append(DataJournal.RecordType.STOCK_CHANGED, formatStockRecord(medicine));
+        maybeCheckpoint();
+    }
+    
+    /**
+     * Journal a newly added user
+     * 
+     * @param user The user that was added
+     */
+    public void recordUserAdded(User user) {
+        String line;
+        if (user instanceof Admin) {
+            line = "ADMIN|" + FileHandler.formatAdmin((Admin) user);
+        } else if (user instanceof Patient) {
+            line = "PATIENT|" + FileHandler.formatPatient((Patient) user);
+            walletService.attach((Patient) user);
+        } else if (user instanceof Doctor) {
+            line = "DOCTOR|" + FileHandler.formatDoctor((Doctor) user);
+        } else if (user instanceof Pharmacist) {
+            line = "PHARMACIST|" + FileHandler.formatPharmacist((Pharmacist) user);
+        } else {
+            System.err.println("Cannot journal unknown user type: " + user.getClass().getSimpleName());
+            return;
+        }
+        DataSet dataSet = dataSetOf(user);
+        if (dataSet != null) {
+            markJournaled(dataSet);
+        }
+        journal.append(DataJournal.RecordType.USER_ADDED, line);
+        maybeCheckpoint();
+    }
+    
+    /**
+     * Get the collection a user is persisted in
+     * 
+     * @param user The user
+     * @return The data set holding the user, or null for unknown user types
+     */
+    private DataSet dataSetOf(User user) {
+        if (user instanceof Admin) {
+            return DataSet.ADMINS;
+        } else if (user instanceof Patient) {
+            return DataSet.PATIENTS;
+        } else if (user instanceof Doctor) {
+            return DataSet.DOCTORS;
+        } else if (user instanceof Pharmacist) {
+            return DataSet.PHARMACISTS;
+        }
+        return null;
+    }
+    
+    /**
+     * Fold the journal into the data files once enough records have accumulated
+     */
+    private void maybeCheckpoint() {
+        if (journal.getPendingRecords() >= CHECKPOINT_INTERVAL) {
+            checkpoint();
+        }
+    }
+    
+    /**
+     * Format a stock record; the absolute level keeps replay idempotent
+     * 
+     * @param medicine The medicine
+     * @return The journal payload
+     */
+    private String formatStockRecord(Medicine medicine) {
+        return medicine.getId() + "|" + medicine.getStock();
+    }
+    
+    /**
+     * Apply pending journal records to the loaded data
+     * 
+     * @return Number of records applied
+     */
+    private int replayJournal() {
+        int applied = 0;
+        for (DataJournal.Record record : journal.readPending()) {
+            try {
+                if (applyJournalRecord(record)) {
+                    applied++;
+                }
+            } catch (RuntimeException e) {
+                System.err.println("Error replaying journal record " + record.getSequence() + ": " + e.getMessage());
+            }
+        }
+        return applied;
+    }
+    
+    /**
+     * Apply a single journal record
+     * 
+     * @param record The record to apply
+     * @return true if the record was applied
+     */
+    private boolean applyJournalRecord(DataJournal.Record record) {
+        String payload = record.getPayload();
+        switch (record.getType()) {
+            case ORDER_PLACED: {
+                Order order = FileHandler.parseOrder(payload, medicines).orElse(null);
+                if (order == null) {
+                    return false;
+                }
+                Order existing = registry.findOrder(order.getId());
+                if (existing != null) {
+                    orders.remove(existing);
+                }
+                orders.add(order);
+                markJournaled(DataSet.ORDERS);
+                return true;
+            }
+            case STOCK_CHANGED: {
+                String[] parts = payload.split("\\|");
+                Medicine medicine = findMedicineById(Integer.parseInt(parts[0]));
+                if (medicine == null) {
+                    return false;
+                }
+                medicine.setStock(Integer.parseInt(parts[1]));
+                markJournaled(DataSet.MEDICINES);
+                return true;
+            }
+            case WALLET_TRANSACTION: {
+                // Written before wallets had their own ledger; the wallet listener appends it there
+                String[] parts = payload.split("\\|", 4);
+                int patientId = Integer.parseInt(parts[0]);
+                Patient patient = registry.findPatient(patientId);
+                if (patient == null || patient.getWallet() == null) {
+                    return false;
+                }
+                Wallet.Transaction.Type type = Wallet.Transaction.Type.valueOf(parts[1]);
+                double amount = Double.parseDouble(parts[2]);
+                String description = parts.length > 3 ? parts[3] : "";
+                markJournaled(DataSet.PATIENTS);
+                if (type == Wallet.Transaction.Type.DEPOSIT || type == Wallet.Transaction.Type.REFUND) {
+                    return patient.getWallet().deposit(amount, description);
+                }
+                return patient.getWallet().withdraw(amount, description);
+            }
+            case USER_ADDED: {
+                String[] parts = payload.split("\\|", 2);
+                return applyUserAdded(parts[0], parts[1]);
+            }
+            default:
+                return false;
+        }
+    }
+    
+    /**
+     * Re-add a journaled user unless the data files already contain it
+     * 
+     * @param role The role of the user
+     * @param line The user's data line
+     * @return true if the user was added
+     */
+    private boolean applyUserAdded(String role, String line) {
+        switch (role) {
+            case "ADMIN":
+                markJournaled(DataSet.ADMINS);
+                return FileHandler.parseAdmin(line)
+                    .filter(a -> !registry.admins().containsId(a.getId()))
+                    .map(admins::add).orElse(false);
+            case "PATIENT":
+                markJournaled(DataSet.PATIENTS);
+                return FileHandler.parsePatient(line)
+                    .filter(p -> !registry.patients().containsId(p.getId()))
+                    .map(p -> {
+                        walletService.attach(p);
+                        return patients.add(p);
+                    }).orElse(false);
+            case "DOCTOR":
+                markJournaled(DataSet.DOCTORS);
+                return FileHandler.parseDoctor(line)
+                    .filter(d -> !registry.doctors().containsId(d.getId()))
+                    .map(doctors::add).orElse(false);
+            case "PHARMACIST":
+                markJournaled(DataSet.PHARMACISTS);
+                return FileHandler.parsePharmacist(line)
+                    .filter(p -> !registry.pharmacists().containsId(p.getId()))
+                    .map(pharmacists::add).orElse(false);
+            default:
+                return false;
+        }
     }
 
     /**
@@ -256,15 +842,16 @@ public class PharmacyService {
         initializeDoctors();
         initializePatients();
         initializeMedicines();
+        markAllDirty();
     }
 
     /**
      * Initialize sample admins with Egyptian names
      */
     private void initializeAdmins() {
-        admins.add(new Admin(1, "Mohamed Ahmed", "admin", "admin123", "mohamed@elta3ban.com", "01012345678", 
+        admins.add(new Admin(generateUserId(), "Mohamed Ahmed", "admin", "admin123", "mohamed@elta3ban.com", "01012345678", 
                             "Manager", "Management"));
-        admins.add(new Admin(2, "Fatma Ibrahim", "fatma_admin", "password", "fatma@elta3ban.com", "01112345678", 
+        admins.add(new Admin(generateUserId(), "Fatma Ibrahim", "fatma_admin", "password", "fatma@elta3ban.com", "01112345678", 
                             "Assistant Manager", "Management"));
     }
 
@@ -272,9 +859,9 @@ public class PharmacyService {
      * Initialize sample doctors with Egyptian names
      */
     private void initializeDoctors() {
-        doctors.add(new Doctor(1, "Dr. Ahmed Mahmoud", "dr_ahmed", "1234", "ahmed@elta3ban.com", "01212345678", 
+        doctors.add(new Doctor(generateUserId(), "Dr. Ahmed Mahmoud", "dr_ahmed", "1234", "ahmed@elta3ban.com", "01212345678", 
                               "Cardiology", "EGP12345"));
-        doctors.add(new Doctor(2, "Dr. Nour El-Din", "dr_nour", "password", "nour@elta3ban.com", "01512345678", 
+        doctors.add(new Doctor(generateUserId(), "Dr. Nour El-Din", "dr_nour", "password", "nour@elta3ban.com", "01512345678", 
                               "Neurology", "EGP67890"));
     }
 
@@ -282,9 +869,9 @@ public class PharmacyService {
      * Initialize sample patients with Egyptian names
      */
     private void initializePatients() {
-        patients.add(new Patient(1, "Amr Khaled", "Amr", "Amr123", "amr@gmail.com", "01112345679", 
+        patients.add(new Patient(generateUserId(), "Amr Khaled", "Amr", "Amr123", "amr@gmail.com", "01112345679", 
                               "22 Tahrir St, Cairo"));
-        patients.add(new Patient(2, "Laila Mostafa", "laila_patient", "password", "laila@gmail.com", "01012345670", 
+        patients.add(new Patient(generateUserId(), "Laila Mostafa", "laila_patient", "password", "laila@gmail.com", "01012345670", 
                               "15 Pyramids St, Giza"));
     }
 
@@ -377,7 +964,7 @@ public class PharmacyService {
                         break;
                     case 6:
                         exit = true;
-                        saveDataToFiles();
+                        flushDataToFiles();
                         System.out.println("Thank you for using the EL-TA3BAN Pharmacy Management System!");
                         break;
                     default:
@@ -397,7 +984,7 @@ public class PharmacyService {
                         break;
                     case 4:
                         exit = true;
-                        saveDataToFiles();
+                        flushDataToFiles();
                         System.out.println("Thank you for using the EL-TA3BAN Pharmacy Management System!");
                         break;
                     default:
@@ -503,7 +1090,7 @@ public class PharmacyService {
         int id = getIntInput();
         
         // Check if medicine with this ID already exists
-        if (medicines.stream().anyMatch(m -> m.getId() == id)) {
+        if (registry.findMedicine(id) != null) {
             System.out.println("Medicine with ID " + id + " already exists.");
             return;
         }
@@ -533,7 +1120,7 @@ public class PharmacyService {
         
         if (adminService.addMedicine(newMedicine)) {
             System.out.println("Medicine added successfully!");
-            saveDataToFiles(); // Save data after adding medicine
+            saveDataToFiles(DataSet.MEDICINES); // Save data after adding medicine
         } else {
             System.out.println("Failed to add medicine.");
         }
@@ -550,7 +1137,8 @@ public class PharmacyService {
         
         if (adminService.removeMedicine(id)) {
             System.out.println("Medicine removed successfully!");
-            saveDataToFiles(); // Save data after removing medicine
+            deleteFromSharedStore(DataSet.MEDICINES, id);
+            saveDataToFiles(DataSet.MEDICINES); // Save data after removing medicine
         } else {
             System.out.println("Failed to remove medicine.");
         }
@@ -566,10 +1154,7 @@ public class PharmacyService {
         int id = getIntInput();
         
         // Check if medicine exists
-        Medicine medicine = medicines.stream()
-                                    .filter(m -> m.getId() == id)
-                                    .findFirst()
-                                    .orElse(null);
+        Medicine medicine = registry.findMedicine(id);
         
         if (medicine == null) {
             System.out.println("Medicine with ID " + id + " not found.");
@@ -613,7 +1198,7 @@ public class PharmacyService {
         
         if (adminService.updateMedicine(id, name, description, manufacturer, price, quantity, category, requiresPrescription)) {
             System.out.println("Medicine updated successfully!");
-            saveDataToFiles(); // Save data after updating medicine
+            saveDataToFiles(DataSet.MEDICINES); // Save data after updating medicine
         } else {
             System.out.println("Failed to update medicine.");
         }
@@ -699,6 +1284,8 @@ public class PharmacyService {
         boolean logout = doctorService.showDoctorMenu(doctor);
         
         if (logout) {
+            // The doctor menu does not report its changes, so write everything
+            markAllDirty();
             saveDataToFiles();
         }
     }
@@ -724,6 +1311,8 @@ public class PharmacyService {
         boolean logout = pharmacistService.showPharmacistMenu(pharmacist);
         
         if (logout) {
+            // The pharmacist menu does not report its changes, so write everything
+            markAllDirty();
             saveDataToFiles();
         }
     }
@@ -846,16 +1435,13 @@ public class PharmacyService {
             Consultation consultation = consultations.get(i);
             
             // Find the doctor name
-            Doctor doctor = doctors.stream()
-                .filter(d -> d.getId() == consultation.getDoctorId())
-                .findFirst()
-                .orElse(null);
+            Doctor doctor = registry.findDoctor(consultation.getDoctorId());
             
             String doctorName = (doctor != null) ? doctor.getName() : "Unknown Doctor";
             
             System.out.println("\n" + (i + 1) + ". Consultation with Dr. " + doctorName);
             System.out.println("   Date: " + consultation.getDateTime());
-            System.out.println("   Messages: " + consultation.getMessages().size());
+            System.out.println("   Messages: " + registry.messages().count(consultation));
         }
         
         System.out.print("\nSelect a consultation to view (0 to go back): ");
@@ -875,18 +1461,12 @@ public class PharmacyService {
      */
     private void viewConsultationDetails(Consultation consultation) {
         // Find the doctor
-        Doctor doctor = doctors.stream()
-            .filter(d -> d.getId() == consultation.getDoctorId())
-            .findFirst()
-            .orElse(null);
+        Doctor doctor = registry.findDoctor(consultation.getDoctorId());
         
         String doctorName = (doctor != null) ? doctor.getName() : "Unknown Doctor";
         
         // Find the patient
-        Patient patient = patients.stream()
-            .filter(p -> p.getId() == consultation.getPatientId())
-            .findFirst()
-            .orElse(null);
+        Patient patient = registry.findPatient(consultation.getPatientId());
             
         String patientName = (patient != null) ? patient.getName() : "Unknown Patient";
         
@@ -897,10 +1477,14 @@ public class PharmacyService {
         System.out.println("Notes: " + consultation.getNotes());
         
         System.out.println("\nMessages:");
-        if (consultation.getMessages().isEmpty()) {
+        MessageStore.Page page = registry.messages().latest(consultation, MESSAGE_PAGE_SIZE);
+        if (page.getMessages().isEmpty()) {
             System.out.println("No messages yet.");
         } else {
-            for (Message message : consultation.getMessages()) {
+            if (page.hasOlder()) {
+                System.out.println("(" + (page.getCursor() - 1) + " earlier messages not shown)");
+            }
+            for (Message message : page.getMessages()) {
                 String sender;
                 if (message.getSenderId() == consultation.getDoctorId()) {
                     sender = "Dr. " + doctorName;
@@ -920,10 +1504,11 @@ public class PharmacyService {
             String messageContent = ConsoleUI.readStringInput("Enter your message: ").trim();
             
             if (!messageContent.isEmpty()) {
-                int messageId = consultation.getMessages().size() + 1;
-                Message message = new Message(messageId, consultation.getPatientId(), consultation.getDoctorId(), messageContent);
-                consultation.addMessage(message);
-                System.out.println("Message sent successfully.");
+                // The message store numbers the message
+                Message message = new Message(0, consultation.getPatientId(), consultation.getDoctorId(), messageContent);
+                if (registry.messages().append(consultation, message)) {
+                    System.out.println("Message sent successfully.");
+                }
             }
         }
     }
@@ -956,19 +1541,15 @@ public class PharmacyService {
         System.out.print("Enter reason for consultation: ");
         String notes = scanner.nextLine();
         
-        int consultationId = 1;
-        // Get the highest consultation ID currently in use
-        for (Consultation consultation : patient.getConsultations()) {
-            if (consultation.getId() >= consultationId) {
-                consultationId = consultation.getId() + 1;
-            }
-        }
+        int consultationId = generateConsultationId();
         
         Consultation consultation = new Consultation(consultationId, doctor.getId(), patient.getId(), notes);
         
-        // Add consultation to doctor and patient
-        doctor.addConsultation(consultation);
-        patient.addConsultation(consultation);
+        // Register the consultation so it is saved and its messages go to the message store
+        if (!saveDoctorConsultation(consultation)) {
+            System.out.println("Could not send the consultation request.");
+            return;
+        }
         
         System.out.println("Consultation request sent successfully to Dr. " + doctor.getName() + ".");
         
@@ -978,9 +1559,13 @@ public class PharmacyService {
             String messageContent = ConsoleUI.readStringInput("Enter your message: ").trim();
             
             if (!messageContent.isEmpty()) {
-                Message message = new Message(1, patient.getId(), doctor.getId(), messageContent);
-                consultation.addMessage(message);
-                System.out.println("Message sent successfully.");
+                // The message store numbers the message
+                Message message = new Message(0, patient.getId(), doctor.getId(), messageContent);
+                if (registry.messages().append(consultation, message)) {
+                    System.out.println("Message sent successfully.");
+                } else {
+                    System.out.println("Failed to send message.");
+                }
             }
         }
     }
@@ -1005,10 +1590,7 @@ public class PharmacyService {
             Consultation consultation = consultations.get(i);
             
             // Find the doctor name
-            Doctor doctor = doctors.stream()
-                .filter(d -> d.getId() == consultation.getDoctorId())
-                .findFirst()
-                .orElse(null);
+            Doctor doctor = registry.findDoctor(consultation.getDoctorId());
             
             String doctorName = (doctor != null) ? doctor.getName() : "Unknown Doctor";
             
@@ -1026,10 +1608,7 @@ public class PharmacyService {
         Consultation selectedConsultation = consultations.get(consultationIndex);
         
         // Get the doctor
-        Doctor doctor = doctors.stream()
-            .filter(d -> d.getId() == selectedConsultation.getDoctorId())
-            .findFirst()
-            .orElse(null);
+        Doctor doctor = registry.findDoctor(selectedConsultation.getDoctorId());
         
         if (doctor == null) {
             System.out.println("Error: Doctor not found.");
@@ -1044,10 +1623,11 @@ public class PharmacyService {
             return;
         }
         
-        // Create and add the message
-        int messageId = selectedConsultation.getMessages().size() + 1;
-        Message message = new Message(messageId, patient.getId(), doctor.getId(), messageContent);
-        selectedConsultation.addMessage(message);
+        // Create and add the message; the message store numbers it
+        Message message = new Message(0, patient.getId(), doctor.getId(), messageContent);
+        if (!registry.messages().append(selectedConsultation, message)) {
+            return;
+        }
         
         System.out.println("Message sent successfully to Dr. " + doctor.getName() + ".");
     }
@@ -1059,7 +1639,7 @@ public class PharmacyService {
      */
     private void manageWallet(Patient patient) {
         boolean back = false;
-        Wallet wallet = patient.getWallet();
+        Wallet wallet = walletService.getWallet(patient);
         
         while (!back) {
             System.out.println("\n💰 ===== WALLET MANAGEMENT ===== 💰");
@@ -1118,7 +1698,7 @@ public class PharmacyService {
         if (deposited) {
             System.out.println("\n✅ Deposit successful!");
             System.out.println("New Balance: " + String.format("%.2f LE", patient.getWallet().getBalance()));
-            saveDataToFiles(); // Save after deposit
+            // Deposit is journaled by the wallet listener
         } else {
             System.out.println("\n❌ Deposit failed. Please try again.");
         }
@@ -1216,10 +1796,7 @@ public class PharmacyService {
             }
             
             // Check if medicine exists
-            Medicine medicine = medicines.stream()
-                                        .filter(m -> m.getId() == medicineId)
-                                        .findFirst()
-                                        .orElse(null);
+            Medicine medicine = registry.findMedicine(medicineId);
             
             if (medicine == null) {
                 System.out.println("Medicine with ID " + medicineId + " not found.");
@@ -1258,6 +1835,9 @@ public class PharmacyService {
         Order order = patientService.placeOrder(patient.getId(), medicineQuantities);
         
         if (order != null) {
+            // Journal the order and its stock before waiting on the user, instead of rewriting every file
+            recordOrderPlaced(order);
+            
             System.out.println("Order placed successfully!");
             order.displayInfo();
             
@@ -1265,12 +1845,12 @@ public class PharmacyService {
             String payNow = ConsoleUI.readStringInput("\nDo you want to pay for this order now? (y/n): ").trim().toLowerCase();
             
             if (payNow.equals("y") || payNow.equals("yes")) {
-                processOrderPayment(patient, order);
+                if (processOrderPayment(patient, order)) {
+                    recordOrderChanged(order); // Journal the paid order
+                }
             } else {
                 System.out.println("You can pay for this order later from the 'View My Orders' menu.");
             }
-            
-            saveDataToFiles(); // Save data after placing order
         } else {
             System.out.println("Failed to place order.");
         }
@@ -1356,7 +1936,7 @@ public class PharmacyService {
         
         if (patientService.cancelOrder(patient.getId(), orderId)) {
             System.out.println("Order canceled successfully!");
-            saveDataToFiles(); // Save data after canceling order
+            saveDataToFiles(DataSet.ORDERS, DataSet.MEDICINES, DataSet.PATIENTS); // Save data after canceling order
         } else {
             System.out.println("Failed to cancel order.");
         }
@@ -1389,7 +1969,7 @@ public class PharmacyService {
         
         if (patientService.updateAccount(patient.getId(), name, email, phoneNumber, address)) {
             System.out.println("Account updated successfully!");
-            saveDataToFiles(); // Save data after updating account
+            saveDataToFiles(DataSet.PATIENTS); // Save data after updating account
         } else {
             System.out.println("Failed to update account.");
         }
@@ -1401,14 +1981,11 @@ public class PharmacyService {
     private void createPatientAccount() {
         System.out.println("\n👤 ===== CREATE PATIENT ACCOUNT ===== 👤");
         
-        // Generate a new patient ID
-        int nextPatientId = patients.stream().mapToInt(Patient::getId).max().orElse(0) + 1;
-        
         String name = ConsoleUI.readStringInput("Enter Name: ");
         String username = ConsoleUI.readStringInput("Enter Username: ");
         
-        // Check if username already exists
-        if (patients.stream().anyMatch(p -> p.getUsername().equals(username))) {
+        // Check if username already exists in any role
+        if (isUsernameTaken(username)) {
             System.out.println("Username already exists. Please choose a different username.");
             return;
         }
@@ -1418,12 +1995,14 @@ public class PharmacyService {
         String phoneNumber = ConsoleUI.readStringInput("Enter Phone Number: ");
         String address = ConsoleUI.readStringInput("Enter Address: ");
         
+        // Take the ID only once the account is about to be created
+        int nextPatientId = generateUserId();
         Patient newPatient = new Patient(nextPatientId, name, username, password, email, phoneNumber, address);
         
         if (patientService.createAccount(newPatient)) {
             System.out.println("Account created successfully!");
             System.out.println("Your Patient ID is: " + nextPatientId);
-            saveDataToFiles(); // Save data after creating account
+            recordUserAdded(newPatient); // Journal the new account
         } else {
             System.out.println("Failed to create account.");
         }
@@ -1465,6 +2044,20 @@ public class PharmacyService {
         return medicines;
     }
 
+    /**
+     * Search medicines by name, category, manufacturer and description
+     * Words may be prefixes, parts of words or contain a small typo
+     * 
+     * @param query The search text
+     * @return Matching medicines, best match first; all medicines for a blank query
+     */
+    public List<Medicine> searchMedicines(String query) {
+        if (query == null || query.trim().isEmpty()) {
+            return new ArrayList<>(medicines);
+        }
+        return registry.medicineSearch().search(query);
+    }
+    
     /**
      * Get the list of orders
      * 
@@ -1473,6 +2066,348 @@ public class PharmacyService {
     public List<Order> getOrders() {
         return orders;
     }
+    
+    /**
+     * Find a patient by ID
+     * 
+     * @param patientId The patient ID
+     * @return The patient, or null if there is none
+     */
+    public Patient findPatient(int patientId) {
+        return registry.findPatient(patientId);
+    }
+    
+    /**
+     * Get the resident orders of a patient
+     * 
+     * @param patientId The patient ID
+     * @return The patient's orders
+     */
+    public List<Order> getOrdersForPatient(int patientId) {
+        return registry.orderIndex().byPatient(patientId);
+    }
+    
+    /**
+     * Get the resident orders with a status, in the order they reached it
+     * 
+     * @param status The status
+     * @return The orders with that status
+     */
+    public List<Order> getOrdersByStatus(Order.Status status) {
+        return registry.orderIndex().byStatus(status);
+    }
+    
+    /**
+     * Get the orders waiting for a pharmacist, oldest first
+     * 
+     * @return The pending orders
+     */
+    public List<Order> getPendingOrders() {
+        return registry.orderIndex().byStatus(Order.Status.PENDING);
+    }
+    
+    /**
+     * Get the resident orders placed within a date range, oldest first
+     * 
+     * @param from Start of the range, inclusive, or null for no lower bound
+     * @param to End of the range, exclusive, or null for no upper bound
+     * @return The orders placed in the range
+     */
+    public List<Order> getOrdersBetween(Date from, Date to) {
+        return registry.orderIndex().between(from, to);
+    }
+    
+    /**
+     * Get the revenue of all completed orders, including archived ones
+     * 
+     * @return Revenue in LE
+     */
+    public double getTotalRevenue() {
+        return registry.sales().getTotalRevenue();
+    }
+    
+    /**
+     * Get the sales of the completed orders placed within a date range, including archived ones
+     * Answered from hourly, daily and monthly sales buckets, without reading any order
+     * 
+     * @param from Start of the range, inclusive, or null for no lower bound
+     * @param to End of the range, exclusive, or null for no upper bound
+     * @return The sales of the range, to the hour
+     */
+    public SalesRollup.Summary getSalesSummary(Date from, Date to) {
+        return registry.sales().summarize(from, to);
+    }
+    
+    /**
+     * Get the medicines at a stock level
+     * 
+     * @param level The stock level
+     * @return The medicines at that level
+     */
+    public List<Medicine> getMedicinesAtStockLevel(StockWatch.Level level) {
+        return registry.stockWatch().atLevel(level);
+    }
+    
+    /**
+     * Count the medicines at a stock level
+     * 
+     * @param level The stock level
+     * @return Number of medicines at that level
+     */
+    public int countMedicinesAtStockLevel(StockWatch.Level level) {
+        return registry.stockWatch().count(level);
+    }
+    
+    /**
+     * Get the medicines that are low, critically low or out of stock, most urgent first
+     * 
+     * @return The medicines needing restocking
+     */
+    public List<Medicine> getMedicinesNeedingRestock() {
+        return registry.stockWatch().needingRestock();
+    }
+    
+    /**
+     * Count the medicines that are low, critically low or out of stock
+     * 
+     * @return Number of medicines needing restocking
+     */
+    public int countMedicinesNeedingRestock() {
+        return registry.stockWatch().countNeedingRestock();
+    }
+    
+    /**
+     * Give a medicine its own low-stock thresholds
+     * 
+     * @param medicineId The medicine ID
+     * @param critical Stock below this is critically low
+     * @param low Stock below this is low
+     */
+    public void setStockThresholds(int medicineId, int critical, int low) {
+        registry.stockWatch().setThresholds(medicineId, critical, low);
+    }
+    
+    /**
+     * Get the lock guarding the stock of a medicine
+     * Hold it while checking the stock and then changing it, so no other thread
+     * changes the stock of any copy of the medicine in between
+     * 
+     * @param medicineId The medicine ID
+     * @return The medicine's stock lock
+     */
+    public Lock getStockLock(int medicineId) {
+        return registry.stockLocks().get(medicineId);
+    }
+    
+    /**
+     * Add to or take from the stock of a medicine while holding its stock lock
+     * Units held for carts are not taken
+     * 
+     * @param medicine The medicine, or a pharmacy's copy of it
+     * @param delta Units to add, or negative to take
+     * @return true if the stock changed, false if there was not enough stock to take
+     */
+    public boolean adjustStock(Medicine medicine, int delta) {
+        Lock lock = getStockLock(medicine.getId());
+        lock.lock();
+        try {
+            if (delta < 0) {
+                return medicine.tryTakeStock(-delta);
+            }
+            medicine.restoreStock(delta);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Put a medicine in a patient's cart, holding its stock until checkout
+     * The hold is released if the cart is left alone for the hold time
+     * 
+     * @param patient The patient
+     * @param medicine The medicine
+     * @param quantity The units to add
+     * @return true if added, false if not enough units are available
+     */
+    public boolean addToCart(Patient patient, Medicine medicine, int quantity) {
+        if (!registry.reservations().hold(patient.getId(), medicine, quantity)) {
+            return false;
+        }
+        patient.getCartOrder().addMedicine(medicine, quantity);
+        return true;
+    }
+    
+    /**
+     * Take a medicine out of a patient's cart and release its held stock
+     * 
+     * @param patient The patient
+     * @param medicineId The medicine ID
+     * @return true if removed, false if the medicine was not in the cart
+     */
+    public boolean removeFromCart(Patient patient, int medicineId) {
+        registry.reservations().release(patient.getId(), medicineId);
+        return patient.getCartOrder().removeItem(medicineId);
+    }
+    
+    /**
+     * Check out a patient's cart, taking the stock its holds cover
+     * Items whose holds expired are taken only if still available
+     * 
+     * @param patient The patient
+     * @return The order made from the cart, or null if the cart is empty or out of stock
+     */
+    public Order checkoutCart(Patient patient) {
+        Order cart = patient.getCartOrder();
+        if (cart.getItems().isEmpty() || !registry.reservations().commit(patient.getId(), cart)) {
+            return null;
+        }
+        return patient.checkoutCart();
+    }
+    
+    /**
+     * Put a checked out order back as a patient's cart, when it could not be paid
+     * Its stock is returned and held for the cart again
+     * 
+     * @param patient The patient
+     * @param order The order made by checkoutCart
+     */
+    public void returnToCart(Patient patient, Order order) {
+        for (OrderItem item : order.getItems()) {
+            Medicine medicine = registry.findMedicine(item.getMedicineId());
+            if (medicine != null) {
+                medicine.restoreStock(item.getQuantity());
+                registry.reservations().hold(patient.getId(), medicine, item.getQuantity());
+            }
+        }
+        patient.setCartOrder(order);
+    }
+    
+    /**
+     * Get the units of a medicine held for a patient's cart
+     * 
+     * @param patient The patient
+     * @param medicineId The medicine ID
+     * @return The held units
+     */
+    public int getHeldStock(Patient patient, int medicineId) {
+        return registry.reservations().heldFor(patient.getId(), medicineId);
+    }
+    
+    /**
+     * Get the latest messages of a consultation
+     * 
+     * @param consultation The consultation
+     * @param limit The maximum number of messages
+     * @return The last page of the consultation's messages, oldest first
+     */
+    public MessageStore.Page getLatestMessages(Consultation consultation, int limit) {
+        return registry.messages().latest(consultation, limit);
+    }
+    
+    /**
+     * Get the messages of a consultation that come before a page already shown
+     * 
+     * @param consultation The consultation
+     * @param cursor The cursor of the page shown, see MessageStore.Page.getCursor
+     * @param limit The maximum number of messages
+     * @return The page before the cursor, oldest first
+     */
+    public MessageStore.Page getOlderMessages(Consultation consultation, int cursor, int limit) {
+        return registry.messages().before(consultation, cursor, limit);
+    }
+    
+    /**
+     * Count the messages of a consultation
+     * 
+     * @param consultation The consultation
+     * @return Number of messages
+     */
+    public int getMessageCount(Consultation consultation) {
+        return registry.messages().count(consultation);
+    }
+    
+    /**
+     * Count the messages sent to a doctor that the doctor has not read
+     * 
+     * @param doctorId The doctor ID
+     * @return Number of unread messages over all consultations
+     */
+    public int getUnreadMessageCount(int doctorId) {
+        return registry.messages().unreadCount(doctorId);
+    }
+    
+    /**
+     * Count the messages of a consultation its doctor has not read
+     * 
+     * @param consultation The consultation
+     * @return Number of unread messages
+     */
+    public int getUnreadMessageCount(Consultation consultation) {
+        return registry.messages().unreadCount(consultation);
+    }
+    
+    /**
+     * Mark every message of a consultation as read by its doctor
+     * 
+     * @param consultation The consultation
+     */
+    public void markConsultationRead(Consultation consultation) {
+        registry.messages().markRead(consultation);
+    }
+    
+    /**
+     * Get the complete order history, archived orders first
+     * Archived orders are read lazily one page at a time, so iterating does not
+     * load the whole history into memory
+     * 
+     * @param patientId The patient ID, or OrderArchive.ALL_PATIENTS for every patient
+     * @return Iterable over the patient's orders
+     */
+    public Iterable<Order> getOrderHistory(int patientId) {
+        return () -> {
+            // An order present in both places (interrupted archiving) is served from memory
+            IndexedList<Order> residentOrders = registry.orders();
+            Stream<Order> archived = StreamSupport.stream(orderArchive.orders(patientId, medicines).spliterator(), false)
+                .filter(order -> !residentOrders.containsId(order.getId()));
+            Stream<Order> resident = patientId == OrderArchive.ALL_PATIENTS
+                ? residentOrders.stream()
+                : getOrdersForPatient(patientId).stream();
+            return Stream.concat(archived, resident).iterator();
+        };
+    }
+    
+    /**
+     * Get one page of the order history
+     * 
+     * @param patientId The patient ID, or OrderArchive.ALL_PATIENTS for every patient
+     * @param page The page number, starting at 0
+     * @param pageSize The number of orders per page
+     * @return The orders on the requested page
+     */
+    public List<Order> getOrderHistoryPage(int patientId, int page, int pageSize) {
+        List<Order> result = new ArrayList<>(pageSize);
+        int skip = page * pageSize;
+        for (Order order : getOrderHistory(patientId)) {
+            if (skip > 0) {
+                skip--;
+            } else if (result.size() < pageSize) {
+                result.add(order);
+            } else {
+                break;
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Get the number of orders in the complete history
+     * 
+     * @return Number of resident and archived orders
+     */
+    public int getOrderHistorySize() {
+        return orders.size() + orderArchive.size();
+    }
 
     /**
      * Get the authentication service
@@ -1492,6 +2427,15 @@ public class PharmacyService {
         return patientService;
     }
 
+    /**
+     * Get the wallet service
+     * 
+     * @return The wallet service
+     */
+    public WalletService getWalletService() {
+        return walletService;
+    }
+    
     /**
      * Get the DoctorService instance
      * 
@@ -1519,6 +2463,17 @@ public class PharmacyService {
         return true; // For now, always return true as the file system is initialized in the constructor
     }
 
+    /**
+     * Check whether a username is taken by an admin, doctor, patient or pharmacist
+     * Usernames are compared ignoring case
+     * 
+     * @param username The username to check
+     * @return true if the username is already in use
+     */
+    public boolean isUsernameTaken(String username) {
+        return registry.usernames().isTaken(username);
+    }
+    
     /**
      * Add a new admin to the system
      * 
@@ -1526,13 +2481,7 @@ public class PharmacyService {
      * @return true if admin was added successfully
      */
     public boolean addAdmin(Admin admin) {
-        // Check if username already exists
-        if (admins.stream().anyMatch(a -> a.getUsername().equals(admin.getUsername()))) {
-            return false;
-        }
-        admins.add(admin);
-        saveDataToFiles();
-        return true;
+        return addUser(admins, admin);
     }
     
     /**
@@ -1542,13 +2491,7 @@ public class PharmacyService {
      * @return true if doctor was added successfully
      */
     public boolean addDoctor(Doctor doctor) {
-        // Check if username already exists
-        if (doctors.stream().anyMatch(d -> d.getUsername().equals(doctor.getUsername()))) {
-            return false;
-        }
-        doctors.add(doctor);
-        saveDataToFiles();
-        return true;
+        return addUser(doctors, doctor);
     }
     
     /**
@@ -1558,13 +2501,7 @@ public class PharmacyService {
      * @return true if patient was added successfully
      */
     public boolean addPatient(Patient patient) {
-        // Check if username already exists
-        if (patients.stream().anyMatch(p -> p.getUsername().equals(patient.getUsername()))) {
-            return false;
-        }
-        patients.add(patient);
-        saveDataToFiles();
-        return true;
+        return addUser(patients, patient);
     }
     
     /**
@@ -1574,12 +2511,35 @@ public class PharmacyService {
      * @return true if pharmacist was added successfully
      */
     public boolean addPharmacist(Pharmacist pharmacist) {
-        // Check if username already exists
-        if (pharmacists.stream().anyMatch(p -> p.getUsername().equals(pharmacist.getUsername()))) {
+        return addUser(pharmacists, pharmacist);
+    }
+    
+    /**
+     * Add a user to its list and journal it, unless a user of any role has its username
+     * The username is reserved before the add, so two registrations of the same name
+     * on different lists cannot both pass
+     * 
+     * @param <T> The role type
+     * @param users The list of the user's role
+     * @param user The user to add
+     * @return true if the user was added
+     */
+    private <T extends User> boolean addUser(List<T> users, T user) {
+        if (!registry.usernames().tryReserve(user)) {
             return false;
         }
-        pharmacists.add(pharmacist);
-        saveDataToFiles();
+        boolean added = false;
+        try {
+            added = users.add(user);
+        } finally {
+            if (!added) {
+                registry.usernames().remove(user);
+            }
+        }
+        if (!added) {
+            return false;
+        }
+        recordUserAdded(user);
         return true;
     }
     
@@ -1592,7 +2552,7 @@ public class PharmacyService {
     public boolean deleteAdmin(int adminId) {
         boolean removed = admins.removeIf(a -> a.getId() == adminId);
         if (removed) {
-            saveDataToFiles();
+            saveDataToFiles(DataSet.ADMINS);
         }
         return removed;
     }
@@ -1606,7 +2566,7 @@ public class PharmacyService {
     public boolean deleteDoctor(int doctorId) {
         boolean removed = doctors.removeIf(d -> d.getId() == doctorId);
         if (removed) {
-            saveDataToFiles();
+            saveDataToFiles(DataSet.DOCTORS);
         }
         return removed;
     }
@@ -1620,11 +2580,41 @@ public class PharmacyService {
     public boolean deletePatient(int patientId) {
         boolean removed = patients.removeIf(p -> p.getId() == patientId);
         if (removed) {
-            saveDataToFiles();
+            deleteFromSharedStore(DataSet.PATIENTS, patientId);
+            saveDataToFiles(DataSet.PATIENTS);
         }
         return removed;
     }
     
+    /**
+     * Delete a removed entity from a shared store
+     * Saving only upserts, so deletions are sent separately; the text files drop the entity when rewritten
+     * 
+     * @param dataSet The collection the entity was removed from
+     * @param id The ID of the removed entity
+     */
+    private void deleteFromSharedStore(DataSet dataSet, int id) {
+        if (!repositories.isShared()) {
+            return;
+        }
+        switch (dataSet) {
+            case MEDICINES:
+                repositories.medicines().delete(id);
+                break;
+            case PATIENTS:
+                repositories.patients().delete(id);
+                break;
+            case ORDERS:
+                repositories.orders().delete(id);
+                break;
+            case PRESCRIPTIONS:
+                repositories.prescriptions().delete(id);
+                break;
+            default:
+                break;
+        }
+    }
+    
     /**
      * Delete a pharmacist from the system
      * 
@@ -1634,80 +2624,11 @@ public class PharmacyService {
     public boolean deletePharmacist(int pharmacistId) {
         boolean removed = pharmacists.removeIf(p -> p.getId() == pharmacistId);
         if (removed) {
-            saveDataToFiles();
+            saveDataToFiles(DataSet.PHARMACISTS);
         }
         return removed;
     }
 
-    /**
-     * Ensure all users have unique IDs across all user types
-     * Reassigns IDs sequentially by user type: first admins, then doctors, then patients, then pharmacists
-     */
-    private void ensureUniqueUserIds() {
-        System.out.println("Organizing user IDs to be sequential across all user types...");
-        boolean hasChanges = false;
-        
-        // Start with ID = 1
-        int nextId = 1;
-        
-        // First assign IDs to admins
-        System.out.println("Assigning IDs to admins starting with " + nextId);
-        for (Admin admin : admins) {
-            if (admin.getId() != nextId) {
-                System.out.println("Reassigning admin " + admin.getName() + 
-                                 " from ID " + admin.getId() + " to " + nextId);
-                admin.setId(nextId);
-                hasChanges = true;
-            }
-            nextId++;
-        }
-        
-        // Then assign IDs to doctors
-        System.out.println("Assigning IDs to doctors starting with " + nextId);
-        for (Doctor doctor : doctors) {
-            if (doctor.getId() != nextId) {
-                System.out.println("Reassigning doctor " + doctor.getName() + 
-                                 " from ID " + doctor.getId() + " to " + nextId);
-                doctor.setId(nextId);
-                hasChanges = true;
-            }
-            nextId++;
-        }
-        
-        // Then assign IDs to patients
-        System.out.println("Assigning IDs to patients starting with " + nextId);
-        for (Patient patient : patients) {
-            if (patient.getId() != nextId) {
-                System.out.println("Reassigning patient " + patient.getName() + 
-                                 " from ID " + patient.getId() + " to " + nextId);
-                patient.setId(nextId);
-                hasChanges = true;
-            }
-            nextId++;
-        }
-        
-        // Finally assign IDs to pharmacists
-        System.out.println("Assigning IDs to pharmacists starting with " + nextId);
-        for (Pharmacist pharmacist : pharmacists) {
-            if (pharmacist.getId() != nextId) {
-                System.out.println("Reassigning pharmacist " + pharmacist.getName() + 
-                                 " from ID " + pharmacist.getId() + " to " + nextId);
-                pharmacist.setId(nextId);
-                hasChanges = true;
-            }
-            nextId++;
-        }
-        
-        // Save changes if any were made
-        if (hasChanges) {
-            System.out.println("Saving updated user IDs...");
-            saveDataToFiles();
-            System.out.println("All user IDs are now sequential and unique across all user types.");
-        } else {
-            System.out.println("All user IDs are already sequential - no changes needed.");
-        }
-    }
-
     /**
      * Get all patients from the system
      * 
@@ -1719,7 +2640,7 @@ public class PharmacyService {
 
     /**
      * Saves a consultation and links it to doctor and patient.
-     * This automatically saves data to files after making changes.
+     * The consultation is written to the consultations file; its messages are kept by the message store.
      * 
      * @param consultation The consultation to save
      * @return true if successful, false if failed
@@ -1730,13 +2651,7 @@ public class PharmacyService {
         }
         
         // Get the doctor
-        Doctor doctor = null;
-        for (Doctor doc : doctors) {
-            if (doc.getId() == consultation.getDoctorId()) {
-                doctor = doc;
-                break;
-            }
-        }
+        Doctor doctor = registry.findDoctor(consultation.getDoctorId());
         
         if (doctor == null) {
             System.err.println("Doctor not found for consultation: " + consultation.getId());
@@ -1744,13 +2659,7 @@ public class PharmacyService {
         }
         
         // Get the patient
-        Patient patient = null;
-        for (Patient pat : patients) {
-            if (pat.getId() == consultation.getPatientId()) {
-                patient = pat;
-                break;
-            }
-        }
+        Patient patient = registry.findPatient(consultation.getPatientId());
         
         if (patient == null) {
             System.err.println("Patient not found for consultation: " + consultation.getId());
@@ -1758,33 +2667,27 @@ public class PharmacyService {
         }
         
         // Add consultation to doctor
-        doctor.addConsultation(consultation);
+        if (!doctor.getConsultations().contains(consultation)) {
+            doctor.addConsultation(consultation);
+        }
         
         // Add consultation to patient
         patient.addConsultation(consultation);
         
         // Add consultation to list if not already present
-        boolean found = false;
-        for (int i = 0; i < consultations.size(); i++) {
-            if (consultations.get(i).getId() == consultation.getId()) {
-                consultations.set(i, consultation); // Update existing
-                found = true;
-                break;
-            }
-        }
-        
-        if (!found) {
+        Consultation existing = registry.findConsultation(consultation.getId());
+        if (existing != null) {
+            consultations.set(consultations.indexOf(existing), consultation); // Update existing
+        } else {
             consultations.add(consultation);
         }
         
-        // Save all data to files
-        saveDataToFiles();
-        
+        saveDataToFiles(DataSet.CONSULTATIONS);
         return true;
     }
 
     /**
-     * Updates a consultation's status and saves changes.
+     * Updates a consultation's status.
      * 
      * @param consultationId ID of the consultation to update
      * @param newStatus New status for the consultation
@@ -1792,13 +2695,7 @@ public class PharmacyService {
      */
     public boolean updateConsultationStatus(int consultationId, String newStatus) {
         // Find consultation in list
-        Consultation consultation = null;
-        for (Consultation c : consultations) {
-            if (c.getId() == consultationId) {
-                consultation = c;
-                break;
-            }
-        }
+        Consultation consultation = registry.findConsultation(consultationId);
         
         if (consultation == null) {
             return false;
@@ -1807,14 +2704,14 @@ public class PharmacyService {
         // Update status
         consultation.setStatus(newStatus);
         
-        // Save changes
-        saveDataToFiles();
-        
+        saveDataToFiles(DataSet.CONSULTATIONS);
         return true;
     }
 
     /**
-     * Add a message to a consultation and save changes.
+     * Add a message to a consultation.
+     * The message is appended to the consultation's thread in the message store, which
+     * numbers it; nothing else is saved.
      * 
      * @param consultationId ID of the consultation
      * @param message Message to add
@@ -1822,25 +2719,13 @@ public class PharmacyService {
      */
     public boolean addMessageToConsultation(int consultationId, Message message) {
         // Find consultation
-        Consultation consultation = null;
-        for (Consultation c : consultations) {
-            if (c.getId() == consultationId) {
-                consultation = c;
-                break;
-            }
-        }
+        Consultation consultation = registry.findConsultation(consultationId);
         
         if (consultation == null || message == null) {
             return false;
         }
         
-        // Add message
-        consultation.addMessage(message);
-        
-        // Save changes
-        saveDataToFiles();
-        
-        return true;
+        return registry.messages().append(consultation, message);
     }
 
     /**
@@ -1856,13 +2741,7 @@ public class PharmacyService {
         }
         
         // Find the doctor
-        Doctor doctor = null;
-        for (Doctor doc : doctors) {
-            if (doc.getId() == prescription.getDoctorId()) {
-                doctor = doc;
-                break;
-            }
-        }
+        Doctor doctor = registry.findDoctor(prescription.getDoctorId());
         
         if (doctor == null) {
             System.err.println("Doctor not found for prescription: " + prescription.getId());
@@ -1870,13 +2749,7 @@ public class PharmacyService {
         }
         
         // Find the patient
-        Patient patient = null;
-        for (Patient pat : patients) {
-            if (pat.getId() == prescription.getPatientId()) {
-                patient = pat;
-                break;
-            }
-        }
+        Patient patient = registry.findPatient(prescription.getPatientId());
         
         if (patient == null) {
             System.err.println("Patient not found for prescription: " + prescription.getId());
@@ -1894,21 +2767,15 @@ public class PharmacyService {
         }
         
         // Add prescription to central list if not already present
-        boolean found = false;
-        for (int i = 0; i < prescriptions.size(); i++) {
-            if (prescriptions.get(i).getId() == prescription.getId()) {
-                prescriptions.set(i, prescription); // Update existing
-                found = true;
-                break;
-            }
-        }
-        
-        if (!found) {
+        Prescription existing = registry.findPrescription(prescription.getId());
+        if (existing != null) {
+            prescriptions.set(prescriptions.indexOf(existing), prescription); // Update existing
+        } else {
             prescriptions.add(prescription);
         }
         
         // Save all data to files
-        saveDataToFiles();
+        saveDataToFiles(DataSet.PRESCRIPTIONS);
         
         return true;
     }
@@ -1917,13 +2784,32 @@ public class PharmacyService {
      * Generate a unique order ID.
      * @return next available order id
      */
-    public synchronized int generateOrderId() {
-        // Ensure nextOrderId is always greater than current max
-        int maxId = orders.stream().mapToInt(Order::getId).max().orElse(0);
-        if (nextOrderId <= maxId) {
-            nextOrderId = maxId + 1;
-        }
-        return nextOrderId++;
+    public int generateOrderId() {
+        return registry.ids().next(IdAllocator.Sequence.ORDER);
+    }
+    
+    /**
+     * Generate a user ID unique across admins, doctors, patients and pharmacists.
+     * @return next available user id
+     */
+    public int generateUserId() {
+        return registry.ids().next(IdAllocator.Sequence.USER);
+    }
+    
+    /**
+     * Generate a unique prescription ID.
+     * @return next available prescription id
+     */
+    public int generatePrescriptionId() {
+        return registry.ids().next(IdAllocator.Sequence.PRESCRIPTION);
+    }
+    
+    /**
+     * Generate a unique consultation ID.
+     * @return next available consultation id
+     */
+    public int generateConsultationId() {
+        return registry.ids().next(IdAllocator.Sequence.CONSULTATION);
     }
 
     /**
@@ -1932,10 +2818,7 @@ public class PharmacyService {
      * @return Medicine object or null if not found
      */
     public Medicine findMedicineById(int medicineId) {
-        return medicines.stream()
-                .filter(m -> m.getId() == medicineId)
-                .findFirst()
-                .orElse(null);
+        return registry.findMedicine(medicineId);
     }
 
     /**
@@ -1945,11 +2828,8 @@ public class PharmacyService {
      * @return The patient's name, or "Unknown" if not found
      */
     public String getPatientName(int patientId) {
-        return patients.stream()
-            .filter(p -> p.getId() == patientId)
-            .findFirst()
-            .map(Patient::getName)
-            .orElse("Unknown");
+        Patient patient = registry.findPatient(patientId);
+        return patient != null ? patient.getName() : "Unknown";
     }
 
     /**
@@ -1959,10 +2839,7 @@ public class PharmacyService {
      * @return The doctor's name, or "Unknown" if not found
      */
     public String getDoctorName(int doctorId) {
-        return doctors.stream()
-            .filter(d -> d.getId() == doctorId)
-            .findFirst()
-            .map(Doctor::getName)
-            .orElse("Unknown");
+        Doctor doctor = registry.findDoctor(doctorId);
+        return doctor != null ? doctor.getName() : "Unknown";
     }
 }
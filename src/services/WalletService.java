@@ -1,43 +1,33 @@
 package services;
 
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
-import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
+import java.util.OptionalDouble;
 
 import models.Patient;
 import models.Wallet;
+import repository.WalletRepository;
 // Using Transaction as inner class of Wallet
 import utils.ConsoleUI;
 
 /**
  * Service class for wallet operations
  * This class provides methods for managing wallets and their transactions
+ * 
+ * Wallets belong to their patients and are stored in the wallet repository:
+ * every transaction is appended to it as it happens, and a wallet's balance
+ * and history are read back from it.
  */
 public class WalletService {
-    private static final String WALLETS_DIR = "data/wallet";
-    private static final String WALLET_FILE_FORMAT = WALLETS_DIR + "/wallet_%d.dat";
-    
-    // Map of wallets by patient ID
-    private Map<Integer, Wallet> walletMap;
+    private final WalletRepository wallets;
     
     /**
      * Constructor
-     * Initializes the wallet map
+     * 
+     * @param wallets The repository wallet transactions are stored in
      */
-    public WalletService() {
-        this.walletMap = new HashMap<>();
-        
-        // Create the wallets directory if it doesn't exist
-        File dir = new File(WALLETS_DIR);
-        if (!dir.exists()) {
-            dir.mkdirs();
-        }
+    public WalletService(WalletRepository wallets) {
+        this.wallets = wallets;
     }
     
     /**
@@ -48,69 +38,37 @@ public class WalletService {
      * @return The patient's wallet
      */
     public Wallet getWallet(Patient patient) {
-        // Check if wallet is in memory
-        Wallet wallet = walletMap.get(patient.getId());
-        
-        if (wallet == null) {
-            // Try to load from file
-            wallet = loadWalletFromFile(patient);
-            
-            // If still null, create a new wallet
-            if (wallet == null) {
-                // Create in memory
-                wallet = new Wallet(patient.getId(), patient.getUsername());
-                
-                // Add to memory map
-                walletMap.put(patient.getId(), wallet);
-                
-                // Save to file
-                saveWalletToFile(wallet);
+        synchronized (patient) {
+            if (patient.getWallet() == null) {
+                patient.setWallet(new Wallet(patient.getId(), patient.getUsername()));
+                attach(patient);
             }
+            return patient.getWallet();
         }
-        
-        return wallet;
     }
     
     /**
-     * Load a wallet from file
+     * Connect a patient's wallet to the wallet repository
+     * A stored wallet reads its balance from the repository and loads its history on demand;
+     * otherwise its current history is moved into the repository. Every new transaction is appended.
      * 
-     * @param patient The patient
-     * @return The wallet or null if not found
+     * @param patient The patient whose wallet should be connected
      */
-    private Wallet loadWalletFromFile(Patient patient) {
-        String filename = String.format(WALLET_FILE_FORMAT, patient.getId());
-        File file = new File(filename);
-        
-        if (!file.exists()) {
-            return null;
-        }
-        
-        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(file))) {
-            Wallet wallet = (Wallet) ois.readObject();
-            walletMap.put(patient.getId(), wallet);
-            return wallet;
-        } catch (IOException | ClassNotFoundException e) {
-            System.err.println("Error loading wallet from file: " + e.getMessage());
-            return null;
+    public void attach(Patient patient) {
+        Wallet wallet = patient.getWallet();
+        if (wallet == null) {
+            return;
         }
-    }
-    
-    /**
-     * Save a wallet to file
-     * 
-     * @param wallet The wallet to save
-     * @return true if saved successfully, false otherwise
-     */
-    private boolean saveWalletToFile(Wallet wallet) {
-        String filename = String.format(WALLET_FILE_FORMAT, wallet.getPatientId());
-        
-        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(filename))) {
-            oos.writeObject(wallet);
-            return true;
-        } catch (IOException e) {
-            System.err.println("Error saving wallet to file: " + e.getMessage());
-            return false;
+        int patientId = patient.getId();
+        OptionalDouble balance = wallets.findBalance(patientId);
+        if (balance.isPresent()) {
+            wallet.restoreBalance(balance.getAsDouble(), () -> wallets.findTransactions(patientId));
+        } else {
+            wallets.appendTransactions(patientId, wallet.getTransactions());
         }
+        // Look the ID up on every transaction; a duplicate doctor ID may still be reassigned
+        wallet.setTransactionListener(
+            transaction -> wallets.appendTransactions(patient.getId(), Collections.singletonList(transaction)));
     }
     
     /**
@@ -123,14 +81,9 @@ public class WalletService {
      */
     public boolean deposit(Wallet wallet, double amount, String description) {
         try {
-            // Create transaction in wallet object
+            // Create transaction in wallet object; the listener appends it to the wallet repository
             boolean success = wallet.deposit(amount, description);
             
-            // Save to file
-            if (success) {
-                saveWalletToFile(wallet);
-            }
-            
             return success;
         } catch (Exception e) {
             System.err.println("Error processing deposit: " + e.getMessage());
@@ -148,19 +101,9 @@ public class WalletService {
      */
     public boolean withdraw(Wallet wallet, double amount, String description) {
         try {
-            // Check if there are sufficient funds
-            if (wallet.getBalance() < amount) {
-                return false;
-            }
-            
-            // Create transaction in wallet object
+            // The wallet checks the funds under its own lock
             boolean success = wallet.withdraw(amount, description);
             
-            // Save to file
-            if (success) {
-                saveWalletToFile(wallet);
-            }
-            
             return success;
         } catch (Exception e) {
             System.err.println("Error processing withdrawal: " + e.getMessage());
@@ -178,19 +121,9 @@ public class WalletService {
      */
     public boolean makePayment(Wallet wallet, double amount, String description) {
         try {
-            // Check if there are sufficient funds
-            if (wallet.getBalance() < amount) {
-                return false;
-            }
-            
-            // Since there's no specific makePayment method, use withdraw with a payment description
+            // Use withdraw with a payment description; the wallet checks the funds under its own lock
             boolean success = wallet.withdraw(amount, "Payment: " + description);
             
-            // Save to file
-            if (success) {
-                saveWalletToFile(wallet);
-            }
-            
             return success;
         } catch (Exception e) {
             System.err.println("Error processing payment: " + e.getMessage());
@@ -198,27 +131,6 @@ public class WalletService {
         }
     }
     
-    /**
-     * Save wallet data to file
-     * This should be called periodically to ensure data persistence
-     * 
-     * @param wallet The wallet to save
-     * @return true if saved successfully, false otherwise
-     */
-    public boolean saveWallet(Wallet wallet) {
-        return saveWalletToFile(wallet);
-    }
-    
-    /**
-     * Save credit card information for a wallet
-     * 
-     * @param wallet The wallet to save credit cards for
-     * @return true if saved successfully, false otherwise
-     */
-    public boolean saveCreditCards(Wallet wallet) {
-        return saveWalletToFile(wallet);
-    }
-    
     /**
      * Get transaction history for a wallet
      * 
@@ -227,7 +139,7 @@ public class WalletService {
      * @return The list of transactions, sorted by date (most recent first)
      */
     public List<Wallet.Transaction> getTransactionHistory(Wallet wallet, int limit) {
-        // Return directly from wallet object (already loaded from file system)
+        // Return directly from wallet object (history is read from the wallet repository on first use)
         List<Wallet.Transaction> transactions = wallet.getTransactions();
         
         if (transactions.isEmpty() || limit <= 0 || limit >= transactions.size()) {
@@ -251,11 +163,6 @@ public class WalletService {
             // Since there's no specific processRefund method, use deposit with a refund description
             boolean success = wallet.deposit(amount, "Refund: " + description);
             
-            // Save to file
-            if (success) {
-                saveWalletToFile(wallet);
-            }
-            
             return success;
         } catch (Exception e) {
             System.err.println("Error processing refund: " + e.getMessage());
@@ -304,7 +211,7 @@ public class WalletService {
                 case 4:
                     manageCreditCards(wallet);
                     break;
-                    
+                
                 case 5:
                     return true;
                 
@@ -486,9 +393,6 @@ public class WalletService {
         
         if (success) {
             ConsoleUI.printColoredText("✅ Credit card added successfully!", ConsoleUI.GREEN);
-            
-            // Save the updated wallet
-            saveCreditCards(wallet);
         } else {
             ConsoleUI.printColoredText("❌ Invalid card number or card already exists.", ConsoleUI.RED);
         }
@@ -531,9 +435,6 @@ public class WalletService {
         
         if (success) {
             ConsoleUI.printColoredText("✅ Credit card removed successfully!", ConsoleUI.GREEN);
-            
-            // Save the updated wallet
-            saveCreditCards(wallet);
         } else {
             ConsoleUI.printColoredText("❌ Failed to remove credit card.", ConsoleUI.RED);
         }
@@ -568,14 +469,4 @@ public class WalletService {
         // Format the masked card number
         return masked + lastFour;
     }
-    
-    /**
-     * Save all wallets to file
-     * This should be called periodically to ensure data persistence
-     */
-    public void saveAllWallets() {
-        for (Wallet wallet : walletMap.values()) {
-            saveWalletToFile(wallet);
-        }
-    }
 }
\ No newline at end of file
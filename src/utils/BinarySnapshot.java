@@ -0,0 +1,420 @@
+package utils;
+
+import models.*;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * BinarySnapshot stores all persisted collections in one versioned binary file
+ *
+ * The snapshot is written next to the text files at every checkpoint and read
+ * first on startup. Numbers are stored as fixed-width columns, dates as epoch
+ * milliseconds and every String once in a shared string table, so loading needs
+ * no text or date parsing. Wallets only store their balance; transactions live in
+ * the wallet ledger.
+ *
+ * Layout:
+ *   magic, version
+ *   fingerprints of the text files (path, length, last modified)
+ *   string table (count, then length-prefixed UTF-8 strings)
+ *   sections in a fixed order, each a record count followed by length-prefixed records
+ *
+ * The snapshot is treated as stale, and ignored, when any text file no longer
+ * matches its fingerprint, for example after the text files were edited by hand.
+ */
+public class BinarySnapshot {
+    public static final String SNAPSHOT_FILE = "data/snapshot.bin";
+    
+    private static final int MAGIC = 0x50484D53; // "PHMS"
+    private static final int VERSION = 2;
+    private static final int NULL_STRING = -1;
+    
+    // Text files the snapshot mirrors, in fingerprint order
+    private static final String[] SOURCE_FILES = {
+        FileHandler.ADMINS_FILE,
+        FileHandler.PATIENTS_FILE,
+        FileHandler.DOCTORS_FILE,
+        FileHandler.MEDICINES_FILE,
+        FileHandler.ORDERS_FILE
+    };
+    
+    private static final Order.Status[] ORDER_STATUSES = Order.Status.values();
+    private static final Order.PaymentMethod[] PAYMENT_METHODS = Order.PaymentMethod.values();
+    private static final Order.DeliveryMethod[] DELIVERY_METHODS = Order.DeliveryMethod.values();
+    
+    /**
+     * Collections restored from a snapshot
+     */
+    public static class Contents {
+        private final List<Admin> admins = new ArrayList<>();
+        private final List<Patient> patients = new ArrayList<>();
+        private final List<Doctor> doctors = new ArrayList<>();
+        private final List<Medicine> medicines = new ArrayList<>();
+        private final List<Order> orders = new ArrayList<>();
+        
+        public List<Admin> getAdmins() { return admins; }
+        public List<Patient> getPatients() { return patients; }
+        public List<Doctor> getDoctors() { return doctors; }
+        public List<Medicine> getMedicines() { return medicines; }
+        public List<Order> getOrders() { return orders; }
+    }
+    
+    /**
+     * Write a snapshot of the given collections
+     * Must be called after the text files were written so the fingerprints match them
+     *
+     * @param admins List of admins
+     * @param patients List of patients
+     * @param doctors List of doctors
+     * @param medicines List of medicines
+     * @param orders List of orders
+     * @return true if the snapshot was written
+     */
+    public static boolean write(List<Admin> admins, List<Patient> patients, List<Doctor> doctors,
+                                List<Medicine> medicines, List<Order> orders) {
+        StringTable strings = new StringTable();
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        
+        try {
+            DataOutputStream out = new DataOutputStream(body);
+            RecordBuffer record = new RecordBuffer();
+            
+            out.writeInt(admins.size());
+            for (Admin admin : admins) {
+                DataOutputStream r = record.begin();
+                r.writeInt(admin.getId());
+                r.writeInt(strings.indexOf(admin.getName()));
+                r.writeInt(strings.indexOf(admin.getUsername()));
+                r.writeInt(strings.indexOf(admin.getPassword()));
+                r.writeInt(strings.indexOf(admin.getEmail()));
+                r.writeInt(strings.indexOf(admin.getPhoneNumber()));
+                r.writeInt(strings.indexOf(admin.getPosition()));
+                r.writeInt(strings.indexOf(admin.getDepartment()));
+                record.writeTo(out);
+            }
+            
+            out.writeInt(patients.size());
+            for (Patient patient : patients) {
+                DataOutputStream r = record.begin();
+                r.writeInt(patient.getId());
+                r.writeInt(strings.indexOf(patient.getName()));
+                r.writeInt(strings.indexOf(patient.getUsername()));
+                r.writeInt(strings.indexOf(patient.getPassword()));
+                r.writeInt(strings.indexOf(patient.getEmail()));
+                r.writeInt(strings.indexOf(patient.getPhoneNumber()));
+                r.writeInt(strings.indexOf(patient.getAddress()));
+                r.writeInt(patient.getDoctorId());
+                
+                r.writeDouble(patient.getWallet().getBalance());
+                record.writeTo(out);
+            }
+            
+            out.writeInt(doctors.size());
+            for (Doctor doctor : doctors) {
+                DataOutputStream r = record.begin();
+                r.writeInt(doctor.getId());
+                r.writeInt(strings.indexOf(doctor.getName()));
+                r.writeInt(strings.indexOf(doctor.getUsername()));
+                r.writeInt(strings.indexOf(doctor.getPassword()));
+                r.writeInt(strings.indexOf(doctor.getEmail()));
+                r.writeInt(strings.indexOf(doctor.getPhoneNumber()));
+                r.writeInt(strings.indexOf(doctor.getSpecialization()));
+                r.writeInt(strings.indexOf(doctor.getLicenseNumber()));
+                record.writeTo(out);
+            }
+            
+            out.writeInt(medicines.size());
+            for (Medicine medicine : medicines) {
+                DataOutputStream r = record.begin();
+                r.writeInt(medicine.getId());
+                r.writeInt(strings.indexOf(medicine.getName()));
+                r.writeDouble(medicine.getPrice());
+                r.writeInt(medicine.getStock());
+                r.writeInt(strings.indexOf(medicine.getDescription()));
+                r.writeInt(strings.indexOf(medicine.getCategory()));
+                r.writeBoolean(medicine.isRequiresPrescription());
+                record.writeTo(out);
+            }
+            
+            out.writeInt(orders.size());
+            for (Order order : orders) {
+                DataOutputStream r = record.begin();
+                r.writeInt(order.getId());
+                r.writeInt(order.getPatientId());
+                r.writeLong(order.getOrderDate() != null ? order.getOrderDate().getTime() : 0L);
+                r.writeDouble(order.getTotalAmount());
+                r.writeByte(order.getStatus().ordinal());
+                r.writeByte(order.getPaymentMethod().ordinal());
+                r.writeBoolean(order.isPaid());
+                r.writeInt(order.getItems().size());
+                for (OrderItem item : order.getItems()) {
+                    r.writeInt(item.getMedicineId());
+                    r.writeInt(item.getQuantity());
+                }
+                r.writeInt(strings.indexOf(order.getPatientName()));
+                r.writeInt(strings.indexOf(order.getPatientPhone()));
+                r.writeInt(strings.indexOf(order.getPatientAddress()));
+                r.writeByte(order.getDeliveryMethod() != null ? order.getDeliveryMethod().ordinal() : -1);
+                record.writeTo(out);
+            }
+            out.flush();
+        } catch (IOException e) {
+            System.err.println("Error encoding snapshot: " + e.getMessage());
+            return false;
+        }
+        
+        // Write to a temporary file first so a crash never leaves a half-written snapshot
+        File target = new File(SNAPSHOT_FILE);
+        File temp = new File(SNAPSHOT_FILE + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            
+            out.writeInt(SOURCE_FILES.length);
+            for (String path : SOURCE_FILES) {
+                File source = new File(path);
+                writeString(out, path);
+                out.writeLong(source.length());
+                out.writeLong(source.lastModified());
+            }
+            
+            strings.writeTo(out);
+            body.writeTo(out);
+        } catch (IOException e) {
+            System.err.println("Error writing snapshot: " + e.getMessage());
+            return false;
+        }
+        
+        try {
+            Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("Error replacing snapshot: " + e.getMessage());
+            return false;
+        }
+        return true;
+    }
+    
+    /**
+     * Read the snapshot if it exists and still matches the text files
+     *
+     * @return The restored collections, or empty if the snapshot is missing, stale or unreadable
+     */
+    public static Optional<Contents> read() {
+        File file = new File(SNAPSHOT_FILE);
+        if (!file.exists()) {
+            return Optional.empty();
+        }
+        
+        try {
+            ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+            if (in.getInt() != MAGIC || in.getInt() != VERSION) {
+                System.out.println("Ignoring snapshot with unknown format.");
+                return Optional.empty();
+            }
+            
+            int fileCount = in.getInt();
+            for (int i = 0; i < fileCount; i++) {
+                File source = new File(readString(in));
+                long length = in.getLong();
+                long lastModified = in.getLong();
+                if (source.length() != length || source.lastModified() != lastModified) {
+                    System.out.println("Snapshot is stale (" + source.getPath() + " changed), loading text files.");
+                    return Optional.empty();
+                }
+            }
+            
+            String[] strings = new String[in.getInt()];
+            for (int i = 0; i < strings.length; i++) {
+                strings[i] = readString(in);
+            }
+            
+            Contents contents = new Contents();
+            readAdmins(in, strings, contents.admins);
+            readPatients(in, strings, contents.patients);
+            readDoctors(in, strings, contents.doctors);
+            readMedicines(in, strings, contents.medicines);
+            readOrders(in, strings, contents.medicines, contents.orders);
+            return Optional.of(contents);
+        } catch (IOException | BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+            System.err.println("Error reading snapshot, loading text files: " + e);
+            return Optional.empty();
+        }
+    }
+    
+    private static void readAdmins(ByteBuffer in, String[] strings, List<Admin> admins) {
+        int count = in.getInt();
+        for (int i = 0; i < count; i++) {
+            ByteBuffer r = nextRecord(in);
+            admins.add(new Admin(r.getInt(), str(r, strings), str(r, strings), str(r, strings),
+                                 str(r, strings), str(r, strings), str(r, strings), str(r, strings)));
+        }
+    }
+    
+    private static void readPatients(ByteBuffer in, String[] strings, List<Patient> patients) {
+        int count = in.getInt();
+        for (int i = 0; i < count; i++) {
+            ByteBuffer r = nextRecord(in);
+            int id = r.getInt();
+            Patient patient = new Patient(id, str(r, strings), str(r, strings), str(r, strings),
+                                          str(r, strings), str(r, strings), str(r, strings));
+            patient.setDoctorId(r.getInt());
+            
+            Wallet wallet = new Wallet(patient);
+            wallet.restoreState(r.getDouble(), new ArrayList<>());
+            patient.setWallet(wallet);
+            patients.add(patient);
+        }
+    }
+    
+    private static void readDoctors(ByteBuffer in, String[] strings, List<Doctor> doctors) {
+        int count = in.getInt();
+        for (int i = 0; i < count; i++) {
+            ByteBuffer r = nextRecord(in);
+            doctors.add(new Doctor(r.getInt(), str(r, strings), str(r, strings), str(r, strings),
+                                   str(r, strings), str(r, strings), str(r, strings), str(r, strings)));
+        }
+    }
+    
+    private static void readMedicines(ByteBuffer in, String[] strings, List<Medicine> medicines) {
+        int count = in.getInt();
+        for (int i = 0; i < count; i++) {
+            ByteBuffer r = nextRecord(in);
+            int id = r.getInt();
+            String name = str(r, strings);
+            double price = r.getDouble();
+            int stock = r.getInt();
+            String description = str(r, strings);
+            String category = str(r, strings);
+            boolean requiresPrescription = r.get() != 0;
+            medicines.add(new Medicine(id, name, description, "Egyptian Pharma", price, stock, category, requiresPrescription));
+        }
+    }
+    
+    private static void readOrders(ByteBuffer in, String[] strings, List<Medicine> medicines, List<Order> orders) {
+        Map<Integer, Medicine> medicinesById = new HashMap<>();
+        for (Medicine medicine : medicines) {
+            medicinesById.putIfAbsent(medicine.getId(), medicine);
+        }
+        
+        int count = in.getInt();
+        for (int i = 0; i < count; i++) {
+            ByteBuffer r = nextRecord(in);
+            Order order = new Order(r.getInt(), r.getInt(), new Date(r.getLong()));
+            order.setTotalAmount(r.getDouble());
+            order.setStatus(ORDER_STATUSES[r.get()]);
+            order.setPaymentMethod(PAYMENT_METHODS[r.get()]);
+            order.setPaid(r.get() != 0);
+            
+            int itemCount = r.getInt();
+            for (int t = 0; t < itemCount; t++) {
+                Medicine medicine = medicinesById.get(r.getInt());
+                int quantity = r.getInt();
+                if (medicine != null) {
+                    order.addMedicine(medicine, quantity);
+                }
+            }
+            
+            order.setPatientName(str(r, strings));
+            order.setPatientPhone(str(r, strings));
+            order.setPatientAddress(str(r, strings));
+            byte delivery = r.get();
+            if (delivery >= 0) {
+                order.setDeliveryMethod(DELIVERY_METHODS[delivery]);
+            }
+            orders.add(order);
+        }
+    }
+    
+    /**
+     * Slice the next length-prefixed record out of the buffer
+     *
+     * @param in The snapshot buffer
+     * @return A buffer holding exactly one record
+     */
+    private static ByteBuffer nextRecord(ByteBuffer in) {
+        int length = in.getInt();
+        ByteBuffer record = in.slice();
+        record.limit(length);
+        in.position(in.position() + length);
+        return record;
+    }
+    
+    private static String str(ByteBuffer record, String[] strings) {
+        int index = record.getInt();
+        return index == NULL_STRING ? null : strings[index];
+    }
+    
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+    
+    private static String readString(ByteBuffer in) {
+        byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+    
+    /**
+     * Deduplicating table of the Strings referenced by the records
+     */
+    private static class StringTable {
+        private final Map<String, Integer> indexes = new LinkedHashMap<>();
+        
+        int indexOf(String value) {
+            if (value == null) {
+                return NULL_STRING;
+            }
+            Integer index = indexes.get(value);
+            if (index == null) {
+                index = indexes.size();
+                indexes.put(value, index);
+            }
+            return index;
+        }
+        
+        void writeTo(DataOutputStream out) throws IOException {
+            out.writeInt(indexes.size());
+            for (String value : indexes.keySet()) {
+                writeString(out, value);
+            }
+        }
+    }
+    
+    /**
+     * Reusable buffer for encoding one record before its length is known
+     */
+    private static class RecordBuffer {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final DataOutputStream out = new DataOutputStream(bytes);
+        
+        DataOutputStream begin() {
+            bytes.reset();
+            return out;
+        }
+        
+        void writeTo(DataOutputStream target) throws IOException {
+            out.flush();
+            target.writeInt(bytes.size());
+            bytes.writeTo(target);
+        }
+    }
+}
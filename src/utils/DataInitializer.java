@@ -92,7 +92,7 @@ public class DataInitializer {
         }
         
         // Test placing an order
-        Order newOrder = new Order(1, testPatient.getId());
+        Order newOrder = new Order(pharmacyService.generateOrderId(), testPatient.getId());
         
         // Add medicines to order
         Medicine medicine1 = pharmacyService.getMedicines().get(0);
@@ -122,7 +122,7 @@ public class DataInitializer {
         }
         
         // Test creating a new order for credit card payment
-        Order creditCardOrder = new Order(2, testPatient.getId());
+        Order creditCardOrder = new Order(pharmacyService.generateOrderId(), testPatient.getId());
         
         // Add medicines to order
         creditCardOrder.addMedicine(medicine1, 1);
@@ -148,7 +148,7 @@ public class DataInitializer {
         
         // Test creating a new patient account
         Patient newPatient = new Patient(
-            3, "Khaled Mahmoud", "khaled_patient", "password", 
+            pharmacyService.generateUserId(), "Khaled Mahmoud", "khaled_patient", "password", 
             "khaled@gmail.com", "01011223344", "14 El Nasr St, Alexandria"
         );
         
@@ -233,7 +233,7 @@ public class DataInitializer {
         // pharmacies, prescriptions, etc. For now, we'll just create placeholder data.
         
         // Create test admin
-        Admin admin = new Admin(1, "Ahmed Nader", "admin", "admin123", "ahmed@pharmacy.com", 
+        Admin admin = new Admin(pharmacyService.generateUserId(), "Ahmed Nader", "admin", "admin123", "ahmed@pharmacy.com", 
                              "01012345678", "Head Pharmacist", "Management");
         pharmacyService.getAdmins().add(admin);
         
@@ -256,7 +256,7 @@ public class DataInitializer {
         pharmacyService.getMedicines().add(medicine5);
         
         // Create test patient
-        Patient patient = new Patient(1, "Amr Hassan", "Amr", "Amr123", 
+        Patient patient = new Patient(pharmacyService.generateUserId(), "Amr Hassan", "Amr", "Amr123", 
                                  "amr@gmail.com", "01123456789", "123 El Geish St, Cairo");
         // Initialize wallet with funds for testing
         patient.getWallet().deposit(500.0, "Initial test deposit");
@@ -264,7 +264,7 @@ public class DataInitializer {
         pharmacyService.getPatients().add(patient);
         
         // Create test doctor
-        Doctor doctor = new Doctor(1, "Dr. Mohamed Saleh", "dr_mohamed", "dr123", 
+        Doctor doctor = new Doctor(pharmacyService.generateUserId(), "Dr. Mohamed Saleh", "dr_mohamed", "dr123", 
                            "dr.mohamed@hospital.com", "01234567890", "Medical License 12345", "General Medicine");
         pharmacyService.getDoctors().add(doctor);
         
@@ -274,7 +274,7 @@ public class DataInitializer {
         pharmacyService.getPharmacies().add(pharmacy);
         
         // Create test pharmacist
-        Pharmacist pharmacist = new Pharmacist(1, "Fatima Ahmed", "mo", "123", 
+        Pharmacist pharmacist = new Pharmacist(pharmacyService.generateUserId(), "Fatima Ahmed", "mo", "123", 
                                      "fatima@pharmacy.com", "01056789012", "Pharm License 54321", 
                                      "Clinical Pharmacist", pharmacy.getId());
         pharmacyService.getPharmacists().add(pharmacist);
@@ -316,7 +316,7 @@ public class DataInitializer {
         
         // Create a prescription
         Prescription prescription = new Prescription(
-            1, 
+            pharmacyService.generatePrescriptionId(), 
             patient.getId(), 
             doctor.getId(), 
             LocalDate.now(), 
@@ -345,23 +345,29 @@ public class DataInitializer {
         
         // Send prescription to pharmacy
         Pharmacy pharmacy = pharmacyService.getPharmacies().get(0);
-        prescription.setStatus("Sent to Pharmacy");
+        prescription.setPharmacyId(pharmacy.getId());
+        prescription.setStatus(PrescriptionStatus.PENDING);
         pharmacy.addPrescription(prescription);
         
         System.out.println("Sent prescription to pharmacy: " + pharmacy.getName());
         
+        // Consultations are saved, so reuse the test consultation from an earlier start
+        boolean consultationExists = patient.getConsultations().stream()
+            .anyMatch(c -> c.getDoctorId() == doctor.getId());
+        if (consultationExists) {
+            System.out.println("Test consultation between Dr. " + doctor.getName() + " and " + patient.getName() + " already exists");
+            System.out.println("Doctor functionalities tested successfully.");
+            return;
+        }
+        
         // Create a test consultation between doctor and patient
         Consultation consultation = new Consultation(
-            1, 
+            pharmacyService.generateConsultationId(), 
             doctor.getId(), 
             patient.getId(), 
             "Initial consultation for headache and fever"
         );
         
-        // Add the consultation to both doctor and patient
-        doctor.addConsultation(consultation);
-        patient.addConsultation(consultation);
-        
         // Add a few test messages to the consultation
         Message doctorMessage1 = new Message(
             1, 
@@ -389,8 +395,8 @@ public class DataInitializer {
         consultation.addMessage(patientMessage1);
         consultation.addMessage(doctorMessage2);
         
-        // Add consultation to pharmacy service
-        pharmacyService.getConsultations().add(consultation);
+        // Register the consultation with doctor, patient and pharmacy service; its messages move to the message store
+        pharmacyService.saveDoctorConsultation(consultation);
         
         System.out.println("Created test consultation between Dr. " + doctor.getName() + " and " + patient.getName());
         System.out.println("Doctor functionalities tested successfully.");
@@ -418,7 +424,7 @@ public class DataInitializer {
             System.out.println("Processing prescription with ID: " + prescription.getId());
             
             // Fill prescription
-            prescription.setStatus("Filled");
+            prescription.setStatus(PrescriptionStatus.COMPLETED);
             pharmacist.getFilledPrescriptions().add(prescription);
             
             System.out.println("Filled prescription successfully.");
@@ -476,10 +482,7 @@ public class DataInitializer {
             // If prescription is filled, create an order with it
             if (prescription.getStatus().equals("Filled")) {
                 // Create an order with the filled prescription
-                int nextOrderId = pharmacyService.getOrders().stream()
-                                                .mapToInt(Order::getId)
-                                                .max()
-                                                .orElse(0) + 1;
+                int nextOrderId = pharmacyService.generateOrderId();
                 
                 Order order = patient.placeOrderWithPrescription(prescription, nextOrderId);
                 
@@ -0,0 +1,263 @@
+package utils;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * DataJournal is an append-only write-ahead log of data mutations
+ *
+ * Every mutation is appended as one line instead of rewriting the snapshot
+ * files, and forced to disk before append returns. A checkpoint writes the
+ * snapshot files and then folds the journal away; records that were not
+ * folded yet are replayed on the next startup.
+ *
+ * Line format: sequence TAB record type TAB payload
+ */
+public class DataJournal {
+    public static final String JOURNAL_FILE = "data/journal.log";
+    public static final String CHECKPOINT_FILE = "data/journal.checkpoint";
+    
+    /**
+     * Types of mutations recorded in the journal
+     */
+    public enum RecordType {
+        ORDER_PLACED,
+        STOCK_CHANGED,
+        WALLET_TRANSACTION, // Only replayed; wallets append to the WalletLedger now
+        USER_ADDED
+    }
+    
+    /**
+     * A single journal record
+     */
+    public static class Record {
+        private final long sequence;
+        private final RecordType type;
+        private final String payload;
+        
+        /**
+         * Constructor for a journal record
+         *
+         * @param sequence The sequence number of the record
+         * @param type The type of the record
+         * @param payload The record payload
+         */
+        public Record(long sequence, RecordType type, String payload) {
+            this.sequence = sequence;
+            this.type = type;
+            this.payload = payload;
+        }
+        
+        public long getSequence() { return sequence; }
+        public RecordType getType() { return type; }
+        public String getPayload() { return payload; }
+    }
+    
+    private final File journalFile;
+    private final File checkpointFile;
+    private long lastSequence;
+    private long checkpointSequence;
+    private int pendingRecords;
+    
+    /**
+     * Constructor using the default journal files under data/
+     */
+    public DataJournal() {
+        this(JOURNAL_FILE, CHECKPOINT_FILE);
+    }
+    
+    /**
+     * Constructor for a journal stored in the given files
+     *
+     * @param journalPath Path of the journal file
+     * @param checkpointPath Path of the file holding the last folded sequence number
+     */
+    public DataJournal(String journalPath, String checkpointPath) {
+        this.journalFile = new File(journalPath);
+        this.checkpointFile = new File(checkpointPath);
+        this.checkpointSequence = readCheckpointSequence();
+        this.lastSequence = checkpointSequence;
+    }
+    
+    /**
+     * Append a record to the journal
+     *
+     * @param type The type of mutation
+     * @param payload The mutation payload (single line)
+     * @return true if the record was written
+     */
+    public synchronized boolean append(RecordType type, String payload) {
+        long sequence = lastSequence + 1;
+        String line = sequence + "\t" + type.name() + "\t" + sanitize(payload);
+        
+        try (FileOutputStream out = new FileOutputStream(journalFile, true)) {
+            out.write((line + System.lineSeparator()).getBytes());
+            // The record must be on disk before the mutation is acknowledged
+            out.getChannel().force(false);
+        } catch (IOException e) {
+            System.err.println("Error appending to journal: " + e.getMessage());
+            return false;
+        }
+        
+        lastSequence = sequence;
+        pendingRecords++;
+        return true;
+    }
+    
+    /**
+     * Read all records that have not been folded into a checkpoint yet
+     *
+     * @return List of records in sequence order
+     */
+    public synchronized List<Record> readPending() {
+        List<Record> records = new ArrayList<>();
+        if (!journalFile.exists()) {
+            return records;
+        }
+        
+        try (BufferedReader reader = new BufferedReader(new FileReader(journalFile))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split("\t", 3);
+                if (parts.length < 3) {
+                    continue; // Torn write at the tail of the journal
+                }
+                
+                try {
+                    long sequence = Long.parseLong(parts[0]);
+                    RecordType type = RecordType.valueOf(parts[1]);
+                    if (sequence > checkpointSequence) {
+                        records.add(new Record(sequence, type, parts[2]));
+                    }
+                    lastSequence = Math.max(lastSequence, sequence);
+                } catch (IllegalArgumentException e) {
+                    System.err.println("Skipping malformed journal record: " + line);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error reading journal: " + e.getMessage());
+        }
+        
+        pendingRecords = records.size();
+        return records;
+    }
+    
+    /**
+     * Mark every record written so far as folded into the snapshot files
+     * Must only be called after the snapshot files have been written
+     */
+    public synchronized void checkpoint() {
+        checkpoint(lastSequence);
+    }
+    
+    /**
+     * Mark the records up to the given sequence number as folded into the snapshot files
+     * Records appended after it stay in the journal, so a save that ran while mutations
+     * were still being journaled does not drop them
+     *
+     * @param sequence The last sequence number the written snapshot files contain
+     */
+    public synchronized void checkpoint(long sequence) {
+        // Record the folded sequence first so a crash before truncation does not replay twice
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(checkpointFile))) {
+            writer.write(Long.toString(sequence));
+        } catch (IOException e) {
+            System.err.println("Error writing journal checkpoint: " + e.getMessage());
+            return;
+        }
+        checkpointSequence = sequence;
+        
+        if (sequence >= lastSequence) {
+            try (RandomAccessFile file = new RandomAccessFile(journalFile, "rw")) {
+                file.setLength(0);
+            } catch (IOException e) {
+                System.err.println("Error truncating journal: " + e.getMessage());
+            }
+            pendingRecords = 0;
+            return;
+        }
+        
+        // Rewrite the journal with only the records after the checkpoint
+        List<String> kept = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(journalFile))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split("\t", 2);
+                try {
+                    if (Long.parseLong(parts[0]) > sequence) {
+                        kept.add(line);
+                    }
+                } catch (NumberFormatException e) {
+                    // Torn or malformed line; readPending would skip it as well
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error reading journal: " + e.getMessage());
+            return;
+        }
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(journalFile))) {
+            for (String line : kept) {
+                writer.write(line);
+                writer.newLine();
+            }
+        } catch (IOException e) {
+            System.err.println("Error rewriting journal: " + e.getMessage());
+        }
+        pendingRecords = kept.size();
+    }
+    
+    /**
+     * Get the sequence number of the last appended record
+     *
+     * @return The sequence number
+     */
+    public synchronized long getLastSequence() {
+        return lastSequence;
+    }
+    
+    /**
+     * Get the number of records appended since the last checkpoint
+     *
+     * @return Number of pending records
+     */
+    public synchronized int getPendingRecords() {
+        return pendingRecords;
+    }
+    
+    /**
+     * Read the last folded sequence number
+     *
+     * @return The sequence number, or 0 if no checkpoint was written yet
+     */
+    private long readCheckpointSequence() {
+        if (!checkpointFile.exists()) {
+            return 0;
+        }
+        
+        try (BufferedReader reader = new BufferedReader(new FileReader(checkpointFile))) {
+            String line = reader.readLine();
+            return line == null ? 0 : Long.parseLong(line.trim());
+        } catch (IOException | NumberFormatException e) {
+            System.err.println("Error reading journal checkpoint: " + e.getMessage());
+            return 0;
+        }
+    }
+    
+    /**
+     * Keep a payload on a single journal line
+     *
+     * @param payload The raw payload
+     * @return The payload without tabs or line breaks
+     */
+    private static String sanitize(String payload) {
+        return payload.replace('\t', ' ').replace('\n', ' ').replace('\r', ' ');
+    }
+}
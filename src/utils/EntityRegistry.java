@@ -0,0 +1,159 @@
+package utils;
+
+import models.Admin;
+import models.Consultation;
+import models.Doctor;
+import models.Medicine;
+import models.Order;
+import models.Patient;
+import models.Pharmacist;
+import models.Pharmacy;
+import models.Prescription;
+import models.User;
+
+import java.util.List;
+import java.util.function.ToIntFunction;
+
+/**
+ * EntityRegistry holds every entity collection of the pharmacy, indexed by primary key
+ *
+ * The collections are IndexedLists, so services keep using them as ordinary lists
+ * while lookups by ID are constant time. Any add or remove through the lists keeps
+ * the indexes current, including the username index over the four user lists, the
+ * search index and the stock watch over the medicines, the order index by patient,
+ * status and date, the pharmacy work queues of pending prescriptions and the sales
+ * totals of completed orders; orders, prescriptions and medicines report their own
+ * status and stock changes. Consultations added to the list have their messages
+ * moved into the message store, which keeps every thread on disk.
+ *
+ * The lists and indexes may be used from several threads. Stock sold to patients is
+ * taken with the medicine's own compare-and-set counter, and items in carts hold their
+ * stock through reservations. A change spanning several medicines, such as filling a
+ * prescription, holds their locks from stockLocks, which also cover the copies
+ * pharmacies keep under the same medicine ID. After a medicine is edited update it in
+ * medicineSearch. Sales of archived orders are only counted by rebuilding the sales
+ * totals from the complete order history.
+ *
+ * New IDs come from ids, which is moved past the IDs of the loaded records; an ID
+ * taken from it is never handed out again, even after a restart.
+ */
+public class EntityRegistry {
+    // Stock changes of different medicines rarely share one of this many locks
+    private static final int STOCK_LOCK_STRIPES = 64;
+    
+    private final IndexedList<Admin> admins;
+    private final IndexedList<Doctor> doctors;
+    private final IndexedList<Patient> patients;
+    private final IndexedList<Pharmacist> pharmacists;
+    private final IndexedList<Medicine> medicines;
+    private final IndexedList<Order> orders;
+    private final IndexedList<Pharmacy> pharmacies;
+    private final IndexedList<Prescription> prescriptions;
+    private final IndexedList<Consultation> consultations;
+    private final UsernameIndex usernames = new UsernameIndex();
+    private final MedicineSearchIndex medicineSearch = new MedicineSearchIndex();
+    private final OrderIndex orderIndex = new OrderIndex();
+    private final PrescriptionQueue prescriptionQueue = new PrescriptionQueue();
+    private final SalesAggregates sales = new SalesAggregates(this::findMedicine);
+    private final StockWatch stockWatch = new StockWatch();
+    private final MessageStore messages = new MessageStore();
+    private final StripedLocks stockLocks = new StripedLocks(STOCK_LOCK_STRIPES);
+    private final StockReservations reservations = new StockReservations(this::findMedicine);
+    private final IdAllocator ids = new IdAllocator();
+    
+    /**
+     * Constructor that indexes the loaded collections
+     *
+     * @param admins Loaded admins
+     * @param doctors Loaded doctors
+     * @param patients Loaded patients
+     * @param pharmacists Loaded pharmacists
+     * @param medicines Loaded medicines
+     * @param orders Loaded orders
+     * @param pharmacies Loaded pharmacies
+     * @param prescriptions Loaded prescriptions
+     * @param consultations Loaded consultations
+     */
+    public EntityRegistry(List<Admin> admins, List<Doctor> doctors, List<Patient> patients,
+                          List<Pharmacist> pharmacists, List<Medicine> medicines, List<Order> orders,
+                          List<Pharmacy> pharmacies, List<Prescription> prescriptions,
+                          List<Consultation> consultations) {
+        this.admins = IndexedList.of(admins, User::getId);
+        this.doctors = IndexedList.of(doctors, User::getId);
+        this.patients = IndexedList.of(patients, User::getId);
+        this.pharmacists = IndexedList.of(pharmacists, User::getId);
+        this.medicines = IndexedList.of(medicines, Medicine::getId);
+        this.orders = IndexedList.of(orders, Order::getId);
+        this.pharmacies = IndexedList.of(pharmacies, Pharmacy::getId);
+        this.prescriptions = IndexedList.of(prescriptions, Prescription::getId);
+        this.consultations = IndexedList.of(consultations, Consultation::getId);
+        
+        indexUsernames(this.admins);
+        indexUsernames(this.doctors);
+        indexUsernames(this.patients);
+        indexUsernames(this.pharmacists);
+        medicineSearch.addAll(this.medicines);
+        this.medicines.addChangeListener(medicineSearch::add, medicineSearch::remove);
+        stockWatch.addAll(this.medicines);
+        this.medicines.addChangeListener(stockWatch::add, stockWatch::remove);
+        orderIndex.addAll(this.orders);
+        this.orders.addChangeListener(orderIndex::add, orderIndex::remove);
+        sales.followAll(this.orders);
+        this.orders.addChangeListener(sales::follow, sales::unfollow);
+        prescriptionQueue.addAll(this.prescriptions);
+        this.prescriptions.addChangeListener(prescriptionQueue::add, prescriptionQueue::remove);
+        messages.adoptAll(this.consultations);
+        this.consultations.addChangeListener(messages::adopt, messages::forget);
+        
+        reserveIds(IdAllocator.Sequence.USER, this.admins, User::getId);
+        reserveIds(IdAllocator.Sequence.USER, this.doctors, User::getId);
+        reserveIds(IdAllocator.Sequence.USER, this.patients, User::getId);
+        reserveIds(IdAllocator.Sequence.USER, this.pharmacists, User::getId);
+        reserveIds(IdAllocator.Sequence.ORDER, this.orders, Order::getId);
+        reserveIds(IdAllocator.Sequence.PRESCRIPTION, this.prescriptions, Prescription::getId);
+        reserveIds(IdAllocator.Sequence.CONSULTATION, this.consultations, Consultation::getId);
+    }
+    
+    public IndexedList<Admin> admins() { return admins; }
+    public IndexedList<Doctor> doctors() { return doctors; }
+    public IndexedList<Patient> patients() { return patients; }
+    public IndexedList<Pharmacist> pharmacists() { return pharmacists; }
+    public IndexedList<Medicine> medicines() { return medicines; }
+    public IndexedList<Order> orders() { return orders; }
+    public IndexedList<Pharmacy> pharmacies() { return pharmacies; }
+    public IndexedList<Prescription> prescriptions() { return prescriptions; }
+    public IndexedList<Consultation> consultations() { return consultations; }
+    public UsernameIndex usernames() { return usernames; }
+    public MedicineSearchIndex medicineSearch() { return medicineSearch; }
+    public OrderIndex orderIndex() { return orderIndex; }
+    public PrescriptionQueue prescriptionQueue() { return prescriptionQueue; }
+    public SalesAggregates sales() { return sales; }
+    public StockWatch stockWatch() { return stockWatch; }
+    public MessageStore messages() { return messages; }
+    public StripedLocks stockLocks() { return stockLocks; }
+    public StockReservations reservations() { return reservations; }
+    public IdAllocator ids() { return ids; }
+    
+    public Admin findAdmin(int id) { return admins.findById(id); }
+    public Doctor findDoctor(int id) { return doctors.findById(id); }
+    public Patient findPatient(int id) { return patients.findById(id); }
+    public Pharmacist findPharmacist(int id) { return pharmacists.findById(id); }
+    public Medicine findMedicine(int id) { return medicines.findById(id); }
+    public Order findOrder(int id) { return orders.findById(id); }
+    public Pharmacy findPharmacy(int id) { return pharmacies.findById(id); }
+    public Prescription findPrescription(int id) { return prescriptions.findById(id); }
+    public Consultation findConsultation(int id) { return consultations.findById(id); }
+    
+    private <T> void reserveIds(IdAllocator.Sequence sequence, List<T> records, ToIntFunction<T> id) {
+        int max = 0;
+        for (T record : records) {
+            max = Math.max(max, id.applyAsInt(record));
+        }
+        ids.reserveThrough(sequence, max);
+    }
+    
+    private <T extends User> void indexUsernames(IndexedList<T> users) {
+        usernames.addAll(users);
+        users.addChangeListener(usernames::add, usernames::remove);
+    }
+}
@@ -5,6 +5,7 @@ import java.io.*;
 import java.text.SimpleDateFormat;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
 import java.util.function.Function;
@@ -20,9 +21,14 @@ public class FileHandler {
     private static final String[] ALL_FILES = {
         "admins.txt", "patients.txt", "clients.txt", "doctors.txt", 
         "pharmacists.txt", "pharmacies.txt", "medicines.txt", 
-        "orders.txt", "prescriptions.txt"
+        "orders.txt", "prescriptions.txt", "consultations.txt"
     };
     
+    // Enum constants cached for the record readers (values() copies the array on every call)
+    private static final Order.Status[] ORDER_STATUSES = Order.Status.values();
+    private static final Order.PaymentMethod[] PAYMENT_METHODS = Order.PaymentMethod.values();
+    private static final Order.DeliveryMethod[] DELIVERY_METHODS = Order.DeliveryMethod.values();
+    
     // File path constants for easier access
     public static final String ADMINS_FILE = DATA_DIR + "/admins.txt";
     public static final String PATIENTS_FILE = DATA_DIR + "/patients.txt";
@@ -33,11 +39,11 @@ public class FileHandler {
     public static final String MEDICINES_FILE = DATA_DIR + "/medicines.txt";
     public static final String ORDERS_FILE = DATA_DIR + "/orders.txt";
     public static final String PRESCRIPTIONS_FILE = DATA_DIR + "/prescriptions.txt";
+    public static final String CONSULTATIONS_FILE = DATA_DIR + "/consultations.txt";
     
     // Standard date formatters
     private static final DateTimeFormatter ISO_DATE_TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss");
     private static final SimpleDateFormat DATE_FORMAT = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
-    private static final SimpleDateFormat ISO_DATE_FORMAT = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss");
     private static final SimpleDateFormat DATE_ONLY_FORMAT = new SimpleDateFormat("yyyy-MM-dd");
     
     /**
@@ -130,26 +136,34 @@ public class FileHandler {
      * @return List of Admin objects
      */
     public static List<Admin> loadAdmins() {
-        return loadEntities(ADMINS_FILE, line -> {
-            String[] parts = line.split("\\|");
-            if (parts.length < 8) return Optional.empty();
+        return loadEntities(ADMINS_FILE, FileHandler::parseAdmin);
+    }
+    
+    /**
+     * Parse an admin from a line of the admins file
+     * 
+     * @param line Pipe-delimited admin line
+     * @return Admin if the line is valid, empty otherwise
+     */
+    public static Optional<Admin> parseAdmin(String line) {
+        String[] parts = line.split("\\|");
+        if (parts.length < 8) return Optional.empty();
+        
+        try {
+            int id = Integer.parseInt(parts[0].trim());
+            String name = parts[1].trim();
+            String username = parts[2].trim();
+            String password = parts[3].trim();
+            String email = parts[4].trim();
+            String phone = parts[5].trim();
+            String position = parts[6].trim();
+            String department = parts[7].trim();
             
-            try {
-                int id = Integer.parseInt(parts[0].trim());
-                String name = parts[1].trim();
-                String username = parts[2].trim();
-                String password = parts[3].trim();
-                String email = parts[4].trim();
-                String phone = parts[5].trim();
-                String position = parts[6].trim();
-                String department = parts[7].trim();
-                
-                return Optional.of(new Admin(id, name, username, password, email, phone, position, department));
-            } catch (Exception e) {
-                logError("Error parsing admin", e);
-                return Optional.empty();
-            }
-        });
+            return Optional.of(new Admin(id, name, username, password, email, phone, position, department));
+        } catch (Exception e) {
+            logError("Error parsing admin", e);
+            return Optional.empty();
+        }
     }
     
     /**
@@ -158,17 +172,25 @@ public class FileHandler {
      * @param admins List of Admin objects to save
      */
     public static void saveAdmins(List<Admin> admins) {
-        saveEntities(admins, ADMINS_FILE, admin -> 
-            String.format("%d|%s|%s|%s|%s|%s|%s|%s", 
-                admin.getId(), 
-                admin.getName(),
-                admin.getUsername(),
-                admin.getPassword(),
-                admin.getEmail(),
-                admin.getPhoneNumber(),
-                admin.getRole(),
-                admin.getDepartment())
-        );
+        saveEntities(admins, ADMINS_FILE, FileHandler::formatAdmin);
+    }
+    
+    /**
+     * Format an admin as a line of the admins file
+     * 
+     * @param admin Admin to format
+     * @return Pipe-delimited admin line
+     */
+    public static String formatAdmin(Admin admin) {
+        return String.format("%d|%s|%s|%s|%s|%s|%s|%s", 
+            admin.getId(), 
+            admin.getName(),
+            admin.getUsername(),
+            admin.getPassword(),
+            admin.getEmail(),
+            admin.getPhoneNumber(),
+            admin.getRole(),
+            admin.getDepartment());
     }
     
     // ================ Patient Methods ================
@@ -179,42 +201,7 @@ public class FileHandler {
      * @return List of Patient objects
      */
     public static List<Patient> loadPatients() {
-        List<Patient> patients = loadEntities(PATIENTS_FILE, line -> {
-            String[] parts = line.split("\\|");
-            if (parts.length < 7) return Optional.empty();
-            
-            try {
-                int id = Integer.parseInt(parts[0].trim());
-                String name = parts[1].trim();
-                String username = parts[2].trim();
-                String password = parts[3].trim();
-                String email = parts[4].trim();
-                String phone = parts[5].trim();
-                String address = parts[6].trim();
-                int assignedDoctor = parts.length >= 10 ? Integer.parseInt(parts[9].trim()) : 0;
-                
-                Patient patient = new Patient(id, name, username, password, email, phone, address);
-                patient.setDoctorId(assignedDoctor);
-                
-                // Load wallet balance if available
-                if (parts.length >= 8) {
-                    double balance = Double.parseDouble(parts[7].trim());
-                    if (balance > 0) {
-                        patient.getWallet().deposit(balance, "Balance loaded from file");
-                    }
-                }
-                
-                // Load transactions if available
-                if (parts.length >= 9) {
-                    loadWalletTransactions(patient, parts[8].trim());
-                }
-                
-                return Optional.of(patient);
-            } catch (Exception e) {
-                logError("Error parsing patient", e);
-                return Optional.empty();
-            }
-        });
+        List<Patient> patients = loadEntities(PATIENTS_FILE, FileHandler::parsePatient);
         
         // Try legacy file if no patients found
         if (patients.isEmpty()) {
@@ -243,66 +230,92 @@ public class FileHandler {
     }
     
     /**
-     * Helper method to load wallet transactions
+     * Parse a patient, including wallet data, from a line of the patients file
      * 
-     * @param patient Patient to load transactions for
-     * @param transactionsData Transaction data string
+     * @param line Pipe-delimited patient line
+     * @return Patient if the line is valid, empty otherwise
      */
-    private static void loadWalletTransactions(Patient patient, String transactionsData) {
-        // Create a new wallet to clear any existing transactions
-        patient.setWallet(new Wallet(patient));
+    public static Optional<Patient> parsePatient(String line) {
+        String[] parts = line.split("\\|");
+        if (parts.length < 7) return Optional.empty();
         
-        String[] transactions = transactionsData.split(";");
-        for (String txnStr : transactions) {
-            String[] txnParts = txnStr.split(":");
-            if (txnParts.length < 5) continue;
+        try {
+            int id = Integer.parseInt(parts[0].trim());
+            String name = parts[1].trim();
+            String username = parts[2].trim();
+            String password = parts[3].trim();
+            String email = parts[4].trim();
+            String phone = parts[5].trim();
+            String address = parts[6].trim();
+            int assignedDoctor = parts.length >= 10 ? Integer.parseInt(parts[9].trim()) : 0;
+            
+            Patient patient = new Patient(id, name, username, password, email, phone, address);
+            patient.setDoctorId(assignedDoctor);
+            
+            // Wallet balance, plus inline transactions written before the wallet ledger existed
+            double balance = parts.length >= 8 ? Double.parseDouble(parts[7].trim()) : 0.0;
+            List<Wallet.Transaction> transactions = parts.length >= 9 ?
+                parseLegacyTransactions(id, balance, parts[8].trim()) : new ArrayList<>();
+            patient.getWallet().restoreState(balance, transactions);
             
+            return Optional.of(patient);
+        } catch (Exception e) {
+            logError("Error parsing patient", e);
+            return Optional.empty();
+        }
+    }
+    
+    /**
+     * Parse the inline transactions of a patients file line written before the wallet ledger existed
+     * The running balances are reconstructed backwards from the stored balance
+     * 
+     * @param patientId The patient ID
+     * @param balance The stored wallet balance
+     * @param transactionsData Transaction data string
+     * @return The transactions, oldest first
+     */
+    private static List<Wallet.Transaction> parseLegacyTransactions(int patientId, double balance, String transactionsData) {
+        List<String[]> entries = new ArrayList<>();
+        for (String txnStr : transactionsData.split(";")) {
+            String[] txnParts = txnStr.split(":", 5);
+            if (txnParts.length == 5) {
+                entries.add(txnParts);
+            }
+        }
+        
+        Wallet.Transaction[] transactions = new Wallet.Transaction[entries.size()];
+        double balanceAfter = balance;
+        for (int i = entries.size() - 1; i >= 0; i--) {
+            String[] txnParts = entries.get(i);
             try {
-                String txnId = txnParts[0].trim();
                 double amount = Double.parseDouble(txnParts[1].trim());
-                String type = txnParts[2].trim();
+                Wallet.Transaction.Type type = Wallet.Transaction.Type.valueOf(txnParts[2].trim());
                 String description = txnParts[3].trim().replace("-", ":").replace(",", ";");
                 
-                // Parse datetime
-                LocalDateTime dateTime;
+                Date timestamp;
                 try {
-                    dateTime = LocalDateTime.parse(txnParts[4].trim());
+                    timestamp = Date.from(LocalDateTime.parse(txnParts[4].trim())
+                        .atZone(ZoneId.systemDefault()).toInstant());
                 } catch (Exception e) {
-                    dateTime = LocalDateTime.now();
+                    timestamp = new Date();
                 }
                 
-                // Process transaction based on type
-                switch (type) {
-                    case "DEPOSIT":
-                        patient.getWallet().deposit(amount, description);
-                        break;
-                    case "WITHDRAWAL":
-                        // Ensure enough balance
-                        if (patient.getWallet().getBalance() < amount) {
-                            patient.getWallet().deposit(amount, "Balance adjustment for withdrawal");
-                        }
-                        patient.getWallet().withdraw(amount, description);
-                        break;
-                    case "PAYMENT":
-                        // Ensure enough balance
-                        if (patient.getWallet().getBalance() < amount) {
-                            patient.getWallet().deposit(amount, "Balance adjustment for payment");
-                        }
-                        // Extract order ID if possible
-                        int orderId = 0;
-                        if (description.contains("#")) {
-                            try {
-                                String orderIdStr = description.substring(description.indexOf("#") + 1);
-                                orderId = Integer.parseInt(orderIdStr.split(" ")[0]);
-                            } catch (Exception ignored) {}
-                        }
-                        patient.getWallet().makePayment(amount, orderId, description);
-                        break;
-                }
+                transactions[i] = new Wallet.Transaction(txnParts[0].trim(), patientId, type, amount,
+                                                         description, balanceAfter, timestamp);
+                boolean credit = type == Wallet.Transaction.Type.DEPOSIT || type == Wallet.Transaction.Type.REFUND;
+                balanceAfter += credit ? -amount : amount;
             } catch (Exception e) {
                 logError("Error parsing transaction", e);
             }
         }
+        
+        List<Wallet.Transaction> result = new ArrayList<>(transactions.length);
+        for (Wallet.Transaction transaction : transactions) {
+            if (transaction != null) {
+                result.add(transaction);
+            }
+        }
+        return result;
     }
     
     /**
@@ -311,55 +324,31 @@ public class FileHandler {
      * @param patients List of Patient objects to save
      */
     public static void savePatients(List<Patient> patients) {
-        // Save to main patients file with wallet data
-        saveEntities(patients, PATIENTS_FILE, patient -> {
-            // Build transactions string first
-            List<Wallet.Transaction> txns = patient.getWallet().getTransactions();
-            String txnString = txns.isEmpty() ? "" : txns.stream()
-                    .map(txn -> String.format("%s:%.2f:%s:%s:%s", 
-                            txn.getId(),
-                            txn.getAmount(),
-                            txn.getType().name(),
-                            txn.getDescription().replace(":", "-").replace(";", ","),
-                            ISO_DATE_FORMAT.format(txn.getDateTime())))
-                    .collect(Collectors.joining(";"));
-
-            return String.format("%d|%s|%s|%s|%s|%s|%s|%.2f|%s|%d",
-                patient.getId(), 
-                patient.getName(),
-                patient.getUsername(),
-                patient.getPassword(),
-                patient.getEmail(),
-                patient.getPhoneNumber(),
-                patient.getAddress(),
-                    patient.getWallet().getBalance(),
-                    txnString,
-                    patient.getDoctorId());
-        });
-            
+        // Save to main patients file with wallet balances
+        saveEntities(patients, PATIENTS_FILE, FileHandler::formatPatient);
+        
         // Also save to legacy file for backward compatibility
-        saveEntities(patients, LEGACY_PATIENTS_FILE, patient -> {
-            List<Wallet.Transaction> txns = patient.getWallet().getTransactions();
-            String txnString = txns.isEmpty() ? "" : txns.stream()
-                    .map(txn -> String.format("%s:%.2f:%s:%s:%s", 
-                            txn.getId(),
-                            txn.getAmount(), 
-                            txn.getType().name(),
-                            txn.getDescription().replace(":", "-").replace(";", ","),
-                            ISO_DATE_FORMAT.format(txn.getDateTime())))
-                    .collect(Collectors.joining(";"));
-            return String.format("%d|%s|%s|%s|%s|%s|%s|%.2f|%s|%d", 
-                patient.getId(), 
-                patient.getName(),
-                patient.getUsername(),
-                patient.getPassword(),
-                patient.getEmail(),
-                patient.getPhoneNumber(),
-                    patient.getAddress(),
-                    patient.getWallet().getBalance(),
-                    txnString,
-                    patient.getDoctorId());
-        });
+        saveEntities(patients, LEGACY_PATIENTS_FILE, FileHandler::formatPatient);
+    }
+    
+    /**
+     * Format a patient, including the wallet balance, as a line of the patients file
+     * Transactions live in the wallet ledger, so the transactions field is left empty
+     * 
+     * @param patient Patient to format
+     * @return Pipe-delimited patient line
+     */
+    public static String formatPatient(Patient patient) {
+        return String.format("%d|%s|%s|%s|%s|%s|%s|%.2f||%d",
+            patient.getId(), 
+            patient.getName(),
+            patient.getUsername(),
+            patient.getPassword(),
+            patient.getEmail(),
+            patient.getPhoneNumber(),
+            patient.getAddress(),
+            patient.getWallet().getBalance(),
+            patient.getDoctorId());
     }
     
     // ================ Doctor Methods ================
@@ -370,26 +359,34 @@ public class FileHandler {
      * @return List of Doctor objects
      */
     public static List<Doctor> loadDoctors() {
-        return loadEntities(DOCTORS_FILE, line -> {
-            String[] parts = line.split("\\|");
-            if (parts.length < 8) return Optional.empty();
+        return loadEntities(DOCTORS_FILE, FileHandler::parseDoctor);
+    }
+    
+    /**
+     * Parse a doctor from a line of the doctors file
+     * 
+     * @param line Pipe-delimited doctor line
+     * @return Doctor if the line is valid, empty otherwise
+     */
+    public static Optional<Doctor> parseDoctor(String line) {
+        String[] parts = line.split("\\|");
+        if (parts.length < 8) return Optional.empty();
+        
+        try {
+            int id = Integer.parseInt(parts[0].trim());
+            String name = parts[1].trim();
+            String username = parts[2].trim();
+            String password = parts[3].trim();
+            String email = parts[4].trim();
+            String phone = parts[5].trim();
+            String specialty = parts[6].trim();
+            String licenseNumber = parts[7].trim();
             
-            try {
-                int id = Integer.parseInt(parts[0].trim());
-                String name = parts[1].trim();
-                String username = parts[2].trim();
-                String password = parts[3].trim();
-                String email = parts[4].trim();
-                String phone = parts[5].trim();
-                String specialty = parts[6].trim();
-                String licenseNumber = parts[7].trim();
-                
-                return Optional.of(new Doctor(id, name, username, password, email, phone, specialty, licenseNumber));
-            } catch (Exception e) {
-                logError("Error parsing doctor", e);
-                return Optional.empty();
-            }
-        });
+            return Optional.of(new Doctor(id, name, username, password, email, phone, specialty, licenseNumber));
+        } catch (Exception e) {
+            logError("Error parsing doctor", e);
+            return Optional.empty();
+        }
     }
     
     /**
@@ -398,17 +395,25 @@ public class FileHandler {
      * @param doctors List of Doctor objects to save
      */
     public static void saveDoctors(List<Doctor> doctors) {
-        saveEntities(doctors, DOCTORS_FILE, doctor -> 
-            String.format("%d|%s|%s|%s|%s|%s|%s|%s", 
-                doctor.getId(), 
-                doctor.getName(),
-                doctor.getUsername(),
-                doctor.getPassword(),
-                doctor.getEmail(),
-                doctor.getPhoneNumber(),
-                doctor.getSpecialization(),
-                doctor.getLicenseNumber())
-        );
+        saveEntities(doctors, DOCTORS_FILE, FileHandler::formatDoctor);
+    }
+    
+    /**
+     * Format a doctor as a line of the doctors file
+     * 
+     * @param doctor Doctor to format
+     * @return Pipe-delimited doctor line
+     */
+    public static String formatDoctor(Doctor doctor) {
+        return String.format("%d|%s|%s|%s|%s|%s|%s|%s", 
+            doctor.getId(), 
+            doctor.getName(),
+            doctor.getUsername(),
+            doctor.getPassword(),
+            doctor.getEmail(),
+            doctor.getPhoneNumber(),
+            doctor.getSpecialization(),
+            doctor.getLicenseNumber());
     }
     
     // ================ Medicine Methods ================
@@ -419,26 +424,58 @@ public class FileHandler {
      * @return List of Medicine objects
      */
     public static List<Medicine> loadMedicines() {
-        return loadEntities(MEDICINES_FILE, line -> {
-            String[] parts = line.split("\\|");
-            if (parts.length < 8) return Optional.empty();
-            
-            try {
-                int id = Integer.parseInt(parts[0].trim());
-                String name = parts[1].trim();
-                double price = Double.parseDouble(parts[2].trim());
-                int stock = Integer.parseInt(parts[3].trim());
-                String description = parts[4].trim();
-                String dosage = parts[5].trim();
-                String category = parts[6].trim();
-                boolean requiresPrescription = Boolean.parseBoolean(parts[7].trim());
+        List<Medicine> medicines = new ArrayList<>();
+        try {
+            MappedRecordReader reader = MappedRecordReader.open(MEDICINES_FILE);
+            while (reader.nextLine()) {
+                if (reader.fieldCount() < 8) continue;
                 
-                return Optional.of(new Medicine(id, name, description, "Egyptian Pharma", price, stock, category, requiresPrescription));
-            } catch (Exception e) {
-                logError("Error parsing medicine", e);
-                return Optional.empty();
+                try {
+                    int id = reader.nextInt();
+                    String name = reader.nextString();
+                    double price = reader.nextDouble();
+                    int stock = reader.nextInt();
+                    String description = reader.nextString();
+                    reader.skipField(); // Dosage is not kept by Medicine
+                    String category = reader.nextString();
+                    boolean requiresPrescription = reader.nextBoolean();
+                    
+                    medicines.add(new Medicine(id, name, description, "Egyptian Pharma", price, stock, category, requiresPrescription));
+                } catch (Exception e) {
+                    logError("Error parsing medicine", e);
+                }
             }
-        });
+        } catch (IOException e) {
+            logError("Error reading " + MEDICINES_FILE + ", falling back to line reader", e);
+            return loadEntities(MEDICINES_FILE, FileHandler::parseMedicine);
+        }
+        return medicines;
+    }
+    
+    /**
+     * Parse a medicine from a line of the medicines file
+     * 
+     * @param line Pipe-delimited medicine line
+     * @return Medicine if the line is valid, empty otherwise
+     */
+    public static Optional<Medicine> parseMedicine(String line) {
+        String[] parts = line.split("\\|");
+        if (parts.length < 8) return Optional.empty();
+        
+        try {
+            int id = Integer.parseInt(parts[0].trim());
+            String name = parts[1].trim();
+            double price = Double.parseDouble(parts[2].trim());
+            int stock = Integer.parseInt(parts[3].trim());
+            String description = parts[4].trim();
+            String category = parts[6].trim();
+            boolean requiresPrescription = Boolean.parseBoolean(parts[7].trim());
+            
+            return Optional.of(new Medicine(id, name, description, "Egyptian Pharma", price, stock, category, requiresPrescription));
+        } catch (Exception e) {
+            logError("Error parsing medicine", e);
+            return Optional.empty();
+        }
     }
     
     /**
@@ -447,17 +484,25 @@ public class FileHandler {
      * @param medicines List of Medicine objects to save
      */
     public static void saveMedicines(List<Medicine> medicines) {
-        saveEntities(medicines, MEDICINES_FILE, medicine -> 
-            String.format("%d|%s|%.2f|%d|%s|%s|%s|%b", 
-                medicine.getId(), 
-                medicine.getName(),
-                medicine.getPrice(),
-                medicine.getStock(),
-                medicine.getDescription(),
-                medicine.getDosage(),
-                medicine.getCategory(),
-                medicine.isRequiresPrescription())
-        );
+        saveEntities(medicines, MEDICINES_FILE, FileHandler::formatMedicine);
+    }
+    
+    /**
+     * Format a medicine as a line of the medicines file
+     * 
+     * @param medicine Medicine to format
+     * @return Pipe-delimited medicine line
+     */
+    public static String formatMedicine(Medicine medicine) {
+        return String.format("%d|%s|%.2f|%d|%s|%s|%s|%b", 
+            medicine.getId(), 
+            medicine.getName(),
+            medicine.getPrice(),
+            medicine.getStock(),
+            medicine.getDescription(),
+            medicine.getDosage(),
+            medicine.getCategory(),
+            medicine.isRequiresPrescription());
     }
     
     // ================ Order Methods ================
@@ -469,84 +514,173 @@ public class FileHandler {
      * @return List of Order objects
      */
     public static List<Order> loadOrders(List<Medicine> allMedicines) {
-        return loadEntities(ORDERS_FILE, line -> {
-            String[] parts = line.split("\\|");
-            if (parts.length < 6) return Optional.empty();
-            
-            try {
-                int id = Integer.parseInt(parts[0].trim());
-                int patientId = Integer.parseInt(parts[1].trim());
-                String orderDateStr = parts[2].trim();
-                double totalAmount = Double.parseDouble(parts[3].trim());
-                
-                // Create order
-                Order order = new Order(id, patientId, orderDateStr);
-                order.setTotalAmount(totalAmount);
-                
-                // Set status
-                try {
-                    order.setStatus(Order.Status.valueOf(parts[4].trim()));
-                } catch (IllegalArgumentException e) {
-                    order.setStatus(Order.Status.PENDING);
-                }
+        Map<Integer, Medicine> medicinesById = new HashMap<>();
+        for (Medicine medicine : allMedicines) {
+            medicinesById.putIfAbsent(medicine.getId(), medicine);
+        }
+        
+        List<Order> orders = new ArrayList<>();
+        try {
+            MappedRecordReader reader = MappedRecordReader.open(ORDERS_FILE);
+            while (reader.nextLine()) {
+                if (reader.fieldCount() < 6) continue;
                 
-                // Set payment method
                 try {
-                    order.setPaymentMethod(Order.PaymentMethod.valueOf(parts[5].trim()));
-                } catch (IllegalArgumentException e) {
-                    order.setPaymentMethod(Order.PaymentMethod.NOT_PAID);
+                    orders.add(readOrder(reader, medicinesById));
+                } catch (Exception e) {
+                    logError("Error parsing order", e);
                 }
-                
-                // Set paid status
-                if (parts.length >= 7) {
-                    order.setPaid(Boolean.parseBoolean(parts[6].trim()));
+            }
+        } catch (IOException e) {
+            logError("Error reading " + ORDERS_FILE + ", falling back to line reader", e);
+            List<Medicine> indexed = IndexedList.of(allMedicines, Medicine::getId);
+            return loadEntities(ORDERS_FILE, line -> parseOrder(line, indexed));
+        }
+        return orders;
+    }
+    
+    /**
+     * Read an order from the current record of an orders file read into memory
+     * Mirrors parseOrder(String, List) field by field
+     * 
+     * @param reader Reader positioned on an order record
+     * @param medicinesById Medicines by ID for resolving order items
+     * @return The order
+     */
+    private static Order readOrder(MappedRecordReader reader, Map<Integer, Medicine> medicinesById) {
+        int id = reader.nextInt();
+        int patientId = reader.nextInt();
+        Date orderDate = reader.nextDateTime();
+        double totalAmount = reader.nextDouble();
+        
+        // Fallback to current date if parsing fails, like the String constructor
+        Order order = new Order(id, patientId, orderDate != null ? orderDate : new Date());
+        order.setTotalAmount(totalAmount);
+        order.setStatus(reader.nextEnum(ORDER_STATUSES, Order.Status.PENDING));
+        order.setPaymentMethod(reader.nextEnum(PAYMENT_METHODS, Order.PaymentMethod.NOT_PAID));
+        
+        if (reader.hasNextField()) {
+            order.setPaid(reader.nextBoolean());
+        }
+        
+        if (reader.hasNextField()) {
+            reader.nextIntPairs(';', ':', (medicineId, quantity) -> {
+                Medicine medicine = medicinesById.get(medicineId);
+                if (medicine != null) {
+                    order.addMedicine(medicine, quantity);
                 }
-                
-                // Process order items
-                if (parts.length >= 8 && !parts[7].trim().isEmpty()) {
-                    String[] itemsArray = parts[7].trim().split(";");
-                    for (String itemStr : itemsArray) {
-                        String[] itemParts = itemStr.split(":");
-                        if (itemParts.length >= 2) {
-                            int medicineId = Integer.parseInt(itemParts[0].trim());
-                            int quantity = Integer.parseInt(itemParts[1].trim());
-                            
-                            // Find and add medicine
-                            allMedicines.stream()
-                                .filter(med -> med.getId() == medicineId)
-                                .findFirst()
-                                .ifPresent(med -> order.addMedicine(med, quantity));
+            });
+        }
+        
+        if (reader.hasNextField() && !reader.isNextFieldEmpty()) {
+            order.setPatientName(reader.nextString());
+        } else if (reader.hasNextField()) {
+            reader.skipField();
+        }
+        
+        if (reader.hasNextField() && !reader.isNextFieldEmpty()) {
+            order.setPatientPhone(reader.nextString());
+        } else if (reader.hasNextField()) {
+            reader.skipField();
+        }
+        
+        if (reader.hasNextField() && !reader.isNextFieldEmpty()) {
+            order.setPatientAddress(reader.nextString());
+        } else if (reader.hasNextField()) {
+            reader.skipField();
+        }
+        
+        if (reader.hasNextField() && !reader.isNextFieldEmpty()) {
+            order.setDeliveryMethod(reader.nextEnum(DELIVERY_METHODS, Order.DeliveryMethod.PICKUP));
+        }
+        
+        return order;
+    }
+    
+    /**
+     * Parse an order from a line of the orders file
+     * 
+     * @param line Pipe-delimited order line
+     * @param allMedicines List of all medicines for reference when loading order items
+     * @return Order if the line is valid, empty otherwise
+     */
+    public static Optional<Order> parseOrder(String line, List<Medicine> allMedicines) {
+        String[] parts = line.split("\\|");
+        if (parts.length < 6) return Optional.empty();
+        
+        try {
+            int id = Integer.parseInt(parts[0].trim());
+            int patientId = Integer.parseInt(parts[1].trim());
+            String orderDateStr = parts[2].trim();
+            double totalAmount = Double.parseDouble(parts[3].trim());
+            
+            // Create order
+            Order order = new Order(id, patientId, orderDateStr);
+            order.setTotalAmount(totalAmount);
+            
+            // Set status
+            try {
+                order.setStatus(Order.Status.valueOf(parts[4].trim()));
+            } catch (IllegalArgumentException e) {
+                order.setStatus(Order.Status.PENDING);
+            }
+            
+            // Set payment method
+            try {
+                order.setPaymentMethod(Order.PaymentMethod.valueOf(parts[5].trim()));
+            } catch (IllegalArgumentException e) {
+                order.setPaymentMethod(Order.PaymentMethod.NOT_PAID);
+            }
+            
+            // Set paid status
+            if (parts.length >= 7) {
+                order.setPaid(Boolean.parseBoolean(parts[6].trim()));
+            }
+            
+            // Process order items
+            if (parts.length >= 8 && !parts[7].trim().isEmpty()) {
+                String[] itemsArray = parts[7].trim().split(";");
+                for (String itemStr : itemsArray) {
+                    String[] itemParts = itemStr.split(":");
+                    if (itemParts.length >= 2) {
+                        int medicineId = Integer.parseInt(itemParts[0].trim());
+                        int quantity = Integer.parseInt(itemParts[1].trim());
+                        
+                        // Find and add medicine
+                        Medicine medicine = findMedicine(allMedicines, medicineId);
+                        if (medicine != null) {
+                            order.addMedicine(medicine, quantity);
                         }
                     }
                 }
-                
-                // Set additional fields if available
-                if (parts.length >= 9 && !parts[8].trim().isEmpty()) {
-                    order.setPatientName(parts[8].trim());
-                }
-                
-                if (parts.length >= 10 && !parts[9].trim().isEmpty()) {
-                    order.setPatientPhone(parts[9].trim());
-                }
-                
-                if (parts.length >= 11 && !parts[10].trim().isEmpty()) {
-                    order.setPatientAddress(parts[10].trim());
-                }
-                
-                if (parts.length >= 12 && !parts[11].trim().isEmpty()) {
-                    try {
-                        order.setDeliveryMethod(Order.DeliveryMethod.valueOf(parts[11].trim()));
-                    } catch (IllegalArgumentException e) {
-                        order.setDeliveryMethod(Order.DeliveryMethod.PICKUP);
-                    }
+            }
+            
+            // Set additional fields if available
+            if (parts.length >= 9 && !parts[8].trim().isEmpty()) {
+                order.setPatientName(parts[8].trim());
+            }
+            
+            if (parts.length >= 10 && !parts[9].trim().isEmpty()) {
+                order.setPatientPhone(parts[9].trim());
+            }
+            
+            if (parts.length >= 11 && !parts[10].trim().isEmpty()) {
+                order.setPatientAddress(parts[10].trim());
+            }
+            
+            if (parts.length >= 12 && !parts[11].trim().isEmpty()) {
+                try {
+                    order.setDeliveryMethod(Order.DeliveryMethod.valueOf(parts[11].trim()));
+                } catch (IllegalArgumentException e) {
+                    order.setDeliveryMethod(Order.DeliveryMethod.PICKUP);
                 }
-                
-                return Optional.of(order);
-            } catch (Exception e) {
-                logError("Error parsing order", e);
-                return Optional.empty();
             }
-        });
+            
+            return Optional.of(order);
+        } catch (Exception e) {
+            logError("Error parsing order", e);
+            return Optional.empty();
+        }
     }
     
     /**
@@ -555,36 +689,44 @@ public class FileHandler {
      * @param orders List of Order objects to save
      */
     public static void saveOrders(List<Order> orders) {
-        saveEntities(orders, ORDERS_FILE, order -> {
-            String orderDateStr = DATE_FORMAT.format(order.getOrderDate());
-            
-            StringBuilder sb = new StringBuilder();
-            sb.append(String.format("%d|%d|%s|%.2f|%s|%s|%b",
-                order.getId(),
-                order.getPatientId(),
-                orderDateStr,
-                order.getTotalAmount(),
-                order.getStatus().name(),
-                order.getPaymentMethod().name(),
-                order.isPaid()));
-            
-            // Add order items
-            sb.append("|");
-            if (order.getItems() != null && !order.getItems().isEmpty()) {
-                String itemsStr = order.getItems().stream()
-                    .map(item -> item.getMedicineId() + ":" + item.getQuantity())
-                    .collect(Collectors.joining(";"));
-                sb.append(itemsStr);
-            }
-            
-            // Add optional fields
-            sb.append("|").append(order.getPatientName() != null ? order.getPatientName() : "");
-            sb.append("|").append(order.getPatientPhone() != null ? order.getPatientPhone() : "");
-            sb.append("|").append(order.getPatientAddress() != null ? order.getPatientAddress() : "");
-            sb.append("|").append(order.getDeliveryMethod() != null ? order.getDeliveryMethod().name() : "");
-            
-            return sb.toString();
-        });
+        saveEntities(orders, ORDERS_FILE, FileHandler::formatOrder);
+    }
+    
+    /**
+     * Format an order as a line of the orders file
+     * 
+     * @param order Order to format
+     * @return Pipe-delimited order line
+     */
+    public static String formatOrder(Order order) {
+        String orderDateStr = DATE_FORMAT.format(order.getOrderDate());
+        
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%d|%d|%s|%.2f|%s|%s|%b",
+            order.getId(),
+            order.getPatientId(),
+            orderDateStr,
+            order.getTotalAmount(),
+            order.getStatus().name(),
+            order.getPaymentMethod().name(),
+            order.isPaid()));
+        
+        // Add order items
+        sb.append("|");
+        if (order.getItems() != null && !order.getItems().isEmpty()) {
+            String itemsStr = order.getItems().stream()
+                .map(item -> item.getMedicineId() + ":" + item.getQuantity())
+                .collect(Collectors.joining(";"));
+            sb.append(itemsStr);
+        }
+        
+        // Add optional fields
+        sb.append("|").append(order.getPatientName() != null ? order.getPatientName() : "");
+        sb.append("|").append(order.getPatientPhone() != null ? order.getPatientPhone() : "");
+        sb.append("|").append(order.getPatientAddress() != null ? order.getPatientAddress() : "");
+        sb.append("|").append(order.getDeliveryMethod() != null ? order.getDeliveryMethod().name() : "");
+        
+        return sb.toString();
     }
     
     // ================ Customer Methods (Legacy) ================
@@ -615,29 +757,37 @@ public class FileHandler {
      * @return List of Pharmacist objects
      */
     public static List<Pharmacist> loadPharmacists() {
-        return loadEntities(PHARMACISTS_FILE, line -> {
-            String[] parts = line.split("\\|");
-            if (parts.length < 8) return Optional.empty();
+        return loadEntities(PHARMACISTS_FILE, FileHandler::parsePharmacist);
+    }
+    
+    /**
+     * Parse a pharmacist from a line of the pharmacists file
+     * 
+     * @param line Pipe-delimited pharmacist line
+     * @return Pharmacist if the line is valid, empty otherwise
+     */
+    public static Optional<Pharmacist> parsePharmacist(String line) {
+        String[] parts = line.split("\\|");
+        if (parts.length < 8) return Optional.empty();
+        
+        try {
+            int id = Integer.parseInt(parts[0].trim());
+            String name = parts[1].trim();
+            String username = parts[2].trim();
+            String password = parts[3].trim();
+            String email = parts[4].trim();
+            String phone = parts[5].trim();
+            String licenseNumber = parts[6].trim();
+            int pharmacyId = Integer.parseInt(parts[7].trim());
             
-            try {
-                int id = Integer.parseInt(parts[0].trim());
-                String name = parts[1].trim();
-                String username = parts[2].trim();
-                String password = parts[3].trim();
-                String email = parts[4].trim();
-                String phone = parts[5].trim();
-                String licenseNumber = parts[6].trim();
-                int pharmacyId = Integer.parseInt(parts[7].trim());
-                
-                Pharmacist pharmacist = new Pharmacist(id, name, username, password, email, phone, licenseNumber, "Qualified Pharmacist");
-                pharmacist.setPharmacyId(pharmacyId);
-                
-                return Optional.of(pharmacist);
-            } catch (Exception e) {
-                logError("Error parsing pharmacist", e);
-                return Optional.empty();
-            }
-        });
+            Pharmacist pharmacist = new Pharmacist(id, name, username, password, email, phone, licenseNumber, "Qualified Pharmacist");
+            pharmacist.setPharmacyId(pharmacyId);
+            
+            return Optional.of(pharmacist);
+        } catch (Exception e) {
+            logError("Error parsing pharmacist", e);
+            return Optional.empty();
+        }
     }
     
     /**
@@ -646,17 +796,25 @@ public class FileHandler {
      * @param pharmacists List of Pharmacist objects to save
      */
     public static void savePharmacists(List<Pharmacist> pharmacists) {
-        saveEntities(pharmacists, PHARMACISTS_FILE, pharmacist -> 
-            String.format("%d|%s|%s|%s|%s|%s|%s|%d", 
-                pharmacist.getId(), 
-                pharmacist.getName(),
-                pharmacist.getUsername(),
-                pharmacist.getPassword(),
-                pharmacist.getEmail(),
-                pharmacist.getPhoneNumber(),
-                pharmacist.getLicenseNumber(),
-                pharmacist.getPharmacyId())
-        );
+        saveEntities(pharmacists, PHARMACISTS_FILE, FileHandler::formatPharmacist);
+    }
+    
+    /**
+     * Format a pharmacist as a line of the pharmacists file
+     * 
+     * @param pharmacist Pharmacist to format
+     * @return Pipe-delimited pharmacist line
+     */
+    public static String formatPharmacist(Pharmacist pharmacist) {
+        return String.format("%d|%s|%s|%s|%s|%s|%s|%d", 
+            pharmacist.getId(), 
+            pharmacist.getName(),
+            pharmacist.getUsername(),
+            pharmacist.getPassword(),
+            pharmacist.getEmail(),
+            pharmacist.getPhoneNumber(),
+            pharmacist.getLicenseNumber(),
+            pharmacist.getPharmacyId());
     }
     
     // ================ Pharmacy Methods ================
@@ -716,55 +874,85 @@ public class FileHandler {
      * @return List of Prescription objects
      */
     public static List<Prescription> loadPrescriptions(List<Medicine> allMedicines) {
-        return loadEntities(PRESCRIPTIONS_FILE, line -> {
-            String[] parts = line.split("\\|");
-            if (parts.length < 5) return Optional.empty();
+        List<Medicine> indexed = IndexedList.of(allMedicines, Medicine::getId);
+        return loadEntities(PRESCRIPTIONS_FILE, line -> parsePrescription(line, indexed));
+    }
+    
+    /**
+     * Parse a prescription from a line of the prescriptions file
+     * 
+     * @param line Pipe-delimited prescription line
+     * @param allMedicines List of all medicines for reference when loading prescription items
+     * @return Prescription if the line is valid, empty otherwise
+     */
+    public static Optional<Prescription> parsePrescription(String line, List<Medicine> allMedicines) {
+        String[] parts = line.split("\\|");
+        if (parts.length < 5) return Optional.empty();
+        
+        try {
+            int id = Integer.parseInt(parts[0].trim());
+            int patientId = Integer.parseInt(parts[1].trim());
+            int doctorId = Integer.parseInt(parts[2].trim());
             
+            // Parse date to LocalDate
+            LocalDate issueDate;
             try {
-                int id = Integer.parseInt(parts[0].trim());
-                int patientId = Integer.parseInt(parts[1].trim());
-                int doctorId = Integer.parseInt(parts[2].trim());
-                
-                // Parse date to LocalDate
-                LocalDate issueDate;
-                try {
-                    // Convert Date to LocalDate
-                    Date date = DATE_ONLY_FORMAT.parse(parts[3].trim());
-                    issueDate = new java.sql.Date(date.getTime()).toLocalDate();
-                } catch (Exception e) {
-                    issueDate = LocalDate.now();  // Use current date if parsing fails
-                }
-                
-                // Create expiry date (30 days after issue date)
-                LocalDate expiryDate = issueDate.plusDays(30);
-                
-                // Create prescription with appropriate constructor
-                Prescription prescription = new Prescription(id, patientId, doctorId, issueDate, expiryDate, "Pending", "Take as directed");
-                
-                // Add medicines
-                if (!parts[4].trim().isEmpty()) {
-                    String[] itemsArray = parts[4].trim().split(";");
-                    for (String itemStr : itemsArray) {
-                        String[] itemParts = itemStr.split(":");
-                        if (itemParts.length >= 2) {
-                            int medicineId = Integer.parseInt(itemParts[0].trim());
-                            int quantity = Integer.parseInt(itemParts[1].trim());
-                            
-                            // Find medicine and add to prescription
-                            allMedicines.stream()
-                                .filter(med -> med.getId() == medicineId)
-                                .findFirst()
-                                .ifPresent(med -> prescription.addMedicine(med, quantity));
+                // Convert Date to LocalDate
+                Date date = DATE_ONLY_FORMAT.parse(parts[3].trim());
+                issueDate = new java.sql.Date(date.getTime()).toLocalDate();
+            } catch (Exception e) {
+                issueDate = LocalDate.now();  // Use current date if parsing fails
+            }
+            
+            // Create expiry date (30 days after issue date)
+            LocalDate expiryDate = issueDate.plusDays(30);
+            
+            // Create prescription with appropriate constructor
+            Prescription prescription = new Prescription(id, patientId, doctorId, issueDate, expiryDate, PrescriptionStatus.PENDING, "Take as directed");
+            
+            // Add medicines
+            if (!parts[4].trim().isEmpty()) {
+                String[] itemsArray = parts[4].trim().split(";");
+                for (String itemStr : itemsArray) {
+                    String[] itemParts = itemStr.split(":");
+                    if (itemParts.length >= 2) {
+                        int medicineId = Integer.parseInt(itemParts[0].trim());
+                        int quantity = Integer.parseInt(itemParts[1].trim());
+                        
+                        // Find medicine and add to prescription
+                        Medicine medicine = findMedicine(allMedicines, medicineId);
+                        if (medicine != null) {
+                            prescription.addMedicine(medicine, quantity);
                         }
                     }
                 }
-                
-                return Optional.of(prescription);
-            } catch (Exception e) {
-                logError("Error parsing prescription", e);
-                return Optional.empty();
             }
-        });
+            
+            return Optional.of(prescription);
+        } catch (Exception e) {
+            logError("Error parsing prescription", e);
+            return Optional.empty();
+        }
+    }
+    
+    /**
+     * Find a medicine for an order or prescription item
+     * Indexed lists are looked up by ID; other lists are scanned
+     * 
+     * @param allMedicines List of all medicines
+     * @param medicineId The medicine ID
+     * @return The medicine, or null if not found
+     */
+    private static Medicine findMedicine(List<Medicine> allMedicines, int medicineId) {
+        if (allMedicines instanceof IndexedList) {
+            return ((IndexedList<Medicine>) allMedicines).findById(medicineId);
+        }
+        for (Medicine medicine : allMedicines) {
+            if (medicine.getId() == medicineId) {
+                return medicine;
+            }
+        }
+        return null;
     }
     
     /**
@@ -773,40 +961,112 @@ public class FileHandler {
      * @param prescriptions List of Prescription objects to save
      */
     public static void savePrescriptions(List<Prescription> prescriptions) {
-        saveEntities(prescriptions, PRESCRIPTIONS_FILE, prescription -> {
-            // Convert LocalDate to Date for formatting
-            Date issueDate = java.sql.Date.valueOf(prescription.getIssueDate());
-            String dateStr = DATE_ONLY_FORMAT.format(issueDate);
-            
-            StringBuilder sb = new StringBuilder();
-            sb.append(String.format("%d|%d|%d|%s|",
-                prescription.getId(),
-                prescription.getPatientId(),
-                prescription.getDoctorId(),
-                dateStr));
+        saveEntities(prescriptions, PRESCRIPTIONS_FILE, FileHandler::formatPrescription);
+    }
+    
+    /**
+     * Format a prescription as a line of the prescriptions file
+     * 
+     * @param prescription Prescription to format
+     * @return Pipe-delimited prescription line
+     */
+    public static String formatPrescription(Prescription prescription) {
+        // Convert LocalDate to Date for formatting
+        Date issueDate = java.sql.Date.valueOf(prescription.getIssueDate());
+        String dateStr = DATE_ONLY_FORMAT.format(issueDate);
+        
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%d|%d|%d|%s|",
+            prescription.getId(),
+            prescription.getPatientId(),
+            prescription.getDoctorId(),
+            dateStr));
+        
+        // Add medicines without using stream since we can't use stream on Map directly
+        if (!prescription.getMedicines().isEmpty()) {
+            StringBuilder itemsStr = new StringBuilder();
+            boolean first = true;
             
-            // Add medicines without using stream since we can't use stream on Map directly
-            if (!prescription.getMedicines().isEmpty()) {
-                StringBuilder itemsStr = new StringBuilder();
-                boolean first = true;
-                
-                for (Map.Entry<Medicine, Integer> entry : prescription.getMedicines().entrySet()) {
-                    if (!first) {
-                        itemsStr.append(";");
-                    }
-                    itemsStr.append(String.format("%d:%d", 
-                        entry.getKey().getId(), 
-                        entry.getValue()));
-                    first = false;
+            for (Map.Entry<Medicine, Integer> entry : prescription.getMedicines().entrySet()) {
+                if (!first) {
+                    itemsStr.append(";");
                 }
-                
-                sb.append(itemsStr.toString());
+                itemsStr.append(String.format("%d:%d", 
+                    entry.getKey().getId(), 
+                    entry.getValue()));
+                first = false;
             }
             
-            // Prescription doesn't have diagnosis and notes methods
-            sb.append("||"); // Add empty placeholders for diagnosis and notes
+            sb.append(itemsStr.toString());
+        }
+        
+        // Prescription doesn't have diagnosis and notes methods
+        sb.append("||"); // Add empty placeholders for diagnosis and notes
+        
+        return sb.toString();
+    }
+    
+    // ================ Consultation Methods ================
+    
+    /**
+     * Load consultations from file
+     * Their messages are kept by the message store, not in this file
+     * 
+     * @return List of Consultation objects
+     */
+    public static List<Consultation> loadConsultations() {
+        return loadEntities(CONSULTATIONS_FILE, FileHandler::parseConsultation);
+    }
+    
+    /**
+     * Parse a consultation from a line of the consultations file
+     * 
+     * @param line Pipe-delimited consultation line; the notes come last and may contain pipes
+     * @return Consultation if the line is valid, empty otherwise
+     */
+    public static Optional<Consultation> parseConsultation(String line) {
+        String[] parts = line.split("\\|", 6);
+        if (parts.length < 6) return Optional.empty();
+        
+        try {
+            int id = Integer.parseInt(parts[0].trim());
+            int doctorId = Integer.parseInt(parts[1].trim());
+            int patientId = Integer.parseInt(parts[2].trim());
+            // The opening time also names the consultation's message thread
+            LocalDateTime dateTime = LocalDateTime.parse(parts[3].trim(), ISO_DATE_TIME);
+            String status = parts[4].trim();
+            String notes = parts[5];
             
-            return sb.toString();
-        });
+            return Optional.of(new Consultation(id, doctorId, patientId, dateTime, notes, status));
+        } catch (Exception e) {
+            logError("Error parsing consultation", e);
+            return Optional.empty();
+        }
+    }
+    
+    /**
+     * Save consultations to file
+     * 
+     * @param consultations List of Consultation objects to save
+     */
+    public static void saveConsultations(List<Consultation> consultations) {
+        saveEntities(consultations, CONSULTATIONS_FILE, FileHandler::formatConsultation);
+    }
+    
+    /**
+     * Format a consultation as a line of the consultations file
+     * 
+     * @param consultation Consultation to format
+     * @return Pipe-delimited consultation line
+     */
+    public static String formatConsultation(Consultation consultation) {
+        String notes = consultation.getNotes() == null ? "" : consultation.getNotes();
+        return String.format("%d|%d|%d|%s|%s|%s",
+            consultation.getId(),
+            consultation.getDoctorId(),
+            consultation.getPatientId(),
+            consultation.getDateTime().format(ISO_DATE_TIME),
+            consultation.getStatus(),
+            notes.replace('\n', ' ').replace('\r', ' '));
     }
 }
\ No newline at end of file
@@ -0,0 +1,172 @@
+package utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * IdAllocator hands out new IDs for orders, prescriptions, consultations and users
+ *
+ * Every sequence is an atomic counter, so taking an ID is one increment and never
+ * waits on a lock or scans a collection. The counters run inside blocks of BLOCK_SIZE
+ * IDs: before the first ID of a block is handed out, the end of the block is written
+ * to data/ids.txt as the high-water mark of its sequence. After a restart each
+ * sequence continues from its mark, so an ID is never handed out twice even if the
+ * records it was used for were not saved; at most the rest of a block is skipped.
+ * Only the thread that crosses into a new block writes the file, and threads taking
+ * IDs of that block wait for it.
+ *
+ * User IDs are shared by admins, doctors, patients and pharmacists, so a user ID
+ * is unique over all four. Loaded records raise their sequence past their own IDs
+ * with reserveThrough, in case they were written by an older version or by hand.
+ */
+public class IdAllocator {
+    public static final String IDS_FILE = "data/ids.txt";
+    public static final int BLOCK_SIZE = 50;
+    
+    /**
+     * The independent ID sequences
+     */
+    public enum Sequence {
+        ORDER,
+        PRESCRIPTION,
+        CONSULTATION,
+        USER
+    }
+    
+    /**
+     * The counter and reserved block of one sequence
+     */
+    private static class Counter {
+        final AtomicInteger next = new AtomicInteger(1);
+        // IDs below this are covered by the mark on disk; changed under the counter's monitor
+        volatile int reservedUpTo = 1;
+    }
+    
+    private final File file;
+    private final Map<Sequence, Counter> counters = new EnumMap<>(Sequence.class);
+    
+    /**
+     * Constructor that continues from the marks in the default file
+     */
+    public IdAllocator() {
+        this(new File(IDS_FILE));
+    }
+    
+    /**
+     * Constructor that continues from the marks in the given file
+     *
+     * @param file The high-water mark file; created when the first block is reserved
+     */
+    public IdAllocator(File file) {
+        this.file = file;
+        for (Sequence sequence : Sequence.values()) {
+            counters.put(sequence, new Counter());
+        }
+        loadMarks();
+    }
+    
+    /**
+     * Take the next ID of a sequence
+     *
+     * @param sequence The sequence
+     * @return An ID not handed out before
+     */
+    public int next(Sequence sequence) {
+        Counter counter = counters.get(sequence);
+        int id = counter.next.getAndIncrement();
+        if (id >= counter.reservedUpTo) {
+            reserveBlock(sequence, counter, id);
+        }
+        return id;
+    }
+    
+    /**
+     * Make sure a sequence never hands out the given ID or any below it
+     * Used for IDs that already exist, such as those of loaded records
+     *
+     * @param sequence The sequence
+     * @param id The highest ID in use
+     */
+    public void reserveThrough(Sequence sequence, int id) {
+        counters.get(sequence).next.accumulateAndGet(id + 1, Math::max);
+    }
+    
+    /**
+     * Get the ID a sequence hands out next, without taking it
+     *
+     * @param sequence The sequence
+     * @return The next ID
+     */
+    public int peek(Sequence sequence) {
+        return counters.get(sequence).next.get();
+    }
+    
+    private void reserveBlock(Sequence sequence, Counter counter, int id) {
+        synchronized (counter) {
+            if (id < counter.reservedUpTo) {
+                // Another thread reserved the block while this one waited
+                return;
+            }
+            // The next thread past this block has to reserve again, so keep some headroom over the counter
+            int mark = Math.max(id, counter.next.get()) + BLOCK_SIZE;
+            writeMark(sequence, mark);
+            counter.reservedUpTo = mark;
+        }
+    }
+    
+    private synchronized void writeMark(Sequence sequence, int mark) {
+        List<String> lines = new ArrayList<>();
+        for (Sequence each : Sequence.values()) {
+            int value = each == sequence ? mark : counters.get(each).reservedUpTo;
+            lines.add(each.name() + "=" + value);
+        }
+        
+        // Write to a temporary file first so a crash never leaves a half-written mark
+        File temp = new File(file.getPath() + ".tmp");
+        try {
+            File parent = file.getAbsoluteFile().getParentFile();
+            if (parent != null) {
+                parent.mkdirs();
+            }
+            Files.write(temp.toPath(), lines, StandardCharsets.UTF_8);
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // The block is still handed out; the seeding from loaded records covers it after a restart
+            System.err.println("Error saving ID high-water marks: " + e.getMessage());
+        }
+    }
+    
+    private void loadMarks() {
+        if (!file.exists()) {
+            return;
+        }
+        
+        try {
+            for (String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+                String[] parts = line.trim().split("=", 2);
+                if (parts.length != 2) {
+                    continue;
+                }
+                try {
+                    Counter counter = counters.get(Sequence.valueOf(parts[0]));
+                    int mark = Integer.parseInt(parts[1].trim());
+                    // Everything below the mark may have been handed out before the restart
+                    counter.next.set(Math.max(counter.next.get(), mark));
+                    counter.reservedUpTo = counter.next.get();
+                } catch (IllegalArgumentException e) {
+                    System.out.println("Ignoring ID mark: " + line);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error loading ID high-water marks: " + e.getMessage());
+        }
+    }
+}
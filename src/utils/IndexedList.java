@@ -0,0 +1,415 @@
+package utils;
+
+import models.IntObjectMap;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
+
+/**
+ * IndexedList is a list that also keeps its elements in a map by ID
+ *
+ * It can be used anywhere a List is expected. Every add, set and remove - including
+ * removeIf, iterator removal and clear - updates the map, so findById is a hash
+ * lookup instead of a scan. When the same ID occurs more than once, findById
+ * returns the first occurrence, like a stream().filter().findFirst() would.
+ *
+ * The map cannot see an element's ID change; call reindex after reassigning IDs.
+ * Change listeners can be attached to maintain further indexes over the same elements.
+ *
+ * The list is safe to share between threads. Changes are serialized on the list and
+ * replace the backing array instead of modifying it, so readers never lock: iterating,
+ * streaming and snapshot see the elements as they were when they started, and are
+ * never disturbed by a concurrent change. Listeners are called while the list is
+ * locked, in the order of the changes. Index-based loops over get and size may see
+ * a change halfway; take a snapshot when another thread could be changing the list.
+ *
+ * @param <T> The element type
+ */
+public class IndexedList<T> extends AbstractList<T> implements RandomAccess {
+    // Replaced, never modified, by every change
+    private volatile Object[] elements;
+    private final IntObjectMap<T> byId; // Guarded by this list
+    private final ToIntFunction<T> idOf;
+    private int duplicates; // Elements whose ID was already taken when they were indexed
+    private final List<Consumer<? super T>> addedListeners = new CopyOnWriteArrayList<>();
+    private final List<Consumer<? super T>> removedListeners = new CopyOnWriteArrayList<>();
+    
+    /**
+     * Constructor for an empty list
+     *
+     * @param idOf Gets the ID of an element
+     */
+    public IndexedList(ToIntFunction<T> idOf) {
+        this(new ArrayList<>(), idOf);
+    }
+    
+    /**
+     * Constructor for a list holding the given elements
+     *
+     * @param elements The initial elements, in order
+     * @param idOf Gets the ID of an element
+     */
+    public IndexedList(Collection<? extends T> elements, ToIntFunction<T> idOf) {
+        this.elements = elements.toArray();
+        this.byId = new IntObjectMap<>(elements.size());
+        this.idOf = idOf;
+        reindex();
+    }
+    
+    /**
+     * Get an indexed view of a list, reusing it if it is indexed already
+     *
+     * @param list The list
+     * @param idOf Gets the ID of an element
+     * @return The list itself if it is an IndexedList, otherwise an indexed copy
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> IndexedList<T> of(List<T> list, ToIntFunction<T> idOf) {
+        if (list instanceof IndexedList) {
+            return (IndexedList<T>) list;
+        }
+        return new IndexedList<>(list, idOf);
+    }
+    
+    /**
+     * Attach callbacks that are told about every element added to or removed from the list
+     * Elements already in the list are not reported
+     *
+     * @param onAdded Called with each added element
+     * @param onRemoved Called with each removed element
+     */
+    public synchronized void addChangeListener(Consumer<? super T> onAdded, Consumer<? super T> onRemoved) {
+        addedListeners.add(onAdded);
+        removedListeners.add(onRemoved);
+    }
+    
+    /**
+     * Find the first element with the given ID
+     *
+     * @param id The ID
+     * @return The element, or null if there is none
+     */
+    public synchronized T findById(int id) {
+        return byId.get(id);
+    }
+    
+    /**
+     * Check whether an element with the given ID exists
+     *
+     * @param id The ID
+     * @return true if an element has the ID
+     */
+    public synchronized boolean containsId(int id) {
+        return byId.containsKey(id);
+    }
+    
+    /**
+     * Rebuild the map after element IDs were changed
+     */
+    public synchronized void reindex() {
+        byId.clear();
+        duplicates = 0;
+        for (Object element : elements) {
+            T indexed = cast(element);
+            if (byId.putIfAbsent(idOf.applyAsInt(indexed), indexed) != null) {
+                duplicates++;
+            }
+        }
+    }
+    
+    /**
+     * Get the elements as they are now
+     * The snapshot is not copied and does not change when the list does
+     *
+     * @return Read-only list of the current elements
+     */
+    public List<T> snapshot() {
+        @SuppressWarnings("unchecked")
+        List<T> current = (List<T>) Arrays.asList(elements);
+        return Collections.unmodifiableList(current);
+    }
+    
+    @Override
+    public T get(int index) {
+        return cast(elements[index]);
+    }
+    
+    @Override
+    public int size() {
+        return elements.length;
+    }
+    
+    @Override
+    public synchronized T set(int index, T element) {
+        Object[] updated = elements.clone();
+        T previous = cast(updated[index]);
+        updated[index] = element;
+        elements = updated;
+        unindex(previous);
+        index(element, index);
+        return previous;
+    }
+    
+    @Override
+    public synchronized boolean add(T element) {
+        add(elements.length, element);
+        return true;
+    }
+    
+    @Override
+    public synchronized void add(int index, T element) {
+        Object[] current = elements;
+        if (index < 0 || index > current.length) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + current.length);
+        }
+        Object[] updated = new Object[current.length + 1];
+        System.arraycopy(current, 0, updated, 0, index);
+        updated[index] = element;
+        System.arraycopy(current, index, updated, index + 1, current.length - index);
+        elements = updated;
+        modCount++;
+        index(element, index);
+    }
+    
+    @Override
+    public synchronized boolean addAll(Collection<? extends T> added) {
+        Object[] more = added.toArray();
+        if (more.length == 0) {
+            return false;
+        }
+        Object[] current = elements;
+        Object[] updated = Arrays.copyOf(current, current.length + more.length);
+        System.arraycopy(more, 0, updated, current.length, more.length);
+        elements = updated;
+        modCount++;
+        for (int i = 0; i < more.length; i++) {
+            index(cast(more[i]), current.length + i);
+        }
+        return true;
+    }
+    
+    @Override
+    public synchronized T remove(int index) {
+        Object[] current = elements;
+        T removed = cast(current[index]);
+        Object[] updated = new Object[current.length - 1];
+        System.arraycopy(current, 0, updated, 0, index);
+        System.arraycopy(current, index + 1, updated, index, current.length - index - 1);
+        elements = updated;
+        modCount++;
+        unindex(removed);
+        return removed;
+    }
+    
+    @Override
+    public synchronized boolean removeIf(Predicate<? super T> filter) {
+        Object[] current = elements;
+        Object[] kept = new Object[current.length];
+        boolean[] removed = new boolean[current.length];
+        int size = 0;
+        for (int i = 0; i < current.length; i++) {
+            removed[i] = filter.test(cast(current[i]));
+            if (!removed[i]) {
+                kept[size++] = current[i];
+            }
+        }
+        if (size == current.length) {
+            return false;
+        }
+        // One new array for all removals, then the index follows
+        elements = Arrays.copyOf(kept, size);
+        modCount++;
+        for (int i = 0; i < current.length; i++) {
+            if (removed[i]) {
+                unindex(cast(current[i]));
+            }
+        }
+        return true;
+    }
+    
+    @Override
+    public synchronized void clear() {
+        Object[] current = elements;
+        elements = new Object[0];
+        if (!removedListeners.isEmpty()) {
+            for (Object element : current) {
+                notifyListeners(removedListeners, cast(element));
+            }
+        }
+        byId.clear();
+        duplicates = 0;
+        modCount++;
+    }
+    
+    @Override
+    public synchronized void sort(Comparator<? super T> comparator) {
+        @SuppressWarnings("unchecked")
+        T[] updated = (T[]) elements.clone();
+        Arrays.sort(updated, comparator);
+        elements = updated;
+        modCount++;
+        // Sorting can change which duplicate comes first
+        if (duplicates > 0) {
+            reindex();
+        }
+    }
+    
+    @Override
+    public Iterator<T> iterator() {
+        return new SnapshotIterator(elements);
+    }
+    
+    @Override
+    public Spliterator<T> spliterator() {
+        return Spliterators.spliterator(elements, Spliterator.ORDERED);
+    }
+    
+    @Override
+    public void forEach(Consumer<? super T> action) {
+        for (Object element : elements) {
+            action.accept(cast(element));
+        }
+    }
+    
+    @Override
+    public Object[] toArray() {
+        return elements.clone();
+    }
+    
+    @Override
+    public int indexOf(Object o) {
+        Object[] current = elements;
+        for (int i = 0; i < current.length; i++) {
+            if (Objects.equals(o, current[i])) {
+                return i;
+            }
+        }
+        return -1;
+    }
+    
+    @Override
+    public boolean contains(Object o) {
+        return indexOf(o) >= 0;
+    }
+    
+    /**
+     * Iterator over the elements as they were when it was created
+     * Removing through it removes the same element from the current list
+     */
+    private class SnapshotIterator implements Iterator<T> {
+        private final Object[] snapshot;
+        private int next;
+        private int last = -1;
+        
+        SnapshotIterator(Object[] snapshot) {
+            this.snapshot = snapshot;
+        }
+        
+        @Override
+        public boolean hasNext() {
+            return next < snapshot.length;
+        }
+        
+        @Override
+        public T next() {
+            if (next >= snapshot.length) {
+                throw new NoSuchElementException();
+            }
+            last = next++;
+            return cast(snapshot[last]);
+        }
+        
+        @Override
+        public void remove() {
+            if (last < 0) {
+                throw new IllegalStateException();
+            }
+            removeSame(snapshot[last]);
+            last = -1;
+        }
+    }
+    
+    private synchronized void removeSame(Object element) {
+        Object[] current = elements;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] == element) {
+                remove(i);
+                return;
+            }
+        }
+    }
+    
+    private void index(T element, int position) {
+        notifyListeners(addedListeners, element);
+        int id = idOf.applyAsInt(element);
+        T existing = byId.get(id);
+        if (existing == null) {
+            byId.put(id, element);
+            return;
+        }
+        duplicates++;
+        // An element inserted in front of the indexed one becomes the first occurrence
+        if (position < elements.length - 1 && positionOf(existing) > position) {
+            byId.put(id, element);
+        }
+    }
+    
+    private void unindex(T element) {
+        notifyListeners(removedListeners, element);
+        int id = idOf.applyAsInt(element);
+        if (byId.get(id) != element) {
+            if (duplicates > 0) {
+                duplicates--;
+            }
+            return;
+        }
+        byId.remove(id);
+        if (duplicates == 0) {
+            return;
+        }
+        // Promote the next element with the same ID, if any
+        for (Object other : elements) {
+            if (idOf.applyAsInt(cast(other)) == id) {
+                byId.put(id, cast(other));
+                duplicates--;
+                return;
+            }
+        }
+    }
+    
+    private int positionOf(T element) {
+        Object[] current = elements;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] == element) {
+                return i;
+            }
+        }
+        return -1;
+    }
+    
+    private void notifyListeners(List<Consumer<? super T>> listeners, T element) {
+        for (Consumer<? super T> listener : listeners) {
+            listener.accept(element);
+        }
+    }
+    
+    @SuppressWarnings("unchecked")
+    private static <T> T cast(Object element) {
+        return (T) element;
+    }
+}
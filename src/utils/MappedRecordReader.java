@@ -0,0 +1,437 @@
+package utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Calendar;
+import java.util.Date;
+
+/**
+ * MappedRecordReader scans a pipe-delimited data file from a buffer holding its bytes
+ *
+ * open reads the whole file into a heap buffer in one go rather than mapping it. The
+ * same files are truncated and rewritten on the next save, which fails on Windows
+ * while a mapping of them is still alive and can crash the VM on Linux if a mapping
+ * of a truncated file is read; a mapping is only released when it is garbage collected.
+ *
+ * Field boundaries are found by scanning the buffered bytes directly, and numeric
+ * fields are parsed from those bytes without creating intermediate Strings.
+ * Only the fields that are read with {@link #nextString()} allocate a String.
+ *
+ * Usage: call {@link #nextLine()} for each record, then read its fields in order
+ * with the nextX methods. Fields are trimmed the same way String.trim() would.
+ */
+public class MappedRecordReader {
+    private static final byte FIELD_SEPARATOR = '|';
+    private static final long[] POWERS_OF_TEN = {
+        1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L, 10000000L, 100000000L,
+        1000000000L, 10000000000L, 100000000000L, 1000000000000L, 10000000000000L,
+        100000000000000L, 1000000000000000L
+    };
+    // Largest mantissa a double represents exactly (2^53)
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+    
+    private final ByteBuffer buffer;
+    private final int limit;
+    private int position;
+    private int lineEnd;
+    private int cursor;
+    private int fieldStart;
+    private int fieldEnd;
+    private byte[] scratch = new byte[128];
+    private final Calendar calendar = Calendar.getInstance();
+    
+    /**
+     * Constructor for a reader over a buffer holding the file contents
+     *
+     * @param buffer The buffer holding the file contents
+     */
+    public MappedRecordReader(ByteBuffer buffer) {
+        this.buffer = buffer;
+        this.limit = buffer.limit();
+        this.position = 0;
+        this.lineEnd = -1;
+    }
+    
+    /**
+     * Read a data file into memory
+     *
+     * @param filePath Path of the file to read
+     * @return A reader positioned before the first record
+     * @throws IOException If the file cannot be opened or read
+     */
+    public static MappedRecordReader open(String filePath) throws IOException {
+        Path path = Paths.get(filePath);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("File too large to read: " + filePath);
+            }
+            // A heap buffer, not a mapping, so nothing refers to the file once the channel is closed
+            ByteBuffer buffer = ByteBuffer.allocate((int) size);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    // The file was shortened while it was read
+                    break;
+                }
+            }
+            buffer.flip();
+            return new MappedRecordReader(buffer);
+        }
+    }
+    
+    /**
+     * Advance to the next non-blank record
+     *
+     * @return true if a record is available
+     */
+    public boolean nextLine() {
+        if (lineEnd >= 0) {
+            position = lineEnd + 1;
+        }
+        
+        while (position < limit) {
+            int end = position;
+            while (end < limit && buffer.get(end) != '\n') {
+                end++;
+            }
+            lineEnd = end;
+            
+            int contentEnd = end;
+            while (contentEnd > position && isWhitespace(buffer.get(contentEnd - 1))) {
+                contentEnd--;
+            }
+            if (contentEnd > position) {
+                cursor = position;
+                return true;
+            }
+            position = end + 1;
+        }
+        
+        lineEnd = limit;
+        return false;
+    }
+    
+    /**
+     * Get the number of fields in the current record
+     * Scans the record once without moving the field cursor
+     *
+     * @return Number of pipe-delimited fields
+     */
+    public int fieldCount() {
+        int count = 1;
+        for (int i = position; i < lineEnd; i++) {
+            if (buffer.get(i) == FIELD_SEPARATOR) {
+                count++;
+            }
+        }
+        return count;
+    }
+    
+    /**
+     * Check whether the current record has another field
+     *
+     * @return true if another field can be read
+     */
+    public boolean hasNextField() {
+        return cursor <= lineEnd;
+    }
+    
+    /**
+     * Skip the next field without reading it
+     */
+    public void skipField() {
+        advanceField();
+    }
+    
+    /**
+     * Read the next field as an int
+     *
+     * @return The parsed value
+     * @throws NumberFormatException If the field is not a valid int
+     */
+    public int nextInt() {
+        advanceField();
+        return parseInt(fieldStart, fieldEnd);
+    }
+    
+    /**
+     * Read the next field as a double
+     * Plain decimals are parsed from the bytes; other notations fall back to Double.parseDouble
+     *
+     * @return The parsed value
+     * @throws NumberFormatException If the field is not a valid number
+     */
+    public double nextDouble() {
+        advanceField();
+        int start = fieldStart;
+        int end = fieldEnd;
+        if (start >= end) {
+            throw new NumberFormatException("Empty numeric field");
+        }
+        
+        boolean negative = false;
+        byte first = buffer.get(start);
+        if (first == '-' || first == '+') {
+            negative = first == '-';
+            start++;
+        }
+        
+        long mantissa = 0;
+        int fractionDigits = 0;
+        int digits = 0;
+        boolean seenPoint = false;
+        for (int i = start; i < end; i++) {
+            byte b = buffer.get(i);
+            if (b >= '0' && b <= '9') {
+                mantissa = mantissa * 10 + (b - '0');
+                digits++;
+                if (seenPoint) {
+                    fractionDigits++;
+                }
+                if (mantissa >= MAX_EXACT_MANTISSA || fractionDigits >= POWERS_OF_TEN.length) {
+                    return Double.parseDouble(fieldAsString());
+                }
+            } else if (b == '.' && !seenPoint) {
+                seenPoint = true;
+            } else {
+                // Exponents, NaN and the like
+                return Double.parseDouble(fieldAsString());
+            }
+        }
+        if (digits == 0) {
+            throw new NumberFormatException("Invalid number: " + fieldAsString());
+        }
+        
+        // Both operands are exact, so the division is correctly rounded like Double.parseDouble
+        double value = (double) mantissa / POWERS_OF_TEN[fractionDigits];
+        return negative ? -value : value;
+    }
+    
+    /**
+     * Read the next field as a boolean, using the rules of Boolean.parseBoolean
+     *
+     * @return true if the field equals "true" ignoring case
+     */
+    public boolean nextBoolean() {
+        advanceField();
+        if (fieldEnd - fieldStart != 4) {
+            return false;
+        }
+        return (buffer.get(fieldStart) | 0x20) == 't'
+            && (buffer.get(fieldStart + 1) | 0x20) == 'r'
+            && (buffer.get(fieldStart + 2) | 0x20) == 'u'
+            && (buffer.get(fieldStart + 3) | 0x20) == 'e';
+    }
+    
+    /**
+     * Read the next field as a String
+     *
+     * @return The trimmed field value
+     */
+    public String nextString() {
+        advanceField();
+        return fieldAsString();
+    }
+    
+    /**
+     * Check whether the next field is empty without consuming it
+     *
+     * @return true if the next field is missing or blank
+     */
+    public boolean isNextFieldEmpty() {
+        for (int i = cursor; i < lineEnd; i++) {
+            byte b = buffer.get(i);
+            if (b == FIELD_SEPARATOR) {
+                return true;
+            }
+            if (!isWhitespace(b)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Read the next field as an enum constant by comparing the raw bytes with the constant names
+     *
+     * @param <E> The enum type
+     * @param values The enum constants to match against
+     * @param fallback Value to return when no constant matches
+     * @return The matching constant, or the fallback
+     */
+    public <E extends Enum<E>> E nextEnum(E[] values, E fallback) {
+        advanceField();
+        int length = fieldEnd - fieldStart;
+        for (E value : values) {
+            String name = value.name();
+            if (name.length() != length) {
+                continue;
+            }
+            boolean matches = true;
+            for (int i = 0; i < length; i++) {
+                if (buffer.get(fieldStart + i) != name.charAt(i)) {
+                    matches = false;
+                    break;
+                }
+            }
+            if (matches) {
+                return value;
+            }
+        }
+        return fallback;
+    }
+    
+    /**
+     * Read the next field as a date in the format yyyy-MM-dd HH:mm:ss
+     *
+     * @return The parsed date, or null if the field does not have that format
+     */
+    public Date nextDateTime() {
+        advanceField();
+        int s = fieldStart;
+        if (fieldEnd - s != 19 || buffer.get(s + 4) != '-' || buffer.get(s + 7) != '-'
+                || buffer.get(s + 10) != ' ' || buffer.get(s + 13) != ':' || buffer.get(s + 16) != ':') {
+            return null;
+        }
+        try {
+            calendar.clear();
+            calendar.set(parseInt(s, s + 4), parseInt(s + 5, s + 7) - 1, parseInt(s + 8, s + 10),
+                         parseInt(s + 11, s + 13), parseInt(s + 14, s + 16), parseInt(s + 17, s + 19));
+            return calendar.getTime();
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+    
+    /**
+     * Read the next field as a list of int pairs such as "1:2;5:1"
+     *
+     * @param pairSeparator Separator between pairs
+     * @param valueSeparator Separator between the two values of a pair
+     * @param consumer Receives each pair in order
+     */
+    public void nextIntPairs(char pairSeparator, char valueSeparator, IntPairConsumer consumer) {
+        advanceField();
+        int start = fieldStart;
+        while (start < fieldEnd) {
+            int end = start;
+            while (end < fieldEnd && buffer.get(end) != pairSeparator) {
+                end++;
+            }
+            int split = start;
+            while (split < end && buffer.get(split) != valueSeparator) {
+                split++;
+            }
+            if (split < end) {
+                consumer.accept(parseInt(trimStart(start, split), trimEnd(start, split)),
+                                parseInt(trimStart(split + 1, end), trimEnd(split + 1, end)));
+            }
+            start = end + 1;
+        }
+    }
+    
+    /**
+     * Receives pairs of ints read by {@link #nextIntPairs}
+     */
+    public interface IntPairConsumer {
+        void accept(int first, int second);
+    }
+    
+    /**
+     * Move the field cursor to the next field and trim it
+     * A missing trailing field reads as empty
+     */
+    private void advanceField() {
+        int start = Math.min(cursor, lineEnd);
+        int end = start;
+        while (end < lineEnd && buffer.get(end) != FIELD_SEPARATOR) {
+            end++;
+        }
+        cursor = end + 1;
+        fieldStart = trimStart(start, end);
+        fieldEnd = trimEnd(fieldStart, end);
+    }
+    
+    private int trimStart(int start, int end) {
+        while (start < end && isWhitespace(buffer.get(start))) {
+            start++;
+        }
+        return start;
+    }
+    
+    private int trimEnd(int start, int end) {
+        while (end > start && isWhitespace(buffer.get(end - 1))) {
+            end--;
+        }
+        return end;
+    }
+    
+    /**
+     * Parse an int from a byte range, following the rules of Integer.parseInt
+     *
+     * @param start Start of the range (inclusive)
+     * @param end End of the range (exclusive)
+     * @return The parsed value
+     */
+    private int parseInt(int start, int end) {
+        if (start >= end) {
+            throw new NumberFormatException("Empty numeric field");
+        }
+        
+        boolean negative = false;
+        int i = start;
+        byte first = buffer.get(i);
+        if (first == '-' || first == '+') {
+            negative = first == '-';
+            if (++i == end) {
+                throw new NumberFormatException("Invalid number: " + rangeAsString(start, end));
+            }
+        }
+        
+        long value = 0;
+        for (; i < end; i++) {
+            byte b = buffer.get(i);
+            if (b < '0' || b > '9') {
+                throw new NumberFormatException("Invalid number: " + rangeAsString(start, end));
+            }
+            value = value * 10 + (b - '0');
+            if (value > (long) Integer.MAX_VALUE + 1) {
+                throw new NumberFormatException("Number out of range: " + rangeAsString(start, end));
+            }
+        }
+        
+        value = negative ? -value : value;
+        if (value > Integer.MAX_VALUE) {
+            throw new NumberFormatException("Number out of range: " + rangeAsString(start, end));
+        }
+        return (int) value;
+    }
+    
+    private String fieldAsString() {
+        return rangeAsString(fieldStart, fieldEnd);
+    }
+    
+    private String rangeAsString(int start, int end) {
+        int length = end - start;
+        if (length <= 0) {
+            return "";
+        }
+        if (scratch.length < length) {
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+        }
+        for (int i = 0; i < length; i++) {
+            scratch[i] = buffer.get(start + i);
+        }
+        return new String(scratch, 0, length, StandardCharsets.UTF_8);
+    }
+    
+    private static boolean isWhitespace(byte b) {
+        // Same set of characters String.trim() removes; UTF-8 continuation bytes are negative
+        return b >= 0 && b <= ' ';
+    }
+}
@@ -0,0 +1,397 @@
+package utils;
+
+import models.IntIntMap;
+import models.IntObjectMap;
+import models.Medicine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * MedicineSearchIndex is an inverted index over the medicine catalog
+ *
+ * Name, category, manufacturer and description are split into lower-case terms.
+ * Each term maps to the medicines containing it, and each 3-character gram of a
+ * term maps back to the terms containing that gram. A query term then matches:
+ * - exactly or as a prefix, through the sorted term dictionary
+ * - anywhere inside a term, through the grams it shares with that term
+ * - with a typo, through the grams of close terms when nothing else matched
+ *
+ * Every query term has to match. Results are ranked by how well each term matched
+ * and in which field, so a hit in the name outranks one in the description; equal
+ * scores keep the order the medicines were added in.
+ * The index is updated one medicine at a time; call update after editing a medicine.
+ */
+public class MedicineSearchIndex {
+    private static final int GRAM = 3;
+    
+    // Field bits stored per medicine and term, and their ranking weights
+    private static final int NAME = 1;
+    private static final int CATEGORY = 2;
+    private static final int MANUFACTURER = 4;
+    private static final int DESCRIPTION = 8;
+    
+    // Match quality of a query term, in percent
+    private static final int EXACT_MATCH = 100;
+    private static final int PREFIX_MATCH = 80;
+    private static final int INFIX_MATCH = 50;
+    private static final int FUZZY_MATCH = 40;
+    
+    private final NavigableMap<String, IntIntMap> postings = new TreeMap<>(); // Term -> document -> field bits
+    private final Map<String, Set<String>> termsByGram = new HashMap<>();
+    private final Map<Medicine, Document> documents = new IdentityHashMap<>();
+    private final IntObjectMap<Medicine> medicinesByDocument = new IntObjectMap<>();
+    private int nextDocument = 1;
+    
+    /**
+     * A medicine as indexed, so it can be unindexed after its fields changed
+     */
+    private static class Document {
+        final int number;
+        final String[] terms;
+        
+        Document(int number, String[] terms) {
+            this.number = number;
+            this.terms = terms;
+        }
+    }
+    
+    /**
+     * Index every medicine of a collection
+     *
+     * @param medicines The medicines
+     */
+    public synchronized void addAll(Collection<Medicine> medicines) {
+        for (Medicine medicine : medicines) {
+            add(medicine);
+        }
+    }
+    
+    /**
+     * Index a medicine
+     *
+     * @param medicine The medicine
+     */
+    public synchronized void add(Medicine medicine) {
+        if (!documents.containsKey(medicine)) {
+            index(medicine, nextDocument++);
+        }
+    }
+    
+    private void index(Medicine medicine, int number) {
+        Map<String, Integer> fields = new HashMap<>();
+        collectTerms(medicine.getName(), NAME, fields);
+        collectTerms(medicine.getCategory(), CATEGORY, fields);
+        collectTerms(medicine.getManufacturer(), MANUFACTURER, fields);
+        collectTerms(medicine.getDescription(), DESCRIPTION, fields);
+        
+        for (Map.Entry<String, Integer> field : fields.entrySet()) {
+            String term = field.getKey();
+            IntIntMap documentsOfTerm = postings.get(term);
+            if (documentsOfTerm == null) {
+                documentsOfTerm = new IntIntMap();
+                postings.put(term, documentsOfTerm);
+                for (String gram : grams(term)) {
+                    termsByGram.computeIfAbsent(gram, g -> new HashSet<>()).add(term);
+                }
+            }
+            documentsOfTerm.put(number, field.getValue());
+        }
+        documents.put(medicine, new Document(number, fields.keySet().toArray(new String[0])));
+        medicinesByDocument.put(number, medicine);
+    }
+    
+    /**
+     * Remove a medicine from the index
+     *
+     * @param medicine The medicine
+     */
+    public synchronized void remove(Medicine medicine) {
+        Document document = documents.remove(medicine);
+        if (document == null) {
+            return;
+        }
+        medicinesByDocument.remove(document.number);
+        for (String term : document.terms) {
+            IntIntMap documentsOfTerm = postings.get(term);
+            documentsOfTerm.remove(document.number);
+            if (!documentsOfTerm.isEmpty()) {
+                continue;
+            }
+            postings.remove(term);
+            for (String gram : grams(term)) {
+                Set<String> terms = termsByGram.get(gram);
+                terms.remove(term);
+                if (terms.isEmpty()) {
+                    termsByGram.remove(gram);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Re-index a medicine after its name, category, manufacturer or description changed
+     *
+     * @param medicine The medicine
+     */
+    public synchronized void update(Medicine medicine) {
+        Document document = documents.get(medicine);
+        if (document == null) {
+            return;
+        }
+        // Keep the document number so the medicine keeps its place among equal scores
+        remove(medicine);
+        index(medicine, document.number);
+    }
+    
+    /**
+     * Get the number of indexed medicines
+     *
+     * @return Number of medicines
+     */
+    public synchronized int size() {
+        return documents.size();
+    }
+    
+    /**
+     * Search the medicines
+     *
+     * @param query Words to look for; every word has to match
+     * @return Matching medicines, best match first; empty for a blank query
+     */
+    public synchronized List<Medicine> search(String query) {
+        List<String> queryTerms = new ArrayList<>();
+        tokenize(query, queryTerms);
+        if (queryTerms.isEmpty()) {
+            return new ArrayList<>();
+        }
+        
+        IntIntMap scores = null;
+        for (String queryTerm : queryTerms) {
+            IntIntMap termScores = score(queryTerm);
+            scores = scores == null ? termScores : intersect(scores, termScores);
+            if (scores.isEmpty()) {
+                return new ArrayList<>();
+            }
+        }
+        
+        // Sort on packed keys: higher score first, then catalog order
+        int[] matches = scores.keys();
+        long[] order = new long[matches.length];
+        for (int i = 0; i < matches.length; i++) {
+            order[i] = ((long) (Integer.MAX_VALUE - scores.get(matches[i], 0)) << 32) | matches[i];
+        }
+        Arrays.sort(order);
+        List<Medicine> results = new ArrayList<>(order.length);
+        for (long key : order) {
+            results.add(medicinesByDocument.get((int) key));
+        }
+        return results;
+    }
+    
+    /**
+     * Score every medicine matching one query term
+     *
+     * @param queryTerm The lower-case query term
+     * @return Best score of the term per matching document
+     */
+    private IntIntMap score(String queryTerm) {
+        IntIntMap scores = new IntIntMap();
+        
+        // Exact and prefix matches: the dictionary range starting at the query term
+        String end = queryTerm + Character.MAX_VALUE;
+        for (Map.Entry<String, IntIntMap> entry : postings.subMap(queryTerm, true, end, false).entrySet()) {
+            int quality = entry.getKey().length() == queryTerm.length() ? EXACT_MATCH : PREFIX_MATCH;
+            addScores(scores, entry.getValue(), quality);
+        }
+        
+        // Matches inside a term: candidates carry every gram of the query term
+        if (queryTerm.length() >= GRAM) {
+            for (String term : termsWithAllGrams(innerGrams(queryTerm))) {
+                if (!term.startsWith(queryTerm) && term.contains(queryTerm)) {
+                    addScores(scores, postings.get(term), INFIX_MATCH);
+                }
+            }
+        }
+        
+        // Typos are only looked for when the term matched nothing as typed
+        if (scores.isEmpty() && queryTerm.length() >= GRAM) {
+            int maxEdits = queryTerm.length() <= 5 ? 1 : 2;
+            for (String term : termsSharingGrams(queryTerm, maxEdits)) {
+                if (Math.abs(term.length() - queryTerm.length()) <= maxEdits
+                        && editDistance(queryTerm, term, maxEdits) <= maxEdits) {
+                    addScores(scores, postings.get(term), FUZZY_MATCH);
+                }
+            }
+        }
+        return scores;
+    }
+    
+    private static void addScores(IntIntMap scores, IntIntMap documentsOfTerm, int quality) {
+        for (int number : documentsOfTerm.keys()) {
+            int score = quality * fieldWeight(documentsOfTerm.get(number, 0));
+            if (score > scores.get(number, 0)) {
+                scores.put(number, score);
+            }
+        }
+    }
+    
+    private static IntIntMap intersect(IntIntMap scores, IntIntMap termScores) {
+        IntIntMap smaller = scores.size() <= termScores.size() ? scores : termScores;
+        IntIntMap larger = smaller == scores ? termScores : scores;
+        IntIntMap result = new IntIntMap(smaller.size());
+        for (int number : smaller.keys()) {
+            if (larger.containsKey(number)) {
+                result.put(number, smaller.get(number, 0) + larger.get(number, 0));
+            }
+        }
+        return result;
+    }
+    
+    private static int fieldWeight(int fields) {
+        if ((fields & NAME) != 0) {
+            return 4;
+        }
+        if ((fields & (CATEGORY | MANUFACTURER)) != 0) {
+            return 2;
+        }
+        return 1;
+    }
+    
+    private Set<String> termsWithAllGrams(List<String> grams) {
+        // Start from the rarest gram so the candidate set is small from the outset
+        Set<String> rarest = null;
+        for (String gram : grams) {
+            Set<String> terms = termsByGram.get(gram);
+            if (terms == null) {
+                return new HashSet<>();
+            }
+            if (rarest == null || terms.size() < rarest.size()) {
+                rarest = terms;
+            }
+        }
+        Set<String> candidates = new HashSet<>();
+        for (String term : rarest) {
+            boolean hasAll = true;
+            for (String gram : grams) {
+                if (!termsByGram.get(gram).contains(term)) {
+                    hasAll = false;
+                    break;
+                }
+            }
+            if (hasAll) {
+                candidates.add(term);
+            }
+        }
+        return candidates;
+    }
+    
+    private Set<String> termsSharingGrams(String queryTerm, int maxEdits) {
+        // An edit breaks at most GRAM + 1 grams (a transposition), so a close term shares the rest
+        List<String> grams = grams(queryTerm);
+        int required = Math.max(1, grams.size() - maxEdits * (GRAM + 1));
+        Map<String, Integer> shared = new HashMap<>();
+        Set<String> candidates = new HashSet<>();
+        for (String gram : grams) {
+            Set<String> terms = termsByGram.get(gram);
+            if (terms == null) {
+                continue;
+            }
+            for (String term : terms) {
+                if (shared.merge(term, 1, Integer::sum) == required) {
+                    candidates.add(term);
+                }
+            }
+        }
+        return candidates;
+    }
+    
+    /**
+     * Get the grams of a term padded with boundary markers, so short terms still have grams
+     */
+    private static List<String> grams(String term) {
+        return innerGrams("^" + term + "$");
+    }
+    
+    private static List<String> innerGrams(String text) {
+        List<String> grams = new ArrayList<>(Math.max(1, text.length() - GRAM + 1));
+        if (text.length() < GRAM) {
+            grams.add(text);
+            return grams;
+        }
+        for (int i = 0; i + GRAM <= text.length(); i++) {
+            grams.add(text.substring(i, i + GRAM));
+        }
+        return grams;
+    }
+    
+    /**
+     * Levenshtein distance with adjacent transpositions, giving up past a limit
+     *
+     * @return The distance, or limit + 1 if it is larger than limit
+     */
+    private static int editDistance(String a, String b, int limit) {
+        int[] previousRow = new int[b.length() + 1];
+        int[] row = new int[b.length() + 1];
+        int[] beforeRow = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            row[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            int[] spare = beforeRow;
+            beforeRow = previousRow;
+            previousRow = row;
+            row = spare;
+            row[0] = i;
+            int rowMin = i;
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                int distance = Math.min(Math.min(previousRow[j] + 1, row[j - 1] + 1), previousRow[j - 1] + cost);
+                if (i > 1 && j > 1 && a.charAt(i - 1) == b.charAt(j - 2) && a.charAt(i - 2) == b.charAt(j - 1)) {
+                    distance = Math.min(distance, beforeRow[j - 2] + 1);
+                }
+                row[j] = distance;
+                rowMin = Math.min(rowMin, distance);
+            }
+            if (rowMin > limit) {
+                return limit + 1;
+            }
+        }
+        return row[b.length()];
+    }
+    
+    private static void collectTerms(String text, int field, Map<String, Integer> fields) {
+        List<String> terms = new ArrayList<>();
+        tokenize(text, terms);
+        for (String term : terms) {
+            fields.merge(term, field, (a, b) -> a | b);
+        }
+    }
+    
+    private static void tokenize(String text, List<String> terms) {
+        if (text == null) {
+            return;
+        }
+        String lower = text.toLowerCase(Locale.ROOT);
+        int start = -1;
+        for (int i = 0; i <= lower.length(); i++) {
+            boolean wordChar = i < lower.length() && Character.isLetterOrDigit(lower.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                terms.add(lower.substring(start, i));
+                start = -1;
+            }
+        }
+    }
+}
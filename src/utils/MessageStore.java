@@ -0,0 +1,489 @@
+package utils;
+
+import models.Consultation;
+import models.IntIntMap;
+import models.IntObjectMap;
+import models.Message;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * MessageStore keeps the messages of every consultation on disk, in append-only segments
+ *
+ * Each consultation thread has its own directory under data/messages, holding numbered
+ * segment files of SEGMENT_SIZE messages each, one message per line. A message is
+ * numbered by its position in the thread and only ever appended to the last segment,
+ * so a thread is read back page by page from the end: the latest messages first, then
+ * older pages before a cursor. Only the last segment of a thread stays in memory; older
+ * segments are read when a page reaches them and kept in a small least recently used
+ * cache.
+ *
+ * Every doctor has an unread count per consultation: messages sent to the doctor after
+ * the doctor last read the thread or replied to it. The read position is kept beside
+ * the segments, so unread counts survive a restart.
+ *
+ * Threads are named by consultation ID and opening time, so a consultation that reuses
+ * the ID of an older one starts a thread of its own.
+ */
+public class MessageStore {
+    public static final String MESSAGES_DIR = "data/messages";
+    public static final int SEGMENT_SIZE = 50;
+    
+    private static final int CACHED_SEGMENTS = 32;
+    private static final String READ_FILE = "read.txt";
+    
+    private final File directory;
+    private final Map<String, Conversation> threads = new HashMap<>();
+    private final IntObjectMap<IntIntMap> unreadByDoctor = new IntObjectMap<>();
+    // Sealed segments by thread and segment number, least recently read first
+    private final Map<String, List<Message>> cache = new LinkedHashMap<String, List<Message>>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, List<Message>> eldest) {
+            return size() > CACHED_SEGMENTS;
+        }
+    };
+    
+    /**
+     * The part of a consultation thread held in memory
+     */
+    private static class Conversation {
+        final String name;
+        final File directory;
+        final int consultationId;
+        final int doctorId;
+        int count;
+        int tailSegment;
+        List<Message> tail = new ArrayList<>();
+        int readUpTo;
+        int unread;
+        
+        Conversation(String name, File directory, Consultation consultation) {
+            this.name = name;
+            this.directory = directory;
+            this.consultationId = consultation.getId();
+            this.doctorId = consultation.getDoctorId();
+        }
+    }
+    
+    /**
+     * One page of a thread, oldest message first
+     */
+    public static class Page {
+        private final List<Message> messages;
+        private final int cursor;
+        
+        Page(List<Message> messages, int cursor) {
+            this.messages = messages;
+            this.cursor = cursor;
+        }
+        
+        /**
+         * Get the messages of the page
+         *
+         * @return The messages, oldest first
+         */
+        public List<Message> getMessages() {
+            return messages;
+        }
+        
+        /**
+         * Get the cursor to read the page before this one
+         *
+         * @return The number of the oldest message in the page
+         */
+        public int getCursor() {
+            return cursor;
+        }
+        
+        /**
+         * Check if the thread has messages before this page
+         *
+         * @return true if an older page can be read
+         */
+        public boolean hasOlder() {
+            return cursor > 1;
+        }
+    }
+    
+    /**
+     * Constructor using the default directory under data/
+     */
+    public MessageStore() {
+        this(MESSAGES_DIR);
+    }
+    
+    /**
+     * Constructor for a store kept in the given directory
+     *
+     * @param directoryPath Path of the directory holding the threads
+     */
+    public MessageStore(String directoryPath) {
+        this.directory = new File(directoryPath);
+    }
+    
+    /**
+     * Adopt every consultation of a collection
+     *
+     * @param consultations The consultations
+     */
+    public synchronized void adoptAll(Collection<Consultation> consultations) {
+        for (Consultation consultation : consultations) {
+            adopt(consultation);
+        }
+    }
+    
+    /**
+     * Open the thread of a consultation and move the messages it holds in memory into it
+     *
+     * @param consultation The consultation
+     */
+    public synchronized void adopt(Consultation consultation) {
+        thread(consultation);
+        List<Message> held = consultation.getMessages();
+        if (held == null || held.isEmpty()) {
+            return;
+        }
+        for (Message message : new ArrayList<>(held)) {
+            append(consultation, message);
+        }
+        held.clear();
+    }
+    
+    /**
+     * Drop the thread of a consultation from memory; its messages stay on disk
+     *
+     * @param consultation The consultation
+     */
+    public synchronized void forget(Consultation consultation) {
+        Conversation thread = threads.remove(threadName(consultation));
+        if (thread != null) {
+            thread.unread = 0;
+            fileUnread(thread);
+        }
+    }
+    
+    /**
+     * Append a message to the thread of a consultation
+     * The message is numbered by its position in the thread
+     *
+     * @param consultation The consultation
+     * @param message The message
+     * @return true if the message was written
+     */
+    public synchronized boolean append(Consultation consultation, Message message) {
+        Conversation thread = thread(consultation);
+        int number = thread.count + 1;
+        int segment = segmentOf(number);
+        message.setId(number);
+        if (message.getTimestamp() == null) {
+            message.setTimestamp(LocalDateTime.now());
+        }
+        
+        try {
+            if (!thread.directory.isDirectory() && !thread.directory.mkdirs()) {
+                throw new IOException("Cannot create " + thread.directory);
+            }
+            byte[] line = (format(message) + "\n").getBytes(StandardCharsets.UTF_8);
+            Files.write(segmentFile(thread, segment).toPath(), line,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            System.err.println("Error saving message: " + e.getMessage());
+            return false;
+        }
+        
+        if (segment != thread.tailSegment) {
+            // The last segment is full; it is only read from now on
+            cache.put(segmentKey(thread, thread.tailSegment), thread.tail);
+            thread.tail = new ArrayList<>(SEGMENT_SIZE);
+            thread.tailSegment = segment;
+        }
+        thread.tail.add(message);
+        thread.count = number;
+        
+        if (message.getSenderId() == thread.doctorId) {
+            // Replying means the doctor has read the thread
+            markRead(thread);
+        } else if (message.getReceiverId() == thread.doctorId) {
+            thread.unread++;
+            fileUnread(thread);
+        }
+        return true;
+    }
+    
+    /**
+     * Count the messages of a consultation
+     *
+     * @param consultation The consultation
+     * @return Number of messages in its thread
+     */
+    public synchronized int count(Consultation consultation) {
+        return thread(consultation).count;
+    }
+    
+    /**
+     * Get the latest messages of a consultation
+     *
+     * @param consultation The consultation
+     * @param limit The maximum number of messages
+     * @return The last page of the thread
+     */
+    public synchronized Page latest(Consultation consultation, int limit) {
+        Conversation thread = thread(consultation);
+        return page(thread, thread.count + 1, limit);
+    }
+    
+    /**
+     * Get the messages of a consultation before a cursor
+     *
+     * @param consultation The consultation
+     * @param cursor The cursor of the page read before, see Page.getCursor
+     * @param limit The maximum number of messages
+     * @return The page ending just before the cursor
+     */
+    public synchronized Page before(Consultation consultation, int cursor, int limit) {
+        Conversation thread = thread(consultation);
+        return page(thread, Math.min(cursor, thread.count + 1), limit);
+    }
+    
+    /**
+     * Count the unread messages of a doctor over all consultations
+     *
+     * @param doctorId The doctor ID
+     * @return Number of unread messages
+     */
+    public synchronized int unreadCount(int doctorId) {
+        IntIntMap unread = unreadByDoctor.get(doctorId);
+        if (unread == null) {
+            return 0;
+        }
+        int total = 0;
+        for (int consultationId : unread.keys()) {
+            total += unread.get(consultationId, 0);
+        }
+        return total;
+    }
+    
+    /**
+     * Count the messages of a consultation its doctor has not read
+     *
+     * @param consultation The consultation
+     * @return Number of unread messages
+     */
+    public synchronized int unreadCount(Consultation consultation) {
+        return thread(consultation).unread;
+    }
+    
+    /**
+     * Mark every message of a consultation as read by its doctor
+     *
+     * @param consultation The consultation
+     */
+    public synchronized void markRead(Consultation consultation) {
+        markRead(thread(consultation));
+    }
+    
+    private void markRead(Conversation thread) {
+        if (thread.readUpTo == thread.count && thread.unread == 0) {
+            return;
+        }
+        thread.readUpTo = thread.count;
+        thread.unread = 0;
+        fileUnread(thread);
+        try {
+            if (thread.directory.isDirectory()) {
+                Files.write(new File(thread.directory, READ_FILE).toPath(),
+                            Integer.toString(thread.readUpTo).getBytes(StandardCharsets.UTF_8));
+            }
+        } catch (IOException e) {
+            System.err.println("Error saving read position: " + e.getMessage());
+        }
+    }
+    
+    private Page page(Conversation thread, int cursor, int limit) {
+        int first = Math.max(1, cursor - Math.max(0, limit));
+        List<Message> messages = new ArrayList<>(cursor - first);
+        for (int number = first; number < cursor; ) {
+            int segment = segmentOf(number);
+            List<Message> lines = segment(thread, segment);
+            int offset = number - segment * SEGMENT_SIZE - 1;
+            int end = Math.min(lines.size(), cursor - segment * SEGMENT_SIZE - 1);
+            if (offset < end) {
+                messages.addAll(lines.subList(offset, end));
+            }
+            number = (segment + 1) * SEGMENT_SIZE + 1;
+        }
+        return new Page(messages, first);
+    }
+    
+    private Conversation thread(Consultation consultation) {
+        String name = threadName(consultation);
+        Conversation thread = threads.get(name);
+        if (thread == null) {
+            thread = load(name, consultation);
+            threads.put(name, thread);
+            fileUnread(thread);
+        }
+        return thread;
+    }
+    
+    private Conversation load(String name, Consultation consultation) {
+        Conversation thread = new Conversation(name, new File(directory, name), consultation);
+        String[] files = thread.directory.list();
+        if (files == null) {
+            return thread;
+        }
+        int last = -1;
+        for (String file : files) {
+            if (file.matches("\\d+\\.txt")) {
+                last = Math.max(last, Integer.parseInt(file.substring(0, file.length() - 4)));
+            }
+        }
+        if (last >= 0) {
+            thread.tailSegment = last;
+            thread.tail = read(segmentFile(thread, last));
+            thread.count = last * SEGMENT_SIZE + thread.tail.size();
+        }
+        
+        File readFile = new File(thread.directory, READ_FILE);
+        if (readFile.exists()) {
+            try {
+                String position = new String(Files.readAllBytes(readFile.toPath()), StandardCharsets.UTF_8).trim();
+                thread.readUpTo = Math.min(Integer.parseInt(position), thread.count);
+            } catch (IOException | NumberFormatException e) {
+                System.err.println("Error reading read position of thread " + name + ": " + e.getMessage());
+            }
+        }
+        // Only the segments after the read position are read to count the unread messages
+        if (thread.readUpTo < thread.count) {
+            for (Message message : page(thread, thread.count + 1, thread.count - thread.readUpTo).getMessages()) {
+                if (message.getReceiverId() == thread.doctorId) {
+                    thread.unread++;
+                }
+            }
+        }
+        return thread;
+    }
+    
+    private List<Message> segment(Conversation thread, int segment) {
+        if (segment == thread.tailSegment) {
+            return thread.tail;
+        }
+        String key = segmentKey(thread, segment);
+        List<Message> messages = cache.get(key);
+        if (messages == null) {
+            messages = read(segmentFile(thread, segment));
+            cache.put(key, messages);
+        }
+        return messages;
+    }
+    
+    private List<Message> read(File file) {
+        if (!file.exists()) {
+            return new ArrayList<>();
+        }
+        List<Message> messages = new ArrayList<>(SEGMENT_SIZE);
+        try {
+            for (String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                Message message = parse(line);
+                if (message != null) {
+                    messages.add(message);
+                } else {
+                    System.err.println("Skipping malformed message in " + file + ": " + line);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error reading messages: " + e.getMessage());
+        }
+        return messages;
+    }
+    
+    private void fileUnread(Conversation thread) {
+        IntIntMap unread = unreadByDoctor.get(thread.doctorId);
+        if (thread.unread > 0) {
+            if (unread == null) {
+                unread = new IntIntMap();
+                unreadByDoctor.put(thread.doctorId, unread);
+            }
+            unread.put(thread.consultationId, thread.unread);
+        } else if (unread != null) {
+            unread.remove(thread.consultationId);
+            if (unread.isEmpty()) {
+                unreadByDoctor.remove(thread.doctorId);
+            }
+        }
+    }
+    
+    private static String threadName(Consultation consultation) {
+        LocalDateTime opened = consultation.getDateTime();
+        return consultation.getId() + "-" + (opened != null ? opened.toEpochSecond(ZoneOffset.UTC) : 0L);
+    }
+    
+    private static int segmentOf(int number) {
+        return (number - 1) / SEGMENT_SIZE;
+    }
+    
+    private static File segmentFile(Conversation thread, int segment) {
+        return new File(thread.directory, segment + ".txt");
+    }
+    
+    private static String segmentKey(Conversation thread, int segment) {
+        return thread.name + "/" + segment;
+    }
+    
+    /**
+     * Format a message as one segment line: id|sender|receiver|timestamp|content
+     * Backslashes and line breaks in the content are escaped
+     */
+    private static String format(Message message) {
+        String content = message.getContent() != null ? message.getContent() : "";
+        content = content.replace("\\", "\\\\").replace("\n", "\\n").replace("\r", "\\r");
+        return message.getId() + "|" + message.getSenderId() + "|" + message.getReceiverId() + "|"
+            + message.getTimestamp() + "|" + content;
+    }
+    
+    private static Message parse(String line) {
+        // The content is the last field, so it may contain the separator
+        String[] parts = line.split("\\|", 5);
+        if (parts.length < 5) {
+            return null;
+        }
+        try {
+            return new Message(Integer.parseInt(parts[0]), Integer.parseInt(parts[1]), Integer.parseInt(parts[2]),
+                               unescape(parts[4]), LocalDateTime.parse(parts[3]));
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+    
+    private static String unescape(String content) {
+        if (content.indexOf('\\') < 0) {
+            return content;
+        }
+        StringBuilder text = new StringBuilder(content.length());
+        for (int i = 0; i < content.length(); i++) {
+            char c = content.charAt(i);
+            if (c == '\\' && i + 1 < content.length()) {
+                char next = content.charAt(++i);
+                text.append(next == 'n' ? '\n' : next == 'r' ? '\r' : next);
+            } else {
+                text.append(c);
+            }
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,269 @@
+package utils;
+
+import models.Medicine;
+import models.Order;
+
+import java.io.DataOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+
+/**
+ * OrderArchive keeps closed, older orders on disk instead of in memory
+ *
+ * Archived orders are appended to an archive file using the same line format as
+ * orders.txt. A fixed-width index file holds one entry per order (order ID,
+ * patient ID, order date, file offset and line length), so history can be
+ * filtered by patient and read page by page without loading the whole archive.
+ * At most one page of orders is held in memory while iterating.
+ */
+public class OrderArchive {
+    public static final String ARCHIVE_FILE = "data/orders_archive.txt";
+    public static final String INDEX_FILE = "data/orders_archive.idx";
+    
+    /**
+     * Pass as patient ID to iterate the orders of all patients
+     */
+    public static final int ALL_PATIENTS = -1;
+    
+    // id, patientId, orderDate, offset, length, reserved
+    private static final int ENTRY_SIZE = 4 + 4 + 8 + 8 + 4 + 4;
+    private static final int PAGE_ENTRIES = 256;
+    
+    private final File archiveFile;
+    private final File indexFile;
+    
+    /**
+     * Constructor using the default archive files under data/
+     */
+    public OrderArchive() {
+        this(ARCHIVE_FILE, INDEX_FILE);
+    }
+    
+    /**
+     * Constructor for an archive stored in the given files
+     *
+     * @param archivePath Path of the archive file
+     * @param indexPath Path of the index file
+     */
+    public OrderArchive(String archivePath, String indexPath) {
+        this.archiveFile = new File(archivePath);
+        this.indexFile = new File(indexPath);
+    }
+    
+    /**
+     * Append orders to the archive
+     *
+     * @param orders Orders to archive
+     * @return true if all orders were written
+     */
+    public synchronized boolean append(List<Order> orders) {
+        if (orders.isEmpty()) {
+            return true;
+        }
+        
+        try (FileOutputStream archiveOut = new FileOutputStream(archiveFile, true);
+             FileOutputStream indexOut = new FileOutputStream(indexFile, true)) {
+            long offset = archiveFile.length();
+            ByteArrayOutputStream lines = new ByteArrayOutputStream();
+            ByteArrayOutputStream entries = new ByteArrayOutputStream();
+            DataOutputStream entryOut = new DataOutputStream(entries);
+            
+            for (Order order : orders) {
+                byte[] line = (FileHandler.formatOrder(order) + "\n").getBytes(StandardCharsets.UTF_8);
+                lines.write(line);
+                
+                entryOut.writeInt(order.getId());
+                entryOut.writeInt(order.getPatientId());
+                entryOut.writeLong(order.getOrderDate() != null ? order.getOrderDate().getTime() : 0L);
+                entryOut.writeLong(offset);
+                entryOut.writeInt(line.length - 1);
+                entryOut.writeInt(0);
+                offset += line.length;
+            }
+            
+            // Lines first, so an index entry never points past the end of the archive
+            lines.writeTo(archiveOut);
+            archiveOut.getFD().sync();
+            entries.writeTo(indexOut);
+            indexOut.getFD().sync();
+            return true;
+        } catch (IOException e) {
+            System.err.println("Error archiving orders: " + e.getMessage());
+            return false;
+        }
+    }
+    
+    /**
+     * Get the number of archived orders
+     *
+     * @return Number of orders in the index
+     */
+    public synchronized int size() {
+        return (int) (indexFile.length() / ENTRY_SIZE);
+    }
+    
+    /**
+     * Get the highest archived order ID
+     * Scans the index only, without reading any archived order
+     *
+     * @return The highest order ID, or 0 if the archive is empty
+     */
+    public int maxOrderId() {
+        int maxId = 0;
+        int entries = size();
+        for (int start = 0; start < entries; start += PAGE_ENTRIES) {
+            ByteBuffer page = readIndexPage(start);
+            while (page.remaining() >= ENTRY_SIZE) {
+                maxId = Math.max(maxId, page.getInt());
+                page.position(page.position() + ENTRY_SIZE - 4);
+            }
+        }
+        return maxId;
+    }
+    
+    /**
+     * Lazily iterate the archived orders of a patient, oldest first
+     *
+     * @param patientId The patient ID, or ALL_PATIENTS
+     * @param medicines All medicines, for resolving order items
+     * @return Iterable reading one index page at a time
+     */
+    public Iterable<Order> orders(int patientId, List<Medicine> medicines) {
+        return () -> new PagedIterator(patientId, medicines);
+    }
+    
+    /**
+     * Find an archived order by ID
+     *
+     * @param orderId The order ID
+     * @param medicines All medicines, for resolving order items
+     * @return The order if it is archived, empty otherwise
+     */
+    public Optional<Order> find(int orderId, List<Medicine> medicines) {
+        int entries = size();
+        for (int start = 0; start < entries; start += PAGE_ENTRIES) {
+            ByteBuffer page = readIndexPage(start);
+            while (page.remaining() >= ENTRY_SIZE) {
+                int id = page.getInt();
+                page.getInt();
+                page.getLong();
+                long offset = page.getLong();
+                int length = page.getInt();
+                page.getInt();
+                if (id == orderId) {
+                    return readOrders(Collections.singletonList(new long[] {offset, length}), medicines)
+                        .stream().findFirst();
+                }
+            }
+        }
+        return Optional.empty();
+    }
+    
+    /**
+     * Read one page of index entries
+     *
+     * @param firstEntry Index of the first entry in the page
+     * @return Buffer holding up to PAGE_ENTRIES entries
+     */
+    private synchronized ByteBuffer readIndexPage(int firstEntry) {
+        try (RandomAccessFile index = new RandomAccessFile(indexFile, "r")) {
+            long position = (long) firstEntry * ENTRY_SIZE;
+            int length = (int) Math.min((long) PAGE_ENTRIES * ENTRY_SIZE, index.length() - position);
+            if (length <= 0) {
+                return ByteBuffer.allocate(0);
+            }
+            byte[] bytes = new byte[length - length % ENTRY_SIZE];
+            index.seek(position);
+            index.readFully(bytes);
+            return ByteBuffer.wrap(bytes);
+        } catch (IOException e) {
+            System.err.println("Error reading order archive index: " + e.getMessage());
+            return ByteBuffer.allocate(0);
+        }
+    }
+    
+    /**
+     * Read and parse the archive lines at the given positions
+     *
+     * @param positions Offset and length of each line
+     * @param medicines All medicines, for resolving order items
+     * @return The parsed orders
+     */
+    private synchronized List<Order> readOrders(List<long[]> positions, List<Medicine> medicines) {
+        List<Order> orders = new ArrayList<>(positions.size());
+        try (RandomAccessFile archive = new RandomAccessFile(archiveFile, "r")) {
+            for (long[] position : positions) {
+                byte[] bytes = new byte[(int) position[1]];
+                archive.seek(position[0]);
+                archive.readFully(bytes);
+                FileHandler.parseOrder(new String(bytes, StandardCharsets.UTF_8), medicines).ifPresent(orders::add);
+            }
+        } catch (IOException e) {
+            System.err.println("Error reading order archive: " + e.getMessage());
+        }
+        return orders;
+    }
+    
+    /**
+     * Iterator that filters one index page at a time and parses only the matching orders
+     */
+    private class PagedIterator implements Iterator<Order> {
+        private final int patientId;
+        private final List<Medicine> medicines;
+        private final int entries;
+        private int nextEntry;
+        private Iterator<Order> page = Collections.emptyIterator();
+        
+        PagedIterator(int patientId, List<Medicine> medicines) {
+            this.patientId = patientId;
+            this.medicines = medicines;
+            this.entries = size();
+        }
+        
+        @Override
+        public boolean hasNext() {
+            while (!page.hasNext() && nextEntry < entries) {
+                page = loadPage().iterator();
+            }
+            return page.hasNext();
+        }
+        
+        @Override
+        public Order next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return page.next();
+        }
+        
+        private List<Order> loadPage() {
+            ByteBuffer index = readIndexPage(nextEntry);
+            nextEntry += PAGE_ENTRIES;
+            
+            List<long[]> matches = new ArrayList<>();
+            while (index.remaining() >= ENTRY_SIZE) {
+                index.getInt();
+                int entryPatientId = index.getInt();
+                index.getLong();
+                long offset = index.getLong();
+                int length = index.getInt();
+                index.getInt();
+                if (patientId == ALL_PATIENTS || entryPatientId == patientId) {
+                    matches.add(new long[] {offset, length});
+                }
+            }
+            return matches.isEmpty() ? Collections.emptyList() : readOrders(matches, medicines);
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package utils;
+
+import models.IntObjectMap;
+import models.Order;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+/**
+ * OrderIndex files the resident orders by patient, by status and by order date
+ *
+ * Each order is filed under the keys it had when it was indexed. When its status or
+ * patient changes the order tells the index through its change listener, and the
+ * index moves it from the old key to the new one. Orders of a patient keep the
+ * order they were indexed in; orders of a status are in the order they reached it,
+ * so the pending orders come out oldest first.
+ */
+public class OrderIndex {
+    private final IntObjectMap<List<Order>> byPatient = new IntObjectMap<>();
+    private final Map<Order.Status, Set<Order>> byStatus = new EnumMap<>(Order.Status.class);
+    private final NavigableMap<Long, List<Order>> byDate = new TreeMap<>();
+    private final Map<Order, Filing> filings = new IdentityHashMap<>();
+    private final Consumer<Order> listener = this::refresh;
+    
+    /**
+     * The keys an order is currently filed under
+     */
+    private static class Filing {
+        final int patientId;
+        final Order.Status status;
+        final long time;
+        
+        Filing(Order order) {
+            this(order.getPatientId(), order.getStatus(),
+                 order.getOrderDate() != null ? order.getOrderDate().getTime() : 0L);
+        }
+        
+        Filing(int patientId, Order.Status status, long time) {
+            this.patientId = patientId;
+            this.status = status;
+            this.time = time;
+        }
+    }
+    
+    /**
+     * Index every order of a collection
+     *
+     * @param orders The orders
+     */
+    public synchronized void addAll(Collection<Order> orders) {
+        for (Order order : orders) {
+            add(order);
+        }
+    }
+    
+    /**
+     * Index an order and follow its status and patient changes
+     *
+     * @param order The order
+     */
+    public synchronized void add(Order order) {
+        if (filings.containsKey(order)) {
+            return;
+        }
+        file(order, new Filing(order));
+        order.addChangeListener(listener);
+    }
+    
+    /**
+     * Remove an order from the index
+     *
+     * @param order The order
+     */
+    public synchronized void remove(Order order) {
+        Filing filing = filings.get(order);
+        if (filing == null) {
+            return;
+        }
+        unfile(order, filing);
+        order.removeChangeListener(listener);
+    }
+    
+    /**
+     * Move an order to the keys matching its current status and patient
+     *
+     * @param order The order that changed
+     */
+    public synchronized void refresh(Order order) {
+        Filing filing = filings.get(order);
+        if (filing == null) {
+            return;
+        }
+        Filing current = new Filing(order);
+        if (current.patientId != filing.patientId) {
+            removeFromPatient(order, filing.patientId);
+            addToPatient(order, current.patientId);
+        }
+        if (current.status != filing.status) {
+            removeFromStatus(order, filing.status);
+            addToStatus(order, current.status);
+        }
+        // The order date never changes, so the order keeps its place in the date index
+        filings.put(order, new Filing(current.patientId, current.status, filing.time));
+    }
+    
+    /**
+     * Get the orders of a patient
+     *
+     * @param patientId The patient ID
+     * @return The patient's orders
+     */
+    public synchronized List<Order> byPatient(int patientId) {
+        List<Order> orders = byPatient.get(patientId);
+        return orders != null ? new ArrayList<>(orders) : new ArrayList<>();
+    }
+    
+    /**
+     * Get the orders with a status
+     *
+     * @param status The status
+     * @return The orders with that status
+     */
+    public synchronized List<Order> byStatus(Order.Status status) {
+        Set<Order> orders = byStatus.get(status);
+        return orders != null ? new ArrayList<>(orders) : new ArrayList<>();
+    }
+    
+    /**
+     * Count the orders with a status
+     *
+     * @param status The status
+     * @return Number of orders with that status
+     */
+    public synchronized int countByStatus(Order.Status status) {
+        Set<Order> orders = byStatus.get(status);
+        return orders != null ? orders.size() : 0;
+    }
+    
+    /**
+     * Get the orders placed within a date range, oldest first
+     *
+     * @param from Start of the range, inclusive, or null for no lower bound
+     * @param to End of the range, exclusive, or null for no upper bound
+     * @return The orders placed in the range
+     */
+    public synchronized List<Order> between(Date from, Date to) {
+        NavigableMap<Long, List<Order>> range = byDate;
+        if (from != null && to != null) {
+            range = byDate.subMap(from.getTime(), true, to.getTime(), false);
+        } else if (from != null) {
+            range = byDate.tailMap(from.getTime(), true);
+        } else if (to != null) {
+            range = byDate.headMap(to.getTime(), false);
+        }
+        List<Order> orders = new ArrayList<>();
+        for (List<Order> sameTime : range.values()) {
+            orders.addAll(sameTime);
+        }
+        return orders;
+    }
+    
+    /**
+     * Get the number of indexed orders
+     *
+     * @return Number of orders
+     */
+    public synchronized int size() {
+        return filings.size();
+    }
+    
+    private void file(Order order, Filing filing) {
+        filings.put(order, filing);
+        addToPatient(order, filing.patientId);
+        addToStatus(order, filing.status);
+        byDate.computeIfAbsent(filing.time, t -> new ArrayList<>(1)).add(order);
+    }
+    
+    private void unfile(Order order, Filing filing) {
+        filings.remove(order);
+        removeFromPatient(order, filing.patientId);
+        removeFromStatus(order, filing.status);
+        List<Order> sameTime = byDate.get(filing.time);
+        removeSame(sameTime, order);
+        if (sameTime.isEmpty()) {
+            byDate.remove(filing.time);
+        }
+    }
+    
+    private void addToPatient(Order order, int patientId) {
+        List<Order> patientOrders = byPatient.get(patientId);
+        if (patientOrders == null) {
+            patientOrders = new ArrayList<>();
+            byPatient.put(patientId, patientOrders);
+        }
+        patientOrders.add(order);
+    }
+    
+    private void removeFromPatient(Order order, int patientId) {
+        List<Order> patientOrders = byPatient.get(patientId);
+        removeSame(patientOrders, order);
+        if (patientOrders.isEmpty()) {
+            byPatient.remove(patientId);
+        }
+    }
+    
+    private void addToStatus(Order order, Order.Status status) {
+        if (status != null) {
+            byStatus.computeIfAbsent(status, s -> new LinkedHashSet<>()).add(order);
+        }
+    }
+    
+    private void removeFromStatus(Order order, Order.Status status) {
+        if (status != null) {
+            byStatus.get(status).remove(order);
+        }
+    }
+    
+    private static void removeSame(List<Order> orders, Order order) {
+        for (int i = orders.size() - 1; i >= 0; i--) {
+            if (orders.get(i) == order) {
+                orders.remove(i);
+                return;
+            }
+        }
+    }
+}
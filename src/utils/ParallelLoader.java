@@ -0,0 +1,218 @@
+package utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * ParallelLoader loads data files concurrently while respecting their dependencies
+ *
+ * Each file is registered as a task with the names of the tasks it depends on.
+ * Tasks without a path between them in the dependency graph run at the same time
+ * on a bounded thread pool; a task starts as soon as all of its dependencies have
+ * finished. The load time of every task is logged.
+ */
+public class ParallelLoader {
+    private final int threads;
+    private final Map<String, Task<?>> tasks = new LinkedHashMap<>();
+    private final Map<String, Object> provided = new HashMap<>();
+    private final Map<String, Long> loadTimes = Collections.synchronizedMap(new LinkedHashMap<>());
+    
+    /**
+     * A registered load task
+     */
+    private static class Task<T> {
+        private final Function<Results, T> loader;
+        private final List<String> dependencies;
+        
+        Task(Function<Results, T> loader, List<String> dependencies) {
+            this.loader = loader;
+            this.dependencies = dependencies;
+        }
+    }
+    
+    /**
+     * Results of finished tasks, passed to dependent tasks and returned by loadAll
+     */
+    public static class Results {
+        private final Map<String, Object> values = new HashMap<>();
+        
+        /**
+         * Get the result of a task
+         *
+         * @param <T> The result type
+         * @param name The task name
+         * @param defaultValue Value returned when the task failed or was not registered
+         * @return The task result
+         */
+        @SuppressWarnings("unchecked")
+        public synchronized <T> T get(String name, T defaultValue) {
+            Object value = values.get(name);
+            return value != null ? (T) value : defaultValue;
+        }
+        
+        private synchronized void put(String name, Object value) {
+            values.put(name, value);
+        }
+    }
+    
+    /**
+     * Constructor for a loader with a bounded number of threads
+     *
+     * @param threads Maximum number of files loaded at the same time
+     */
+    public ParallelLoader(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+    
+    /**
+     * Register a load task
+     *
+     * @param <T> The result type
+     * @param name The task name, usually the file path
+     * @param loader Loads the data; may read the results of its dependencies
+     * @param dependencies Names of the tasks that must finish first
+     * @return This loader
+     */
+    public <T> ParallelLoader register(String name, Function<Results, T> loader, String... dependencies) {
+        if (tasks.containsKey(name) || provided.containsKey(name)) {
+            throw new IllegalArgumentException("Task already registered: " + name);
+        }
+        tasks.put(name, new Task<>(loader, Arrays.asList(dependencies)));
+        return this;
+    }
+    
+    /**
+     * Register a value that is already available, for example from a snapshot
+     *
+     * @param name The task name
+     * @param value The value dependent tasks should see
+     * @return This loader
+     */
+    public ParallelLoader provide(String name, Object value) {
+        if (tasks.containsKey(name) || provided.containsKey(name)) {
+            throw new IllegalArgumentException("Task already registered: " + name);
+        }
+        provided.put(name, value);
+        return this;
+    }
+    
+    /**
+     * Run all registered tasks and wait for them to finish
+     *
+     * @return The results of all tasks
+     * @throws IllegalStateException If a dependency is unknown or the graph has a cycle
+     */
+    public Results loadAll() {
+        Results results = new Results();
+        provided.forEach(results::put);
+        
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, Math.max(1, tasks.size())), new LoaderThreadFactory());
+        try {
+            Map<String, CompletableFuture<Void>> futures = new HashMap<>();
+            for (String name : provided.keySet()) {
+                futures.put(name, CompletableFuture.completedFuture(null));
+            }
+            for (String name : tasks.keySet()) {
+                schedule(name, futures, new HashSet<>(), results, executor);
+            }
+            
+            long start = System.nanoTime();
+            try {
+                CompletableFuture.allOf(futures.values().toArray(new CompletableFuture<?>[0])).join();
+            } catch (CompletionException e) {
+                // Failures were already logged by the failing task
+            }
+            System.out.println("Loaded " + tasks.size() + " data files in " +
+                               (System.nanoTime() - start) / 1_000_000 + " ms");
+        } finally {
+            executor.shutdown();
+        }
+        return results;
+    }
+    
+    /**
+     * Get the load time of every task that finished
+     *
+     * @return Load time in milliseconds by task name, in completion order
+     */
+    public Map<String, Long> getLoadTimes() {
+        synchronized (loadTimes) {
+            return new LinkedHashMap<>(loadTimes);
+        }
+    }
+    
+    /**
+     * Create the future for a task after the futures of its dependencies
+     */
+    private CompletableFuture<Void> schedule(String name, Map<String, CompletableFuture<Void>> futures,
+                                             Set<String> visiting, Results results, ExecutorService executor) {
+        CompletableFuture<Void> existing = futures.get(name);
+        if (existing != null) {
+            return existing;
+        }
+        
+        Task<?> task = tasks.get(name);
+        if (task == null) {
+            throw new IllegalStateException("Unknown dependency: " + name);
+        }
+        if (!visiting.add(name)) {
+            throw new IllegalStateException("Dependency cycle at: " + name);
+        }
+        
+        List<CompletableFuture<Void>> dependencies = new ArrayList<>();
+        for (String dependency : task.dependencies) {
+            dependencies.add(schedule(dependency, futures, visiting, results, executor));
+        }
+        visiting.remove(name);
+        
+        CompletableFuture<Void> future = CompletableFuture
+            .allOf(dependencies.toArray(new CompletableFuture<?>[0]))
+            .thenRunAsync(() -> runTask(name, task, results), executor);
+        futures.put(name, future);
+        return future;
+    }
+    
+    /**
+     * Run a single task and record its load time
+     */
+    private void runTask(String name, Task<?> task, Results results) {
+        long start = System.nanoTime();
+        try {
+            results.put(name, task.loader.apply(results));
+        } catch (RuntimeException e) {
+            System.err.println("Error loading " + name + ": " + e.getMessage());
+            throw e;
+        } finally {
+            long elapsed = (System.nanoTime() - start) / 1_000_000;
+            loadTimes.put(name, elapsed);
+            System.out.println("Loaded " + name + " in " + elapsed + " ms");
+        }
+    }
+    
+    /**
+     * Creates named daemon threads so a stuck load never keeps the JVM alive
+     */
+    private static class LoaderThreadFactory implements java.util.concurrent.ThreadFactory {
+        private final AtomicInteger counter = new AtomicInteger();
+        
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "data-loader-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package utils;
+
+import models.IntObjectMap;
+import models.Prescription;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * PrescriptionQueue keeps the work queue of every pharmacy
+ *
+ * A prescription is queued at its pharmacy while it awaits that pharmacy: sent there
+ * and neither filled nor rejected yet. Prescriptions report their own status and
+ * pharmacy changes, so sending one to a pharmacy queues it and filling or rejecting
+ * it takes it out again. Each queue can be read in arrival order or by priority,
+ * where the prescription that expires first is the most urgent.
+ */
+public class PrescriptionQueue {
+    /**
+     * Order in which a queue is read
+     */
+    public enum Ordering {
+        FIFO,
+        PRIORITY
+    }
+    
+    // Soonest expiry first, prescriptions without an expiry date last, then by arrival
+    private static final Comparator<Entry> BY_PRIORITY = Comparator
+            .comparing((Entry entry) -> entry.expiryDate, Comparator.nullsLast(Comparator.naturalOrder()))
+            .thenComparingLong(entry -> entry.sequence);
+    
+    private final IntObjectMap<PharmacyQueue> queues = new IntObjectMap<>();
+    private final Map<Prescription, Entry> queued = new IdentityHashMap<>();
+    private long nextSequence = 1;
+    
+    /**
+     * A queued prescription with the keys it is ordered by
+     */
+    private static class Entry {
+        final Prescription prescription;
+        final int pharmacyId;
+        final long sequence;
+        final LocalDate expiryDate;
+        
+        Entry(Prescription prescription, long sequence) {
+            this.prescription = prescription;
+            this.pharmacyId = prescription.getPharmacyId();
+            this.sequence = sequence;
+            this.expiryDate = prescription.getExpiryDate();
+        }
+    }
+    
+    /**
+     * The queue of one pharmacy, in both orders
+     */
+    private static class PharmacyQueue {
+        final Map<Prescription, Entry> arrivals = new LinkedHashMap<>();
+        final TreeSet<Entry> byPriority = new TreeSet<>(BY_PRIORITY);
+    }
+    
+    /**
+     * Follow every prescription of a collection
+     *
+     * @param prescriptions The prescriptions
+     */
+    public synchronized void addAll(Collection<Prescription> prescriptions) {
+        for (Prescription prescription : prescriptions) {
+            add(prescription);
+        }
+    }
+    
+    /**
+     * Follow a prescription, queueing it if it awaits a pharmacy
+     *
+     * @param prescription The prescription
+     */
+    public synchronized void add(Prescription prescription) {
+        prescription.setChangeListener(this::refresh);
+        refresh(prescription);
+    }
+    
+    /**
+     * Stop following a prescription and take it out of its queue
+     *
+     * @param prescription The prescription
+     */
+    public synchronized void remove(Prescription prescription) {
+        prescription.setChangeListener(null);
+        dequeue(prescription);
+    }
+    
+    /**
+     * Queue or dequeue a prescription after its status or pharmacy changed
+     *
+     * @param prescription The prescription that changed
+     */
+    public synchronized void refresh(Prescription prescription) {
+        Entry entry = queued.get(prescription);
+        boolean awaiting = prescription.isAwaitingPharmacy();
+        if (entry != null && (!awaiting || entry.pharmacyId != prescription.getPharmacyId())) {
+            dequeue(prescription);
+            entry = null;
+        }
+        if (entry == null && awaiting) {
+            enqueue(new Entry(prescription, nextSequence++));
+        }
+    }
+    
+    /**
+     * Get the prescriptions awaiting a pharmacy
+     *
+     * @param pharmacyId The pharmacy ID
+     * @param ordering Arrival order or priority order
+     * @return The queued prescriptions
+     */
+    public synchronized List<Prescription> pending(int pharmacyId, Ordering ordering) {
+        PharmacyQueue queue = queues.get(pharmacyId);
+        if (queue == null) {
+            return new ArrayList<>();
+        }
+        Collection<Entry> entries = ordering == Ordering.PRIORITY ? queue.byPriority : queue.arrivals.values();
+        List<Prescription> prescriptions = new ArrayList<>(entries.size());
+        for (Entry entry : entries) {
+            prescriptions.add(entry.prescription);
+        }
+        return prescriptions;
+    }
+    
+    /**
+     * Get the next prescription a pharmacy should handle, without removing it
+     *
+     * @param pharmacyId The pharmacy ID
+     * @param ordering Arrival order or priority order
+     * @return The first queued prescription, or null if the queue is empty
+     */
+    public synchronized Prescription next(int pharmacyId, Ordering ordering) {
+        PharmacyQueue queue = queues.get(pharmacyId);
+        if (queue == null) {
+            return null;
+        }
+        Entry first = ordering == Ordering.PRIORITY
+                ? queue.byPriority.first()
+                : queue.arrivals.values().iterator().next();
+        return first.prescription;
+    }
+    
+    /**
+     * Count the prescriptions awaiting a pharmacy
+     *
+     * @param pharmacyId The pharmacy ID
+     * @return Length of the pharmacy's queue
+     */
+    public synchronized int size(int pharmacyId) {
+        PharmacyQueue queue = queues.get(pharmacyId);
+        return queue != null ? queue.arrivals.size() : 0;
+    }
+    
+    private void enqueue(Entry entry) {
+        PharmacyQueue queue = queues.get(entry.pharmacyId);
+        if (queue == null) {
+            queue = new PharmacyQueue();
+            queues.put(entry.pharmacyId, queue);
+        }
+        queue.arrivals.put(entry.prescription, entry);
+        queue.byPriority.add(entry);
+        queued.put(entry.prescription, entry);
+    }
+    
+    private void dequeue(Prescription prescription) {
+        Entry entry = queued.remove(prescription);
+        if (entry == null) {
+            return;
+        }
+        PharmacyQueue queue = queues.get(entry.pharmacyId);
+        queue.arrivals.remove(prescription);
+        queue.byPriority.remove(entry);
+        // Drop empty queues so the map only holds pharmacies with work waiting
+        if (queue.arrivals.isEmpty()) {
+            queues.remove(entry.pharmacyId);
+        }
+    }
+}
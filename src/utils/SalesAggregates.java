@@ -0,0 +1,319 @@
+package utils;
+
+import models.IntObjectMap;
+import models.Medicine;
+import models.Order;
+import models.OrderItem;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+
+/**
+ * SalesAggregates keeps running revenue and unit totals of the completed orders
+ *
+ * An order counts as completed once it is COMPLETED or DELIVERED; paid orders that
+ * are delivered move to DELIVERED and never pass through COMPLETED, and both are final.
+ * Totals are kept overall, per medicine and per medicine category, and are read
+ * without looking at a single order. Followed orders report their status changes:
+ * an order is added to the totals when it becomes completed and taken out again,
+ * line by line as it was counted, if it leaves those statuses. Orders that stop being
+ * followed - archived orders leaving memory - stay in the totals, since they are
+ * still part of the sales history. rebuild recounts everything from that history.
+ *
+ * Amounts are summed in piastres, so adding and taking out an order leaves no
+ * rounding drift behind. Every counted order is also filed in a SalesRollup by
+ * the time it was placed, for reports over a date range.
+ */
+public class SalesAggregates {
+    public static final String UNKNOWN_CATEGORY = "Uncategorized";
+    // Marks a followed order that is not counted
+    private static final Sale NOT_COUNTED = new Sale(0, 0L);
+    // Time of a sale whose order has no order date; it is left out of the rollup
+    static final long UNDATED = Long.MIN_VALUE;
+    
+    private final IntFunction<Medicine> medicineLookup;
+    private final Consumer<Order> listener = this::refresh;
+    private final Map<Order, Sale> followed = new IdentityHashMap<>();
+    private final IntObjectMap<Totals> byMedicine = new IntObjectMap<>();
+    private final Map<String, Totals> byCategory = new TreeMap<>();
+    private final Totals overall = new Totals();
+    private final SalesRollup rollup = new SalesRollup();
+    private int completedOrders;
+    
+    /**
+     * Units and revenue summed over some completed order lines
+     */
+    static class Totals {
+        long units;
+        long piastres;
+        
+        boolean isEmpty() {
+            return units == 0 && piastres == 0;
+        }
+    }
+    
+    /**
+     * The lines of a counted order as they were added to the totals
+     */
+    static class Sale {
+        final long time;
+        final int[] medicineIds;
+        final String[] categories;
+        final int[] units;
+        final long[] piastres;
+        
+        Sale(int lines, long time) {
+            this.time = time;
+            medicineIds = new int[lines];
+            categories = new String[lines];
+            units = new int[lines];
+            piastres = new long[lines];
+        }
+    }
+    
+    /**
+     * Constructor for empty totals
+     *
+     * @param medicineLookup Finds a medicine by ID, to file its sales under its category
+     */
+    public SalesAggregates(IntFunction<Medicine> medicineLookup) {
+        this.medicineLookup = medicineLookup;
+    }
+    
+    /**
+     * Follow every order of a collection
+     *
+     * @param orders The orders
+     */
+    public synchronized void followAll(Collection<Order> orders) {
+        for (Order order : orders) {
+            follow(order);
+        }
+    }
+    
+    /**
+     * Follow an order, counting it now if it is completed
+     *
+     * @param order The order
+     */
+    public synchronized void follow(Order order) {
+        if (followed.containsKey(order)) {
+            return;
+        }
+        followed.put(order, NOT_COUNTED);
+        order.addChangeListener(listener);
+        refresh(order);
+    }
+    
+    /**
+     * Stop following an order; a counted order stays in the totals
+     *
+     * @param order The order
+     */
+    public synchronized void unfollow(Order order) {
+        if (followed.remove(order) != null) {
+            order.removeChangeListener(listener);
+        }
+    }
+    
+    /**
+     * Count or uncount a followed order after its status changed
+     *
+     * @param order The order that changed
+     */
+    public synchronized void refresh(Order order) {
+        Sale sale = followed.get(order);
+        if (sale == null) {
+            return;
+        }
+        boolean completed = isSale(order);
+        if (completed && sale == NOT_COUNTED) {
+            followed.put(order, count(order));
+        } else if (!completed && sale != NOT_COUNTED) {
+            apply(sale, -1);
+            completedOrders--;
+            followed.put(order, NOT_COUNTED);
+        }
+    }
+    
+    /**
+     * Check whether an order is a completed sale
+     *
+     * @param order The order
+     * @return true if the order is completed or delivered
+     */
+    static boolean isSale(Order order) {
+        return order.getStatus() == Order.Status.COMPLETED || order.getStatus() == Order.Status.DELIVERED;
+    }
+    
+    /**
+     * Recount the totals from the complete order history
+     * Followed orders found in the history are counted so they can be taken out again
+     *
+     * @param history Every order ever placed, each one once
+     */
+    public synchronized void rebuild(Iterable<Order> history) {
+        byMedicine.clear();
+        byCategory.clear();
+        overall.units = 0;
+        overall.piastres = 0;
+        completedOrders = 0;
+        rollup.clear();
+        for (Map.Entry<Order, Sale> entry : followed.entrySet()) {
+            entry.setValue(NOT_COUNTED);
+        }
+        
+        for (Order order : history) {
+            if (!isSale(order)) {
+                continue;
+            }
+            Sale sale = count(order);
+            if (followed.containsKey(order)) {
+                followed.put(order, sale);
+            }
+        }
+    }
+    
+    /**
+     * Get the revenue of all completed orders
+     *
+     * @return Revenue in LE
+     */
+    public synchronized double getTotalRevenue() {
+        return toPounds(overall.piastres);
+    }
+    
+    /**
+     * Get the number of units sold in completed orders
+     *
+     * @return Units sold
+     */
+    public synchronized long getTotalUnitsSold() {
+        return overall.units;
+    }
+    
+    /**
+     * Get the number of completed orders
+     *
+     * @return Number of completed orders
+     */
+    public synchronized int getCompletedOrderCount() {
+        return completedOrders;
+    }
+    
+    /**
+     * Get the units sold of a medicine
+     *
+     * @param medicineId The medicine ID
+     * @return Units sold
+     */
+    public synchronized long getUnitsSold(int medicineId) {
+        Totals totals = byMedicine.get(medicineId);
+        return totals != null ? totals.units : 0;
+    }
+    
+    /**
+     * Get the revenue of a medicine
+     *
+     * @param medicineId The medicine ID
+     * @return Revenue in LE
+     */
+    public synchronized double getRevenue(int medicineId) {
+        Totals totals = byMedicine.get(medicineId);
+        return totals != null ? toPounds(totals.piastres) : 0.0;
+    }
+    
+    /**
+     * Get the revenue of every category with sales, by category name
+     *
+     * @return Map of category names to revenue in LE
+     */
+    public synchronized Map<String, Double> getRevenueByCategory() {
+        Map<String, Double> revenue = new LinkedHashMap<>();
+        for (Map.Entry<String, Totals> entry : byCategory.entrySet()) {
+            revenue.put(entry.getKey(), toPounds(entry.getValue().piastres));
+        }
+        return revenue;
+    }
+    
+    /**
+     * Get the units sold of every category with sales, by category name
+     *
+     * @return Map of category names to units sold
+     */
+    public synchronized Map<String, Long> getUnitsByCategory() {
+        Map<String, Long> units = new LinkedHashMap<>();
+        for (Map.Entry<String, Totals> entry : byCategory.entrySet()) {
+            units.put(entry.getKey(), entry.getValue().units);
+        }
+        return units;
+    }
+    
+    /**
+     * Get the sales of the orders placed within a date range
+     *
+     * @param from Start of the range, inclusive, or null for no lower bound
+     * @param to End of the range, exclusive, or null for no upper bound
+     * @return The merged sales of the range, to the hour
+     */
+    public SalesRollup.Summary summarize(Date from, Date to) {
+        return rollup.summarize(from, to);
+    }
+    
+    private Sale count(Order order) {
+        List<OrderItem> items = order.getItems();
+        Sale sale = new Sale(items.size(), order.getOrderDate() != null ? order.getOrderDate().getTime() : UNDATED);
+        for (int i = 0; i < items.size(); i++) {
+            OrderItem item = items.get(i);
+            Medicine medicine = medicineLookup.apply(item.getMedicineId());
+            String category = medicine != null ? medicine.getCategory() : null;
+            sale.medicineIds[i] = item.getMedicineId();
+            sale.categories[i] = category != null && !category.isEmpty() ? category : UNKNOWN_CATEGORY;
+            sale.units[i] = item.getQuantity();
+            sale.piastres[i] = Math.round(item.getTotalPrice() * 100);
+        }
+        apply(sale, 1);
+        completedOrders++;
+        return sale;
+    }
+    
+    private void apply(Sale sale, int sign) {
+        rollup.apply(sale, sign);
+        for (int i = 0; i < sale.medicineIds.length; i++) {
+            long units = sign * (long) sale.units[i];
+            long piastres = sign * sale.piastres[i];
+            
+            overall.units += units;
+            overall.piastres += piastres;
+            
+            Totals medicine = byMedicine.get(sale.medicineIds[i]);
+            if (medicine == null) {
+                medicine = new Totals();
+                byMedicine.put(sale.medicineIds[i], medicine);
+            }
+            medicine.units += units;
+            medicine.piastres += piastres;
+            if (medicine.isEmpty()) {
+                byMedicine.remove(sale.medicineIds[i]);
+            }
+            
+            Totals category = byCategory.computeIfAbsent(sale.categories[i], c -> new Totals());
+            category.units += units;
+            category.piastres += piastres;
+            if (category.isEmpty()) {
+                byCategory.remove(sale.categories[i]);
+            }
+        }
+    }
+    
+    private static double toPounds(long piastres) {
+        return piastres / 100.0;
+    }
+}
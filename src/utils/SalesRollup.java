@@ -0,0 +1,368 @@
+package utils;
+
+import models.IntObjectMap;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * SalesRollup keeps the completed sales in hourly, daily and monthly buckets
+ *
+ * Every counted order is added to the hour, the day and the month it was placed in,
+ * with its revenue, units, categories and medicines. A date range is answered by
+ * merging the fewest buckets that cover it: whole months in the middle, whole days
+ * at the edges of those, and hours at the very ends. No order is read for a query.
+ * Ranges are answered to the hour; a range starting or ending within an hour covers
+ * that whole hour. Buckets follow the local time zone.
+ *
+ * The buckets are filled by SalesAggregates, which also takes sales out of them
+ * when a completed order is reopened or cancelled.
+ */
+public class SalesRollup {
+    private final ZoneId zone;
+    private final NavigableMap<Long, Bucket> hours = new TreeMap<>();
+    private final NavigableMap<Long, Bucket> days = new TreeMap<>();
+    private final NavigableMap<Long, Bucket> months = new TreeMap<>();
+    
+    /**
+     * The sales of one hour, day or month
+     */
+    private static class Bucket {
+        int orders;
+        final SalesAggregates.Totals overall = new SalesAggregates.Totals();
+        final Map<String, SalesAggregates.Totals> byCategory = new HashMap<>();
+        final IntObjectMap<SalesAggregates.Totals> byMedicine = new IntObjectMap<>();
+        final long[] piastresByHourOfDay = new long[24];
+        
+        boolean isEmpty() {
+            return orders == 0 && overall.isEmpty();
+        }
+    }
+    
+    /**
+     * Sales merged over a date range
+     */
+    public static class Summary {
+        private int orders;
+        private final SalesAggregates.Totals overall = new SalesAggregates.Totals();
+        private final Map<String, SalesAggregates.Totals> byCategory = new TreeMap<>();
+        private final IntObjectMap<SalesAggregates.Totals> byMedicine = new IntObjectMap<>();
+        private final long[] piastresByHourOfDay = new long[24];
+        
+        private void merge(Bucket bucket) {
+            orders += bucket.orders;
+            overall.units += bucket.overall.units;
+            overall.piastres += bucket.overall.piastres;
+            for (Map.Entry<String, SalesAggregates.Totals> entry : bucket.byCategory.entrySet()) {
+                SalesAggregates.Totals totals = byCategory.computeIfAbsent(entry.getKey(), c -> new SalesAggregates.Totals());
+                totals.units += entry.getValue().units;
+                totals.piastres += entry.getValue().piastres;
+            }
+            for (int medicineId : bucket.byMedicine.keys()) {
+                SalesAggregates.Totals sold = bucket.byMedicine.get(medicineId);
+                SalesAggregates.Totals totals = byMedicine.get(medicineId);
+                if (totals == null) {
+                    totals = new SalesAggregates.Totals();
+                    byMedicine.put(medicineId, totals);
+                }
+                totals.units += sold.units;
+                totals.piastres += sold.piastres;
+            }
+            for (int hour = 0; hour < 24; hour++) {
+                piastresByHourOfDay[hour] += bucket.piastresByHourOfDay[hour];
+            }
+        }
+        
+        /**
+         * Get the number of completed orders
+         *
+         * @return Number of orders
+         */
+        public int getOrderCount() {
+            return orders;
+        }
+        
+        /**
+         * Get the number of units sold
+         *
+         * @return Units sold
+         */
+        public long getUnitsSold() {
+            return overall.units;
+        }
+        
+        /**
+         * Get the revenue
+         *
+         * @return Revenue in LE
+         */
+        public double getRevenue() {
+            return overall.piastres / 100.0;
+        }
+        
+        /**
+         * Get the average revenue of an order
+         *
+         * @return Average order value in LE, or 0 if there were no orders
+         */
+        public double getAverageOrderValue() {
+            return orders > 0 ? getRevenue() / orders : 0.0;
+        }
+        
+        /**
+         * Get the revenue of every category with sales, by category name
+         *
+         * @return Map of category names to revenue in LE
+         */
+        public Map<String, Double> getRevenueByCategory() {
+            Map<String, Double> revenue = new LinkedHashMap<>();
+            for (Map.Entry<String, SalesAggregates.Totals> entry : byCategory.entrySet()) {
+                revenue.put(entry.getKey(), entry.getValue().piastres / 100.0);
+            }
+            return revenue;
+        }
+        
+        /**
+         * Get the units sold of every category with sales, by category name
+         *
+         * @return Map of category names to units sold
+         */
+        public Map<String, Long> getUnitsByCategory() {
+            Map<String, Long> units = new LinkedHashMap<>();
+            for (Map.Entry<String, SalesAggregates.Totals> entry : byCategory.entrySet()) {
+                units.put(entry.getKey(), entry.getValue().units);
+            }
+            return units;
+        }
+        
+        /**
+         * Get the units sold of a medicine
+         *
+         * @param medicineId The medicine ID
+         * @return Units sold
+         */
+        public long getUnitsSold(int medicineId) {
+            SalesAggregates.Totals totals = byMedicine.get(medicineId);
+            return totals != null ? totals.units : 0;
+        }
+        
+        /**
+         * Get the revenue of a medicine
+         *
+         * @param medicineId The medicine ID
+         * @return Revenue in LE
+         */
+        public double getRevenue(int medicineId) {
+            SalesAggregates.Totals totals = byMedicine.get(medicineId);
+            return totals != null ? totals.piastres / 100.0 : 0.0;
+        }
+        
+        /**
+         * Get the IDs of the medicines sold, most units first
+         *
+         * @param limit The maximum number of medicines
+         * @return Medicine IDs, ties broken by lower ID
+         */
+        public List<Integer> getTopSellers(int limit) {
+            int[] ids = byMedicine.keys();
+            // Sort on units descending, then ID, packed into one long per medicine
+            long[] packed = new long[ids.length];
+            for (int i = 0; i < ids.length; i++) {
+                long units = Math.min(byMedicine.get(ids[i]).units, Integer.MAX_VALUE);
+                packed[i] = ((Integer.MAX_VALUE - units) << 32) | (ids[i] & 0xFFFFFFFFL);
+            }
+            Arrays.sort(packed);
+            List<Integer> top = new ArrayList<>(Math.min(limit, packed.length));
+            for (int i = 0; i < packed.length && top.size() < limit; i++) {
+                top.add((int) packed[i]);
+            }
+            return top;
+        }
+        
+        /**
+         * Get the revenue earned in each hour of the day
+         *
+         * @return 24 amounts in LE, index 0 being midnight to 1am
+         */
+        public double[] getRevenueByHourOfDay() {
+            double[] revenue = new double[24];
+            for (int hour = 0; hour < 24; hour++) {
+                revenue[hour] = piastresByHourOfDay[hour] / 100.0;
+            }
+            return revenue;
+        }
+    }
+    
+    /**
+     * Constructor for buckets in the local time zone
+     */
+    public SalesRollup() {
+        this(ZoneId.systemDefault());
+    }
+    
+    /**
+     * Constructor for buckets in the given time zone
+     *
+     * @param zone The time zone buckets start and end in
+     */
+    public SalesRollup(ZoneId zone) {
+        this.zone = zone;
+    }
+    
+    /**
+     * Add a counted sale to its buckets, or take it out again
+     *
+     * @param sale The sale
+     * @param sign 1 to add the sale, -1 to take it out
+     */
+    synchronized void apply(SalesAggregates.Sale sale, int sign) {
+        if (sale.time == SalesAggregates.UNDATED) {
+            return;
+        }
+        ZonedDateTime time = Instant.ofEpochMilli(sale.time).atZone(zone);
+        ZonedDateTime hour = time.truncatedTo(ChronoUnit.HOURS);
+        ZonedDateTime day = time.truncatedTo(ChronoUnit.DAYS);
+        ZonedDateTime month = day.withDayOfMonth(1);
+        applyTo(hours, toMillis(hour), time.getHour(), sale, sign);
+        applyTo(days, toMillis(day), time.getHour(), sale, sign);
+        applyTo(months, toMillis(month), time.getHour(), sale, sign);
+    }
+    
+    /**
+     * Remove all buckets
+     */
+    synchronized void clear() {
+        hours.clear();
+        days.clear();
+        months.clear();
+    }
+    
+    /**
+     * Get the sales of the orders placed within a date range
+     *
+     * @param from Start of the range, inclusive, or null for no lower bound
+     * @param to End of the range, exclusive, or null for no upper bound
+     * @return The merged sales of the range
+     */
+    public synchronized Summary summarize(Date from, Date to) {
+        Summary summary = new Summary();
+        if (hours.isEmpty()) {
+            return summary;
+        }
+        long start = from != null ? floorHour(from.getTime()) : hours.firstKey();
+        long end = to != null ? ceilHour(to.getTime()) : hours.lastKey() + 1;
+        if (start < end) {
+            mergeMonths(summary, start, end);
+        }
+        return summary;
+    }
+    
+    /**
+     * Get the number of buckets held
+     *
+     * @return Hourly, daily and monthly buckets together
+     */
+    public synchronized int bucketCount() {
+        return hours.size() + days.size() + months.size();
+    }
+    
+    private void mergeMonths(Summary summary, long start, long end) {
+        ZonedDateTime first = at(start).truncatedTo(ChronoUnit.DAYS).withDayOfMonth(1);
+        long monthsFrom = toMillis(first) < start ? toMillis(first.plusMonths(1)) : start;
+        long monthsTo = toMillis(at(end).truncatedTo(ChronoUnit.DAYS).withDayOfMonth(1));
+        if (monthsFrom >= monthsTo) {
+            mergeDays(summary, start, end);
+            return;
+        }
+        mergeDays(summary, start, monthsFrom);
+        merge(summary, months, monthsFrom, monthsTo);
+        mergeDays(summary, monthsTo, end);
+    }
+    
+    private void mergeDays(Summary summary, long start, long end) {
+        if (start >= end) {
+            return;
+        }
+        ZonedDateTime first = at(start).truncatedTo(ChronoUnit.DAYS);
+        long daysFrom = toMillis(first) < start ? toMillis(first.plusDays(1)) : start;
+        long daysTo = toMillis(at(end).truncatedTo(ChronoUnit.DAYS));
+        if (daysFrom >= daysTo) {
+            merge(summary, hours, start, end);
+            return;
+        }
+        merge(summary, hours, start, daysFrom);
+        merge(summary, days, daysFrom, daysTo);
+        merge(summary, hours, daysTo, end);
+    }
+    
+    private static void merge(Summary summary, NavigableMap<Long, Bucket> buckets, long start, long end) {
+        if (start >= end) {
+            return;
+        }
+        for (Bucket bucket : buckets.subMap(start, true, end, false).values()) {
+            summary.merge(bucket);
+        }
+    }
+    
+    private static void applyTo(NavigableMap<Long, Bucket> buckets, long key, int hourOfDay,
+                                SalesAggregates.Sale sale, int sign) {
+        Bucket bucket = buckets.computeIfAbsent(key, k -> new Bucket());
+        bucket.orders += sign;
+        for (int i = 0; i < sale.medicineIds.length; i++) {
+            long units = sign * (long) sale.units[i];
+            long piastres = sign * sale.piastres[i];
+            bucket.overall.units += units;
+            bucket.overall.piastres += piastres;
+            bucket.piastresByHourOfDay[hourOfDay] += piastres;
+            
+            SalesAggregates.Totals category = bucket.byCategory.computeIfAbsent(sale.categories[i], c -> new SalesAggregates.Totals());
+            category.units += units;
+            category.piastres += piastres;
+            if (category.isEmpty()) {
+                bucket.byCategory.remove(sale.categories[i]);
+            }
+            
+            SalesAggregates.Totals medicine = bucket.byMedicine.get(sale.medicineIds[i]);
+            if (medicine == null) {
+                medicine = new SalesAggregates.Totals();
+                bucket.byMedicine.put(sale.medicineIds[i], medicine);
+            }
+            medicine.units += units;
+            medicine.piastres += piastres;
+            if (medicine.isEmpty()) {
+                bucket.byMedicine.remove(sale.medicineIds[i]);
+            }
+        }
+        if (bucket.isEmpty()) {
+            buckets.remove(key);
+        }
+    }
+    
+    private ZonedDateTime at(long millis) {
+        return Instant.ofEpochMilli(millis).atZone(zone);
+    }
+    
+    private long floorHour(long millis) {
+        return toMillis(at(millis).truncatedTo(ChronoUnit.HOURS));
+    }
+    
+    private long ceilHour(long millis) {
+        long floor = floorHour(millis);
+        return floor == millis ? floor : toMillis(at(floor).plusHours(1));
+    }
+    
+    private static long toMillis(ZonedDateTime time) {
+        return time.toInstant().toEpochMilli();
+    }
+}
@@ -0,0 +1,312 @@
+package utils;
+
+import models.IntObjectMap;
+import models.Medicine;
+import models.Order;
+import models.OrderItem;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntFunction;
+
+/**
+ * StockReservations holds medicine stock for the items in patients' carts
+ *
+ * Putting an item in a cart holds its units on the medicine, so they stay on hand but
+ * nobody else can buy or hold them. Holds and takes are compare-and-set changes of the
+ * medicine's own stock counter, so two carts racing for the last units never both get
+ * them and no lock is shared between medicines or between patients. A hold lasts for
+ * the hold time after the cart was last touched; holds of a cart left alone longer are
+ * released by a timer wheel. Checking out turns the cart's holds into stock taken, so
+ * a checkout cannot fail for stock its holds still cover.
+ *
+ * Each cart is guarded by its own monitor, which only its patient and the timer wheel
+ * contend for. Holds are kept in memory only: after a restart every cart starts without
+ * holds and its items are held again at checkout.
+ */
+public class StockReservations {
+    public static final long DEFAULT_HOLD_MILLIS = 15 * 60 * 1000L;
+    // One-second ticks over a 512-second wheel; longer holds wait out extra turns
+    private static final long TICK_MILLIS = 1000L;
+    private static final int WHEEL_SLOTS = 512;
+    
+    private final ConcurrentHashMap<Integer, Cart> carts = new ConcurrentHashMap<>();
+    private final IntFunction<Medicine> medicineLookup;
+    private final TimerWheel<Hold> wheel;
+    private final long holdMillis;
+    
+    /**
+     * The units of one medicine held for one cart
+     */
+    private static class Hold {
+        final Cart cart;
+        final Medicine medicine;
+        int quantity;
+        // The hold expires at expiresAt; the wheel was last told scheduledFor
+        long expiresAt;
+        long scheduledFor;
+        
+        Hold(Cart cart, Medicine medicine) {
+            this.cart = cart;
+            this.medicine = medicine;
+        }
+    }
+    
+    /**
+     * The holds of one patient's cart, by medicine ID
+     */
+    private static class Cart {
+        final IntObjectMap<Hold> holds = new IntObjectMap<>();
+    }
+    
+    /**
+     * Constructor for holds of the default hold time
+     *
+     * @param medicineLookup Finds a medicine by ID, for cart items no longer held
+     */
+    public StockReservations(IntFunction<Medicine> medicineLookup) {
+        this(medicineLookup, DEFAULT_HOLD_MILLIS, TICK_MILLIS, WHEEL_SLOTS);
+    }
+    
+    /**
+     * Constructor for holds of the given hold time
+     *
+     * @param medicineLookup Finds a medicine by ID, for cart items no longer held
+     * @param holdMillis How long a cart left alone keeps its holds, in milliseconds
+     * @param tickMillis Resolution of the expiry, in milliseconds
+     * @param slots Number of ticks in one turn of the timer wheel
+     */
+    public StockReservations(IntFunction<Medicine> medicineLookup, long holdMillis, long tickMillis, int slots) {
+        this.medicineLookup = medicineLookup;
+        this.holdMillis = holdMillis;
+        this.wheel = new TimerWheel<>(tickMillis, slots, this::expire);
+    }
+    
+    /**
+     * Start releasing expired holds in the background
+     */
+    public void start() {
+        wheel.start("stock-hold-expiry");
+    }
+    
+    /**
+     * Stop releasing expired holds
+     */
+    public void stop() {
+        wheel.stop();
+    }
+    
+    /**
+     * Release the holds expired by the given time
+     * The background thread does this every tick once started
+     *
+     * @param now The current time in milliseconds
+     */
+    public void expireHolds(long now) {
+        wheel.advance(now);
+    }
+    
+    /**
+     * Hold more units of a medicine for a patient's cart
+     * Every hold of the cart is renewed
+     *
+     * @param patientId The patient ID
+     * @param medicine The medicine
+     * @param quantity The units to add to the hold
+     * @return true if the units are held, false if not enough units are available
+     */
+    public boolean hold(int patientId, Medicine medicine, int quantity) {
+        if (medicine == null || quantity <= 0) {
+            return false;
+        }
+        Cart cart = cartOf(patientId);
+        synchronized (cart) {
+            if (!medicine.tryHoldStock(quantity)) {
+                return false;
+            }
+            Hold hold = cart.holds.get(medicine.getId());
+            long now = System.currentTimeMillis();
+            if (hold == null) {
+                hold = new Hold(cart, medicine);
+                hold.expiresAt = now + holdMillis;
+                hold.scheduledFor = hold.expiresAt;
+                cart.holds.put(medicine.getId(), hold);
+                wheel.schedule(hold, hold.scheduledFor);
+            }
+            hold.quantity += quantity;
+            renewLocked(cart, now);
+        }
+        return true;
+    }
+    
+    /**
+     * Release a patient's hold on a medicine
+     *
+     * @param patientId The patient ID
+     * @param medicineId The medicine ID
+     * @return The units released
+     */
+    public int release(int patientId, int medicineId) {
+        Cart cart = carts.get(patientId);
+        if (cart == null) {
+            return 0;
+        }
+        synchronized (cart) {
+            Hold hold = cart.holds.remove(medicineId);
+            if (hold == null) {
+                return 0;
+            }
+            hold.medicine.releaseHeldStock(hold.quantity);
+            return hold.quantity;
+        }
+    }
+    
+    /**
+     * Release every hold of a patient's cart
+     *
+     * @param patientId The patient ID
+     */
+    public void releaseAll(int patientId) {
+        Cart cart = carts.get(patientId);
+        if (cart == null) {
+            return;
+        }
+        synchronized (cart) {
+            releaseAllLocked(cart);
+        }
+    }
+    
+    /**
+     * Restart the hold time of every hold of a patient's cart
+     *
+     * @param patientId The patient ID
+     */
+    public void renew(int patientId) {
+        Cart cart = carts.get(patientId);
+        if (cart == null) {
+            return;
+        }
+        synchronized (cart) {
+            renewLocked(cart, System.currentTimeMillis());
+        }
+    }
+    
+    /**
+     * Take the stock of a patient's cart, turning its holds into stock taken
+     * Items no longer held, or held for fewer units, are held for the rest first.
+     * Either every item is taken or none is. Holds of medicines no longer in the
+     * cart are released.
+     *
+     * @param patientId The patient ID
+     * @param cartOrder The cart being checked out
+     * @return true if the stock of every item was taken, false if nothing was taken
+     */
+    public boolean commit(int patientId, Order cartOrder) {
+        Cart cart = cartOf(patientId);
+        synchronized (cart) {
+            List<OrderItem> items = cartOrder.getItems();
+            List<Medicine> toppedUp = new ArrayList<>();
+            List<Integer> toppedUpUnits = new ArrayList<>();
+            Medicine[] medicines = new Medicine[items.size()];
+            for (int i = 0; i < items.size(); i++) {
+                OrderItem item = items.get(i);
+                Hold hold = cart.holds.get(item.getMedicineId());
+                medicines[i] = hold != null ? hold.medicine : medicineLookup.apply(item.getMedicineId());
+                int shortfall = item.getQuantity() - (hold != null ? hold.quantity : 0);
+                if (medicines[i] == null || (shortfall > 0 && !medicines[i].tryHoldStock(shortfall))) {
+                    // Give back what was held for this checkout; the cart keeps its own holds
+                    for (int j = 0; j < toppedUp.size(); j++) {
+                        toppedUp.get(j).releaseHeldStock(toppedUpUnits.get(j));
+                    }
+                    return false;
+                }
+                if (shortfall > 0) {
+                    toppedUp.add(medicines[i]);
+                    toppedUpUnits.add(shortfall);
+                }
+            }
+            
+            // Every unit is held now, so taking it cannot fail
+            for (int i = 0; i < items.size(); i++) {
+                OrderItem item = items.get(i);
+                medicines[i].takeHeldStock(item.getQuantity());
+                Hold hold = cart.holds.remove(item.getMedicineId());
+                if (hold != null && hold.quantity > item.getQuantity()) {
+                    hold.medicine.releaseHeldStock(hold.quantity - item.getQuantity());
+                }
+            }
+            releaseAllLocked(cart);
+            return true;
+        }
+    }
+    
+    /**
+     * Get the units of a medicine held for a patient's cart
+     *
+     * @param patientId The patient ID
+     * @param medicineId The medicine ID
+     * @return The held units
+     */
+    public int heldFor(int patientId, int medicineId) {
+        Cart cart = carts.get(patientId);
+        if (cart == null) {
+            return 0;
+        }
+        synchronized (cart) {
+            Hold hold = cart.holds.get(medicineId);
+            return hold != null ? hold.quantity : 0;
+        }
+    }
+    
+    /**
+     * Count the holds waiting to expire
+     *
+     * @return Number of holds across all carts
+     */
+    public int activeHolds() {
+        int count = 0;
+        for (Cart cart : carts.values()) {
+            synchronized (cart) {
+                count += cart.holds.size();
+            }
+        }
+        return count;
+    }
+    
+    private Cart cartOf(int patientId) {
+        return carts.computeIfAbsent(patientId, id -> new Cart());
+    }
+    
+    private void renewLocked(Cart cart, long now) {
+        // Only the deadline moves; the wheel finds the later deadline when the hold comes due
+        for (int medicineId : cart.holds.keys()) {
+            cart.holds.get(medicineId).expiresAt = now + holdMillis;
+        }
+    }
+    
+    private void releaseAllLocked(Cart cart) {
+        for (int medicineId : cart.holds.keys()) {
+            Hold hold = cart.holds.remove(medicineId);
+            hold.medicine.releaseHeldStock(hold.quantity);
+        }
+    }
+    
+    private void expire(Hold hold) {
+        Cart cart = hold.cart;
+        synchronized (cart) {
+            if (cart.holds.get(hold.medicine.getId()) != hold) {
+                // Released or checked out already
+                return;
+            }
+            if (hold.expiresAt > hold.scheduledFor) {
+                // Renewed since it was scheduled
+                hold.scheduledFor = hold.expiresAt;
+                wheel.schedule(hold, hold.scheduledFor);
+                return;
+            }
+            cart.holds.remove(hold.medicine.getId());
+            hold.medicine.releaseHeldStock(hold.quantity);
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package utils;
+
+import models.IntIntMap;
+import models.Medicine;
+
+import java.util.Arrays;
+import java.util.function.IntFunction;
+
+/**
+ * StockTransaction takes and returns the stock of several medicines all or nothing
+ *
+ * Lines are collected first and merged per medicine, so an order that takes some
+ * units of a medicine and returns others only moves the difference. On commit every
+ * take is checked against the stock version of its medicine; if one line is short,
+ * nothing is changed. Each line is then taken only if its medicine is still at the
+ * version checked. If another thread changed the medicine in between, the line is
+ * checked again against the new version and retried; if it is short by then, the
+ * lines already taken are put back. No lock is held, so transactions on different
+ * medicines never wait for each other, and a failed retry always means another
+ * transaction went through. Returned units are added last, once every take
+ * succeeded, so they never have to be taken back.
+ *
+ * A transaction is used by one thread and committed once.
+ */
+public class StockTransaction {
+    // Version conflicts before giving up on medicines other threads keep changing
+    public static final int MAX_RETRIES = 64;
+    
+    /**
+     * How a commit ended
+     */
+    public enum Outcome {
+        COMMITTED,
+        INSUFFICIENT_STOCK,
+        UNKNOWN_MEDICINE,
+        CONTENDED
+    }
+    
+    /**
+     * The outcome of a commit
+     */
+    public static class Result {
+        private final Outcome outcome;
+        private final int medicineId;
+        private final int available;
+        private final int retries;
+        
+        Result(Outcome outcome, int medicineId, int available, int retries) {
+            this.outcome = outcome;
+            this.medicineId = medicineId;
+            this.available = available;
+            this.retries = retries;
+        }
+        
+        public Outcome getOutcome() {
+            return outcome;
+        }
+        
+        public boolean isCommitted() {
+            return outcome == Outcome.COMMITTED;
+        }
+        
+        /**
+         * Get the medicine that failed the transaction
+         *
+         * @return The medicine ID, or -1 if the transaction did not fail on one medicine
+         */
+        public int getMedicineId() {
+            return medicineId;
+        }
+        
+        /**
+         * Get the units that were available of the medicine that was short
+         *
+         * @return Available units, or 0 if no medicine was short
+         */
+        public int getAvailable() {
+            return available;
+        }
+        
+        /**
+         * Get the number of times a line was tried again after another thread changed its medicine
+         *
+         * @return 0 if no other thread got in the way
+         */
+        public int getRetries() {
+            return retries;
+        }
+    }
+    
+    private final IntFunction<Medicine> medicineLookup;
+    private final IntIntMap deltas = new IntIntMap();
+    
+    /**
+     * Constructor for an empty transaction
+     *
+     * @param medicineLookup Finds a medicine by ID
+     */
+    public StockTransaction(IntFunction<Medicine> medicineLookup) {
+        this.medicineLookup = medicineLookup;
+    }
+    
+    /**
+     * Take units of a medicine out of stock
+     *
+     * @param medicineId The medicine ID
+     * @param quantity The units to take
+     * @return This transaction
+     */
+    public StockTransaction take(int medicineId, int quantity) {
+        deltas.increment(medicineId, -quantity);
+        return this;
+    }
+    
+    /**
+     * Return units of a medicine to stock
+     *
+     * @param medicineId The medicine ID
+     * @param quantity The units to return
+     * @return This transaction
+     */
+    public StockTransaction give(int medicineId, int quantity) {
+        deltas.increment(medicineId, quantity);
+        return this;
+    }
+    
+    /**
+     * Apply every line, or none
+     *
+     * @return The outcome; on anything but COMMITTED no stock was changed
+     */
+    public Result commit() {
+        int[] ids = deltas.keys();
+        // A fixed order makes two transactions over the same medicines meet on the first one they share
+        Arrays.sort(ids);
+        Medicine[] medicines = new Medicine[ids.length];
+        int[] amounts = new int[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            medicines[i] = medicineLookup.apply(ids[i]);
+            if (medicines[i] == null) {
+                return new Result(Outcome.UNKNOWN_MEDICINE, ids[i], 0, 0);
+            }
+            amounts[i] = deltas.get(ids[i], 0);
+        }
+        
+        // Check every take against the current versions before changing anything
+        long[] versions = new long[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            if (amounts[i] < 0) {
+                versions[i] = medicines[i].getStockVersion();
+                if (Medicine.availableAt(versions[i]) < -amounts[i]) {
+                    return new Result(Outcome.INSUFFICIENT_STOCK, ids[i], Medicine.availableAt(versions[i]), 0);
+                }
+            }
+        }
+        
+        int retries = 0;
+        for (int i = 0; i < ids.length; i++) {
+            if (amounts[i] >= 0) {
+                continue;
+            }
+            while (!medicines[i].tryTakeStockAt(versions[i], -amounts[i])) {
+                // Another thread changed the medicine since it was checked; check it again
+                versions[i] = medicines[i].getStockVersion();
+                int available = Medicine.availableAt(versions[i]);
+                if (available < -amounts[i] || ++retries > MAX_RETRIES) {
+                    putBack(medicines, amounts, i);
+                    return available < -amounts[i]
+                            ? new Result(Outcome.INSUFFICIENT_STOCK, ids[i], available, retries)
+                            : new Result(Outcome.CONTENDED, ids[i], 0, retries);
+                }
+            }
+        }
+        
+        for (int i = 0; i < ids.length; i++) {
+            if (amounts[i] > 0) {
+                medicines[i].restoreStock(amounts[i]);
+            }
+        }
+        return new Result(Outcome.COMMITTED, -1, 0, retries);
+    }
+    
+    private static void putBack(Medicine[] medicines, int[] amounts, int taken) {
+        for (int i = 0; i < taken; i++) {
+            if (amounts[i] < 0) {
+                medicines[i].restoreStock(-amounts[i]);
+            }
+        }
+    }
+}
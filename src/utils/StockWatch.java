@@ -0,0 +1,311 @@
+package utils;
+
+import models.IntObjectMap;
+import models.Medicine;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * StockWatch files every medicine under its stock level
+ *
+ * A medicine is out of stock at 0 units, critically low below its critical threshold,
+ * low below its low threshold and in stock otherwise. Every medicine has the default
+ * thresholds unless it was given its own. Medicines report their own stock changes,
+ * so a medicine moves between levels as it is sold, dispensed or restocked, and the
+ * number of medicines at a level is read without looking at any stock. Listeners are
+ * told whenever a medicine moves to another level, also when its thresholds change.
+ */
+public class StockWatch {
+    public static final int DEFAULT_CRITICAL_THRESHOLD = 5;
+    public static final int DEFAULT_LOW_THRESHOLD = 10;
+    
+    /**
+     * Stock levels, most urgent first
+     */
+    public enum Level {
+        OUT_OF_STOCK("Out of Stock"),
+        CRITICAL("Critically Low"),
+        LOW("Low Stock"),
+        IN_STOCK("In Stock");
+        
+        private final String displayName;
+        
+        Level(String displayName) {
+            this.displayName = displayName;
+        }
+        
+        public String getDisplayName() {
+            return displayName;
+        }
+    }
+    
+    /**
+     * Told when a medicine moves to another stock level
+     */
+    public interface LevelListener {
+        /**
+         * Called after the stock of a medicine crossed a threshold
+         *
+         * @param medicine The medicine
+         * @param previous The level it was at
+         * @param current The level it is at now
+         */
+        void levelChanged(Medicine medicine, Level previous, Level current);
+    }
+    
+    private final Map<Level, Set<Medicine>> byLevel = new EnumMap<>(Level.class);
+    private final Map<Medicine, Level> levels = new IdentityHashMap<>();
+    private final IntObjectMap<int[]> thresholds = new IntObjectMap<>();
+    private final List<LevelListener> listeners = new ArrayList<>();
+    private final Consumer<Medicine> stockListener = this::refresh;
+    private int defaultCritical = DEFAULT_CRITICAL_THRESHOLD;
+    private int defaultLow = DEFAULT_LOW_THRESHOLD;
+    
+    /**
+     * Constructor for an empty watch with the default thresholds
+     */
+    public StockWatch() {
+        for (Level level : Level.values()) {
+            byLevel.put(level, new LinkedHashSet<>());
+        }
+    }
+    
+    /**
+     * Watch every medicine of a collection
+     *
+     * @param medicines The medicines
+     */
+    public synchronized void addAll(Collection<Medicine> medicines) {
+        for (Medicine medicine : medicines) {
+            add(medicine);
+        }
+    }
+    
+    /**
+     * Watch a medicine and follow its stock changes
+     *
+     * @param medicine The medicine
+     */
+    public synchronized void add(Medicine medicine) {
+        if (levels.containsKey(medicine)) {
+            return;
+        }
+        Level level = levelOf(medicine);
+        levels.put(medicine, level);
+        byLevel.get(level).add(medicine);
+        medicine.setStockListener(stockListener);
+    }
+    
+    /**
+     * Stop watching a medicine
+     *
+     * @param medicine The medicine
+     */
+    public synchronized void remove(Medicine medicine) {
+        Level level = levels.remove(medicine);
+        if (level == null) {
+            return;
+        }
+        byLevel.get(level).remove(medicine);
+        medicine.setStockListener(null);
+    }
+    
+    /**
+     * Move a medicine to the level matching its current stock
+     *
+     * @param medicine The medicine whose stock changed
+     */
+    public void refresh(Medicine medicine) {
+        Level previous;
+        Level current;
+        synchronized (this) {
+            previous = levels.get(medicine);
+            if (previous == null) {
+                return;
+            }
+            current = refile(medicine, previous);
+        }
+        if (current != previous) {
+            notifyListeners(medicine, previous, current);
+        }
+    }
+    
+    /**
+     * Add a listener told whenever a medicine moves to another level
+     *
+     * @param listener The listener
+     */
+    public synchronized void addListener(LevelListener listener) {
+        listeners.add(listener);
+    }
+    
+    /**
+     * Set the thresholds of the medicines without thresholds of their own
+     *
+     * @param critical Stock below this is critically low
+     * @param low Stock below this is low
+     */
+    public void setDefaultThresholds(int critical, int low) {
+        synchronized (this) {
+            defaultCritical = critical;
+            defaultLow = low;
+        }
+        refileAll(-1);
+    }
+    
+    /**
+     * Give a medicine its own thresholds
+     *
+     * @param medicineId The medicine ID
+     * @param critical Stock below this is critically low
+     * @param low Stock below this is low
+     */
+    public void setThresholds(int medicineId, int critical, int low) {
+        synchronized (this) {
+            thresholds.put(medicineId, new int[] {critical, low});
+        }
+        refileAll(medicineId);
+    }
+    
+    /**
+     * Get the low threshold of a medicine
+     *
+     * @param medicineId The medicine ID
+     * @return Stock below this is low
+     */
+    public synchronized int getLowThreshold(int medicineId) {
+        int[] own = thresholds.get(medicineId);
+        return own != null ? own[1] : defaultLow;
+    }
+    
+    /**
+     * Get the critical threshold of a medicine
+     *
+     * @param medicineId The medicine ID
+     * @return Stock below this is critically low
+     */
+    public synchronized int getCriticalThreshold(int medicineId) {
+        int[] own = thresholds.get(medicineId);
+        return own != null ? own[0] : defaultCritical;
+    }
+    
+    /**
+     * Get the level a watched medicine is at
+     *
+     * @param medicine The medicine
+     * @return The level, or null if the medicine is not watched
+     */
+    public synchronized Level getLevel(Medicine medicine) {
+        return levels.get(medicine);
+    }
+    
+    /**
+     * Count the medicines at a level
+     *
+     * @param level The level
+     * @return Number of medicines
+     */
+    public synchronized int count(Level level) {
+        return byLevel.get(level).size();
+    }
+    
+    /**
+     * Count the medicines that need restocking: low, critically low or out of stock
+     *
+     * @return Number of medicines
+     */
+    public synchronized int countNeedingRestock() {
+        return levels.size() - byLevel.get(Level.IN_STOCK).size();
+    }
+    
+    /**
+     * Get the medicines at a level
+     *
+     * @param level The level
+     * @return The medicines, in the order they reached the level
+     */
+    public synchronized List<Medicine> atLevel(Level level) {
+        return new ArrayList<>(byLevel.get(level));
+    }
+    
+    /**
+     * Get the medicines that need restocking, most urgent level first
+     *
+     * @return Out of stock, then critically low, then low medicines
+     */
+    public synchronized List<Medicine> needingRestock() {
+        List<Medicine> medicines = new ArrayList<>(countNeedingRestock());
+        medicines.addAll(byLevel.get(Level.OUT_OF_STOCK));
+        medicines.addAll(byLevel.get(Level.CRITICAL));
+        medicines.addAll(byLevel.get(Level.LOW));
+        return medicines;
+    }
+    
+    private Level refile(Medicine medicine, Level previous) {
+        Level current = levelOf(medicine);
+        if (current != previous) {
+            byLevel.get(previous).remove(medicine);
+            byLevel.get(current).add(medicine);
+            levels.put(medicine, current);
+        }
+        return current;
+    }
+    
+    private void refileAll(int medicineId) {
+        // Collect the moves under the lock and report them after it
+        List<Medicine> moved = new ArrayList<>();
+        List<Level> from = new ArrayList<>();
+        List<Level> to = new ArrayList<>();
+        synchronized (this) {
+            for (Medicine medicine : new ArrayList<>(levels.keySet())) {
+                if (medicineId >= 0 && medicine.getId() != medicineId) {
+                    continue;
+                }
+                Level previous = levels.get(medicine);
+                Level current = refile(medicine, previous);
+                if (current != previous) {
+                    moved.add(medicine);
+                    from.add(previous);
+                    to.add(current);
+                }
+            }
+        }
+        for (int i = 0; i < moved.size(); i++) {
+            notifyListeners(moved.get(i), from.get(i), to.get(i));
+        }
+    }
+    
+    private void notifyListeners(Medicine medicine, Level previous, Level current) {
+        // Listeners run outside the lock, so they may query the watch
+        List<LevelListener> snapshot;
+        synchronized (this) {
+            snapshot = new ArrayList<>(listeners);
+        }
+        for (LevelListener listener : snapshot) {
+            listener.levelChanged(medicine, previous, current);
+        }
+    }
+    
+    private Level levelOf(Medicine medicine) {
+        int stock = medicine.getStock();
+        if (stock <= 0) {
+            return Level.OUT_OF_STOCK;
+        }
+        int[] own = thresholds.get(medicine.getId());
+        if (stock < (own != null ? own[0] : defaultCritical)) {
+            return Level.CRITICAL;
+        }
+        if (stock < (own != null ? own[1] : defaultLow)) {
+            return Level.LOW;
+        }
+        return Level.IN_STOCK;
+    }
+}
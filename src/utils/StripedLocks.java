@@ -0,0 +1,101 @@
+package utils;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * StripedLocks guards changes keyed by an int ID with a fixed set of locks
+ *
+ * Every ID maps to one of the stripes, so changes to the same ID are serialized
+ * while changes to different IDs mostly run in parallel, without keeping a lock
+ * per ID. Pharmacies hold their own copies of a medicine under the same ID, so
+ * keying the stock locks by medicine ID serializes every copy of one medicine.
+ *
+ * Several IDs are locked in stripe order, so two threads locking overlapping sets
+ * of IDs cannot deadlock. The locks are reentrant.
+ */
+public class StripedLocks {
+    private final ReentrantLock[] stripes;
+    private final int mask;
+    
+    /**
+     * Constructor for at least the given number of stripes
+     *
+     * @param stripes Minimum number of stripes; rounded up to a power of two
+     */
+    public StripedLocks(int stripes) {
+        int size = Integer.highestOneBit(Math.max(1, stripes - 1)) << 1;
+        this.stripes = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            this.stripes[i] = new ReentrantLock();
+        }
+        this.mask = size - 1;
+    }
+    
+    /**
+     * Get the lock guarding an ID
+     *
+     * @param id The ID
+     * @return The lock of the ID's stripe
+     */
+    public Lock get(int id) {
+        return stripes[stripeOf(id)];
+    }
+    
+    /**
+     * Lock every ID of a set, in stripe order
+     * Pass the same IDs to unlockAll afterwards
+     *
+     * @param ids The IDs; duplicates and IDs sharing a stripe are locked once
+     */
+    public void lockAll(int[] ids) {
+        int[] order = stripesOf(ids);
+        for (int stripe : order) {
+            stripes[stripe].lock();
+        }
+    }
+    
+    /**
+     * Unlock every ID of a set locked with lockAll
+     *
+     * @param ids The IDs passed to lockAll
+     */
+    public void unlockAll(int[] ids) {
+        int[] order = stripesOf(ids);
+        for (int i = order.length - 1; i >= 0; i--) {
+            stripes[order[i]].unlock();
+        }
+    }
+    
+    /**
+     * Get the number of stripes
+     *
+     * @return Number of locks
+     */
+    public int size() {
+        return stripes.length;
+    }
+    
+    private int[] stripesOf(int[] ids) {
+        int[] order = new int[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            order[i] = stripeOf(ids[i]);
+        }
+        Arrays.sort(order);
+        // Keep each stripe once
+        int distinct = 0;
+        for (int i = 0; i < order.length; i++) {
+            if (distinct == 0 || order[distinct - 1] != order[i]) {
+                order[distinct++] = order[i];
+            }
+        }
+        return Arrays.copyOf(order, distinct);
+    }
+    
+    private int stripeOf(int id) {
+        // Spread the bits so consecutive IDs land on different stripes
+        int h = id * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+}
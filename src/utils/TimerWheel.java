@@ -0,0 +1,168 @@
+package utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * TimerWheel fires items when their deadline passes, at a fixed tick resolution
+ *
+ * The wheel is a ring of slots, one per tick. An item is put in the slot of the tick
+ * its deadline falls in, so scheduling costs the same however many items are waiting,
+ * and each tick only looks at the items of one slot. Items due more than one turn of
+ * the wheel ahead stay in their slot until the turn they are due in. Items fire at
+ * most one tick late, and never early.
+ *
+ * Each slot has its own lock, so scheduling rarely waits for another thread. Items
+ * are fired on the thread advancing the wheel, outside any slot lock.
+ *
+ * @param <T> The type of the scheduled items
+ */
+public class TimerWheel<T> {
+    private final long tickMillis;
+    private final List<List<Entry<T>>> slots;
+    private final Consumer<T> onDue;
+    // Last tick whose slot is being or was emptied; written by the advancing thread only
+    private volatile long currentTick;
+    private Thread thread;
+    private volatile boolean running;
+    
+    /**
+     * An item with its deadline
+     */
+    private static class Entry<T> {
+        final T item;
+        final long deadline;
+        
+        Entry(T item, long deadline) {
+            this.item = item;
+            this.deadline = deadline;
+        }
+    }
+    
+    /**
+     * Constructor for a wheel starting at the current time
+     *
+     * @param tickMillis Length of a tick in milliseconds
+     * @param slots Number of ticks in one turn of the wheel
+     * @param onDue Called with every item whose deadline passed
+     */
+    public TimerWheel(long tickMillis, int slots, Consumer<T> onDue) {
+        this.tickMillis = tickMillis;
+        this.slots = new ArrayList<>(slots);
+        for (int i = 0; i < slots; i++) {
+            this.slots.add(new ArrayList<>());
+        }
+        this.onDue = onDue;
+        this.currentTick = System.currentTimeMillis() / tickMillis - 1;
+    }
+    
+    /**
+     * Schedule an item
+     *
+     * @param item The item
+     * @param deadline Time in milliseconds after which the item is due
+     */
+    public void schedule(T item, long deadline) {
+        while (true) {
+            // An item already due goes in the next slot to be emptied
+            long tick = Math.max(deadline / tickMillis, currentTick + 1);
+            List<Entry<T>> slot = slots.get((int) (tick % slots.size()));
+            synchronized (slot) {
+                // Retry if the wheel moved on to this tick in between
+                if (tick > currentTick) {
+                    slot.add(new Entry<>(item, deadline));
+                    return;
+                }
+            }
+        }
+    }
+    
+    /**
+     * Fire every item due in the ticks over by the given time
+     * Called by the wheel's own thread once started; call it directly to drive the wheel by hand
+     *
+     * @param now The current time in milliseconds
+     */
+    public void advance(long now) {
+        // Only ticks that are over are emptied, so nothing due later in the current tick is passed by
+        long target = now / tickMillis - 1;
+        long from = currentTick + 1;
+        // After a long pause every slot is emptied once; items of later turns stay in place
+        if (target - from >= slots.size()) {
+            from = target - slots.size() + 1;
+        }
+        for (long tick = from; tick <= target; tick++) {
+            List<Entry<T>> slot = slots.get((int) (tick % slots.size()));
+            List<Entry<T>> due = new ArrayList<>();
+            currentTick = tick;
+            synchronized (slot) {
+                for (int i = slot.size() - 1; i >= 0; i--) {
+                    if (slot.get(i).deadline / tickMillis <= tick) {
+                        due.add(slot.remove(i));
+                    }
+                }
+            }
+            for (int i = due.size() - 1; i >= 0; i--) {
+                onDue.accept(due.get(i).item);
+            }
+        }
+        currentTick = Math.max(currentTick, target);
+    }
+    
+    /**
+     * Count the scheduled items
+     *
+     * @return Number of items waiting
+     */
+    public int size() {
+        int size = 0;
+        for (List<Entry<T>> slot : slots) {
+            synchronized (slot) {
+                size += slot.size();
+            }
+        }
+        return size;
+    }
+    
+    /**
+     * Start a daemon thread advancing the wheel every tick
+     *
+     * @param name Name of the thread
+     */
+    public synchronized void start(String name) {
+        if (thread != null) {
+            return;
+        }
+        running = true;
+        thread = new Thread(this::run, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+    
+    /**
+     * Stop the wheel's thread; scheduled items stay scheduled
+     */
+    public synchronized void stop() {
+        running = false;
+        if (thread != null) {
+            thread.interrupt();
+            thread = null;
+        }
+    }
+    
+    private void run() {
+        while (running) {
+            try {
+                Thread.sleep(tickMillis);
+            } catch (InterruptedException e) {
+                return;
+            }
+            try {
+                advance(System.currentTimeMillis());
+            } catch (RuntimeException e) {
+                System.err.println("Error firing timers: " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package utils;
+
+import models.User;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * UsernameIndex maps usernames to users across all four roles
+ *
+ * Keys are lower-cased, so "Amr" and "amr" are the same username no matter which
+ * role holds it. Data loaded from older files can still contain the same username
+ * in two roles, so every key keeps its users in insertion order and role lookups
+ * pick the first one of the requested type.
+ *
+ * The index is kept up to date by the change listeners of the four user lists, each
+ * running under its own list's lock, and is read by logins without any, so every
+ * method is synchronized. A new account takes its username with tryReserve before
+ * it is added to its list, so two accounts can never claim the same name.
+ */
+public class UsernameIndex {
+    private final Map<String, List<User>> byName = new HashMap<>();
+    
+    /**
+     * Get the index key of a username
+     *
+     * @param username The username
+     * @return The lower-cased username
+     */
+    public static String normalize(String username) {
+        return username.toLowerCase(Locale.ROOT);
+    }
+    
+    /**
+     * Add a user under its current username
+     *
+     * @param user The user
+     */
+    public synchronized void add(User user) {
+        if (user.getUsername() == null) {
+            return;
+        }
+        List<User> users = byName.computeIfAbsent(normalize(user.getUsername()), key -> new ArrayList<>(1));
+        for (User existing : users) {
+            if (existing == user) {
+                return;
+            }
+        }
+        users.add(user);
+    }
+    
+    /**
+     * Add a new user unless another user of any role has its username, ignoring case
+     *
+     * @param user The user
+     * @return true if the username is now the user's, false if it was taken
+     */
+    public synchronized boolean tryReserve(User user) {
+        if (user.getUsername() == null) {
+            return false;
+        }
+        List<User> users = byName.get(normalize(user.getUsername()));
+        if (users != null) {
+            // Reserving the same user again is not a clash
+            return users.size() == 1 && users.get(0) == user;
+        }
+        add(user);
+        return true;
+    }
+    
+    /**
+     * Add all users of a list
+     *
+     * @param users The users
+     */
+    public synchronized void addAll(List<? extends User> users) {
+        for (User user : users) {
+            add(user);
+        }
+    }
+    
+    /**
+     * Remove a user
+     *
+     * @param user The user
+     */
+    public synchronized void remove(User user) {
+        if (user.getUsername() == null) {
+            return;
+        }
+        String key = normalize(user.getUsername());
+        List<User> users = byName.get(key);
+        if (users == null) {
+            return;
+        }
+        for (int i = 0; i < users.size(); i++) {
+            if (users.get(i) == user) {
+                users.remove(i);
+                break;
+            }
+        }
+        if (users.isEmpty()) {
+            byName.remove(key);
+        }
+    }
+    
+    /**
+     * Find a user of the given role by username
+     *
+     * @param <T> The role type
+     * @param username The username
+     * @param role The role class
+     * @param ignoreCase Whether "Amr" may match a user stored as "amr"
+     * @return The first matching user, or null if there is none
+     */
+    public synchronized <T extends User> T find(String username, Class<T> role, boolean ignoreCase) {
+        if (username == null) {
+            return null;
+        }
+        List<User> users = byName.get(normalize(username));
+        if (users == null) {
+            return null;
+        }
+        for (User user : users) {
+            if (role.isInstance(user) && (ignoreCase || user.getUsername().equals(username))) {
+                return role.cast(user);
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * Check whether any user of any role has a username, ignoring case
+     *
+     * @param username The username
+     * @return true if the username is taken
+     */
+    public synchronized boolean isTaken(String username) {
+        return username != null && byName.containsKey(normalize(username));
+    }
+    
+    /**
+     * Get the number of distinct usernames
+     *
+     * @return Number of usernames
+     */
+    public synchronized int size() {
+        return byName.size();
+    }
+    
+    /**
+     * Remove all users
+     */
+    public synchronized void clear() {
+        byName.clear();
+    }
+}
@@ -0,0 +1,345 @@
+package utils;
+
+import models.Wallet;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalDouble;
+
+/**
+ * WalletLedger keeps the transactions of every wallet in append-only segment files
+ *
+ * Each wallet has its own sequence of segments under data/ledger, named
+ * wallet_{patientId}_{segment}.log. Transactions are only ever appended to the
+ * newest segment, which is sealed after SEGMENT_RECORDS records. Every record
+ * stores the running balance after the transaction, so the current balance is
+ * read from the last record of the newest segment instead of replaying history.
+ *
+ * Line format: id|TYPE|amount|balanceAfter|timestampMillis|description
+ */
+public class WalletLedger {
+    public static final String LEDGER_DIR = "data/ledger";
+    
+    private static final int SEGMENT_RECORDS = 256;
+    private static final int TAIL_BLOCK = 512;
+    private static final String FILE_PREFIX = "wallet_";
+    private static final String FILE_SUFFIX = ".log";
+    private static final Wallet.Transaction.Type[] TRANSACTION_TYPES = Wallet.Transaction.Type.values();
+    
+    /**
+     * The newest segment of a wallet
+     */
+    private static class Head {
+        private int segment;
+        private int records = -1; // Counted on first append
+        
+        Head(int segment) {
+            this.segment = segment;
+        }
+    }
+    
+    private final File directory;
+    private final Map<Integer, Head> heads = new HashMap<>();
+    
+    /**
+     * Constructor using the default ledger directory under data/
+     */
+    public WalletLedger() {
+        this(LEDGER_DIR);
+    }
+    
+    /**
+     * Constructor for a ledger stored in the given directory
+     * Lists the directory once to find the newest segment of every wallet
+     *
+     * @param directoryPath Path of the ledger directory
+     */
+    public WalletLedger(String directoryPath) {
+        this.directory = new File(directoryPath);
+        if (!directory.exists()) {
+            directory.mkdirs();
+        }
+        
+        String[] names = directory.list();
+        if (names == null) {
+            return;
+        }
+        for (String name : names) {
+            if (!name.startsWith(FILE_PREFIX) || !name.endsWith(FILE_SUFFIX)) {
+                continue;
+            }
+            String[] parts = name.substring(FILE_PREFIX.length(), name.length() - FILE_SUFFIX.length()).split("_");
+            if (parts.length != 2) {
+                continue;
+            }
+            try {
+                int patientId = Integer.parseInt(parts[0]);
+                int segment = Integer.parseInt(parts[1]);
+                Head head = heads.get(patientId);
+                if (head == null || head.segment < segment) {
+                    heads.put(patientId, new Head(segment));
+                }
+            } catch (NumberFormatException e) {
+                System.err.println("Skipping unknown ledger file: " + name);
+            }
+        }
+    }
+    
+    /**
+     * Check whether a wallet has any ledger segments
+     *
+     * @param patientId The patient ID
+     * @return true if the wallet has a ledger
+     */
+    public synchronized boolean hasWallet(int patientId) {
+        return heads.containsKey(patientId);
+    }
+    
+    /**
+     * Get the number of wallets with a ledger
+     *
+     * @return Number of wallets
+     */
+    public synchronized int walletCount() {
+        return heads.size();
+    }
+    
+    /**
+     * Read the current balance of a wallet from the last record of its newest segment
+     *
+     * @param patientId The patient ID
+     * @return The stored running balance, or empty if the wallet has no records
+     */
+    public synchronized OptionalDouble readBalance(int patientId) {
+        Head head = heads.get(patientId);
+        if (head == null) {
+            return OptionalDouble.empty();
+        }
+        
+        // A segment only holds a torn record after a crash; fall back to the one before it
+        for (int segment = head.segment; segment >= 0; segment--) {
+            String line = readLastLine(segmentFile(patientId, segment));
+            if (line != null) {
+                Wallet.Transaction transaction = parseRecord(patientId, line);
+                if (transaction != null) {
+                    return OptionalDouble.of(transaction.getBalanceAfter());
+                }
+            }
+        }
+        return OptionalDouble.empty();
+    }
+    
+    /**
+     * Append a transaction to the newest segment of a wallet
+     *
+     * @param patientId The patient ID
+     * @param transaction The transaction
+     * @return true if the record was written
+     */
+    public synchronized boolean append(int patientId, Wallet.Transaction transaction) {
+        return appendAll(patientId, Collections.singletonList(transaction));
+    }
+    
+    /**
+     * Append transactions to a wallet, oldest first, sealing segments as they fill up
+     *
+     * @param patientId The patient ID
+     * @param transactions The transactions
+     * @return true if all records were written
+     */
+    public synchronized boolean appendAll(int patientId, List<Wallet.Transaction> transactions) {
+        if (transactions.isEmpty()) {
+            return true;
+        }
+        
+        Head head = heads.get(patientId);
+        if (head == null) {
+            head = new Head(0);
+            head.records = 0;
+        } else if (head.records < 0) {
+            head.records = repairAndCount(segmentFile(patientId, head.segment));
+        }
+        
+        int next = 0;
+        while (next < transactions.size()) {
+            if (head.records >= SEGMENT_RECORDS) {
+                head.segment++;
+                head.records = 0;
+            }
+            int end = Math.min(transactions.size(), next + SEGMENT_RECORDS - head.records);
+            StringBuilder lines = new StringBuilder();
+            for (int i = next; i < end; i++) {
+                lines.append(formatRecord(transactions.get(i))).append('\n');
+            }
+            
+            try (FileOutputStream out = new FileOutputStream(segmentFile(patientId, head.segment), true)) {
+                out.write(lines.toString().getBytes(StandardCharsets.UTF_8));
+                out.getFD().sync();
+            } catch (IOException e) {
+                System.err.println("Error appending to wallet ledger: " + e.getMessage());
+                head.records = -1;
+                heads.put(patientId, head);
+                return false;
+            }
+            head.records += end - next;
+            heads.put(patientId, head);
+            next = end;
+        }
+        return true;
+    }
+    
+    /**
+     * Read the full transaction history of a wallet
+     *
+     * @param patientId The patient ID
+     * @return The transactions, oldest first
+     */
+    public synchronized List<Wallet.Transaction> readHistory(int patientId) {
+        List<Wallet.Transaction> transactions = new ArrayList<>();
+        Head head = heads.get(patientId);
+        if (head == null) {
+            return transactions;
+        }
+        
+        for (int segment = 0; segment <= head.segment; segment++) {
+            File file = segmentFile(patientId, segment);
+            if (!file.exists()) {
+                continue;
+            }
+            try (BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    Wallet.Transaction transaction = parseRecord(patientId, line);
+                    if (transaction != null) {
+                        transactions.add(transaction);
+                    }
+                }
+            } catch (IOException e) {
+                System.err.println("Error reading wallet ledger: " + e.getMessage());
+            }
+        }
+        return transactions;
+    }
+    
+    private File segmentFile(int patientId, int segment) {
+        return new File(directory, String.format("%s%d_%06d%s", FILE_PREFIX, patientId, segment, FILE_SUFFIX));
+    }
+    
+    /**
+     * Read the last complete line of a segment by reading backwards from its end
+     *
+     * @param file The segment file
+     * @return The line, or null if the segment holds no complete record
+     */
+    private String readLastLine(File file) {
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            long length = in.length();
+            int block = TAIL_BLOCK;
+            while (true) {
+                long start = Math.max(0, length - block);
+                byte[] bytes = new byte[(int) (length - start)];
+                in.seek(start);
+                in.readFully(bytes);
+                
+                // Ignore a torn record without its line break
+                int end = bytes.length;
+                while (end > 0 && bytes[end - 1] != '\n') {
+                    end--;
+                }
+                if (end == 0) {
+                    if (start == 0) {
+                        return null;
+                    }
+                    block *= 2;
+                    continue;
+                }
+                int lineStart = end - 1;
+                while (lineStart > 0 && bytes[lineStart - 1] != '\n') {
+                    lineStart--;
+                }
+                if (lineStart == 0 && start > 0) {
+                    block *= 2;
+                    continue;
+                }
+                return new String(bytes, lineStart, end - 1 - lineStart, StandardCharsets.UTF_8);
+            }
+        } catch (IOException e) {
+            return null;
+        }
+    }
+    
+    /**
+     * Drop a torn record from the end of a segment and count its records
+     *
+     * @param file The segment file
+     * @return Number of complete records in the segment
+     */
+    private int repairAndCount(File file) {
+        if (!file.exists()) {
+            return 0;
+        }
+        try (RandomAccessFile segment = new RandomAccessFile(file, "rw")) {
+            byte[] bytes = new byte[(int) segment.length()];
+            segment.readFully(bytes);
+            int records = 0;
+            int end = 0;
+            for (int i = 0; i < bytes.length; i++) {
+                if (bytes[i] == '\n') {
+                    records++;
+                    end = i + 1;
+                }
+            }
+            if (end < bytes.length) {
+                segment.setLength(end);
+            }
+            return records;
+        } catch (IOException e) {
+            System.err.println("Error reading wallet ledger: " + e.getMessage());
+            return 0;
+        }
+    }
+    
+    private static String formatRecord(Wallet.Transaction transaction) {
+        String description = transaction.getDescription() == null ? "" : transaction.getDescription()
+            .replace('|', '/').replace('\n', ' ').replace('\r', ' ');
+        return transaction.getId() + "|" + transaction.getType().name() + "|" + transaction.getAmount() + "|" +
+               transaction.getBalanceAfter() + "|" +
+               (transaction.getDateTime() != null ? transaction.getDateTime().getTime() : 0L) + "|" + description;
+    }
+    
+    private static Wallet.Transaction parseRecord(int patientId, String line) {
+        String[] parts = line.split("\\|", 6);
+        if (parts.length < 6) {
+            return null;
+        }
+        try {
+            Wallet.Transaction.Type type = null;
+            for (Wallet.Transaction.Type candidate : TRANSACTION_TYPES) {
+                if (candidate.name().equals(parts[1])) {
+                    type = candidate;
+                }
+            }
+            if (type == null) {
+                return null;
+            }
+            return new Wallet.Transaction(parts[0], patientId, type, Double.parseDouble(parts[2]), parts[5],
+                                          Double.parseDouble(parts[3]), new Date(Long.parseLong(parts[4])));
+        } catch (NumberFormatException e) {
+            System.err.println("Skipping malformed wallet ledger record: " + line);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,257 @@
+package utils;
+
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * WriteBehindWriter moves saves off the calling thread onto a single writer thread
+ *
+ * Callers submit the collections they changed and return immediately. The writer
+ * waits until no change was submitted for a quiet period (or a change has been
+ * pending for the maximum delay) and then writes every collection changed in the
+ * meantime in one go, so a burst of mutations costs one write.
+ *
+ * When the writer falls behind - a write is running and maxPendingSubmits more
+ * submits arrived since it started - submit blocks until that write finishes.
+ * flush waits until everything submitted so far has been written.
+ *
+ * @param <K> The type naming the persisted collections
+ */
+public class WriteBehindWriter<K extends Enum<K>> {
+    private final long quietMillis;
+    private final long maxDelayMillis;
+    private final int maxPendingSubmits;
+    private final Consumer<Set<K>> sink;
+    private final Thread thread;
+    
+    private final Set<K> pending;
+    private long firstPendingAt;
+    private long lastSubmitAt;
+    private long retryAt;
+    private int pendingSubmits;
+    private long submittedGeneration;
+    private long writtenGeneration;
+    private boolean writing;
+    private boolean flushRequested;
+    private boolean closed;
+    private int writesPerformed;
+    private int writesFailed;
+    
+    /**
+     * Constructor that starts the writer thread
+     *
+     * @param name Name of the writer thread
+     * @param keyType The enum class naming the collections
+     * @param quietMillis Time without new submits before pending changes are written
+     * @param maxDelayMillis Longest time a submitted change waits before it is written
+     * @param maxPendingSubmits Submits accepted during a running write before callers block
+     * @param sink Writes the given changed collections; called on the writer thread only
+     */
+    public WriteBehindWriter(String name, Class<K> keyType, long quietMillis, long maxDelayMillis,
+                             int maxPendingSubmits, Consumer<Set<K>> sink) {
+        this.quietMillis = quietMillis;
+        this.maxDelayMillis = maxDelayMillis;
+        this.maxPendingSubmits = maxPendingSubmits;
+        this.sink = sink;
+        this.pending = EnumSet.noneOf(keyType);
+        
+        this.thread = new Thread(this::run, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+    
+    /**
+     * Queue changed collections for writing
+     * Returns immediately unless the writer has fallen behind
+     *
+     * @param changed The collections that were changed
+     */
+    public void submit(Set<K> changed) {
+        if (changed.isEmpty()) {
+            return;
+        }
+        
+        synchronized (this) {
+            if (!closed) {
+                // Back-pressure: let the running write finish before queueing more
+                while (writing && pendingSubmits >= maxPendingSubmits && !closed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                }
+                
+                long now = System.currentTimeMillis();
+                if (pending.isEmpty()) {
+                    firstPendingAt = now;
+                }
+                pending.addAll(changed);
+                lastSubmitAt = now;
+                pendingSubmits++;
+                submittedGeneration++;
+                notifyAll();
+                return;
+            }
+        }
+        
+        // The writer thread has stopped, so write on the caller's thread
+        write(EnumSet.copyOf(changed));
+    }
+    
+    /**
+     * Write all submitted changes now and wait until they are on disk
+     *
+     * @param timeoutMillis Longest time to wait
+     * @return true if everything submitted before the call was written
+     */
+    public synchronized boolean flush(long timeoutMillis) {
+        long target = submittedGeneration;
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        flushRequested = true;
+        notifyAll();
+        
+        while (writtenGeneration < target) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0 || !thread.isAlive()) {
+                System.err.println("Timed out waiting for pending saves to be written.");
+                return false;
+            }
+            try {
+                wait(remaining);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Write all submitted changes and stop the writer thread
+     * Later submits are written on the caller's thread
+     *
+     * @param timeoutMillis Longest time to wait for the pending writes
+     * @return true if everything submitted was written
+     */
+    public boolean close(long timeoutMillis) {
+        boolean flushed = flush(timeoutMillis);
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        return flushed;
+    }
+    
+    /**
+     * Get the number of writes that completed
+     *
+     * @return Number of writes
+     */
+    public synchronized int getWritesPerformed() {
+        return writesPerformed;
+    }
+    
+    /**
+     * Get the number of writes that failed and were queued again
+     *
+     * @return Number of failed writes
+     */
+    public synchronized int getWritesFailed() {
+        return writesFailed;
+    }
+    
+    /**
+     * Check whether changes are waiting to be written
+     *
+     * @return true if a write is pending or running
+     */
+    public synchronized boolean hasPendingWrites() {
+        return writing || !pending.isEmpty();
+    }
+    
+    private void run() {
+        while (true) {
+            Set<K> batch;
+            long generation;
+            synchronized (this) {
+                try {
+                    if (!awaitDueBatch()) {
+                        return;
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                }
+                batch = EnumSet.copyOf(pending);
+                generation = submittedGeneration;
+                pending.clear();
+                pendingSubmits = 0;
+                writing = true;
+            }
+            
+            boolean written = write(batch);
+            
+            synchronized (this) {
+                writing = false;
+                if (written) {
+                    writtenGeneration = generation;
+                    writesPerformed++;
+                } else {
+                    // Retry after another quiet period together with anything submitted since
+                    long now = System.currentTimeMillis();
+                    if (pending.isEmpty()) {
+                        firstPendingAt = now;
+                    }
+                    pending.addAll(batch);
+                    retryAt = now + quietMillis;
+                    writesFailed++;
+                }
+                if (writtenGeneration >= submittedGeneration) {
+                    flushRequested = false;
+                }
+                notifyAll();
+            }
+        }
+    }
+    
+    /**
+     * Wait until pending changes are due to be written
+     * Must be called while holding the lock
+     *
+     * @return false once the writer is closed and nothing is pending
+     */
+    private boolean awaitDueBatch() throws InterruptedException {
+        while (true) {
+            if (pending.isEmpty()) {
+                if (closed) {
+                    return false;
+                }
+                wait();
+                continue;
+            }
+            
+            long now = System.currentTimeMillis();
+            long due = flushRequested || closed
+                ? now
+                : Math.min(lastSubmitAt + quietMillis, firstPendingAt + maxDelayMillis);
+            due = Math.max(due, retryAt);
+            if (now >= due) {
+                return true;
+            }
+            wait(due - now);
+        }
+    }
+    
+    private boolean write(Set<K> batch) {
+        try {
+            sink.accept(batch);
+            return true;
+        } catch (RuntimeException e) {
+            // Typically a collection changed while it was being written
+            System.err.println("Error writing " + batch + ", will retry: " + e);
+            return false;
+        }
+    }
+}